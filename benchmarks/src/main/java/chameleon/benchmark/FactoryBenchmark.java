@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import chameleon.playlist.SpecificPlaylist;
+import chameleon.playlist.SpecificPlaylistFactory;
+import chameleon.playlist.SpecificPlaylistProvider;
+
+/**
+ * Measures the parsing of a playlist whose format is not known in advance,
+ * i.e. the auto-detection performed by the specific playlist factory.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g", "-Dorg.apache.commons.logging.Log=org.apache.commons.logging.impl.NoOpLog" })
+public class FactoryBenchmark
+{
+    /**
+     * The encoding used to write and read the playlists.
+     */
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * The identifier of the provider used to write the playlist.
+     */
+    @Param({ "asx", "atom", "b4s", "hypetape", "kpl", "m3u", "mpcpl", "pla", "plist", "plp", "pls", "rmp", "rss", "smil", "wpl", "xspf" })
+    public String provider;
+
+    /**
+     * The number of media in the playlist.
+     */
+    @Param({ "10", "1000", "100000", "1000000" })
+    public int size;
+
+    /**
+     * The serialized playlist, to be parsed.
+     */
+    private byte[] _bytes;
+
+    /**
+     * Serializes the playlist with the specified provider.
+     * @throws Exception if the provider cannot handle the playlist.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        final SpecificPlaylistProvider writer = SpecificPlaylistFactory.getInstance().findProviderById(provider);
+
+        if (writer == null)
+        {
+            throw new IllegalArgumentException("No provider with identifier " + provider);
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.toSpecificPlaylist(Playlists.flat(size)).writeTo(out, ENCODING);
+        _bytes = out.toByteArray();
+    }
+
+    /**
+     * Parses the serialized playlist, trying each provider in turn.
+     * @return the parsed playlist, or <code>null</code> if no provider recognized it.
+     * @throws Exception if the playlist cannot be read.
+     */
+    @Benchmark
+    public SpecificPlaylist readFrom() throws Exception
+    {
+        return SpecificPlaylistFactory.getInstance().readFrom(new ByteArrayInputStream(_bytes), ENCODING);
+    }
+}
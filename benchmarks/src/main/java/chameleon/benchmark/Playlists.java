@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.benchmark;
+
+import java.io.OutputStream;
+
+import chameleon.content.Content;
+import chameleon.playlist.Media;
+import chameleon.playlist.Playlist;
+import chameleon.playlist.Sequence;
+
+/**
+ * Builds the synthetic playlists used by the benchmarks.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+final class Playlists
+{
+    /**
+     * Builds a flat playlist of the specified size.
+     * Each media is distinct, has a source URL and no duration, so that every format can handle it.
+     * @param size the number of media. Shall be positive.
+     * @return a new generic playlist. Not <code>null</code>.
+     */
+    static Playlist flat(final int size)
+    {
+        final Playlist ret = new Playlist();
+        final Sequence root = ret.getRootSequence();
+
+        for (int iter = 0; iter < size; iter++)
+        {
+            root.addComponent(newMedia(iter));
+        }
+
+        return ret;
+    }
+
+    /**
+     * Builds a denormalized playlist of the specified size, the way a careless parser would.
+     * It mixes runs of identical media, nested sequences made of a single component, empty sequences and media without source.
+     * @param size the approximate number of media. Shall be positive.
+     * @return a new generic playlist. Not <code>null</code>.
+     */
+    static Playlist denormalized(final int size)
+    {
+        final Playlist ret = new Playlist();
+        final Sequence root = ret.getRootSequence();
+
+        for (int iter = 0; iter < size; iter++)
+        {
+            switch (iter % 8)
+            {
+                case 0:
+                case 1:
+                    // A run of identical media.
+                    root.addComponent(newMedia(iter - (iter % 8)));
+                    break;
+
+                case 2:
+                    // A media wrapped in nested sequences.
+                    final Sequence outer = new Sequence(); // NOPMD Avoid instantiating new objects inside loops
+                    final Sequence inner = new Sequence(); // NOPMD Avoid instantiating new objects inside loops
+                    inner.addComponent(newMedia(iter));
+                    outer.addComponent(inner);
+                    root.addComponent(outer);
+                    break;
+
+                case 3:
+                    // An empty sequence.
+                    root.addComponent(new Sequence()); // NOPMD Avoid instantiating new objects inside loops
+                    break;
+
+                case 4:
+                    // A media without source.
+                    root.addComponent(new Media()); // NOPMD Avoid instantiating new objects inside loops
+                    break;
+
+                default:
+                    root.addComponent(newMedia(iter));
+                    break;
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Builds a media with a distinct source.
+     * @param index the index of the media.
+     * @return a new media. Not <code>null</code>.
+     */
+    private static Media newMedia(final int index)
+    {
+        final Media ret = new Media();
+        ret.setSource(new Content("http://www.example.com/music/album" + (index / 16) + "/track" + index + ".mp3"));
+
+        return ret;
+    }
+
+    /**
+     * The default constructor.
+     * No need for a public one.
+     */
+    private Playlists()
+    {
+    }
+
+    /**
+     * An output stream which only counts the bytes written to it.
+     */
+    static final class CountingOutputStream extends OutputStream
+    {
+        /**
+         * The number of bytes written so far.
+         */
+        private long _count = 0L;
+
+        @Override
+        public void write(final int b)
+        {
+            _count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len)
+        {
+            _count += len;
+        }
+
+        /**
+         * Returns the number of bytes written so far.
+         * @return a byte count.
+         */
+        long getCount()
+        {
+            return _count;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import chameleon.playlist.Playlist;
+import chameleon.playlist.SpecificPlaylist;
+import chameleon.playlist.SpecificPlaylistFactory;
+import chameleon.playlist.SpecificPlaylistProvider;
+import chameleon.playlist.StreamingPlaylistWriter;
+
+/**
+ * Measures the four operations of each specific playlist provider, and the writing of a generic playlist, on playlists of increasing size.
+ * Run with <code>-prof gc</code> to get the allocation rates as well.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g", "-Dorg.apache.commons.logging.Log=org.apache.commons.logging.impl.NoOpLog" })
+public class ProviderBenchmark
+{
+    /**
+     * The encoding used to write and read the playlists.
+     */
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * The identifier of the provider under test.
+     */
+    @Param({ "asx", "atom", "b4s", "hypetape", "kpl", "m3u", "mpcpl", "pla", "plist", "plp", "pls", "rmp", "rss", "smil", "wpl", "xspf" })
+    public String provider;
+
+    /**
+     * The number of media in the playlist.
+     */
+    @Param({ "10", "1000", "100000", "1000000" })
+    public int size;
+
+    /**
+     * The provider under test.
+     */
+    private SpecificPlaylistProvider _provider;
+
+    /**
+     * The logger given to the provider.
+     */
+    private Log _logger;
+
+    /**
+     * The generic playlist to convert.
+     */
+    private Playlist _playlist;
+
+    /**
+     * The playlist converted by the provider, to be written.
+     */
+    private SpecificPlaylist _converted;
+
+    /**
+     * The playlist parsed by the provider, to be converted back.
+     */
+    private SpecificPlaylist _parsed;
+
+    /**
+     * The serialized playlist, to be parsed.
+     */
+    private byte[] _bytes;
+
+    /**
+     * Builds the playlist, and serializes it once with the provider under test.
+     * @throws Exception if the provider cannot handle the playlist.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        _provider = SpecificPlaylistFactory.getInstance().findProviderById(provider);
+
+        if (_provider == null)
+        {
+            throw new IllegalArgumentException("No provider with identifier " + provider);
+        }
+
+        _logger = LogFactory.getLog(ProviderBenchmark.class);
+        _playlist = Playlists.flat(size);
+        _converted = _provider.toSpecificPlaylist(_playlist);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        _converted.writeTo(out, ENCODING);
+        _bytes = out.toByteArray();
+
+        _parsed = _provider.readFrom(new ByteArrayInputStream(_bytes), ENCODING, _logger);
+    }
+
+    /**
+     * Parses the serialized playlist.
+     * @return the parsed playlist.
+     * @throws Exception if the playlist cannot be parsed.
+     */
+    @Benchmark
+    public SpecificPlaylist readFrom() throws Exception
+    {
+        return _provider.readFrom(new ByteArrayInputStream(_bytes), ENCODING, _logger);
+    }
+
+    /**
+     * Serializes the converted playlist.
+     * @return the number of bytes written.
+     * @throws Exception if the playlist cannot be written.
+     */
+    @Benchmark
+    public long writeTo() throws Exception
+    {
+        final Playlists.CountingOutputStream out = new Playlists.CountingOutputStream();
+        _converted.writeTo(out, ENCODING);
+
+        return out.getCount();
+    }
+
+    /**
+     * Converts the parsed playlist to a generic one.
+     * @return the generic playlist.
+     */
+    @Benchmark
+    public Playlist toPlaylist()
+    {
+        return _parsed.toPlaylist();
+    }
+
+    /**
+     * Converts the generic playlist to a specific one.
+     * The conversion is complete: every entry of the specific playlist is built.
+     * @return the specific playlist.
+     * @throws Exception if the provider cannot handle the playlist.
+     */
+    @Benchmark
+    public SpecificPlaylist toSpecificPlaylist() throws Exception
+    {
+        return _provider.toSpecificPlaylist(_playlist);
+    }
+
+    /**
+     * Writes the generic playlist in the format of the provider.
+     * The playlist is written as it is walked if the provider is a {@link StreamingPlaylistWriter}, and converted first otherwise.
+     * @return the number of bytes written.
+     * @throws Exception if the provider cannot handle the playlist.
+     */
+    @Benchmark
+    public long writePlaylist() throws Exception
+    {
+        final Playlists.CountingOutputStream out = new Playlists.CountingOutputStream();
+
+        if (_provider instanceof StreamingPlaylistWriter)
+        {
+            ((StreamingPlaylistWriter) _provider).writeTo(_playlist, out, ENCODING);
+        }
+        else
+        {
+            _provider.toSpecificPlaylist(_playlist).writeTo(out, ENCODING);
+        }
+
+        return out.getCount();
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import chameleon.content.type.ContentType;
+import chameleon.content.type.ContentTypeFactory;
+import chameleon.playlist.SpecificPlaylist;
+import chameleon.playlist.SpecificPlaylistFactory;
+import chameleon.playlist.SpecificPlaylistProvider;
+
+/**
+ * Measures the lookups in the provider registries when they are shared by many threads.
+ * By default, each benchmark runs on as many threads as there are processors:
+ * compare with a run on a single thread (<code>-t 1</code>) to check that the throughput scales with the number of cores.
+ * The <code>reload</code> group performs the same lookups while another thread keeps on reloading the providers.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(Threads.MAX)
+@Fork(value = 1, jvmArgsAppend = { "-Dorg.apache.commons.logging.Log=org.apache.commons.logging.impl.NoOpLog" })
+public class RegistryBenchmark
+{
+    /**
+     * The encoding used to write and read the playlist.
+     */
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * The identifiers of the providers looked up.
+     */
+    private static final String[] IDS = { "asx", "atom", "b4s", "hypetape", "kpl", "m3u", "mpcpl", "pla", "plist", "plp", "pls", "rmp", "rss", "smil", "wpl", "xspf", "unknown" };
+
+    /**
+     * The file names looked up.
+     */
+    private static final String[] FILENAMES = { "a.asx", "b.m3u8", "c.pls", "d.xspf", "e.wpl", "f.smil", "g.rmp", "h.txt", "http://host/path/i.m3u?j=k" };
+
+    /**
+     * The serialized playlist, to be parsed.
+     */
+    private byte[] _bytes;
+
+    /**
+     * Serializes a small M3U playlist.
+     * @throws Exception if the playlist cannot be written.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SpecificPlaylistFactory.getInstance().findProviderById("m3u").toSpecificPlaylist(Playlists.flat(10)).writeTo(out, ENCODING);
+        _bytes = out.toByteArray();
+    }
+
+    /**
+     * Looks up a provider by identifier.
+     * @param cursor the lookup cursor of the current thread.
+     * @return the provider found, if any.
+     */
+    @Benchmark
+    public SpecificPlaylistProvider findProviderById(final Cursor cursor)
+    {
+        return SpecificPlaylistFactory.getInstance().findProviderById(IDS[cursor.next(IDS.length)]);
+    }
+
+    /**
+     * Looks up a provider by file extension.
+     * @param cursor the lookup cursor of the current thread.
+     * @return the provider found, if any.
+     */
+    @Benchmark
+    public SpecificPlaylistProvider findProviderByExtension(final Cursor cursor)
+    {
+        return SpecificPlaylistFactory.getInstance().findProviderByExtension(FILENAMES[cursor.next(FILENAMES.length)]);
+    }
+
+    /**
+     * Looks up a content type by file name.
+     * @param cursor the lookup cursor of the current thread.
+     * @return the content type found, if any.
+     */
+    @Benchmark
+    public ContentType getContentType(final Cursor cursor)
+    {
+        return ContentTypeFactory.getInstance().getContentType(FILENAMES[cursor.next(FILENAMES.length)]);
+    }
+
+    /**
+     * Parses a small playlist whose format is not known in advance.
+     * @return the parsed playlist.
+     * @throws Exception if the playlist cannot be read.
+     */
+    @Benchmark
+    public SpecificPlaylist readFrom() throws Exception
+    {
+        return SpecificPlaylistFactory.getInstance().readFrom(new ByteArrayInputStream(_bytes), ENCODING);
+    }
+
+    /**
+     * Looks up a provider by identifier while the providers are being reloaded.
+     * @param cursor the lookup cursor of the current thread.
+     * @return the provider found, if any.
+     */
+    @Benchmark
+    @Group("reload")
+    @GroupThreads(3)
+    public SpecificPlaylistProvider lookupWhileReloading(final Cursor cursor)
+    {
+        return SpecificPlaylistFactory.getInstance().findProviderById(IDS[cursor.next(IDS.length)]);
+    }
+
+    /**
+     * Reloads the playlist and content type providers.
+     */
+    @Benchmark
+    @Group("reload")
+    @GroupThreads(1)
+    public void reloadProviders()
+    {
+        SpecificPlaylistFactory.getInstance().reloadProviders();
+        ContentTypeFactory.getInstance().reloadProviders();
+    }
+
+    /**
+     * The position of a thread in the lookup keys, so that the threads do not all look up the same key at the same time.
+     * @version $Revision: 92 $
+     * @author Christophe Delory
+     * @since 1.3.0
+     */
+    @State(Scope.Thread)
+    public static class Cursor
+    {
+        /**
+         * The current position.
+         */
+        private int _index;
+
+        /**
+         * Starts the cursor at a thread-specific position.
+         */
+        @Setup(Level.Trial)
+        public void setUp()
+        {
+            _index = (int) (Thread.currentThread().getId() & 0xffL);
+        }
+
+        /**
+         * Moves to the next position.
+         * @param length the number of keys. Shall be strictly positive.
+         * @return the next position, in the range <code>[0, length)</code>.
+         */
+        int next(final int length)
+        {
+            _index++;
+
+            if (_index >= length)
+            {
+                _index %= length;
+            }
+
+            return _index;
+        }
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import chameleon.content.type.ContentType;
+import chameleon.content.type.ContentTypeFactory;
+import chameleon.playlist.SpecificPlaylist;
+import chameleon.playlist.SpecificPlaylistFactory;
+import chameleon.playlist.SpecificPlaylistProvider;
+
+/**
+ * Checks that the provider registries are always seen whole by concurrent lookups, while another thread keeps on reloading them.
+ * <br>
+ * The expected results are the ones of the registries as first loaded:
+ * every registered extension and MIME type, and the list of providers itself, are looked up again and again by several threads,
+ * and each lookup shall give the same provider and content type, whatever the number of reloads in the meantime.
+ * A lookup seeing a partially built registry would find fewer providers, or none.
+ * <br>
+ * Usage: <code>java -cp benchmarks.jar chameleon.benchmark.RegistryCheck [seconds]</code>.
+ * The process exits with status 1 if an inconsistent lookup has been seen.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+public final class RegistryCheck
+{
+    /**
+     * The default duration of the check, in seconds.
+     */
+    private static final int DEFAULT_DURATION = 10;
+
+    /**
+     * The maximum number of errors kept for the report.
+     */
+    private static final int MAX_REPORTED_ERRORS = 10;
+
+    /**
+     * The encoding used to write and read the playlist.
+     */
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * Runs the check.
+     * @param args the duration of the check in seconds, optionally.
+     * @throws Exception if the check cannot be set up.
+     */
+    public static void main(final String[] args) throws Exception
+    {
+        final int duration = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_DURATION; // May throw NumberFormatException.
+        final int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+        if (!new RegistryCheck().run(threads, duration * 1000L)) // May throw Exception.
+        {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * The identifiers of the providers, in their loading order.
+     */
+    private final List<String> _ids = new ArrayList<String>();
+
+    /**
+     * The file names and MIME types looked up.
+     */
+    private final List<String> _keys = new ArrayList<String>();
+
+    /**
+     * For each key, the expected identifier of the provider found by extension or by MIME type, or <code>null</code> if none.
+     */
+    private final List<String> _providerIds = new ArrayList<String>();
+
+    /**
+     * For each key, the expected description of the playlist content type found by extension or by MIME type, or <code>null</code> if none.
+     */
+    private final List<String> _descriptions = new ArrayList<String>();
+
+    /**
+     * For each key, the expected description of the content type given by the content type factory, or <code>null</code> if none.
+     */
+    private final List<String> _contentTypes = new ArrayList<String>();
+
+    /**
+     * The number of keys which are file names, the following ones being MIME types.
+     */
+    private int _filenameCount = 0;
+
+    /**
+     * A small serialized M3U playlist, to be auto-detected.
+     */
+    private byte[] _bytes;
+
+    /**
+     * The number of lookups performed.
+     */
+    private final AtomicLong _lookups = new AtomicLong();
+
+    /**
+     * The number of reloads performed.
+     */
+    private final AtomicLong _reloads = new AtomicLong();
+
+    /**
+     * The number of inconsistent lookups seen.
+     */
+    private final AtomicInteger _errorCount = new AtomicInteger();
+
+    /**
+     * The first inconsistent lookups seen.
+     */
+    private final Queue<String> _errors = new ConcurrentLinkedQueue<String>();
+
+    /**
+     * Specifies if the threads shall stop.
+     */
+    private volatile boolean _done = false;
+
+    /**
+     * Records the expected results of the lookups, with the registries as currently loaded.
+     * @throws Exception if the playlist to be auto-detected cannot be written.
+     */
+    private RegistryCheck() throws Exception
+    {
+        final SpecificPlaylistFactory factory = SpecificPlaylistFactory.getInstance();
+        final List<String> mimeTypes = new ArrayList<String>();
+
+        for (SpecificPlaylistProvider provider : factory.getProviders())
+        {
+            _ids.add(provider.getId());
+
+            for (ContentType type : provider.getContentTypes())
+            {
+                for (String extension : type.getExtensions())
+                {
+                    _keys.add("http://host/path/file" + extension + "?query");
+                }
+
+                for (String mimeType : type.getMimeTypes())
+                {
+                    mimeTypes.add(mimeType);
+                }
+            }
+        }
+
+        _keys.add("file.unknown");
+        _filenameCount = _keys.size();
+        _keys.addAll(mimeTypes);
+        _keys.add("application/x-unknown");
+
+        for (int i = 0; i < _keys.size(); i++)
+        {
+            final String key = _keys.get(i);
+            final boolean filename = i < _filenameCount;
+            final SpecificPlaylistProvider provider = filename ? factory.findProviderByExtension(key) : factory.findProviderByMimeType(key);
+            final ContentType type = filename ? factory.findContentTypeByExtension(key) : factory.findContentTypeByMimeType(key);
+            final ContentType contentType = filename ? ContentTypeFactory.getInstance().getContentType(key) : null;
+            _providerIds.add((provider == null) ? null : provider.getId());
+            _descriptions.add((type == null) ? null : type.getDescription());
+            _contentTypes.add((contentType == null) ? null : contentType.getDescription());
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        factory.findProviderById("m3u").toSpecificPlaylist(Playlists.flat(10)).writeTo(out, ENCODING); // May throw Exception.
+        _bytes = out.toByteArray();
+    }
+
+    /**
+     * Looks up the registries from the specified number of threads, while another thread reloads them, for the specified duration.
+     * @param threads the number of lookup threads. Shall be strictly positive.
+     * @param duration the duration of the check, in milliseconds.
+     * @return <code>true</code> if all the lookups were consistent.
+     * @throws InterruptedException if the current thread was interrupted while waiting.
+     */
+    private boolean run(final int threads, final long duration) throws InterruptedException
+    {
+        final List<Thread> all = new ArrayList<Thread>();
+
+        for (int i = 0; i < threads; i++)
+        {
+            all.add(new Lookup(i)); // NOPMD Avoid instantiating new objects inside loops
+        }
+
+        all.add(new Reload());
+
+        for (Thread thread : all)
+        {
+            thread.start();
+        }
+
+        Thread.sleep(duration); // May throw InterruptedException.
+        _done = true;
+
+        for (Thread thread : all)
+        {
+            thread.join(); // May throw InterruptedException.
+        }
+
+        System.out.println("threads=" + threads + " lookups=" + _lookups.get() + " reloads=" + _reloads.get() + " errors=" + _errorCount.get());
+
+        for (String error : _errors)
+        {
+            System.out.println(error);
+        }
+
+        return _errorCount.get() == 0;
+    }
+
+    /**
+     * Performs the specified lookup, and checks its result.
+     * @param index an index, selecting the lookup.
+     * @throws Exception if the playlist cannot be read.
+     */
+    private void check(final int index) throws Exception
+    {
+        final SpecificPlaylistFactory factory = SpecificPlaylistFactory.getInstance();
+        final int key = index % (_keys.size() + 2);
+
+        if (key < _filenameCount)
+        {
+            final String filename = _keys.get(key);
+            final SpecificPlaylistProvider provider = factory.findProviderByExtension(filename);
+            final ContentType type = factory.findContentTypeByExtension(filename);
+            final ContentType contentType = ContentTypeFactory.getInstance().getContentType(filename);
+            expect("findProviderByExtension(" + filename + ')', _providerIds.get(key), (provider == null) ? null : provider.getId());
+            expect("findContentTypeByExtension(" + filename + ')', _descriptions.get(key), (type == null) ? null : type.getDescription());
+            expect("getContentType(" + filename + ')', _contentTypes.get(key), (contentType == null) ? null : contentType.getDescription());
+        }
+        else if (key < _keys.size())
+        {
+            final String mimeType = _keys.get(key);
+            final SpecificPlaylistProvider provider = factory.findProviderByMimeType(mimeType);
+            final ContentType type = factory.findContentTypeByMimeType(mimeType);
+            expect("findProviderByMimeType(" + mimeType + ')', _providerIds.get(key), (provider == null) ? null : provider.getId());
+            expect("findContentTypeByMimeType(" + mimeType + ')', _descriptions.get(key), (type == null) ? null : type.getDescription());
+        }
+        else if (key == _keys.size())
+        {
+            final List<String> ids = new ArrayList<String>();
+
+            for (SpecificPlaylistProvider provider : factory.getProviders())
+            {
+                ids.add(provider.getId());
+                final SpecificPlaylistProvider found = factory.findProviderById(provider.getId());
+                expect("findProviderById(" + provider.getId() + ')', provider.getId(), (found == null) ? null : found.getId());
+            }
+
+            expect("getProviders()", _ids.toString(), ids.toString());
+        }
+        else
+        {
+            final SpecificPlaylist playlist = factory.readFrom(new ByteArrayInputStream(_bytes), ENCODING); // May throw Exception.
+            expect("readFrom()", "m3u", (playlist == null) ? null : playlist.getProvider().getId());
+        }
+
+        _lookups.incrementAndGet();
+    }
+
+    /**
+     * Records an error if the specified result is not the expected one.
+     * @param lookup a description of the lookup. Shall not be <code>null</code>.
+     * @param expected the expected result. May be <code>null</code>.
+     * @param actual the actual result. May be <code>null</code>.
+     */
+    private void expect(final String lookup, final String expected, final String actual)
+    {
+        if ((expected == null) ? (actual != null) : !expected.equals(actual))
+        {
+            error(lookup + ": expected " + expected + ", found " + actual);
+        }
+    }
+
+    /**
+     * Records an error.
+     * @param message the error description. Shall not be <code>null</code>.
+     */
+    private void error(final String message)
+    {
+        if (_errorCount.incrementAndGet() <= MAX_REPORTED_ERRORS)
+        {
+            _errors.add(message);
+        }
+    }
+
+    /**
+     * A thread looking up the registries until the end of the check.
+     * @version $Revision: 92 $
+     * @author Christophe Delory
+     * @since 1.3.0
+     */
+    private final class Lookup extends Thread
+    {
+        /**
+         * The index of the next lookup.
+         */
+        private int _index;
+
+        /**
+         * Builds a new lookup thread.
+         * @param start the index of the first lookup, so that the threads do not all look up the same key at the same time.
+         */
+        private Lookup(final int start)
+        {
+            super("lookup-" + start);
+            _index = start * 7;
+        }
+
+        @Override
+        public void run()
+        {
+            while (!_done)
+            {
+                try
+                {
+                    check(_index++); // May throw Exception.
+                }
+                catch (Exception e)
+                {
+                    error("lookup " + _index + ": " + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A thread reloading the registries until the end of the check.
+     * @version $Revision: 92 $
+     * @author Christophe Delory
+     * @since 1.3.0
+     */
+    private final class Reload extends Thread
+    {
+        /**
+         * Builds a new reload thread.
+         */
+        private Reload()
+        {
+            super("reload");
+        }
+
+        @Override
+        public void run()
+        {
+            while (!_done)
+            {
+                try
+                {
+                    SpecificPlaylistFactory.getInstance().reloadProviders();
+                    ContentTypeFactory.getInstance().reloadProviders();
+                    _reloads.incrementAndGet();
+                }
+                catch (RuntimeException e)
+                {
+                    error("reload: " + e);
+                }
+            }
+        }
+    }
+}
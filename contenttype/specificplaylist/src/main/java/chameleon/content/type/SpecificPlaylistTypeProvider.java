@@ -24,8 +24,6 @@
  */
 package chameleon.content.type;
 
-import java.util.Locale;
-
 import chameleon.playlist.SpecificPlaylistFactory;
 import chameleon.playlist.SpecificPlaylistProvider;
 
@@ -39,26 +37,6 @@ public class SpecificPlaylistTypeProvider implements ContentTypeProvider
     @Override
     public ContentType getContentType(final String contentName)
     {
-        final String name = contentName.toLowerCase(Locale.ENGLISH); // Throws NullPointerException if contentName is null.
-
-        ContentType ret = null;
-        final SpecificPlaylistProvider provider = SpecificPlaylistFactory.getInstance().findProviderByExtension(name);
-
-        if (provider != null)
-        {
-            // If a provider is returned, one of its content types must match.
-            final ContentType[] contentTypes = provider.getContentTypes();
-
-            for (ContentType contentType : contentTypes)
-            {
-                if (contentType.matchExtension(name))
-                {
-                    ret = contentType;
-                    break;
-                }
-            }
-        }
-
-        return ret;
+        return SpecificPlaylistFactory.getInstance().findContentTypeByExtension(contentName); // Throws NullPointerException if contentName is null.
     }
 }
@@ -1,9 +1,29 @@
 package chameleon;
 
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import chameleon.playlist.ProviderWarmUp;
+import chameleon.playlist.SpecificPlaylistFactory;
+
 public class Chameleon {
     public static final String URL = "https://github.com/muff1nman/chameleon.git";
     public static final String NAME = "Chameleon";
     public static final String AUTHOR = "Christophe Delory";
     public static final String COPYRIGHT = "Copyright (c) 2008-2009, Christophe Delory, 2016 Andrew DeMaria";
     public static final String CONTACT = "";
+
+    /**
+     * Warms up all the installed playlist providers in parallel, so that the first playlists read or written do not pay for the class loading and the XML mappings.
+     * Typically called at startup, before handling any request.
+     * @param executor the executor running the warm-up tasks. Shall not be <code>null</code>.
+     * @return the warm-up outcome (duration, error) of each provider. May be empty but not <code>null</code>.
+     * @throws NullPointerException if <code>executor</code> is <code>null</code>.
+     * @throws InterruptedException if the current thread was interrupted while waiting.
+     * @since 1.3.0
+     * @see SpecificPlaylistFactory#warmUp
+     */
+    public static List<ProviderWarmUp> warmUp(final Executor executor) throws InterruptedException {
+        return SpecificPlaylistFactory.getInstance().warmUp(executor);
+    }
 }
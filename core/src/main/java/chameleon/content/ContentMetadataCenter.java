@@ -24,11 +24,14 @@
  */
 package chameleon.content;
 
+import java.util.List;
 import java.util.ServiceLoader;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import chameleon.lang.ServiceUtils;
+
 /**
  * Fills the metadata of a given {@link Content content} through {@link ContentMetadataProvider metadata providers}.
  * These metadata should be:
@@ -42,33 +45,28 @@ import org.apache.commons.logging.LogFactory;
  */
 public final class ContentMetadataCenter
 {
-    /**
-     * The singleton instance.
-     */
-    private static ContentMetadataCenter _instance = null;
-
     /**
      * Returns the unique class instance.
+     * The instance is created on first use, without any locking.
      * @return an instance of this class. Shall not be <code>null</code>.
      */
     public static ContentMetadataCenter getInstance()
     {
-        synchronized(ContentMetadataCenter.class)
-        {
-            if (_instance == null)
-            {
-                _instance = new ContentMetadataCenter();
-            }
-        }
-
-        return _instance;
+        return InstanceHolder.INSTANCE;
     }
 
     /**
      * The associated service provider loader.
+     * As it is not thread-safe, it shall only be used when holding its lock.
      */
     private final ServiceLoader<ContentMetadataProvider> _serviceLoader;
 
+    /**
+     * The current snapshot of the providers.
+     * It is immutable, and replaced as a whole when the providers are reloaded, so that it can be used by several threads without any locking.
+     */
+    private volatile List<ContentMetadataProvider> _providers;
+
     /**
      * The logger attached to this instance.
      */
@@ -81,15 +79,21 @@ public final class ContentMetadataCenter
     {
         _logger = LogFactory.getLog(getClass()); // May throw LogConfigurationException.
         _serviceLoader = ServiceLoader.load(ContentMetadataProvider.class);
+        _providers = ServiceUtils.snapshot(_serviceLoader);
     }
 
     /**
      * Refreshes the list of providers managed by this center.
      * If new providers are added after the instantiation of this class, you will need to call this method manually.
+     * The current lookups are not disturbed: they keep on using the previous list of providers.
      */
     public void reloadProviders()
     {
-        _serviceLoader.reload();
+        synchronized(_serviceLoader)
+        {
+            _serviceLoader.reload();
+            _providers = ServiceUtils.snapshot(_serviceLoader);
+        }
     }
 
     /**
@@ -103,7 +107,7 @@ public final class ContentMetadataCenter
     {
         boolean ret = false;
 
-        for (ContentMetadataProvider service : _serviceLoader)
+        for (ContentMetadataProvider service : _providers)
         {
             try
             {
@@ -129,4 +133,24 @@ public final class ContentMetadataCenter
 
         return ret;
     }
+
+    /**
+     * Holds the singleton instance, built when this class is first accessed (initialization-on-demand holder idiom).
+     * @version $Revision: 92 $
+     * @author Christophe Delory
+     */
+    private static final class InstanceHolder
+    {
+        /**
+         * The singleton instance.
+         */
+        private static final ContentMetadataCenter INSTANCE = new ContentMetadataCenter();
+
+        /**
+         * The default no-arg constructor shall not be accessible.
+         */
+        private InstanceHolder()
+        {
+        }
+    }
 }
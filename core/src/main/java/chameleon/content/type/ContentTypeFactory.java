@@ -27,8 +27,11 @@ package chameleon.content.type;
 import java.io.File;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.List;
 import java.util.ServiceLoader;
 
+import chameleon.lang.ServiceUtils;
+
 /**
  * A {@link ContentType content type} factory.
  * @version $Revision: 92 $
@@ -36,48 +39,49 @@ import java.util.ServiceLoader;
  */
 public final class ContentTypeFactory
 {
-    /**
-     * The singleton instance.
-     */
-    private static ContentTypeFactory _instance = null;
-
     /**
      * Returns the unique class instance.
+     * The instance is created on first use, without any locking.
      * @return an instance of this class. Shall not be <code>null</code>.
      */
     public static ContentTypeFactory getInstance()
     {
-        synchronized(ContentTypeFactory.class)
-        {
-            if (_instance == null)
-            {
-                _instance = new ContentTypeFactory();
-            }
-        }
-
-        return _instance;
+        return InstanceHolder.INSTANCE;
     }
 
     /**
      * The associated service providers loader.
+     * As it is not thread-safe, it shall only be used when holding its lock.
      */
     private final ServiceLoader<ContentTypeProvider> _serviceLoader;
 
+    /**
+     * The current snapshot of the providers.
+     * It is immutable, and replaced as a whole when the providers are reloaded, so that it can be used by several threads without any locking.
+     */
+    private volatile List<ContentTypeProvider> _providers;
+
     /**
      * Builds a new content type factory.
      */
     private ContentTypeFactory()
     {
         _serviceLoader = ServiceLoader.load(ContentTypeProvider.class);
+        _providers = ServiceUtils.snapshot(_serviceLoader);
     }
 
     /**
      * Refreshes the list of providers managed by this factory.
      * If new providers are added after the instantiation of this factory, you will need to call this method manually.
+     * The current lookups are not disturbed: they keep on using the previous list of providers.
      */
     public void reloadProviders()
     {
-        _serviceLoader.reload();
+        synchronized(_serviceLoader)
+        {
+            _serviceLoader.reload();
+            _providers = ServiceUtils.snapshot(_serviceLoader);
+        }
     }
 
     /**
@@ -119,7 +123,7 @@ public final class ContentTypeFactory
 
         if (path != null)
         {
-            for (ContentTypeProvider service : _serviceLoader)
+            for (ContentTypeProvider service : _providers)
             {
                 ret = service.getContentType(path);
 
@@ -132,4 +136,24 @@ public final class ContentTypeFactory
 
         return ret;
     }
+
+    /**
+     * Holds the singleton instance, built when this class is first accessed (initialization-on-demand holder idiom).
+     * @version $Revision: 92 $
+     * @author Christophe Delory
+     */
+    private static final class InstanceHolder
+    {
+        /**
+         * The singleton instance.
+         */
+        private static final ContentTypeFactory INSTANCE = new ContentTypeFactory();
+
+        /**
+         * The default no-arg constructor shall not be accessible.
+         */
+        private InstanceHolder()
+        {
+        }
+    }
 }
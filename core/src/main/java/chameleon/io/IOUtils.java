@@ -27,6 +27,7 @@ package chameleon.io;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.io.StringWriter;
 
 /**
@@ -58,11 +59,24 @@ public final class IOUtils
             reader = new InputStreamReader(in, encoding); // May throw UnsupportedEncodingException. Throws NullPointerException if in is null.
         }
 
+        return toString(reader); // May throw IOException.
+    }
+
+    /**
+     * Copies the contents of the specified character stream to a string.
+     * @param reader a character stream. Shall not be <code>null</code>.
+     * @return a string. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>reader</code> is <code>null</code>.
+     * @throws IOException if an I/O error occurs.
+     * @since 1.3.0
+     */
+    public static String toString(final Reader reader) throws IOException
+    {
         final StringWriter writer = new StringWriter();
         final char[] buffer = new char[512];
         int nb = 0;
 
-        while (-1 != (nb = reader.read(buffer))) // May throw IOException.
+        while (-1 != (nb = reader.read(buffer))) // Throws NullPointerException if reader is null. May throw IOException.
         {
             writer.write(buffer, 0, nb);
         }
@@ -0,0 +1,452 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A copy of some input contents, which can be read again from the start as many times as needed.
+ * The first bytes are kept in memory, up to a given threshold.
+ * The remaining ones, if any, are spilled to a temporary file, which is deleted when this input is {@link #close closed}.
+ * A hard limit on the total number of bytes may also be specified.
+ * <br>
+ * Several {@link #openStream streams} may be opened on the same input, but a given stream shall not be used by several threads at the same time.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+public final class RewindableInput implements Closeable
+{
+    /**
+     * The default maximum number of bytes kept in memory.
+     */
+    public static final int DEFAULT_MEMORY_THRESHOLD = 256 * 1024;
+
+    /**
+     * The initial size of the memory buffer, if the threshold is greater.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * The bytes kept in memory.
+     */
+    private final byte[] _head;
+
+    /**
+     * The number of valid bytes in {@link #_head}.
+     */
+    private final int _headLength;
+
+    /**
+     * The temporary file holding the bytes following the ones kept in memory, or <code>null</code> if none.
+     */
+    private final File _spillFile;
+
+    /**
+     * The total number of bytes.
+     */
+    private final long _length;
+
+    /**
+     * The file streams currently opened on the temporary file.
+     */
+    private final List<InputStream> _fileStreams = new ArrayList<InputStream>();
+
+    /**
+     * Specifies if this input has been closed.
+     */
+    private boolean _closed = false;
+
+    /**
+     * Copies all the contents of the specified input stream.
+     * The input stream is fully read, but not closed.
+     * @param in an input stream. Shall not be <code>null</code>.
+     * @param memoryThreshold the maximum number of bytes kept in memory. Shall be strictly positive.
+     * @param maxLength the maximum number of bytes allowed in the input stream, or a negative value if there is no limit.
+     * @throws NullPointerException if <code>in</code> is <code>null</code>.
+     * @throws IllegalArgumentException if <code>memoryThreshold</code> is not strictly positive.
+     * @throws IOException if an I/O error occurs, or if the input stream contains more than <code>maxLength</code> bytes.
+     * @throws SecurityException if the temporary file cannot be created.
+     */
+    public RewindableInput(final InputStream in, final int memoryThreshold, final long maxLength) throws IOException
+    {
+        if (memoryThreshold <= 0)
+        {
+            throw new IllegalArgumentException("Invalid memory threshold " + memoryThreshold);
+        }
+
+        // First fill the memory buffer, growing it as needed.
+        byte[] head = new byte[Math.min(memoryThreshold, INITIAL_BUFFER_SIZE)];
+        int headLength = 0;
+        int nb = 0;
+
+        while (nb >= 0)
+        {
+            if (headLength == head.length)
+            {
+                if (headLength >= memoryThreshold)
+                {
+                    break;
+                }
+
+                final byte[] tmp = new byte[(int) Math.min((long) memoryThreshold, 2L * head.length)]; // NOPMD Avoid instantiating new objects inside loops
+                System.arraycopy(head, 0, tmp, 0, headLength);
+                head = tmp;
+            }
+
+            nb = in.read(head, headLength, head.length - headLength); // Throws NullPointerException if in is null. May throw IOException.
+
+            if (nb > 0)
+            {
+                headLength += nb;
+                checkLength(headLength, maxLength); // May throw IOException.
+            }
+        }
+
+        _head = head;
+        _headLength = headLength;
+
+        // Then spill the remaining bytes, if any.
+        long length = headLength;
+        File spillFile = null;
+
+        if (nb >= 0)
+        {
+            final int first = in.read(); // May throw IOException.
+
+            if (first >= 0)
+            {
+                spillFile = File.createTempFile("chameleon", ".tmp"); // May throw IOException, SecurityException.
+                boolean done = false;
+
+                try
+                {
+                    final OutputStream out = new FileOutputStream(spillFile); // May throw FileNotFoundException, SecurityException.
+
+                    try
+                    {
+                        final byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+                        out.write(first); // May throw IOException.
+                        length++;
+                        checkLength(length, maxLength); // May throw IOException.
+
+                        while ((nb = in.read(buffer)) >= 0) // May throw IOException.
+                        {
+                            out.write(buffer, 0, nb); // May throw IOException.
+                            length += nb;
+                            checkLength(length, maxLength); // May throw IOException.
+                        }
+                    }
+                    finally
+                    {
+                        out.close(); // May throw IOException.
+                    }
+
+                    done = true;
+                }
+                finally
+                {
+                    if (!done)
+                    {
+                        spillFile.delete(); // May throw SecurityException.
+                    }
+                }
+            }
+        }
+
+        _spillFile = spillFile;
+        _length = length;
+    }
+
+    /**
+     * Returns the total number of bytes of this input.
+     * @return a length. Shall be positive.
+     */
+    public long getLength()
+    {
+        return _length;
+    }
+
+    /**
+     * Indicates if some bytes have been spilled to a temporary file, i.e. if this input could not be kept in memory.
+     * @return <code>true</code> if a temporary file is used.
+     */
+    public boolean isSpilled()
+    {
+        return _spillFile != null;
+    }
+
+    /**
+     * Opens a new stream reading this input from the start.
+     * Closing the returned stream is recommended, but not mandatory: all streams are closed when this input is {@link #close closed}.
+     * @return an input stream. Shall not be <code>null</code>.
+     * @throws IOException if this input has been closed.
+     */
+    public InputStream openStream() throws IOException
+    {
+        synchronized(_fileStreams)
+        {
+            if (_closed)
+            {
+                throw new IOException("Input closed");
+            }
+        }
+
+        return new RewindableStream();
+    }
+
+    /**
+     * Closes all the streams opened on this input, and deletes the temporary file, if any.
+     * Calling this method more than once has no effect.
+     * @throws IOException if an I/O error occurs.
+     * @throws SecurityException if the temporary file cannot be deleted.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        final List<InputStream> streams;
+
+        synchronized(_fileStreams)
+        {
+            if (_closed)
+            {
+                return;
+            }
+
+            _closed = true;
+            streams = new ArrayList<InputStream>(_fileStreams);
+            _fileStreams.clear();
+        }
+
+        try
+        {
+            for (InputStream stream : streams)
+            {
+                stream.close(); // May throw IOException.
+            }
+        }
+        finally
+        {
+            if ((_spillFile != null) && !_spillFile.delete()) // May throw SecurityException.
+            {
+                _spillFile.deleteOnExit(); // May throw SecurityException.
+            }
+        }
+    }
+
+    /**
+     * Ensures that the specified length does not exceed the given limit.
+     * @param length a number of bytes.
+     * @param maxLength the maximum number of bytes, or a negative value if there is no limit.
+     * @throws IOException if the limit has been exceeded.
+     */
+    private static void checkLength(final long length, final long maxLength) throws IOException
+    {
+        if ((maxLength >= 0L) && (length > maxLength))
+        {
+            throw new IOException("Input exceeds the maximum allowed length of " + maxLength + " bytes");
+        }
+    }
+
+    /**
+     * A stream reading the input from the start, first in memory, then in the temporary file.
+     * @version $Revision: 92 $
+     * @author Christophe Delory
+     */
+    private final class RewindableStream extends InputStream
+    {
+        /**
+         * The current position in the input.
+         */
+        private long _position = 0L;
+
+        /**
+         * The stream on the temporary file, opened when the memory part has been fully read.
+         */
+        private InputStream _fileStream = null;
+
+        /**
+         * Specifies if this stream has been closed.
+         */
+        private boolean _streamClosed = false;
+
+        @Override
+        public int read() throws IOException
+        {
+            final byte[] b = new byte[1];
+
+            return (read(b, 0, 1) > 0) ? (b[0] & 0xff) : -1; // May throw IOException.
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException
+        {
+            if (_streamClosed)
+            {
+                throw new IOException("Stream closed");
+            }
+
+            if ((off < 0) || (len < 0) || (len > (b.length - off))) // Throws NullPointerException if b is null.
+            {
+                throw new IndexOutOfBoundsException();
+            }
+
+            if (len == 0)
+            {
+                return 0;
+            }
+
+            if (_position >= _length)
+            {
+                return -1;
+            }
+
+            int ret = 0;
+
+            // First from memory.
+            if (_position < _headLength)
+            {
+                final int nb = Math.min(len, _headLength - (int) _position);
+                System.arraycopy(_head, (int) _position, b, off, nb);
+                _position += nb;
+                ret = nb;
+            }
+
+            // Then from the temporary file, filling the given buffer as much as possible.
+            while ((ret < len) && (_position < _length))
+            {
+                final int nb = getFileStream().read(b, off + ret, len - ret); // May throw IOException.
+
+                if (nb < 0)
+                {
+                    throw new IOException("Temporary file truncated");
+                }
+
+                _position += nb;
+                ret += nb;
+            }
+
+            return ret;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException
+        {
+            if (_streamClosed)
+            {
+                throw new IOException("Stream closed");
+            }
+
+            final long ret = Math.max(0L, Math.min(n, _length - _position));
+
+            if (ret > 0L)
+            {
+                final long newPosition = _position + ret;
+
+                if (newPosition > _headLength)
+                {
+                    final long toSkip = newPosition - Math.max(_position, (long) _headLength);
+                    long skipped = 0L;
+
+                    while (skipped < toSkip)
+                    {
+                        final long nb = getFileStream().skip(toSkip - skipped); // May throw IOException.
+
+                        if (nb <= 0L)
+                        {
+                            throw new IOException("Temporary file truncated");
+                        }
+
+                        skipped += nb;
+                    }
+                }
+
+                _position = newPosition;
+            }
+
+            return ret;
+        }
+
+        @Override
+        public int available() throws IOException
+        {
+            if (_streamClosed)
+            {
+                throw new IOException("Stream closed");
+            }
+
+            return (int) Math.min((long) Integer.MAX_VALUE, _length - _position);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            _streamClosed = true;
+
+            if (_fileStream != null)
+            {
+                synchronized(_fileStreams)
+                {
+                    _fileStreams.remove(_fileStream);
+                }
+
+                _fileStream.close(); // May throw IOException.
+                _fileStream = null;
+            }
+        }
+
+        /**
+         * Returns the stream on the temporary file, positioned just after the bytes kept in memory.
+         * @return an input stream. Shall not be <code>null</code>.
+         * @throws IOException if an I/O error occurs, or if the input has been closed.
+         */
+        private InputStream getFileStream() throws IOException
+        {
+            if (_fileStream == null)
+            {
+                synchronized(_fileStreams)
+                {
+                    if (_closed)
+                    {
+                        throw new IOException("Input closed");
+                    }
+
+                    _fileStream = new FileInputStream(_spillFile); // May throw FileNotFoundException, SecurityException.
+                    _fileStreams.add(_fileStream);
+                }
+            }
+
+            return _fileStream;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.lang;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Service providers helpers.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+public final class ServiceUtils
+{
+    /**
+     * Builds an immutable snapshot of the providers found by the specified service loader.
+     * As a service loader is not thread-safe, the caller shall prevent any concurrent use of it.
+     * @param <T> the type of the service.
+     * @param serviceLoader a service loader. Shall not be <code>null</code>.
+     * @return an unmodifiable list of providers, in their loading order. May be empty but not <code>null</code>.
+     * @throws NullPointerException if <code>serviceLoader</code> is <code>null</code>.
+     * @throws java.util.ServiceConfigurationError if a provider cannot be loaded or instantiated.
+     */
+    public static <T> List<T> snapshot(final ServiceLoader<T> serviceLoader)
+    {
+        final List<T> ret = new ArrayList<T>();
+
+        for (T service : serviceLoader) // Throws NullPointerException if serviceLoader is null.
+        {
+            ret.add(service);
+        }
+
+        return Collections.unmodifiableList(ret);
+    }
+
+    /**
+     * The default no-arg constructor shall not be accessible.
+     */
+    private ServiceUtils()
+    {
+    }
+}
@@ -24,11 +24,12 @@
  */
 package chameleon.playlist;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  * The base definition of time containers.
+ * The components are stored in a structure allowing indexed insertions and removals in logarithmic time,
+ * and iterations without copying, even if the container is modified meanwhile.
  * @version $Revision: 92 $
  * @author Christophe Delory
  */
@@ -37,7 +38,7 @@ public abstract class AbstractTimeContainer extends AbstractPlaylistComponent
     /**
      * The list of components of this time container.
      */
-    private final List<AbstractPlaylistComponent> _components = new ArrayList<AbstractPlaylistComponent>();
+    private final ComponentList _components = new ComponentList();
 
     /**
      * Returns an ordered array of playlist components present in this container.
@@ -48,12 +49,46 @@ public abstract class AbstractTimeContainer extends AbstractPlaylistComponent
      */
     public AbstractPlaylistComponent[] getComponents()
     {
-        final AbstractPlaylistComponent[] ret = new AbstractPlaylistComponent[_components.size()];
-        _components.toArray(ret); // Shall not throw NullPointerException, ArrayStoreException.
+        final List<AbstractPlaylistComponent> components = _components.snapshot();
+        final AbstractPlaylistComponent[] ret = new AbstractPlaylistComponent[components.size()];
+        components.toArray(ret); // Shall not throw NullPointerException, ArrayStoreException.
 
         return ret;
     }
 
+    /**
+     * Returns the playlist component at the specified position in this container.
+     * Contrary to {@link #getComponents}, no array is built.
+     * @param index the index of the component to return.
+     * @return a playlist component. Shall not be <code>null</code>.
+     * @throws IndexOutOfBoundsException if the index is out of range (index &lt; 0 || index &gt;= getComponentsNumber()).
+     * @see #getComponentsNumber
+     * @see #forEachComponent
+     * @since 1.3.0
+     */
+    public AbstractPlaylistComponent componentAt(final int index)
+    {
+        return _components.get(index); // May throw IndexOutOfBoundsException.
+    }
+
+    /**
+     * Calls the specified callback for each playlist component of this container, in order.
+     * The components iterated are the ones present when this method is called, without copying them:
+     * the callback may safely modify this container, but won't see its changes.
+     * @param callback a callback. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>callback</code> is <code>null</code> and this container is not empty.
+     * @throws Exception if the callback throws an exception, which is propagated as is.
+     * @see #componentAt
+     * @since 1.3.0
+     */
+    public void forEachComponent(final ComponentCallback callback) throws Exception
+    {
+        for (AbstractPlaylistComponent component : _components.snapshot())
+        {
+            callback.handle(component); // Throws NullPointerException if callback is null. May throw Exception.
+        }
+    }
+
     /**
      * Appends the specified playlist component to the end of this container.
      * @param component the playlist component to be appended to this container. Shall not be <code>null</code>.
@@ -65,7 +100,7 @@ public abstract class AbstractTimeContainer extends AbstractPlaylistComponent
     public void addComponent(final AbstractPlaylistComponent component)
     {
         component.setParent(this); // Throws NullPointerException if component is null.
-        _components.add(component);
+        _components.add(_components.size(), component); // Shall not throw IndexOutOfBoundsException.
     }
 
     /**
@@ -98,8 +133,14 @@ public abstract class AbstractTimeContainer extends AbstractPlaylistComponent
     public boolean removeComponent(final AbstractPlaylistComponent component)
     {
         component.setParent(null); // Throws NullPointerException if component is null.
+        final int index = _components.indexOf(component);
 
-        return _components.remove(component);
+        if (index >= 0)
+        {
+            _components.remove(index); // Shall not throw IndexOutOfBoundsException.
+        }
+
+        return index >= 0;
     }
 
     /**
@@ -120,6 +161,38 @@ public abstract class AbstractTimeContainer extends AbstractPlaylistComponent
         return component;
     }
 
+    /**
+     * Returns a read-only snapshot of the playlist components of this container, without copying them.
+     * @return a list of playlist components. May be empty but not <code>null</code>.
+     * @see #replaceComponents
+     */
+    List<AbstractPlaylistComponent> getComponentList()
+    {
+        return _components.snapshot();
+    }
+
+    /**
+     * Replaces at once all the playlist components of this container.
+     * The parent of each new component is set to this container, but the parent of the replaced ones is left unchanged.
+     * @param components the new ordered list of playlist components. Shall not be <code>null</code>, nor contain <code>null</code> elements.
+     * @throws NullPointerException if <code>components</code> is <code>null</code>, or contains a <code>null</code> element.
+     * @see #getComponentList
+     */
+    void replaceComponents(final List<AbstractPlaylistComponent> components)
+    {
+        for (AbstractPlaylistComponent component : components) // Throws NullPointerException if components is null.
+        {
+            component.setParent(this); // Throws NullPointerException if component is null.
+        }
+
+        _components.clear();
+
+        for (AbstractPlaylistComponent component : components)
+        {
+            _components.add(_components.size(), component); // Shall not throw IndexOutOfBoundsException.
+        }
+    }
+
     /**
      * Returns the number of playlist components in this container.
      * @return the number of playlist components in this container.
@@ -133,10 +206,8 @@ public abstract class AbstractTimeContainer extends AbstractPlaylistComponent
     @Override
     public void acceptDown(final PlaylistVisitor visitor) throws Exception
     {
-        // Copy the list in an intermediate array, in order to allow the visitor to handle safely the list itself.
-        final AbstractPlaylistComponent[] components = getComponents();
-
-        for (AbstractPlaylistComponent component : components)
+        // Iterate over a snapshot of the list, in order to allow the visitor to handle safely the list itself.
+        for (AbstractPlaylistComponent component : _components.snapshot())
         {
             component.acceptDown(visitor); // May throw Exception.
         }
@@ -0,0 +1,638 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The ordered list of components of a {@link AbstractTimeContainer time container}.
+ * It is stored as a balanced tree of small arrays, counting the elements of each sub-tree,
+ * so that an indexed access, insertion or removal takes a time proportional to the logarithm of the list size.
+ * <br>
+ * A {@link #snapshot snapshot} of the list can be taken at any time without copying anything:
+ * the nodes shared with a snapshot are frozen, and are copied (along a single path) when the list is later modified.
+ * Until then, the list is modified in place, so that appending components costs no more than with an array.
+ * This class is not thread-safe, but a snapshot can be freely shared.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+final class ComponentList
+{
+    /**
+     * The maximum number of elements or child nodes per node.
+     */
+    private static final int MAX_CHILDREN = 32;
+
+    /**
+     * The root node of the tree.
+     */
+    private Node _root;
+
+    /**
+     * The token identifying the nodes which can be modified in place, or <code>null</code> if all the current nodes are frozen.
+     */
+    private Object _edit = new Object();
+
+    /**
+     * Builds a new and empty list.
+     */
+    ComponentList()
+    {
+        _root = new Node(_edit, true);
+    }
+
+    /**
+     * Returns the number of elements in this list.
+     * @return the number of elements.
+     */
+    int size()
+    {
+        return _root._size;
+    }
+
+    /**
+     * Returns the element at the specified position in this list.
+     * @param index the index of the element to return.
+     * @return the element at the specified position. Shall not be <code>null</code>.
+     * @throws IndexOutOfBoundsException if the index is out of range (index &lt; 0 || index &gt;= size()).
+     */
+    AbstractPlaylistComponent get(final int index)
+    {
+        checkIndex(index, size() - 1); // May throw IndexOutOfBoundsException.
+
+        return get(_root, index);
+    }
+
+    /**
+     * Returns the index of the first occurrence of the specified element in this list, if any.
+     * @param element the element to search for. Shall not be <code>null</code>.
+     * @return the index of the element, or <code>-1</code> if this list does not contain it.
+     * @throws NullPointerException if <code>element</code> is <code>null</code>.
+     */
+    int indexOf(final Object element)
+    {
+        return indexOf(_root, element, 0); // Throws NullPointerException if element is null.
+    }
+
+    /**
+     * Inserts the specified element at the specified position in this list.
+     * Shifts the element currently at that position (if any) and any subsequent elements to the right (adds one to their indices).
+     * @param index the index at which the specified element is to be inserted.
+     * @param element the element to insert. Shall not be <code>null</code>.
+     * @throws IndexOutOfBoundsException if the index is out of range (index &lt; 0 || index &gt; size()).
+     */
+    void add(final int index, final AbstractPlaylistComponent element)
+    {
+        checkIndex(index, size()); // May throw IndexOutOfBoundsException.
+
+        final Node root = editable(_root);
+        final Node sibling = insert(root, index, element);
+
+        if (sibling == null)
+        {
+            _root = root;
+        }
+        else
+        {
+            // The root has been split: grow the tree by one level.
+            _root = new Node(_edit, false);
+            _root.insertAt(0, root, root._size);
+            _root.insertAt(1, sibling, sibling._size);
+        }
+    }
+
+    /**
+     * Removes the element at the specified position in this list.
+     * Shifts any subsequent elements to the left (subtracts one from their indices).
+     * @param index the index of the element to be removed.
+     * @return the element that was removed from the list. Shall not be <code>null</code>.
+     * @throws IndexOutOfBoundsException if the index is out of range (index &lt; 0 || index &gt;= size()).
+     */
+    AbstractPlaylistComponent remove(final int index)
+    {
+        checkIndex(index, size() - 1); // May throw IndexOutOfBoundsException.
+
+        Node root = editable(_root);
+        final AbstractPlaylistComponent ret = remove(root, index);
+
+        // Shrink the tree while the root has a single child.
+        while (!root._leaf && (root._count == 1))
+        {
+            root = (Node) root._items[0];
+        }
+
+        if (root._count == 0)
+        {
+            root = new Node(_edit, true);
+        }
+
+        _root = root;
+
+        return ret;
+    }
+
+    /**
+     * Removes all of the elements from this list.
+     */
+    void clear()
+    {
+        _root = new Node(ensureEdit(), true);
+    }
+
+    /**
+     * Returns a read-only view of the current contents of this list, which is not affected by the later modifications of this list.
+     * No element is copied.
+     * @return a list of components. May be empty but not <code>null</code>.
+     */
+    List<AbstractPlaylistComponent> snapshot()
+    {
+        // Freeze all the current nodes.
+        _edit = null;
+
+        return new Snapshot(_root);
+    }
+
+    /**
+     * Checks the specified index.
+     * @param index an index.
+     * @param max the maximum value allowed.
+     * @throws IndexOutOfBoundsException if the index is out of range (index &lt; 0 || index &gt; max).
+     */
+    private void checkIndex(final int index, final int max)
+    {
+        if ((index < 0) || (index > max))
+        {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+    }
+
+    /**
+     * Returns the token identifying the nodes which can be modified in place, creating a new one if needed.
+     * @return a token. Shall not be <code>null</code>.
+     */
+    private Object ensureEdit()
+    {
+        if (_edit == null)
+        {
+            _edit = new Object();
+        }
+
+        return _edit;
+    }
+
+    /**
+     * Returns a version of the specified node which can be modified in place, copying it if it is frozen.
+     * @param node a node. Shall not be <code>null</code>.
+     * @return the node itself, or a copy of it. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>node</code> is <code>null</code>.
+     */
+    private Node editable(final Node node)
+    {
+        final Object edit = ensureEdit();
+
+        return (node._edit == edit) ? node : new Node(edit, node); // Throws NullPointerException if node is null.
+    }
+
+    /**
+     * Inserts the specified element in the sub-tree of the specified node.
+     * @param node an editable node. Shall not be <code>null</code>.
+     * @param index the index of the element in the sub-tree.
+     * @param element the element to insert. Shall not be <code>null</code>.
+     * @return the new right sibling of the node, if it had to be split, or <code>null</code>.
+     */
+    private Node insert(final Node node, final int index, final AbstractPlaylistComponent element)
+    {
+        if (node._leaf)
+        {
+            return node.insert(_edit, index, element, 1);
+        }
+
+        int slot = 0;
+        int local = index;
+
+        while ((slot < (node._count - 1)) && (local >= node._sizes[slot]))
+        {
+            local -= node._sizes[slot];
+            slot++;
+        }
+
+        final Node child = editable((Node) node._items[slot]);
+        node._items[slot] = child;
+        final Node sibling = insert(child, local, element);
+        node._sizes[slot] = child._size;
+        node._size++;
+
+        if (sibling == null)
+        {
+            return null;
+        }
+
+        // The sibling's elements were already counted.
+        node._size -= sibling._size;
+
+        return node.insert(_edit, slot + 1, sibling, sibling._size);
+    }
+
+    /**
+     * Removes the element at the specified position in the sub-tree of the specified node.
+     * The child nodes which become empty are removed as well.
+     * @param node an editable node. Shall not be <code>null</code>.
+     * @param index the index of the element in the sub-tree.
+     * @return the removed element. Shall not be <code>null</code>.
+     */
+    private AbstractPlaylistComponent remove(final Node node, final int index)
+    {
+        if (node._leaf)
+        {
+            return (AbstractPlaylistComponent) node.removeAt(index);
+        }
+
+        int slot = 0;
+        int local = index;
+
+        while (local >= node._sizes[slot])
+        {
+            local -= node._sizes[slot];
+            slot++;
+        }
+
+        final Node child = editable((Node) node._items[slot]);
+        node._items[slot] = child;
+        final AbstractPlaylistComponent ret = remove(child, local);
+        node._sizes[slot] = child._size;
+        node._size--;
+
+        if (child._size == 0)
+        {
+            node.removeAt(slot);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the element at the specified position in the sub-tree of the specified node.
+     * @param root a node. Shall not be <code>null</code>.
+     * @param index the index of the element in the sub-tree. Shall be valid.
+     * @return the element. Shall not be <code>null</code>.
+     */
+    private static AbstractPlaylistComponent get(final Node root, final int index)
+    {
+        Node node = root;
+        int local = index;
+
+        while (!node._leaf)
+        {
+            int slot = 0;
+
+            while (local >= node._sizes[slot])
+            {
+                local -= node._sizes[slot];
+                slot++;
+            }
+
+            node = (Node) node._items[slot];
+        }
+
+        return (AbstractPlaylistComponent) node._items[local];
+    }
+
+    /**
+     * Returns the index of the first occurrence of the specified element in the sub-tree of the specified node, if any.
+     * @param node a node. Shall not be <code>null</code>.
+     * @param element the element to search for. Shall not be <code>null</code>.
+     * @param offset the index of the first element of the sub-tree.
+     * @return the index of the element, or <code>-1</code> if the sub-tree does not contain it.
+     */
+    private static int indexOf(final Node node, final Object element, final int offset)
+    {
+        int ret = -1;
+        int start = offset;
+
+        for (int i = 0; (ret < 0) && (i < node._count); i++)
+        {
+            if (node._leaf)
+            {
+                if (element.equals(node._items[i])) // Throws NullPointerException if element is null.
+                {
+                    ret = offset + i;
+                }
+            }
+            else
+            {
+                ret = indexOf((Node) node._items[i], element, start);
+                start += node._sizes[i];
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * A node of the tree: either a leaf holding the elements, or an inner node holding child nodes and their sizes.
+     */
+    private static final class Node
+    {
+        /**
+         * The token of the list which may modify this node in place.
+         */
+        private final Object _edit;
+
+        /**
+         * <code>true</code> if this node is a leaf.
+         */
+        private final boolean _leaf;
+
+        /**
+         * The elements or the child nodes.
+         */
+        private final Object[] _items;
+
+        /**
+         * The number of elements of each child sub-tree, or <code>null</code> for a leaf.
+         */
+        private final int[] _sizes;
+
+        /**
+         * The number of used slots.
+         */
+        private int _count = 0;
+
+        /**
+         * The number of elements in the sub-tree.
+         */
+        private int _size = 0;
+
+        /**
+         * Builds a new and empty node.
+         * @param edit the token of the list which may modify this node in place. May be <code>null</code>.
+         * @param leaf <code>true</code> for a leaf.
+         */
+        private Node(final Object edit, final boolean leaf)
+        {
+            _edit = edit;
+            _leaf = leaf;
+            _items = new Object[MAX_CHILDREN];
+            _sizes = leaf ? null : new int[MAX_CHILDREN];
+        }
+
+        /**
+         * Builds a copy of the specified node.
+         * @param edit the token of the list which may modify this node in place. May be <code>null</code>.
+         * @param node the node to copy. Shall not be <code>null</code>.
+         * @throws NullPointerException if <code>node</code> is <code>null</code>.
+         */
+        private Node(final Object edit, final Node node)
+        {
+            _edit = edit;
+            _leaf = node._leaf; // Throws NullPointerException if node is null.
+            _items = node._items.clone();
+            _sizes = (node._sizes == null) ? null : node._sizes.clone();
+            _count = node._count;
+            _size = node._size;
+        }
+
+        /**
+         * Inserts an item in this node, splitting it if it is full.
+         * @param edit the token of the list.
+         * @param slot the slot of the new item.
+         * @param item the item to insert. Shall not be <code>null</code>.
+         * @param size the number of elements in the item.
+         * @return the new right sibling of this node, if it had to be split, or <code>null</code>.
+         */
+        private Node insert(final Object edit, final int slot, final Object item, final int size)
+        {
+            if (_count < MAX_CHILDREN)
+            {
+                insertAt(slot, item, size);
+
+                return null;
+            }
+
+            final Node ret = new Node(edit, _leaf);
+            // When appending, keep this node full.
+            final int keep = (slot == _count) ? _count : (MAX_CHILDREN / 2);
+
+            while (_count > keep)
+            {
+                final int last = _count - 1;
+                ret.insertAt(0, _items[last], _leaf ? 1 : _sizes[last]);
+                removeAt(last);
+            }
+
+            if ((slot <= keep) && (_count < MAX_CHILDREN))
+            {
+                insertAt(slot, item, size);
+            }
+            else
+            {
+                ret.insertAt(slot - keep, item, size);
+            }
+
+            return ret;
+        }
+
+        /**
+         * Inserts an item in this node, which shall not be full.
+         * @param slot the slot of the new item.
+         * @param item the item to insert. Shall not be <code>null</code>.
+         * @param size the number of elements in the item.
+         */
+        private void insertAt(final int slot, final Object item, final int size)
+        {
+            System.arraycopy(_items, slot, _items, slot + 1, _count - slot);
+            _items[slot] = item;
+
+            if (_sizes != null)
+            {
+                System.arraycopy(_sizes, slot, _sizes, slot + 1, _count - slot);
+                _sizes[slot] = size;
+            }
+
+            _count++;
+            _size += size;
+        }
+
+        /**
+         * Removes an item from this node.
+         * @param slot the slot of the item to remove.
+         * @return the removed item. Shall not be <code>null</code>.
+         */
+        private Object removeAt(final int slot)
+        {
+            final Object ret = _items[slot];
+            final int moved = _count - slot - 1;
+            System.arraycopy(_items, slot + 1, _items, slot, moved);
+
+            if (_sizes == null)
+            {
+                _size--;
+            }
+            else
+            {
+                _size -= _sizes[slot];
+                System.arraycopy(_sizes, slot + 1, _sizes, slot, moved);
+            }
+
+            _count--;
+            _items[_count] = null;
+
+            return ret;
+        }
+    }
+
+    /**
+     * A read-only view of a frozen tree.
+     */
+    private static final class Snapshot extends AbstractList<AbstractPlaylistComponent>
+    {
+        /**
+         * The root node of the frozen tree.
+         */
+        private final Node _root;
+
+        /**
+         * Builds a new view of the specified frozen tree.
+         * @param root the root node of the tree. Shall not be <code>null</code>.
+         */
+        private Snapshot(final Node root)
+        {
+            super();
+
+            _root = root;
+        }
+
+        @Override
+        public AbstractPlaylistComponent get(final int index)
+        {
+            if ((index < 0) || (index >= _root._size))
+            {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + _root._size);
+            }
+
+            return ComponentList.get(_root, index);
+        }
+
+        @Override
+        public int size()
+        {
+            return _root._size;
+        }
+
+        @Override
+        public Iterator<AbstractPlaylistComponent> iterator()
+        {
+            return new SnapshotIterator(_root);
+        }
+    }
+
+    /**
+     * Iterates over a frozen tree, one leaf at a time.
+     */
+    private static final class SnapshotIterator implements Iterator<AbstractPlaylistComponent>
+    {
+        /**
+         * The root node of the frozen tree.
+         */
+        private final Node _root;
+
+        /**
+         * The index of the next element.
+         */
+        private int _index = 0;
+
+        /**
+         * The current leaf, if any.
+         */
+        private Node _leaf = null;
+
+        /**
+         * The index of the first element of the current leaf.
+         */
+        private int _leafStart = 0;
+
+        /**
+         * Builds a new iterator over the specified frozen tree.
+         * @param root the root node of the tree. Shall not be <code>null</code>.
+         */
+        private SnapshotIterator(final Node root)
+        {
+            _root = root;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return _index < _root._size;
+        }
+
+        @Override
+        public AbstractPlaylistComponent next()
+        {
+            if (_index >= _root._size)
+            {
+                throw new NoSuchElementException();
+            }
+
+            if ((_leaf == null) || (_index >= (_leafStart + _leaf._count)))
+            {
+                // Locate the next leaf.
+                Node node = _root;
+                int local = _index;
+
+                while (!node._leaf)
+                {
+                    int slot = 0;
+
+                    while (local >= node._sizes[slot])
+                    {
+                        local -= node._sizes[slot];
+                        slot++;
+                    }
+
+                    node = (Node) node._items[slot];
+                }
+
+                _leaf = node;
+                _leafStart = _index - local;
+            }
+
+            final AbstractPlaylistComponent ret = (AbstractPlaylistComponent) _leaf._items[_index - _leafStart];
+            _index++;
+
+            return ret;
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
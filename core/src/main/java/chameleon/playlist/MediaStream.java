@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist;
+
+import java.io.Closeable;
+
+/**
+ * A sequence of media read one after the other from a specific playlist, without building the whole playlist in memory.
+ * The media are returned in the order of the playlist, and are not attached to any time container.
+ * When done, the media stream shall be closed, which also closes the underlying input stream.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ * @see StreamingPlaylistProvider#openStream
+ */
+public interface MediaStream extends Closeable
+{
+    /**
+     * Reads the next media of the playlist.
+     * The returned media is equivalent to the one that would be found at the same place in the {@link SpecificPlaylist#toPlaylist generic playlist}.
+     * @return a new media instance, or <code>null</code> if the end of the playlist has been reached.
+     * @throws Exception if the playlist is malformed, or if any error occurs during the unmarshalling process.
+     */
+    Media next() throws Exception;
+}
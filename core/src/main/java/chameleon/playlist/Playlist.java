@@ -24,6 +24,9 @@
  */
 package chameleon.playlist;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -42,7 +45,7 @@ public class Playlist
     /**
      * The normalization process.
      */
-    private static final PlaylistVisitor NORMALIZATION = new Normalization();
+    private static final Normalization NORMALIZATION = new Normalization();
 
     /**
      * The root sequence of this playlist.
@@ -68,215 +71,304 @@ public class Playlist
 
     /**
      * Normalizes this playlist.
+     * This takes a time proportional to the number of playlist components.
      */
     public void normalize()
     {
-        try
-        {
-            // By-pass the playlist itself.
-            _rootSequence.acceptDown(NORMALIZATION);
+        // By-pass the playlist itself.
+        NORMALIZATION.normalize(_rootSequence, true);
 
-            // Re-process it now, as we may have merged two or more sequences before.
-            // So just to detect singleton sequences to be moved one level up...
-            _rootSequence.acceptDown(NORMALIZATION);
-        }
-        catch (Exception e)
-        {
-            // Should not occur.
-            _logger.error("Unexpected error condition", e);
-        }
+        // Re-process it now, as we may have merged two or more sequences before.
+        // So just to detect singleton sequences to be moved one level up...
+        NORMALIZATION.normalize(_rootSequence, true);
     }
 
     /**
      * The normalization process.
+     * Each pass walks the playlist once, bottom-up, and rebuilds the list of components of each time container at once,
+     * instead of removing and inserting the components one by one.
      */
-    private static class Normalization extends BasePlaylistVisitor
+    private static class Normalization
     {
-        @Override
-        public void endVisitMedia(final Media target)
+        /**
+         * Normalizes the specified time container, after its components.
+         * <ul>
+         * <li>The media with no source are removed.</li>
+         * <li>The empty time containers are removed.</li>
+         * <li>A time container with a single component is replaced by this component, at the same position in the parent's list, with their repeat counts multiplied.</li>
+         * <li>The root sequence absorbs its single child sequence, if any.</li>
+         * <li>In a sequence, two or more consecutive and identical media are replaced by the first one, repeated as many times as all of them,
+         * then the consecutive sequences played once (or never) are merged.</li>
+         * </ul>
+         * @param target the time container to normalize. Shall not be <code>null</code>.
+         * @param root <code>true</code> if the container is the root sequence, which is never removed nor replaced.
+         * @return the component which shall take the place of the container in its parent: the container itself, its single component, or <code>null</code> if the container shall be removed.
+         * @throws NullPointerException if <code>target</code> is <code>null</code>.
+         */
+        private AbstractPlaylistComponent normalize(final AbstractTimeContainer target, final boolean root)
         {
-            // Suppress media components with unspecified URI.
-            if (target.getSource() == null)
+            final List<AbstractPlaylistComponent> targetComponents = target.getComponentList(); // Throws NullPointerException if target is null.
+            List<AbstractPlaylistComponent> components = new ArrayList<AbstractPlaylistComponent>(targetComponents.size());
+
+            for (AbstractPlaylistComponent component : targetComponents)
             {
-                _logger.info("Removing media with no source: " + target);
-                target.getParent().removeComponent(target);
-            }
-        }
+                if (component instanceof Media)
+                {
+                    if (((Media) component).getSource() == null)
+                    {
+                        // Suppress media components with unspecified URI.
+                        if (_logger.isDebugEnabled())
+                        {
+                            _logger.debug("Removing media with no source: " + component);
+                        }
 
-        @Override
-        public void endVisitParallel(final Parallel target) throws Exception
-        {
-            endVisitTimeContainer(target);
-        }
+                        component.setParent(null);
+                    }
+                    else
+                    {
+                        components.add(component);
+                    }
+                }
+                else
+                {
+                    final AbstractPlaylistComponent replacement = normalize((AbstractTimeContainer) component, false);
 
-        @Override
-        public void endVisitSequence(final Sequence target) throws Exception
-        {
-            endVisitTimeContainer(target);
+                    // The container itself, or its single component which takes its place.
+                    if (replacement != null)
+                    {
+                        components.add(replacement);
+                    }
+                }
+            }
 
-            // Special case of the root sequence (thus with no parent) which owns a single sequence:
-            // merge the child sequence into the root sequence.
-            // Multiply their repeat count if needed.
-            if ((target.getParent() == null) && (target.getComponentsNumber() == 1))
+            // Do not remove or even handle the root sequence.
+            if (!root)
             {
-                final AbstractPlaylistComponent[] targetComponents = target.getComponents();
-
-                if (targetComponents[0] instanceof Sequence)
+                if (components.isEmpty())
                 {
-                    final Sequence sequence = (Sequence) targetComponents[0];
+                    // Suppress empty time containers.
+                    if (_logger.isDebugEnabled())
+                    {
+                        _logger.debug("Removing empty time container " + target);
+                    }
 
-                    _logger.info("Merging root sequence " + target + " with its single child sequence " + sequence);
-                    target.setRepeatCount(target.getRepeatCount() * sequence.getRepeatCount());
-                    final AbstractPlaylistComponent[] components = sequence.getComponents();
-                    target.removeComponent(sequence);
+                    target.replaceComponents(components);
+                    target.setParent(null);
 
-                    for (AbstractPlaylistComponent component : components)
+                    return null;
+                }
+
+                if (components.size() == 1)
+                {
+                    // Suppress a time container with a single component in it (in fact put it one level up), and multiply their repeat count if needed.
+                    final AbstractPlaylistComponent component = components.get(0); // Shall not throw IndexOutOfBoundsException.
+
+                    if (_logger.isDebugEnabled())
                     {
-                        target.addComponent(component);
+                        _logger.debug("Replacing time container " + target + " with its single child component " + component);
                     }
+
+                    component.setRepeatCount(multiply(component.getRepeatCount(), target.getRepeatCount()));
+                    components.clear();
+                    target.replaceComponents(components);
+                    target.setParent(null);
+
+                    return component;
                 }
             }
+            else if ((components.size() == 1) && (components.get(0) instanceof Sequence))
+            {
+                // Special case of the root sequence which owns a single sequence:
+                // merge the child sequence into the root sequence.
+                // Multiply their repeat count if needed.
+                final Sequence sequence = (Sequence) components.get(0); // Shall not throw IndexOutOfBoundsException.
+
+                if (_logger.isDebugEnabled())
+                {
+                    _logger.debug("Merging root sequence " + target + " with its single child sequence " + sequence);
+                }
+
+                target.setRepeatCount(multiply(target.getRepeatCount(), sequence.getRepeatCount()));
+                components = new ArrayList<AbstractPlaylistComponent>(sequence.getComponentList());
+                sequence.setParent(null);
+            }
 
-            mergeConsecutiveIdenticalMedia(target);
-            mergeConsecutiveSequences(target);
+            if (target instanceof Sequence)
+            {
+                components = mergeConsecutiveIdenticalMedia(components);
+                components = mergeConsecutiveSequences(components);
+            }
+
+            target.replaceComponents(components);
+
+            return target;
         }
 
         /**
-         * Finishes the visit of the specified timing container.
-         * @param target the element being visited. Shall not be <code>null</code>.
-         * @throws NullPointerException if <code>target</code> is <code>null</code>.
-         * @see #endVisitSequence
-         * @see #endVisitParallel
+         * Multiplies the two specified repeat counts, as the ones of a time container and of its single component.
+         * A component never played remains so, an indefinite repeat count otherwise makes the product indefinite,
+         * and the product of two finite repeat counts is bounded by {@link Integer#MAX_VALUE}.
+         * @param repeatCount1 a repeat count, or a negative value if indefinite.
+         * @param repeatCount2 a repeat count, or a negative value if indefinite.
+         * @return the product of the two repeat counts, or -1 if indefinite.
          */
-        private void endVisitTimeContainer(final AbstractTimeContainer target)
+        private int multiply(final int repeatCount1, final int repeatCount2)
         {
-            final AbstractTimeContainer targetParent = target.getParent(); // May be null.
+            final int ret;
 
-            // Do not remove or even handle the root sequence.
-            if (targetParent != null)
+            if ((repeatCount1 == 0) || (repeatCount2 == 0))
             {
-                final int componentsNumber = target.getComponentsNumber();
-
-                if (componentsNumber == 0)
-                {
-                    // Suppress empty time containers.
-                    _logger.info("Removing empty time container " + target);
-                    targetParent.removeComponent(target);
-                    // Done with this time container, as we just removed it from its parent's list.
-                }
-                else if (componentsNumber == 1)
-                {
-                    // Suppress a time container with a single media in it (in fact put it one level up), and multiply their repeat count if needed.
-                    final AbstractPlaylistComponent[] targetComponents = target.getComponents();
-                    _logger.info("Replacing time container " + target + " with its single child component " + targetComponents[0]);
-                    targetComponents[0].setRepeatCount(targetComponents[0].getRepeatCount() * target.getRepeatCount());
-                    target.removeComponent(targetComponents[0]);
-                    targetParent.removeComponent(target);
-                    // CAUTION: we must keep a reference to the target's parent, as the last call has reset it.
-                    targetParent.addComponent(targetComponents[0]);
-                    // Done with this time container, as we just removed it from its parent's list.
-                }
+                ret = 0;
             }
+            else if ((repeatCount1 < 0) || (repeatCount2 < 0))
+            {
+                ret = -1;
+            }
+            else
+            {
+                ret = (int) Math.min((long) repeatCount1 * repeatCount2, Integer.MAX_VALUE);
+            }
+
+            return ret;
         }
 
         /**
-         * Merges two or more consecutive and identical medias in the specified sequence.
+         * Merges two or more consecutive and identical medias in the specified list of sequence components.
          * Identical means: the same source, and the same duration.
-         * @param target the target sequence. Shall not be <code>null</code>.
-         * @throws NullPointerException if <code>target</code> is <code>null</code>.
+         * The first media is kept, with the sum of the repeat counts of the merged media, or an indefinite repeat count if one of them is indefinite.
+         * @param components the ordered list of components of a sequence. Shall not be <code>null</code>.
+         * @return the new ordered list of components. Shall not be <code>null</code>.
+         * @throws NullPointerException if <code>components</code> is <code>null</code>.
          */
-        private void mergeConsecutiveIdenticalMedia(final Sequence target)
+        private List<AbstractPlaylistComponent> mergeConsecutiveIdenticalMedia(final List<AbstractPlaylistComponent> components)
         {
-            final AbstractPlaylistComponent[] targetComponents = target.getComponents(); // Throws NullPointerException if target is null.
+            final int size = components.size(); // Throws NullPointerException if components is null.
+            final List<AbstractPlaylistComponent> ret = new ArrayList<AbstractPlaylistComponent>(size);
+            int i = 0;
 
-            for (int i = 0; i < (targetComponents.length - 1); i++)
+            while (i < size)
             {
-                if (targetComponents[i] instanceof Media)
+                final AbstractPlaylistComponent component = components.get(i); // Shall not throw IndexOutOfBoundsException.
+                int upTo = i;
+
+                if (component instanceof Media)
                 {
-                    final Media media1 = (Media) targetComponents[i];
-                    int upTo = i;
+                    final Media media1 = (Media) component;
+                    long repeatCount = media1.getRepeatCount();
 
-                    for (int j = (i + 1); j < targetComponents.length; j++)
+                    while (((upTo + 1) < size) && isIdentical(media1, components.get(upTo + 1)))
                     {
-                        // Not a media: stop here.
-                        if (!(targetComponents[j] instanceof Media))
-                        {
-                            break;
-                        }
-
-                        final Media media2 = (Media) targetComponents[j];
-
-                        // Not the same source, or no source at all: stop here.
-                        if ((media2.getSource() == null) || !media2.getSource().equals(media1.getSource()))
-                        {
-                            break;
-                        }
-
-                        // Not the same duration: stop here.
-                        if (((media2.getDuration() == null) && (media1.getDuration() != null)) ||
-                            ((media2.getDuration() != null) && !media2.getDuration().equals(media1.getDuration())))
-                        {
-                            break;
-                        }
-
-                        // Found one! Merge media1 up to this one. And continue iterating other the next ones.
-                        upTo = j;
+                        upTo++;
+                        final AbstractPlaylistComponent media2 = components.get(upTo); // Shall not throw IndexOutOfBoundsException.
+                        // An indefinite repeat count, wherever it is in the run, makes the whole run indefinite.
+                        repeatCount = ((repeatCount < 0L) || (media2.getRepeatCount() < 0)) ? -1L : Math.min(repeatCount + media2.getRepeatCount(), Integer.MAX_VALUE);
+                        media2.setParent(null);
                     }
 
                     if (upTo > i)
                     {
-                        final Sequence newSequence = new Sequence(); // NOPMD Avoid instantiating new objects inside loops
-                        newSequence.setRepeatCount(1 + upTo - i);
-                        _logger.info("Merging " + newSequence.getRepeatCount() + " identical media in a new sequence");
-                        target.addComponent(i, newSequence); // Shall not throw IndexOutOfBoundsException.
-
-                        for (int j = i; j <= upTo; j++)
+                        if (_logger.isDebugEnabled())
                         {
-                            target.removeComponent(i + 1); // Shall not throw IndexOutOfBoundsException.
-                            newSequence.addComponent(targetComponents[j]);
+                            _logger.debug("Merging " + (1 + upTo - i) + " identical media in media " + media1);
                         }
 
-                        // Skip the merged media.
-                        i = upTo;
+                        media1.setRepeatCount((int) repeatCount);
                     }
                 }
+
+                ret.add(component);
+
+                // Skip the merged media, if any.
+                i = upTo + 1;
+            }
+
+            return ret;
+        }
+
+        /**
+         * Specifies if the given playlist component is a media identical to the specified one, i.e. with the same source and the same duration.
+         * @param media1 a media. Shall not be <code>null</code>.
+         * @param component a playlist component. Shall not be <code>null</code>.
+         * @return <code>true</code> if the component is a media identical to the first one.
+         * @throws NullPointerException if <code>media1</code> is <code>null</code>.
+         */
+        private boolean isIdentical(final Media media1, final AbstractPlaylistComponent component)
+        {
+            // Not a media: stop here.
+            if (!(component instanceof Media))
+            {
+                return false;
+            }
+
+            final Media media2 = (Media) component;
+
+            // Not the same source, or no source at all: stop here.
+            if ((media2.getSource() == null) || !media2.getSource().equals(media1.getSource()))
+            {
+                return false;
             }
+
+            // Not the same duration: stop here.
+            return !(((media2.getDuration() == null) && (media1.getDuration() != null)) ||
+                     ((media2.getDuration() != null) && !media2.getDuration().equals(media1.getDuration())));
         }
 
         /**
-         * Merge two consecutive sequences, if not in parallel, with the same repeat count.
+         * Merges consecutive sequences, if not in parallel, played once (or never), in the specified list of sequence components.
+         * The first sequence of each run receives the components of the following ones, in order.
+         * The sequences repeated several times are kept apart, as merging them would change the play order.
          * @FIXME We should handle the case where 2 sequences, in sequence, don't have the same repeat count, but use the same components in the same order. Harder.
-         * @param target the target sequence. Shall not be <code>null</code>.
-         * @throws NullPointerException if <code>target</code> is <code>null</code>.
+         * @param components the ordered list of components of a sequence. Shall not be <code>null</code>.
+         * @return the new ordered list of components. Shall not be <code>null</code>.
+         * @throws NullPointerException if <code>components</code> is <code>null</code>.
          */
-        private void mergeConsecutiveSequences(final Sequence target)
+        private List<AbstractPlaylistComponent> mergeConsecutiveSequences(final List<AbstractPlaylistComponent> components)
         {
-            final AbstractPlaylistComponent[] targetComponents = target.getComponents();
+            final int size = components.size(); // Throws NullPointerException if components is null.
+            final List<AbstractPlaylistComponent> ret = new ArrayList<AbstractPlaylistComponent>(size);
+            int i = 0;
 
-            // Iterate from last to second.
-            for (int i = (targetComponents.length - 1); i > 0 ; i--)
+            while (i < size)
             {
-                if ((targetComponents[i - 1] instanceof Sequence) && (targetComponents[i] instanceof Sequence))
+                final AbstractPlaylistComponent component = components.get(i); // Shall not throw IndexOutOfBoundsException.
+                int upTo = i;
+
+                if ((component instanceof Sequence) && (component.getRepeatCount() >= 0) && (component.getRepeatCount() <= 1))
+                {
+                    while (((upTo + 1) < size) && (components.get(upTo + 1) instanceof Sequence) && (components.get(upTo + 1).getRepeatCount() == component.getRepeatCount()))
+                    {
+                        upTo++;
+                    }
+                }
+
+                if (upTo > i)
                 {
-                    final Sequence seq1 = (Sequence) targetComponents[i - 1];
-                    final Sequence seq2 = (Sequence) targetComponents[i];
+                    // Append the components of the following sequences to the first one.
+                    final Sequence seq1 = (Sequence) component;
+                    final List<AbstractPlaylistComponent> merged = new ArrayList<AbstractPlaylistComponent>(seq1.getComponentList()); // NOPMD Avoid instantiating new objects inside loops
 
-                    if (seq1.getRepeatCount() == seq2.getRepeatCount())
+                    for (int j = i + 1; j <= upTo; j++)
                     {
-                        // Append the components of the last (second) sequence to the first one.
-                        _logger.info("Merging sequence " + seq2 + " in sequence " + seq1);
-                        final AbstractPlaylistComponent[] components = seq2.getComponents();
+                        final Sequence seq2 = (Sequence) components.get(j); // Shall not throw IndexOutOfBoundsException, ClassCastException.
 
-                        for (AbstractPlaylistComponent component : components)
+                        if (_logger.isDebugEnabled())
                         {
-                            seq1.addComponent(component);
+                            _logger.debug("Merging sequence " + seq2 + " in sequence " + seq1);
                         }
 
-                        // Then finally remove the dead sequence.
-                        target.removeComponent(seq2);
+                        merged.addAll(seq2.getComponentList());
+                        // Then finally drop the dead sequence.
+                        seq2.setParent(null);
                     }
+
+                    seq1.replaceComponents(merged);
                 }
+
+                ret.add(component);
+                i = upTo + 1;
             }
+
+            return ret;
         }
     }
 
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Walks the media of a generic playlist in playing order, as a flat run-length list.
+ * A sequence is walked as many times as its repeat count, without copying anything,
+ * so that the memory needed only depends on the depth of the playlist.
+ * Moreover, a sequence made of a single component is not walked at all: its repeat count is folded into the {@link #getMultiplicity multiplicity} of this component,
+ * so that a media repeated many times in a row is returned only once.
+ * <br>
+ * The time containers which cannot be flattened this way, i.e. the parallel ones and the sequences repeated indefinitely,
+ * are returned as is, and their contents are skipped: it is up to the caller to reject them, or not.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+public class PlaylistCursor
+{
+    /**
+     * The sequences being walked, the innermost one last.
+     */
+    private final List<Frame> _frames = new ArrayList<Frame>();
+
+    /**
+     * The multiplicity of the last component returned.
+     */
+    private long _multiplicity = 0L;
+
+    /**
+     * Builds a new cursor on the specified generic playlist.
+     * The playlist shall not be modified while being walked.
+     * @param playlist a generic playlist. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>playlist</code> is <code>null</code>.
+     */
+    public PlaylistCursor(final Playlist playlist)
+    {
+        // The root sequence is handled as any other one.
+        _frames.add(new Frame(Collections.<AbstractPlaylistComponent>singletonList(playlist.getRootSequence()), 1L)); // Throws NullPointerException if playlist is null.
+    }
+
+    /**
+     * Returns the next playlist component.
+     * This is either a media (whatever its repeat count), or a time container which cannot be flattened.
+     * @return a playlist component, or <code>null</code> if the end of the playlist has been reached.
+     * @see #getMultiplicity
+     */
+    public AbstractPlaylistComponent next()
+    {
+        AbstractPlaylistComponent ret = null;
+
+        while ((ret == null) && !_frames.isEmpty())
+        {
+            final Frame frame = _frames.get(_frames.size() - 1); // Shall not throw IndexOutOfBoundsException.
+
+            if (!frame._iterator.hasNext())
+            {
+                // End of the current iteration.
+                frame._remaining--;
+
+                if (frame._remaining <= 0L)
+                {
+                    _frames.remove(_frames.size() - 1); // Shall not throw IndexOutOfBoundsException.
+                }
+                else
+                {
+                    frame._iterator = frame._components.iterator();
+                }
+            }
+            else
+            {
+                AbstractPlaylistComponent component = frame._iterator.next(); // Shall not throw NoSuchElementException.
+                long multiplicity = 1L;
+
+                // Fold the sequences made of a single component.
+                while ((multiplicity > 0L) && isFlattenable(component) && (((Sequence) component).getComponentsNumber() == 1))
+                {
+                    final Sequence sequence = (Sequence) component;
+                    multiplicity = multiply(multiplicity, sequence.getRepeatCount());
+                    component = sequence.componentAt(0); // Shall not throw IndexOutOfBoundsException.
+                }
+
+                if (multiplicity <= 0L)
+                {
+                    // Never played: skip it.
+                    continue;
+                }
+
+                if (isFlattenable(component))
+                {
+                    final Sequence sequence = (Sequence) component;
+                    final long count = multiply(multiplicity, sequence.getRepeatCount());
+
+                    if ((count > 0L) && (sequence.getComponentsNumber() > 0))
+                    {
+                        _frames.add(new Frame(sequence.getComponentList(), count)); // NOPMD Avoid instantiating new objects inside loops
+                    }
+                }
+                else
+                {
+                    ret = component;
+                    _multiplicity = multiplicity;
+
+                    if (component instanceof Media)
+                    {
+                        final int repeatCount = ((Media) component).getRepeatCount();
+                        _multiplicity = (repeatCount < 0) ? -1L : multiply(multiplicity, repeatCount);
+                    }
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the number of times in a row the last returned component shall be played.
+     * For a media, this is its own repeat count, multiplied by the repeat counts of the enclosing sequences made of a single component.
+     * It is negative if the media is repeated indefinitely, and may be zero.
+     * @return a multiplicity, saturated to {@link Long#MAX_VALUE}.
+     * @see #next
+     */
+    public long getMultiplicity()
+    {
+        return _multiplicity;
+    }
+
+    /**
+     * Specifies if the given playlist component is a sequence which can be flattened, i.e. which is not repeated indefinitely.
+     * @param component a playlist component. Shall not be <code>null</code>.
+     * @return <code>true</code> if the component is a sequence which can be flattened.
+     */
+    private static boolean isFlattenable(final AbstractPlaylistComponent component)
+    {
+        return (component instanceof Sequence) && (((Sequence) component).getRepeatCount() >= 0);
+    }
+
+    /**
+     * Multiplies two non-negative repeat counts.
+     * @param a a first value.
+     * @param b a second value.
+     * @return the product, saturated to {@link Long#MAX_VALUE}.
+     */
+    private static long multiply(final long a, final long b)
+    {
+        long ret = a * b;
+
+        if ((b != 0L) && (a > (Long.MAX_VALUE / b)))
+        {
+            ret = Long.MAX_VALUE;
+        }
+
+        return ret;
+    }
+
+    /**
+     * A sequence being walked.
+     */
+    private static final class Frame
+    {
+        /**
+         * A snapshot of the components of the sequence.
+         */
+        private final List<AbstractPlaylistComponent> _components;
+
+        /**
+         * The components left to walk in the current iteration.
+         */
+        private Iterator<AbstractPlaylistComponent> _iterator;
+
+        /**
+         * The number of iterations left, including the current one.
+         */
+        private long _remaining;
+
+        /**
+         * Builds a new frame.
+         * @param components a snapshot of the components of the sequence. Shall not be <code>null</code>.
+         * @param repeatCount the number of times the sequence shall be walked. Shall be strictly positive.
+         */
+        private Frame(final List<AbstractPlaylistComponent> components, final long repeatCount)
+        {
+            _components = components;
+            _iterator = components.iterator();
+            _remaining = repeatCount;
+        }
+    }
+}
@@ -0,0 +1,602 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * The beginning of some playlist contents, as submitted to the {@link SpecificPlaylistProbe probing providers}.
+ * It gives access to the raw bytes of the header, and to some helpers decoding it as text (the first non-empty line, the XML root element).
+ * A playlist header is not thread-safe.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+public final class PlaylistHeader
+{
+    /**
+     * The default maximum number of bytes in a playlist header.
+     */
+    public static final int DEFAULT_SIZE = 4096;
+
+    /**
+     * The XML parsing state meaning that the header is too small to decide.
+     */
+    private static final int XML_UNKNOWN = 0;
+
+    /**
+     * The XML parsing state meaning that the header is not the beginning of an XML document.
+     */
+    private static final int XML_NONE = 1;
+
+    /**
+     * The XML parsing state meaning that the root element has been found.
+     */
+    private static final int XML_ROOT = 2;
+
+    /**
+     * The header bytes.
+     */
+    private final byte[] _bytes;
+
+    /**
+     * Specifies if the header holds the whole contents.
+     */
+    private final boolean _complete;
+
+    /**
+     * The content encoding, if known.
+     */
+    private final String _encoding;
+
+    /**
+     * The encoding used to build the cached text.
+     */
+    private String _textEncoding = null;
+
+    /**
+     * The cached text, decoded with {@link #_textEncoding}.
+     */
+    private String _text = null;
+
+    /**
+     * The encoding used to find the cached XML root element.
+     */
+    private String _xmlEncoding = null;
+
+    /**
+     * The cached XML parsing state.
+     */
+    private int _xmlState = XML_UNKNOWN;
+
+    /**
+     * The cached name of the XML root element.
+     */
+    private String _rootElement = null;
+
+    /**
+     * The cached namespace URI of the XML root element.
+     */
+    private String _rootNamespace = null;
+
+    /**
+     * Builds a new playlist header.
+     * @param bytes an array containing the header bytes. Shall not be <code>null</code>.
+     * @param length the number of valid bytes in the array. Shall be positive and not greater than the array length.
+     * @param complete <code>true</code> if these bytes are the whole contents, <code>false</code> if they are only the beginning of them.
+     * @param encoding the content encoding of the input resource, or <code>null</code> if not known.
+     * @throws NullPointerException if <code>bytes</code> is <code>null</code>.
+     * @throws IndexOutOfBoundsException if <code>length</code> is out of bounds.
+     */
+    public PlaylistHeader(final byte[] bytes, final int length, final boolean complete, final String encoding)
+    {
+        _bytes = new byte[length]; // May throw NegativeArraySizeException.
+        System.arraycopy(bytes, 0, _bytes, 0, length); // Throws NullPointerException if bytes is null. May throw IndexOutOfBoundsException.
+        _complete = complete;
+        _encoding = encoding;
+    }
+
+    /**
+     * Returns the number of bytes in this header.
+     * @return a length. Shall be positive.
+     * @see #getByte
+     */
+    public int getLength()
+    {
+        return _bytes.length;
+    }
+
+    /**
+     * Returns the byte at the specified offset of this header.
+     * @param index an offset in the header. Shall be positive and lower than the header length.
+     * @return a byte.
+     * @throws ArrayIndexOutOfBoundsException if <code>index</code> is out of bounds.
+     * @see #getLength
+     */
+    public byte getByte(final int index)
+    {
+        return _bytes[index]; // May throw ArrayIndexOutOfBoundsException.
+    }
+
+    /**
+     * Indicates if this header holds the whole contents, or only the beginning of them.
+     * @return <code>true</code> if there is nothing after this header.
+     */
+    public boolean isComplete()
+    {
+        return _complete;
+    }
+
+    /**
+     * Returns the content encoding of the input resource, if known.
+     * @return an encoding. May be <code>null</code>.
+     */
+    public String getEncoding()
+    {
+        return _encoding;
+    }
+
+    /**
+     * Indicates if the specified ASCII signature is found in this header at the given offset.
+     * @param offset an offset in the header. Shall be positive.
+     * @param signature the expected characters, each one being compared to a single byte. Shall not be <code>null</code>.
+     * @return <code>true</code> if all bytes match, <code>false</code> if not or if the header is too small.
+     * @throws NullPointerException if <code>signature</code> is <code>null</code>.
+     */
+    public boolean matchAscii(final int offset, final String signature)
+    {
+        final int len = signature.length(); // Throws NullPointerException if signature is null.
+        boolean ret = (offset >= 0) && ((offset + len) <= _bytes.length);
+
+        for (int i = 0; ret && (i < len); i++)
+        {
+            ret = (_bytes[offset + i] == (byte) signature.charAt(i));
+        }
+
+        return ret;
+    }
+
+    /**
+     * Decodes this header as text.
+     * The {@link #getEncoding content encoding} is used if known, the specified one otherwise.
+     * If the header is not {@link #isComplete complete}, the last character may be invalid.
+     * @param defaultEncoding the encoding to use if the content encoding is unknown. Shall not be <code>null</code>.
+     * @return a string, or <code>null</code> if the encoding is not supported.
+     * @throws NullPointerException if the content encoding is unknown and <code>defaultEncoding</code> is <code>null</code>.
+     */
+    public String getText(final String defaultEncoding)
+    {
+        final String enc = (_encoding == null) ? defaultEncoding : _encoding;
+
+        if (!enc.equals(_textEncoding)) // Throws NullPointerException if enc is null.
+        {
+            try
+            {
+                _text = new String(_bytes, enc); // May throw UnsupportedEncodingException.
+            }
+            catch (UnsupportedEncodingException e)
+            {
+                _text = null;
+            }
+
+            _textEncoding = enc;
+        }
+
+        return _text;
+    }
+
+    /**
+     * Returns the first non-empty line of this header, decoded as {@link #getText text}.
+     * The line is trimmed, and any leading byte order mark is removed.
+     * @param defaultEncoding the encoding to use if the content encoding is unknown. Shall not be <code>null</code>.
+     * @return a non-empty line, an empty string if the contents don't contain any non-empty line,
+     * or <code>null</code> if the header is too small to decide or if the encoding is not supported.
+     * @throws NullPointerException if the content encoding is unknown and <code>defaultEncoding</code> is <code>null</code>.
+     */
+    public String getFirstLine(final String defaultEncoding)
+    {
+        final String text = getText(defaultEncoding); // Throws NullPointerException if defaultEncoding is null and required.
+        String ret = null;
+
+        if (text != null)
+        {
+            final int len = text.length();
+            int start = skipByteOrderMark(text);
+
+            while ((ret == null) && (start < len))
+            {
+                int end = start;
+
+                while ((end < len) && (text.charAt(end) != '\n') && (text.charAt(end) != '\r'))
+                {
+                    end++;
+                }
+
+                if ((end >= len) && !_complete)
+                {
+                    // Not sure that the line is complete.
+                    break;
+                }
+
+                final String line = text.substring(start, end).trim(); // Shall not throw IndexOutOfBoundsException.
+
+                if (line.length() > 0)
+                {
+                    ret = line;
+                }
+
+                start = end + 1;
+            }
+
+            if ((ret == null) && (start >= len) && _complete)
+            {
+                ret = "";
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the name of the root element of the XML document this header would be the beginning of.
+     * The XML declaration, processing instructions, comments and document type declaration are skipped.
+     * @param defaultEncoding the encoding to use if the content encoding is unknown. Shall not be <code>null</code>.
+     * @return the qualified name of the root element, or <code>null</code> if the header is not the beginning of an XML document, if the header is too small to decide or if the encoding is not supported.
+     * @throws NullPointerException if the content encoding is unknown and <code>defaultEncoding</code> is <code>null</code>.
+     * @see #getRootNamespace
+     * @see #matchRootElement
+     */
+    public String getRootElement(final String defaultEncoding)
+    {
+        parseXml(defaultEncoding); // Throws NullPointerException if defaultEncoding is null and required.
+
+        return _rootElement;
+    }
+
+    /**
+     * Returns the namespace URI of the root element of the XML document this header would be the beginning of.
+     * @param defaultEncoding the encoding to use if the content encoding is unknown. Shall not be <code>null</code>.
+     * @return a namespace URI, or <code>null</code> if the root element is not bound to a namespace or cannot be found.
+     * @throws NullPointerException if the content encoding is unknown and <code>defaultEncoding</code> is <code>null</code>.
+     * @see #getRootElement
+     */
+    public String getRootNamespace(final String defaultEncoding)
+    {
+        parseXml(defaultEncoding); // Throws NullPointerException if defaultEncoding is null and required.
+
+        return _rootNamespace;
+    }
+
+    /**
+     * Scores this header against the expected XML root element.
+     * @param defaultEncoding the encoding to use if the content encoding is unknown. Shall not be <code>null</code>.
+     * @param localName the expected local name (i.e. without any prefix) of the root element. Shall not be <code>null</code>.
+     * @param ignoreCase <code>true</code> if the root element name is not case sensitive.
+     * @param namespace the expected namespace URI of the root element, or <code>null</code> if not relevant.
+     * @return {@link SpecificPlaylistProbe#NO_MATCH} if the header is not the beginning of an XML document or if the root element name is different,
+     * {@link SpecificPlaylistProbe#POSSIBLE_MATCH} if the header is too small to decide,
+     * {@link SpecificPlaylistProbe#LIKELY_MATCH} if only the root element name matches,
+     * {@link SpecificPlaylistProbe#CERTAIN_MATCH} if both the root element name and namespace (if specified) match.
+     * @throws NullPointerException if the content encoding is unknown and <code>defaultEncoding</code> is <code>null</code>.
+     * @throws NullPointerException if <code>localName</code> is <code>null</code>.
+     */
+    public int matchRootElement(final String defaultEncoding, final String localName, final boolean ignoreCase, final String namespace)
+    {
+        parseXml(defaultEncoding); // Throws NullPointerException if defaultEncoding is null and required.
+        int ret = SpecificPlaylistProbe.POSSIBLE_MATCH;
+
+        if (_xmlState == XML_NONE)
+        {
+            ret = SpecificPlaylistProbe.NO_MATCH;
+        }
+        else if (_xmlState == XML_ROOT)
+        {
+            final String name = _rootElement.substring(_rootElement.indexOf(':') + 1); // Shall not throw IndexOutOfBoundsException.
+
+            if (ignoreCase ? !localName.equalsIgnoreCase(name) : !localName.equals(name)) // Throws NullPointerException if localName is null.
+            {
+                ret = SpecificPlaylistProbe.NO_MATCH;
+            }
+            else if ((namespace == null) || namespace.equals(_rootNamespace))
+            {
+                ret = SpecificPlaylistProbe.CERTAIN_MATCH;
+            }
+            else
+            {
+                ret = SpecificPlaylistProbe.LIKELY_MATCH;
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Searches for the XML root element in this header, if not already done with the same encoding.
+     * @param defaultEncoding the encoding to use if the content encoding is unknown. Shall not be <code>null</code>.
+     * @throws NullPointerException if the content encoding is unknown and <code>defaultEncoding</code> is <code>null</code>.
+     */
+    private void parseXml(final String defaultEncoding)
+    {
+        final String text = getText(defaultEncoding); // Throws NullPointerException if defaultEncoding is null and required.
+
+        if (!_textEncoding.equals(_xmlEncoding))
+        {
+            _xmlEncoding = _textEncoding;
+            _xmlState = XML_UNKNOWN;
+            _rootElement = null;
+            _rootNamespace = null;
+
+            if (text != null)
+            {
+                findRootElement(text);
+            }
+        }
+    }
+
+    /**
+     * Searches for the XML root element in the specified text.
+     * @param text the decoded header. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>text</code> is <code>null</code>.
+     */
+    private void findRootElement(final String text)
+    {
+        final int len = text.length(); // Throws NullPointerException if text is null.
+        int i = skipByteOrderMark(text);
+
+        while (_xmlState == XML_UNKNOWN)
+        {
+            i = skipWhitespaces(text, i);
+
+            if (i >= len)
+            {
+                if (_complete)
+                {
+                    _xmlState = XML_NONE;
+                }
+
+                break;
+            }
+
+            if (text.charAt(i) != '<')
+            {
+                _xmlState = XML_NONE;
+            }
+            else if (text.startsWith("<?", i))
+            {
+                i = skipPast(text, i + 2, "?>");
+            }
+            else if (text.startsWith("<!--", i))
+            {
+                i = skipPast(text, i + 4, "-->");
+            }
+            else if (text.startsWith("<!", i))
+            {
+                i = skipDeclaration(text, i + 2);
+            }
+            else
+            {
+                i = parseRootElement(text, i + 1);
+            }
+
+            if (i < 0)
+            {
+                // Header too small.
+                break;
+            }
+        }
+    }
+
+    /**
+     * Parses the start tag of the root element, i.e. its name and its attributes.
+     * @param text the decoded header. Shall not be <code>null</code>.
+     * @param start the offset of the root element name, just after the '&lt;' character.
+     * @return the offset just after the start tag, or -1 if the end of the header has been reached first.
+     */
+    private int parseRootElement(final String text, final int start)
+    {
+        final int len = text.length();
+        int i = start;
+
+        while ((i < len) && !isNameDelimiter(text.charAt(i)))
+        {
+            i++;
+        }
+
+        if (i >= len)
+        {
+            // We can't say if the root element name is complete.
+            return -1;
+        }
+
+        if (i == start)
+        {
+            _xmlState = XML_NONE;
+            return i;
+        }
+
+        _rootElement = text.substring(start, i); // Shall not throw IndexOutOfBoundsException.
+        _xmlState = XML_ROOT;
+
+        // Now search for the namespace declaration matching the root element prefix, if any.
+        final int colon = _rootElement.indexOf(':');
+        final String nsAttribute = (colon < 0) ? "xmlns" : ("xmlns:" + _rootElement.substring(0, colon));
+
+        while (i < len)
+        {
+            i = skipWhitespaces(text, i);
+
+            if ((i >= len) || (text.charAt(i) == '>') || (text.charAt(i) == '/'))
+            {
+                break;
+            }
+
+            final int nameStart = i;
+
+            while ((i < len) && !isNameDelimiter(text.charAt(i)) && (text.charAt(i) != '='))
+            {
+                i++;
+            }
+
+            final String name = text.substring(nameStart, i); // Shall not throw IndexOutOfBoundsException.
+            i = skipWhitespaces(text, i);
+
+            if ((i >= len) || (text.charAt(i) != '='))
+            {
+                break;
+            }
+
+            i = skipWhitespaces(text, i + 1);
+
+            if ((i >= len) || ((text.charAt(i) != '"') && (text.charAt(i) != '\'')))
+            {
+                break;
+            }
+
+            final int valueEnd = text.indexOf(text.charAt(i), i + 1);
+
+            if (valueEnd < 0)
+            {
+                break;
+            }
+
+            if (nsAttribute.equals(name))
+            {
+                _rootNamespace = text.substring(i + 1, valueEnd); // Shall not throw IndexOutOfBoundsException.
+                break;
+            }
+
+            i = valueEnd + 1;
+        }
+
+        return i;
+    }
+
+    /**
+     * Skips a document type declaration (or any other markup declaration), including its internal subset if any.
+     * @param text the decoded header. Shall not be <code>null</code>.
+     * @param start the offset just after the "&lt;!" characters.
+     * @return the offset just after the declaration, or -1 if the end of the header has been reached first.
+     */
+    private static int skipDeclaration(final String text, final int start)
+    {
+        final int len = text.length();
+        int depth = 0;
+        char quote = 0;
+
+        for (int i = start; i < len; i++)
+        {
+            final char c = text.charAt(i);
+
+            if (quote != 0)
+            {
+                if (c == quote)
+                {
+                    quote = 0;
+                }
+            }
+            else if ((c == '"') || (c == '\''))
+            {
+                quote = c;
+            }
+            else if (c == '[')
+            {
+                depth++;
+            }
+            else if (c == ']')
+            {
+                depth--;
+            }
+            else if ((c == '>') && (depth <= 0))
+            {
+                return i + 1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Skips all characters up to the specified delimiter, included.
+     * @param text the decoded header. Shall not be <code>null</code>.
+     * @param start the offset where to begin the search.
+     * @param delimiter the string ending the skipped section. Shall not be <code>null</code>.
+     * @return the offset just after the delimiter, or -1 if the end of the header has been reached first.
+     */
+    private static int skipPast(final String text, final int start, final String delimiter)
+    {
+        final int idx = text.indexOf(delimiter, start);
+
+        return (idx < 0) ? -1 : (idx + delimiter.length());
+    }
+
+    /**
+     * Skips the whitespaces (in the XML sense) starting at the specified offset.
+     * @param text the decoded header. Shall not be <code>null</code>.
+     * @param start the offset where to begin.
+     * @return the offset of the first non-whitespace character, or the text length.
+     */
+    private static int skipWhitespaces(final String text, final int start)
+    {
+        final int len = text.length();
+        int i = start;
+
+        while ((i < len) && isWhitespace(text.charAt(i)))
+        {
+            i++;
+        }
+
+        return i;
+    }
+
+    /**
+     * Returns the offset of the first character following the byte order mark at the beginning of the specified text, if any.
+     * @param text the decoded header. Shall not be <code>null</code>.
+     * @return 1 if the text begins with a byte order mark, 0 otherwise.
+     */
+    private static int skipByteOrderMark(final String text)
+    {
+        return ((text.length() > 0) && (text.charAt(0) == '\uFEFF')) ? 1 : 0;
+    }
+
+    /**
+     * Indicates if the specified character is a whitespace, in the XML sense.
+     * @param c a character.
+     * @return <code>true</code> if this is a whitespace.
+     */
+    private static boolean isWhitespace(final char c)
+    {
+        return (c == ' ') || (c == '\t') || (c == '\n') || (c == '\r');
+    }
+
+    /**
+     * Indicates if the specified character terminates an XML name.
+     * @param c a character.
+     * @return <code>true</code> if this character cannot be part of a name.
+     */
+    private static boolean isNameDelimiter(final char c)
+    {
+        return isWhitespace(c) || (c == '>') || (c == '/');
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import chameleon.content.type.ContentType;
+
+/**
+ * An immutable snapshot of the installed {@link SpecificPlaylistProvider playlist providers}, indexed by identifier, file extension and MIME type.
+ * The lookups give the same results as a linear search through the providers (in their loading order) and their content types,
+ * but without iterating them each time.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+final class ProviderRegistry
+{
+    /**
+     * The providers, in their loading order.
+     */
+    private final List<SpecificPlaylistProvider> _providers;
+
+    /**
+     * The providers indexed by their lower-cased identifier.
+     */
+    private final Map<String, SpecificPlaylistProvider> _byId = new HashMap<String, SpecificPlaylistProvider>();
+
+    /**
+     * The content types indexed by their (lower-cased) extensions.
+     */
+    private final Map<String, Registration> _byExtension = new HashMap<String, Registration>();
+
+    /**
+     * The content types indexed by their (lower-cased) MIME types.
+     */
+    private final Map<String, Registration> _byMimeType = new HashMap<String, Registration>();
+
+    /**
+     * The distinct lengths of the registered extensions, from the shortest to the longest one.
+     */
+    private final int[] _extensionLengths;
+
+    /**
+     * Builds a new registry from the specified providers.
+     * @param providers the providers to register, in their loading order. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>providers</code> is <code>null</code>.
+     */
+    ProviderRegistry(final Iterable<SpecificPlaylistProvider> providers)
+    {
+        final List<SpecificPlaylistProvider> list = new ArrayList<SpecificPlaylistProvider>();
+        final SortedSet<Integer> extensionLengths = new TreeSet<Integer>();
+
+        for (SpecificPlaylistProvider provider : providers) // Throws NullPointerException if providers is null.
+        {
+            final int providerIndex = list.size();
+            list.add(provider);
+
+            final String id = provider.getId().toLowerCase(Locale.ENGLISH);
+
+            if (!_byId.containsKey(id))
+            {
+                _byId.put(id, provider);
+            }
+
+            final ContentType[] types = provider.getContentTypes();
+
+            for (int typeIndex = 0; typeIndex < types.length; typeIndex++)
+            {
+                final Registration registration = new Registration(provider, types[typeIndex], providerIndex, typeIndex); // NOPMD Avoid instantiating new objects inside loops
+
+                // Keep only the first registration of a given key, as a linear search would do.
+                for (String extension : types[typeIndex].getExtensions())
+                {
+                    if (!_byExtension.containsKey(extension))
+                    {
+                        _byExtension.put(extension, registration);
+                        extensionLengths.add(extension.length());
+                    }
+                }
+
+                for (String mimeType : types[typeIndex].getMimeTypes())
+                {
+                    if (!_byMimeType.containsKey(mimeType))
+                    {
+                        _byMimeType.put(mimeType, registration);
+                    }
+                }
+            }
+        }
+
+        _providers = Collections.unmodifiableList(list);
+        _extensionLengths = new int[extensionLengths.size()];
+        int i = 0;
+
+        for (Integer length : extensionLengths)
+        {
+            _extensionLengths[i++] = length;
+        }
+    }
+
+    /**
+     * Returns the registered providers.
+     * @return an unmodifiable list of providers, in their loading order. May be empty but not <code>null</code>.
+     */
+    List<SpecificPlaylistProvider> getProviders()
+    {
+        return _providers;
+    }
+
+    /**
+     * Searches for the provider with the given identifier.
+     * @param id a provider identifier. Not case sensitive. Shall not be <code>null</code>.
+     * @return a provider, or <code>null</code> if none was found.
+     * @throws NullPointerException if <code>id</code> is <code>null</code>.
+     */
+    SpecificPlaylistProvider findById(final String id)
+    {
+        return _byId.get(id.toLowerCase(Locale.ENGLISH)); // Throws NullPointerException if id is null.
+    }
+
+    /**
+     * Searches for the first content type (and its provider) with an extension ending the given file name.
+     * @param filename a file name, or a simple extension string. Not case sensitive. Shall not be <code>null</code>.
+     * @return a content type registration, or <code>null</code> if none was found.
+     * @throws NullPointerException if <code>filename</code> is <code>null</code>.
+     */
+    Registration findByExtension(final String filename)
+    {
+        final String name = filename.toLowerCase(Locale.ENGLISH); // Throws NullPointerException if filename is null.
+        final int len = name.length();
+        Registration ret = null;
+
+        // Each registered extension length gives at most one candidate suffix.
+        for (int length : _extensionLengths)
+        {
+            if (length > len)
+            {
+                break;
+            }
+
+            final Registration registration = _byExtension.get(name.substring(len - length)); // Shall not throw IndexOutOfBoundsException.
+
+            if ((registration != null) && ((ret == null) || registration.isBefore(ret)))
+            {
+                ret = registration;
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Searches for the first content type (and its provider) with the given MIME type.
+     * @param mimeType a MIME type, possibly followed by parameters (like in "audio/x-mpegurl; charset=UTF-8"). Not case sensitive. Shall not be <code>null</code>.
+     * @return a content type registration, or <code>null</code> if none was found.
+     * @throws NullPointerException if <code>mimeType</code> is <code>null</code>.
+     */
+    Registration findByMimeType(final String mimeType)
+    {
+        String type = mimeType; // Shall not be null.
+        final int idx = type.indexOf(';'); // Throws NullPointerException if mimeType is null.
+
+        if (idx >= 0)
+        {
+            type = type.substring(0, idx); // Shall not throw IndexOutOfBoundsException.
+        }
+
+        return _byMimeType.get(type.trim().toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * A content type, registered by a given provider.
+     * @version $Revision: 92 $
+     * @author Christophe Delory
+     */
+    static final class Registration
+    {
+        /**
+         * The provider.
+         */
+        private final SpecificPlaylistProvider _provider;
+
+        /**
+         * The content type.
+         */
+        private final ContentType _contentType;
+
+        /**
+         * The index of the provider in the loading order.
+         */
+        private final int _providerIndex;
+
+        /**
+         * The index of the content type in the provider's list.
+         */
+        private final int _typeIndex;
+
+        /**
+         * Builds a new registration.
+         * @param provider the provider. Shall not be <code>null</code>.
+         * @param contentType one of the content types of the provider. Shall not be <code>null</code>.
+         * @param providerIndex the index of the provider in the loading order.
+         * @param typeIndex the index of the content type in the provider's list.
+         */
+        private Registration(final SpecificPlaylistProvider provider, final ContentType contentType, final int providerIndex, final int typeIndex)
+        {
+            _provider = provider;
+            _contentType = contentType;
+            _providerIndex = providerIndex;
+            _typeIndex = typeIndex;
+        }
+
+        /**
+         * Returns the registering provider.
+         * @return a provider. Shall not be <code>null</code>.
+         */
+        SpecificPlaylistProvider getProvider()
+        {
+            return _provider;
+        }
+
+        /**
+         * Returns the registered content type.
+         * @return a content type. Shall not be <code>null</code>.
+         */
+        ContentType getContentType()
+        {
+            return _contentType;
+        }
+
+        /**
+         * Indicates if this registration would be found before the specified one in a linear search.
+         * @param registration another registration. Shall not be <code>null</code>.
+         * @return <code>true</code> if this registration comes first.
+         * @throws NullPointerException if <code>registration</code> is <code>null</code>.
+         */
+        boolean isBefore(final Registration registration)
+        {
+            return (_providerIndex < registration._providerIndex) // Throws NullPointerException if registration is null.
+                || ((_providerIndex == registration._providerIndex) && (_typeIndex < registration._typeIndex));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist;
+
+/**
+ * The outcome of the warm-up of a playlist provider.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ * @see SpecificPlaylistFactory#warmUp
+ */
+public final class ProviderWarmUp
+{
+    /**
+     * The playlist provider.
+     */
+    private final SpecificPlaylistProvider _provider;
+
+    /**
+     * The warm-up duration, in nanoseconds.
+     */
+    private final long _duration;
+
+    /**
+     * The error which made the warm-up fail, if any.
+     */
+    private final Throwable _error;
+
+    /**
+     * Builds a new warm-up outcome.
+     * @param provider the playlist provider. Shall not be <code>null</code>.
+     * @param duration the warm-up duration, in nanoseconds.
+     * @param error the error which made the warm-up fail. May be <code>null</code>.
+     */
+    ProviderWarmUp(final SpecificPlaylistProvider provider, final long duration, final Throwable error)
+    {
+        _provider = provider;
+        _duration = duration;
+        _error = error;
+    }
+
+    /**
+     * Returns the playlist provider.
+     * @return a provider. Shall not be <code>null</code>.
+     */
+    public SpecificPlaylistProvider getProvider()
+    {
+        return _provider;
+    }
+
+    /**
+     * Returns the time spent warming up the provider.
+     * @return a duration, in milliseconds.
+     */
+    public long getDuration()
+    {
+        return _duration / 1000000L;
+    }
+
+    /**
+     * Returns the time spent warming up the provider.
+     * @return a duration, in nanoseconds.
+     */
+    public long getDurationNanos()
+    {
+        return _duration;
+    }
+
+    /**
+     * Returns the error which made the warm-up fail.
+     * The provider is still usable, but its first use may be slower than expected, or fail the same way.
+     * @return an error, or <code>null</code> if the warm-up succeeded.
+     */
+    public Throwable getError()
+    {
+        return _error;
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(_provider.getId()).append(": ").append(getDuration()).append(" ms");
+
+        if (_error != null)
+        {
+            sb.append(" (failed: ").append(_error).append(')');
+        }
+
+        return sb.toString();
+    }
+}
@@ -25,6 +25,7 @@
 package chameleon.playlist;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.io.IOException;
@@ -32,13 +33,18 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
 import java.util.ServiceLoader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import chameleon.content.Content;
 import chameleon.content.type.ContentType;
+import chameleon.io.RewindableInput;
 
 /**
  * The {@link SpecificPlaylist playlist} factory.
@@ -47,38 +53,43 @@ import chameleon.content.type.ContentType;
  */
 public final class SpecificPlaylistFactory
 {
-    /**
-     * The singleton instance.
-     */
-    private static SpecificPlaylistFactory _instance = null;
-
     /**
      * Returns the unique class instance.
+     * The instance is created on first use, without any locking.
      * @return an instance of this class. Shall not be <code>null</code>.
      */
     public static SpecificPlaylistFactory getInstance()
     {
-        synchronized(SpecificPlaylistFactory.class)
-        {
-            if (_instance == null)
-            {
-                _instance = new SpecificPlaylistFactory();
-            }
-        }
-
-        return _instance;
+        return InstanceHolder.INSTANCE;
     }
 
     /**
      * The associated service providers loader.
+     * As it is not thread-safe, it shall only be used when holding its lock.
      */
     private final ServiceLoader<SpecificPlaylistProvider> _serviceLoader;
 
+    /**
+     * The current snapshot of the playlist providers.
+     * It is immutable, and replaced as a whole when the providers are reloaded, so that it can be used by several threads without any locking.
+     */
+    private volatile ProviderRegistry _registry;
+
     /**
      * The logger attached to this provider factory.
      */
     private final Log _logger;
 
+    /**
+     * The maximum number of bytes of a playlist kept in memory while reading it.
+     */
+    private volatile int _memoryThreshold = RewindableInput.DEFAULT_MEMORY_THRESHOLD;
+
+    /**
+     * The maximum number of bytes allowed in a playlist, or a negative value if there is no limit.
+     */
+    private volatile long _maxContentLength = -1L;
+
     /**
      * Builds a new specific playlist factory.
      */
@@ -86,15 +97,75 @@ public final class SpecificPlaylistFactory
     {
         _logger = LogFactory.getLog(getClass()); // May throw LogConfigurationException.
         _serviceLoader = ServiceLoader.load(SpecificPlaylistProvider.class);
+        _registry = new ProviderRegistry(_serviceLoader);
     }
 
     /**
      * Refreshes the list of playlist providers managed by this factory.
      * If new providers are added after the instantiation of this factory, you will need to call this method manually.
+     * The current lookups and readings are not disturbed: they keep on using the previous list of providers.
      */
     public void reloadProviders()
     {
-        _serviceLoader.reload();
+        synchronized(_serviceLoader)
+        {
+            _serviceLoader.reload();
+            _registry = new ProviderRegistry(_serviceLoader);
+        }
+    }
+
+    /**
+     * Returns the maximum number of bytes of a playlist kept in memory while reading it.
+     * The remaining bytes, if any, are buffered in a temporary file.
+     * @return a number of bytes. Shall be strictly positive.
+     * @since 1.3.0
+     * @see #setMemoryThreshold
+     */
+    public int getMemoryThreshold()
+    {
+        return _memoryThreshold;
+    }
+
+    /**
+     * Specifies the maximum number of bytes of a playlist kept in memory while reading it.
+     * Default value is {@link RewindableInput#DEFAULT_MEMORY_THRESHOLD}.
+     * @param memoryThreshold a number of bytes. Shall be strictly positive.
+     * @throws IllegalArgumentException if <code>memoryThreshold</code> is not strictly positive.
+     * @since 1.3.0
+     * @see #getMemoryThreshold
+     */
+    public void setMemoryThreshold(final int memoryThreshold)
+    {
+        if (memoryThreshold <= 0)
+        {
+            throw new IllegalArgumentException("Invalid memory threshold " + memoryThreshold);
+        }
+
+        _memoryThreshold = memoryThreshold;
+    }
+
+    /**
+     * Returns the maximum number of bytes allowed in a playlist.
+     * @return a number of bytes, or a negative value if there is no limit.
+     * @since 1.3.0
+     * @see #setMaxContentLength
+     */
+    public long getMaxContentLength()
+    {
+        return _maxContentLength;
+    }
+
+    /**
+     * Specifies the maximum number of bytes allowed in a playlist.
+     * Reading a larger playlist will throw an {@link IOException}.
+     * By default there is no limit.
+     * @param maxContentLength a number of bytes, or a negative value if there is no limit.
+     * @since 1.3.0
+     * @see #getMaxContentLength
+     */
+    public void setMaxContentLength(final long maxContentLength)
+    {
+        _maxContentLength = maxContentLength;
     }
 
     /**
@@ -119,43 +190,143 @@ public final class SpecificPlaylistFactory
         urlConnection.connect(); // May throw SocketTimeoutException, IOException.
 
         final String contentEncoding = urlConnection.getContentEncoding(); // May be null.
-        //final int contentLength = urlConnection.getContentLength(); // May be negative.
+        final int contentLength = urlConnection.getContentLength(); // May be negative.
         //final String contentType = urlConnection.getContentType(); // May be null.
+        final long maxContentLength = _maxContentLength;
+
+        // Don't even start downloading a playlist known to be too large.
+        if ((maxContentLength >= 0L) && (contentLength > maxContentLength))
+        {
+            urlConnection.getInputStream().close(); // May throw IOException, UnknownServiceException.
+            throw new IOException("Playlist length " + contentLength + " exceeds the maximum allowed length of " + maxContentLength + " bytes");
+        }
 
         final InputStream in = urlConnection.getInputStream(); // May throw IOException, UnknownServiceException.
 
         return readFrom(in, contentEncoding);
     }
 
-    public SpecificPlaylist readFrom(InputStream in, String contentEncoding) throws IOException {
-        byte[] bytes = org.apache.commons.io.IOUtils.toByteArray(in);
+    /**
+     * Reads a playlist from the specified input stream.
+     * The contents are buffered, first in memory up to the {@link #getMemoryThreshold memory threshold}, then in a temporary file.
+     * The beginning of the contents is then submitted to all {@link SpecificPlaylistProbe probing providers},
+     * and the providers which didn't reject it are tried, from the best score to the lowest one, until one of them recognizes the contents.
+     * When done, the stream is closed.
+     * @param in an input stream. Shall not be <code>null</code>.
+     * @param contentEncoding the content encoding of the input resource, or <code>null</code> if not known.
+     * @return a new playlist instance, or <code>null</code> if the format has been recognized, but the playlist is malformed.
+     * @throws NullPointerException if <code>in</code> is <code>null</code>.
+     * @throws IOException if an I/O exception occurs, or if the contents exceed the {@link #getMaxContentLength maximum length}.
+     * @see SpecificPlaylistProvider#readFrom
+     * @see SpecificPlaylistProbe#probe
+     * @see #readFrom(URL)
+     */
+    public SpecificPlaylist readFrom(final InputStream in, final String contentEncoding) throws IOException
+    {
+        final RewindableInput input;
+
+        try
+        {
+            input = new RewindableInput(in, _memoryThreshold, _maxContentLength); // Throws NullPointerException if in is null. May throw IOException. Shall not throw IllegalArgumentException.
+        }
+        finally
+        {
+            in.close(); // May throw IOException.
+        }
 
         SpecificPlaylist ret = null;
-        for (SpecificPlaylistProvider service : _serviceLoader)
+
+        try
         {
+            final byte[] bytes = new byte[PlaylistHeader.DEFAULT_SIZE];
+            final InputStream headerStream = input.openStream(); // May throw IOException.
+            final int length = headerStream.read(bytes); // May throw IOException.
+            headerStream.close(); // May throw IOException.
 
-            try
+            final PlaylistHeader header = new PlaylistHeader(bytes, Math.max(length, 0), input.getLength() <= bytes.length, contentEncoding); // Shall not throw IndexOutOfBoundsException.
+
+            for (SpecificPlaylistProvider service : probeProviders(header))
             {
-                InputStream temp = new ByteArrayInputStream(bytes);
-                ret = service.readFrom(temp, contentEncoding, _logger); // May throw Exception. Shall not throw NullPointerException because of in.
-                // Returns it even if null.
-                break;
+                final InputStream temp = input.openStream(); // May throw IOException.
+
+                try
+                {
+                    ret = service.readFrom(temp, contentEncoding, _logger); // May throw Exception. Shall not throw NullPointerException because of in.
+                    // Returns it even if null.
+                    break;
+                }
+                catch (Exception e)
+                {
+                    // Ignore it.
+                    if (_logger.isTraceEnabled())
+                    {
+                        _logger.trace("Playlist provider " + service.getId() + " cannot unmarshal", e);
+                    }
+                    else if (_logger.isDebugEnabled())
+                    {
+                        _logger.debug("Playlist provider " + service.getId() + " cannot unmarshal " + e);
+                    }
+                }
+                finally
+                {
+                    temp.close(); // May throw IOException.
+                }
             }
-            catch (Exception e)
+        }
+        finally
+        {
+            input.close(); // May throw IOException.
+        }
+
+        return ret;
+    }
+
+    /**
+     * Lists the playlist providers which may handle the contents beginning with the specified header, the most relevant first.
+     * Providers which don't implement {@link SpecificPlaylistProbe} are considered as {@link SpecificPlaylistProbe#POSSIBLE_MATCH possible matches}.
+     * Providers with the same score keep their loading order.
+     * @param header the beginning of the contents. Shall not be <code>null</code>.
+     * @return a list of specific playlist providers. May be empty but not <code>null</code>.
+     * @throws NullPointerException if <code>header</code> is <code>null</code>.
+     */
+    private List<SpecificPlaylistProvider> probeProviders(final PlaylistHeader header)
+    {
+        final List<SpecificPlaylistProvider> ret = new ArrayList<SpecificPlaylistProvider>();
+        final List<Integer> scores = new ArrayList<Integer>();
+
+        for (SpecificPlaylistProvider service : _registry.getProviders())
+        {
+            int score = SpecificPlaylistProbe.POSSIBLE_MATCH;
+
+            if (service instanceof SpecificPlaylistProbe)
             {
-                // Ignore it.
-                if (_logger.isTraceEnabled())
+                try
                 {
-                    _logger.trace("Playlist provider " + service.getId() + " cannot unmarshal", e);
+                    score = ((SpecificPlaylistProbe) service).probe(header); // Throws NullPointerException if header is null.
                 }
-                else if (_logger.isDebugEnabled())
+                catch (RuntimeException e)
                 {
-                    _logger.debug("Playlist provider " + service.getId() + " cannot unmarshal " + e);
+                    _logger.warn("Playlist provider " + service.getId() + " cannot probe " + e);
                 }
             }
-            finally
+
+            if (_logger.isTraceEnabled())
+            {
+                _logger.trace("Playlist provider " + service.getId() + " probe score: " + score);
+            }
+
+            if (score > SpecificPlaylistProbe.NO_MATCH)
             {
-                in.close(); // May throw IOException.
+                // Keep the list sorted by decreasing score, and the loading order for equal scores.
+                int idx = ret.size();
+
+                while ((idx > 0) && (scores.get(idx - 1) < score))
+                {
+                    idx--;
+                }
+
+                ret.add(idx, service);
+                scores.add(idx, score);
             }
         }
 
@@ -182,21 +353,11 @@ public final class SpecificPlaylistFactory
      * @return a provider, or <code>null</code> if none was found.
      * @throws NullPointerException if <code>id</code> is <code>null</code>.
      * @see #findProviderByExtension
+     * @see #findProviderByMimeType
      */
     public SpecificPlaylistProvider findProviderById(final String id)
     {
-        SpecificPlaylistProvider ret = null;
-
-        for (SpecificPlaylistProvider service : _serviceLoader)
-        {
-            if (id.equalsIgnoreCase(service.getId())) // Throws NullPointerException if id is null.
-            {
-                ret = service;
-                break;
-            }
-        }
-
-        return ret;
+        return _registry.findById(id); // Throws NullPointerException if id is null.
     }
 
     /**
@@ -205,32 +366,61 @@ public final class SpecificPlaylistFactory
      * @return a provider, or <code>null</code> if none was found.
      * @throws NullPointerException if <code>filename</code> is <code>null</code>.
      * @see #findProviderById
+     * @see #findContentTypeByExtension
      */
     public SpecificPlaylistProvider findProviderByExtension(final String filename)
     {
-        SpecificPlaylistProvider ret = null;
-        final String name = filename.toLowerCase(Locale.ENGLISH); // Throws NullPointerException if filename is null.
+        final ProviderRegistry.Registration registration = _registry.findByExtension(filename); // Throws NullPointerException if filename is null.
 
-        for (SpecificPlaylistProvider service : _serviceLoader)
-        {
-            final ContentType[] types = service.getContentTypes();
+        return (registration == null) ? null : registration.getProvider();
+    }
 
-            for (ContentType type : types)
-            {
-                if (type.matchExtension(name))
-                {
-                    ret = service;
-                    break;
-                }
-            }
+    /**
+     * Searches for a provider handling the specific playlists with the given MIME type (for example from an HTTP "Content-Type" header).
+     * @param mimeType a MIME type, possibly followed by parameters (like in "audio/x-mpegurl; charset=UTF-8"). Not case sensitive. Shall not be <code>null</code>.
+     * @return a provider, or <code>null</code> if none was found.
+     * @throws NullPointerException if <code>mimeType</code> is <code>null</code>.
+     * @since 1.3.0
+     * @see #findProviderById
+     * @see #findContentTypeByMimeType
+     */
+    public SpecificPlaylistProvider findProviderByMimeType(final String mimeType)
+    {
+        final ProviderRegistry.Registration registration = _registry.findByMimeType(mimeType); // Throws NullPointerException if mimeType is null.
 
-            if (ret != null)
-            {
-                break;
-            }
-        }
+        return (registration == null) ? null : registration.getProvider();
+    }
 
-        return ret;
+    /**
+     * Searches for the content type of the specific playlist files with the given extension string.
+     * The content type belongs to the provider that {@link #findProviderByExtension} would return.
+     * @param filename a playlist file name, or a simple extension string (with the leading '.' character, if appropriate). Not case sensitive. Shall not be <code>null</code>.
+     * @return a content type, or <code>null</code> if none was found.
+     * @throws NullPointerException if <code>filename</code> is <code>null</code>.
+     * @since 1.3.0
+     * @see #findProviderByExtension
+     */
+    public ContentType findContentTypeByExtension(final String filename)
+    {
+        final ProviderRegistry.Registration registration = _registry.findByExtension(filename); // Throws NullPointerException if filename is null.
+
+        return (registration == null) ? null : registration.getContentType();
+    }
+
+    /**
+     * Searches for the content type of the specific playlists with the given MIME type.
+     * The content type belongs to the provider that {@link #findProviderByMimeType} would return.
+     * @param mimeType a MIME type, possibly followed by parameters (like in "audio/x-mpegurl; charset=UTF-8"). Not case sensitive. Shall not be <code>null</code>.
+     * @return a content type, or <code>null</code> if none was found.
+     * @throws NullPointerException if <code>mimeType</code> is <code>null</code>.
+     * @since 1.3.0
+     * @see #findProviderByMimeType
+     */
+    public ContentType findContentTypeByMimeType(final String mimeType)
+    {
+        final ProviderRegistry.Registration registration = _registry.findByMimeType(mimeType); // Throws NullPointerException if mimeType is null.
+
+        return (registration == null) ? null : registration.getContentType();
     }
 
     /**
@@ -242,13 +432,125 @@ public final class SpecificPlaylistFactory
      */
     public List<SpecificPlaylistProvider> getProviders()
     {
-        final ArrayList<SpecificPlaylistProvider> ret = new ArrayList<SpecificPlaylistProvider>();
+        return new ArrayList<SpecificPlaylistProvider>(_registry.getProviders());
+    }
+
+    /**
+     * Warms up all the currently installed playlist providers, so that their first real use is not slowed down.
+     * Each provider converts, writes and reads back a small playlist, which loads the involved classes and the resources they depend on (XML mappings, JAXB contexts, etc.).
+     * The providers are warmed up in parallel by the given executor, and this method waits until all of them are done.
+     * A failing provider does not prevent the other ones from being warmed up: the error is reported in its outcome.
+     * @param executor the executor running the warm-up tasks, typically a thread pool. Shall not be <code>null</code>.
+     * @return the warm-up outcome of each provider, in the providers order. May be empty but not <code>null</code>.
+     * @throws NullPointerException if <code>executor</code> is <code>null</code>.
+     * @throws java.util.concurrent.RejectedExecutionException if a warm-up task cannot be accepted for execution.
+     * @throws InterruptedException if the current thread was interrupted while waiting.
+     * @since 1.3.0
+     */
+    public List<ProviderWarmUp> warmUp(final Executor executor) throws InterruptedException
+    {
+        final List<FutureTask<ProviderWarmUp>> tasks = new ArrayList<FutureTask<ProviderWarmUp>>();
 
-        for (SpecificPlaylistProvider service : _serviceLoader)
+        for (SpecificPlaylistProvider provider : _registry.getProviders())
         {
-            ret.add(service);
+            final FutureTask<ProviderWarmUp> task = new FutureTask<ProviderWarmUp>(new WarmUpTask(provider, _logger)); // NOPMD Avoid instantiating new objects inside loops
+            executor.execute(task); // Throws NullPointerException if executor is null. May throw RejectedExecutionException.
+            tasks.add(task);
+        }
+
+        final List<ProviderWarmUp> ret = new ArrayList<ProviderWarmUp>(tasks.size());
+
+        for (FutureTask<ProviderWarmUp> task : tasks)
+        {
+            try
+            {
+                final ProviderWarmUp warmUp = task.get(); // May throw InterruptedException, ExecutionException, CancellationException.
+                _logger.debug("Warmed up provider " + warmUp);
+                ret.add(warmUp);
+            }
+            catch (ExecutionException e)
+            {
+                // Shall not occur, as the warm-up task catches everything.
+                throw new IllegalStateException(e.getCause()); // NOPMD Avoid instantiating new objects inside loops
+            }
         }
 
         return ret;
     }
+
+    /**
+     * Warms up a given playlist provider.
+     * @version $Revision: 92 $
+     * @author Christophe Delory
+     * @since 1.3.0
+     */
+    private static final class WarmUpTask implements Callable<ProviderWarmUp>
+    {
+        /**
+         * The provider to warm up.
+         */
+        private final SpecificPlaylistProvider _provider;
+
+        /**
+         * The logger given to the provider.
+         */
+        private final Log _logger;
+
+        /**
+         * Builds a new warm-up task.
+         * @param provider the provider to warm up. Shall not be <code>null</code>.
+         * @param logger the logger given to the provider. Shall not be <code>null</code>.
+         */
+        private WarmUpTask(final SpecificPlaylistProvider provider, final Log logger)
+        {
+            _provider = provider;
+            _logger = logger;
+        }
+
+        @Override
+        public ProviderWarmUp call()
+        {
+            final long start = System.nanoTime();
+            Throwable error = null;
+
+            try
+            {
+                final Media media = new Media();
+                media.setSource(new Content("warm-up.mp3"));
+                final Playlist playlist = new Playlist();
+                playlist.getRootSequence().addComponent(media);
+
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                _provider.toSpecificPlaylist(playlist).writeTo(out, null); // May throw Exception.
+                _provider.readFrom(new ByteArrayInputStream(out.toByteArray()), null, _logger); // May throw Exception.
+            }
+            catch (Throwable t) // NOPMD Avoid catching Throwable
+            {
+                // Also catch the errors related to the class loading.
+                error = t;
+            }
+
+            return new ProviderWarmUp(_provider, System.nanoTime() - start, error);
+        }
+    }
+
+    /**
+     * Holds the singleton instance, built when this class is first accessed (initialization-on-demand holder idiom).
+     * @version $Revision: 92 $
+     * @author Christophe Delory
+     */
+    private static final class InstanceHolder
+    {
+        /**
+         * The singleton instance.
+         */
+        private static final SpecificPlaylistFactory INSTANCE = new SpecificPlaylistFactory();
+
+        /**
+         * The default no-arg constructor shall not be accessible.
+         */
+        private InstanceHolder()
+        {
+        }
+    }
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist;
+
+/**
+ * An optional extension of a {@link SpecificPlaylistProvider specific playlist provider}, allowing it to tell quickly if some contents look like a playlist it handles.
+ * When reading an unknown playlist, the {@link SpecificPlaylistFactory factory} first asks each probing provider to score the beginning of the contents,
+ * and then only tries the providers which didn't reject them, the best scores first.
+ * A provider which does not implement this interface is considered as a {@link #POSSIBLE_MATCH possible match}.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+public interface SpecificPlaylistProbe
+{
+    /**
+     * The score meaning that the contents are surely not handled by the provider.
+     * The provider will not be asked to read the contents.
+     */
+    int NO_MATCH = 0;
+
+    /**
+     * The score meaning that the provider may handle the contents, but nothing in the header tells it for sure.
+     */
+    int POSSIBLE_MATCH = 25;
+
+    /**
+     * The score meaning that the header looks like the contents handled by the provider, although other providers may share the same kind of header.
+     */
+    int LIKELY_MATCH = 75;
+
+    /**
+     * The score meaning that the header contains the signature of the contents handled by the provider.
+     */
+    int CERTAIN_MATCH = 100;
+
+    /**
+     * Scores the specified playlist header.
+     * The result shall be {@link #NO_MATCH} only if the {@link SpecificPlaylistProvider#readFrom reading} of the whole contents would surely fail.
+     * When in doubt (for example if the header is too small to decide), {@link #POSSIBLE_MATCH} shall be returned.
+     * @param header the beginning of the contents to score. Shall not be <code>null</code>.
+     * @return a score between {@link #NO_MATCH} and {@link #CERTAIN_MATCH}, the highest value meaning the most relevant provider.
+     * @throws NullPointerException if <code>header</code> is <code>null</code>.
+     * @see PlaylistHeader
+     */
+    int probe(final PlaylistHeader header);
+}
@@ -68,11 +68,16 @@ public interface SpecificPlaylistProvider
 
     /**
      * Builds a specific representation of the given generic playlist.
+     * The whole specific playlist is built in memory, independently of the generic one:
+     * a format which cannot express the repetition of a media, such as M3U or XSPF, holds one entry per repetition.
+     * A huge repeat count, such as an ASX <code>&lt;repeat count="100000"&gt;</code>, gives as many entries.
+     * If this provider is also a {@link StreamingPlaylistWriter}, prefer its <code>writeTo</code> method in order to write such a playlist.
      * @param playlist a generic playlist. Shall not be <code>null</code>.
      * @return a specific service playlist. Shall not be <code>null</code>.
      * @throws NullPointerException if <code>playlist</code> is <code>null</code>.
      * @throws Exception if this service provider is unable to represent the input playlist.
      * @see SpecificPlaylist#toPlaylist
+     * @see StreamingPlaylistWriter#writeTo
      */
     SpecificPlaylist toSpecificPlaylist(final Playlist playlist) throws Exception;
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist;
+
+import java.io.InputStream;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * An optional extension of a {@link SpecificPlaylistProvider specific playlist provider}, allowing it to read the media of a playlist in a single pass.
+ * Contrary to {@link SpecificPlaylistProvider#readFrom}, the memory needed doesn't depend on the size of the playlist,
+ * so that very large playlists can be processed.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+public interface StreamingPlaylistProvider
+{
+    /**
+     * Opens a stream of media on the playlist read from the specified input stream.
+     * The input stream is read as the media are requested, and closed along with the returned media stream.
+     * Because the media are returned as soon as they are read, an error in the playlist may be reported after some media have already been returned.
+     * @param in an input stream. Shall not be <code>null</code>.
+     * @param encoding the content encoding of the input resource, or <code>null</code> if not known.
+     * @param logger the logger that may be used during the unmarshalling process, if needed. Shall not be <code>null</code>.
+     * @return a new media stream. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>in</code> is <code>null</code>.
+     * @throws NullPointerException if <code>logger</code> is <code>null</code>.
+     * @throws Exception if any error occurs while opening the stream, for example if the contents are not handled by this provider.
+     * @see MediaStream#next
+     * @see SpecificPlaylistProvider#readFrom
+     */
+    MediaStream openStream(final InputStream in, final String encoding, final Log logger) throws Exception;
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist;
+
+import java.io.OutputStream;
+
+/**
+ * An optional extension of a {@link SpecificPlaylistProvider specific playlist provider}, allowing it to write a generic playlist without building its specific representation.
+ * The entries are written as the generic playlist is walked, so that the memory needed doesn't depend on the size of the playlist.
+ * This is the only provider path which benefits from the run-length walk of a {@link PlaylistCursor}:
+ * a media repeated many times is written as many times from a single object,
+ * whereas {@link SpecificPlaylistProvider#toSpecificPlaylist} builds one entry per repetition.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+public interface StreamingPlaylistWriter
+{
+    /**
+     * Writes the specific representation of the given generic playlist to the specified output stream.
+     * The result is the same as <code>toSpecificPlaylist(playlist).writeTo(out, encoding)</code>.
+     * When done, the stream is flushed, but not closed.
+     * <br>
+     * If the input playlist cannot be represented, an exception is thrown, and some entries may already have been written.
+     * @param playlist a generic playlist. Shall not be <code>null</code>.
+     * @param out an output stream. Shall not be <code>null</code>.
+     * @param encoding the content encoding of the output resource, or <code>null</code> if not known.
+     * @throws NullPointerException if <code>playlist</code> is <code>null</code>.
+     * @throws NullPointerException if <code>out</code> is <code>null</code>.
+     * @throws Exception if this service provider is unable to represent the input playlist, or if any error occurs during the marshalling process.
+     * @see SpecificPlaylistProvider#toSpecificPlaylist
+     * @see SpecificPlaylist#writeTo
+     */
+    void writeTo(final Playlist playlist, final OutputStream out, final String encoding) throws Exception;
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.xml;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A character stream which repairs the bare ampersands found in malformed XML contents, while reading them.
+ * Each '<code>&amp;</code>' which does not start a character or entity reference (i.e. which is not followed by a name made of letters, digits or '<code>#</code>', and then by '<code>;</code>')
+ * is replaced by "<code>&amp;amp;</code>"; all the other characters are returned as is.
+ * <br>
+ * This is the same repair as replacing blindly all '<code>&amp;</code>' by "<code>&amp;amp;</code>", and then restoring the existing references with the regular expression <code>&amp;amp;([a-zA-Z0-9#]+;)</code>,
+ * except that the look-ahead is bounded: a reference name longer than {@link #MAX_NAME_LENGTH} characters is not considered as such.
+ * The contents are thus never entirely held in memory.
+ * <br>
+ * This stream does not support {@link #mark marking}, and shall not be used by several threads at the same time.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+public class AmpersandRepairReader extends FilterReader
+{
+    /**
+     * The maximum number of characters in the name of a reference, between the '<code>&amp;</code>' and the '<code>;</code>'.
+     */
+    public static final int MAX_NAME_LENGTH = 32;
+
+    /**
+     * The characters to insert after a bare ampersand.
+     */
+    private static final char[] ESCAPE = { 'a', 'm', 'p', ';' };
+
+    /**
+     * The characters read from the underlying stream, but not returned yet.
+     */
+    private final char[] _buffer = new char[8 * 1024];
+
+    /**
+     * The index of the next character to return in {@link #_buffer}.
+     */
+    private int _position = 0;
+
+    /**
+     * The number of valid characters in {@link #_buffer}.
+     */
+    private int _limit = 0;
+
+    /**
+     * The index of the next character to return in {@link #ESCAPE}, or its length if no escape is in progress.
+     */
+    private int _escape = ESCAPE.length;
+
+    /**
+     * A buffer used by {@link #read()}.
+     */
+    private final char[] _single = new char[1];
+
+    /**
+     * Builds a new repairing reader on top of the specified character stream.
+     * @param in a character stream. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>in</code> is <code>null</code>.
+     */
+    public AmpersandRepairReader(final Reader in)
+    {
+        super(in); // Throws NullPointerException if in is null.
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        final int nb = read(_single, 0, 1); // May throw IOException.
+
+        return (nb < 0) ? -1 : _single[0];
+    }
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) throws IOException
+    {
+        if ((off < 0) || (len < 0) || (len > (cbuf.length - off))) // Throws NullPointerException if cbuf is null.
+        {
+            throw new IndexOutOfBoundsException();
+        }
+
+        int ret = 0;
+
+        while (ret < len)
+        {
+            if (_escape < ESCAPE.length)
+            {
+                cbuf[off + ret] = ESCAPE[_escape];
+                _escape++;
+                ret++;
+            }
+            else if ((_position >= _limit) && ((ret > 0) || !fill(1))) // May throw IOException.
+            {
+                // Return what we have, rather than blocking again.
+                break;
+            }
+            else if (_buffer[_position] == '&')
+            {
+                if (!isReference()) // May throw IOException.
+                {
+                    _escape = 0;
+                }
+
+                cbuf[off + ret] = '&';
+                _position++;
+                ret++;
+            }
+            else
+            {
+                // Copy the characters up to the next ampersand.
+                final int max = Math.min(_limit, _position + (len - ret));
+                int end = _position + 1;
+
+                while ((end < max) && (_buffer[end] != '&'))
+                {
+                    end++;
+                }
+
+                System.arraycopy(_buffer, _position, cbuf, off + ret, end - _position);
+                ret += end - _position;
+                _position = end;
+            }
+        }
+
+        return ((ret == 0) && (len > 0)) ? -1 : ret;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException
+    {
+        if (n < 0L)
+        {
+            throw new IllegalArgumentException("Negative skip length " + n);
+        }
+
+        final char[] skipped = new char[(int) Math.min(n, 512L)];
+        long ret = 0L;
+
+        while (ret < n)
+        {
+            final int nb = read(skipped, 0, (int) Math.min(n - ret, skipped.length)); // May throw IOException.
+
+            if (nb < 0)
+            {
+                break;
+            }
+
+            ret += nb;
+        }
+
+        return ret;
+    }
+
+    @Override
+    public boolean ready() throws IOException
+    {
+        return (_escape < ESCAPE.length) || (_position < _limit) || in.ready(); // May throw IOException.
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+        return false;
+    }
+
+    @Override
+    public void mark(final int readAheadLimit) throws IOException
+    {
+        throw new IOException("mark() not supported");
+    }
+
+    @Override
+    public void reset() throws IOException
+    {
+        throw new IOException("reset() not supported");
+    }
+
+    /**
+     * Specifies if the ampersand at the current position starts a character or entity reference.
+     * @return <code>true</code> if the ampersand shall be kept as is, <code>false</code> if it shall be escaped.
+     * @throws IOException if an I/O error occurs.
+     */
+    private boolean isReference() throws IOException
+    {
+        fill(MAX_NAME_LENGTH + 2); // May throw IOException.
+
+        final int start = _position + 1;
+        final int max = Math.min(_limit, start + MAX_NAME_LENGTH);
+        int end = start;
+
+        while ((end < max) && isNameChar(_buffer[end]))
+        {
+            end++;
+        }
+
+        return (end > start) && (end < _limit) && (_buffer[end] == ';');
+    }
+
+    /**
+     * Reads from the underlying stream until the specified number of characters are available, or the end of the stream is reached.
+     * @param count the minimum number of characters wanted. Shall be lower than the buffer size.
+     * @return <code>true</code> if at least one character is available.
+     * @throws IOException if an I/O error occurs.
+     */
+    private boolean fill(final int count) throws IOException
+    {
+        if ((_limit - _position) < count)
+        {
+            // Move the remaining characters to the beginning of the buffer.
+            System.arraycopy(_buffer, _position, _buffer, 0, _limit - _position);
+            _limit -= _position;
+            _position = 0;
+
+            while (_limit < count)
+            {
+                final int nb = in.read(_buffer, _limit, _buffer.length - _limit); // May throw IOException.
+
+                if (nb < 0)
+                {
+                    break;
+                }
+
+                _limit += nb;
+            }
+        }
+
+        return _position < _limit;
+    }
+
+    /**
+     * Specifies if the given character may appear in the name of a reference.
+     * @param c a character.
+     * @return <code>true</code> if the character is an ASCII letter or digit, or '<code>#</code>'.
+     */
+    private static boolean isNameChar(final char c)
+    {
+        return ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')) || ((c >= '0') && (c <= '9')) || (c == '#');
+    }
+}
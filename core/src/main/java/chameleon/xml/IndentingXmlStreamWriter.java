@@ -0,0 +1,728 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.xml;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * A StAX writer producing the same output as the Castor marshaller, i.e. as the Xerces serializer it relies on.
+ * When indenting, each element starts on a new line, indented by 4 spaces per level, and the attributes are wrapped so that a line does not exceed 72 characters when possible.
+ * The text of an element is never wrapped.
+ * The characters which cannot be represented in the output encoding are written as character references, as well as the supplementary characters.
+ * <br>
+ * Only the elements, attributes and texts are supported: the namespaces, comments, processing instructions, CDATA sections, DTD and entity references are not.
+ * This class shall not be used by several threads at the same time.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ * @see XmlBinding
+ */
+final class IndentingXmlStreamWriter implements XMLStreamWriter
+{
+    /**
+     * The number of spaces per indentation level.
+     */
+    private static final int INDENT = 4;
+
+    /**
+     * The preferred maximum line width.
+     */
+    private static final int LINE_WIDTH = 72;
+
+    /**
+     * When not indenting, the number of pending characters above which they are written.
+     */
+    private static final int BUFFER_SIZE = 4096;
+
+    /**
+     * The underlying writer.
+     */
+    private final Writer _out;
+
+    /**
+     * The output encoding.
+     */
+    private final String _encoding;
+
+    /**
+     * The encoder used to check if a character can be represented in the output encoding.
+     */
+    private final CharsetEncoder _encoder;
+
+    /**
+     * Specifies if the output shall be indented.
+     */
+    private final boolean _indenting;
+
+    /**
+     * The elements opened so far, from the root element.
+     */
+    private final List<ElementState> _states = new ArrayList<ElementState>();
+
+    /**
+     * When indenting, the current line, not yet written.
+     */
+    private final StringBuilder _line = new StringBuilder(80);
+
+    /**
+     * When indenting, the current word, not yet appended to the current line.
+     */
+    private final StringBuilder _text = new StringBuilder(20);
+
+    /**
+     * When indenting, the number of spaces to insert between the current line and the current word.
+     */
+    private int _spaces = 0;
+
+    /**
+     * When indenting, the indentation of the current line.
+     */
+    private int _thisIndent = 0;
+
+    /**
+     * When indenting, the indentation of the next line.
+     */
+    private int _nextIndent = 0;
+
+    /**
+     * Builds a new XML writer.
+     * @param out the underlying writer. Shall not be <code>null</code>.
+     * @param encoding the encoding of the underlying writer. Shall not be <code>null</code>.
+     * @param indenting if <code>true</code>, the XML elements are indented.
+     * @throws NullPointerException if <code>encoding</code> is <code>null</code>.
+     * @throws java.nio.charset.IllegalCharsetNameException if the given charset name is illegal.
+     * @throws java.nio.charset.UnsupportedCharsetException if no support for the named charset is available.
+     * @throws UnsupportedOperationException if the charset does not support encoding.
+     */
+    IndentingXmlStreamWriter(final Writer out, final String encoding, final boolean indenting)
+    {
+        _out = out;
+        _encoding = encoding;
+        _encoder = Charset.forName(encoding).newEncoder(); // Throws NullPointerException if encoding is null. May throw IllegalCharsetNameException, UnsupportedCharsetException, UnsupportedOperationException.
+        _indenting = indenting;
+    }
+
+    @Override
+    public void writeStartDocument() throws XMLStreamException
+    {
+        writeStartDocument(_encoding, "1.0");
+    }
+
+    @Override
+    public void writeStartDocument(final String version) throws XMLStreamException
+    {
+        writeStartDocument(_encoding, version);
+    }
+
+    @Override
+    public void writeStartDocument(final String encoding, final String version) throws XMLStreamException
+    {
+        if (!_states.isEmpty())
+        {
+            throw new XMLStreamException("The document has already started");
+        }
+
+        printText("<?xml version=\"" + version + "\" encoding=\"" + encoding + "\"?>");
+        breakLine(); // May throw XMLStreamException.
+    }
+
+    @Override
+    public void writeStartElement(final String localName) throws XMLStreamException
+    {
+        if (!_states.isEmpty())
+        {
+            final ElementState parent = _states.get(_states.size() - 1);
+
+            if (parent.empty)
+            {
+                printText('>');
+            }
+
+            // Indent this element on a new line if it is the first content of its parent, or if it follows another element.
+            if (_indenting && (parent.empty || parent.afterElement))
+            {
+                breakLine(); // May throw XMLStreamException.
+            }
+        }
+
+        printText('<');
+        printText(localName);
+        _nextIndent += INDENT;
+        _states.add(new ElementState(localName));
+        drain(); // May throw XMLStreamException.
+    }
+
+    @Override
+    public void writeStartElement(final String namespaceURI, final String localName) throws XMLStreamException
+    {
+        throw new UnsupportedOperationException("Namespaces are not supported");
+    }
+
+    @Override
+    public void writeStartElement(final String prefix, final String localName, final String namespaceURI) throws XMLStreamException
+    {
+        throw new UnsupportedOperationException("Namespaces are not supported");
+    }
+
+    @Override
+    public void writeEmptyElement(final String namespaceURI, final String localName) throws XMLStreamException
+    {
+        throw new UnsupportedOperationException("Namespaces are not supported");
+    }
+
+    @Override
+    public void writeEmptyElement(final String prefix, final String localName, final String namespaceURI) throws XMLStreamException
+    {
+        throw new UnsupportedOperationException("Namespaces are not supported");
+    }
+
+    @Override
+    public void writeEmptyElement(final String localName) throws XMLStreamException
+    {
+        throw new UnsupportedOperationException("Use writeStartElement() and writeEndElement()");
+    }
+
+    @Override
+    public void writeAttribute(final String localName, final String value) throws XMLStreamException
+    {
+        if (_states.isEmpty() || !_states.get(_states.size() - 1).empty)
+        {
+            throw new XMLStreamException("No element start to write the attribute " + localName + " to");
+        }
+
+        // Each attribute is a separate word, so that the element can be broken on multiple lines.
+        printSpace(); // May throw XMLStreamException.
+        printText(localName);
+        printText("=\"");
+        printEscaped(value, true); // Throws NullPointerException if value is null. May throw XMLStreamException.
+        printText('"');
+        drain(); // May throw XMLStreamException.
+    }
+
+    @Override
+    public void writeAttribute(final String prefix, final String namespaceURI, final String localName, final String value) throws XMLStreamException
+    {
+        throw new UnsupportedOperationException("Namespaces are not supported");
+    }
+
+    @Override
+    public void writeAttribute(final String namespaceURI, final String localName, final String value) throws XMLStreamException
+    {
+        throw new UnsupportedOperationException("Namespaces are not supported");
+    }
+
+    @Override
+    public void writeNamespace(final String prefix, final String namespaceURI) throws XMLStreamException
+    {
+        throw new UnsupportedOperationException("Namespaces are not supported");
+    }
+
+    @Override
+    public void writeDefaultNamespace(final String namespaceURI) throws XMLStreamException
+    {
+        throw new UnsupportedOperationException("Namespaces are not supported");
+    }
+
+    @Override
+    public void writeCharacters(final String text) throws XMLStreamException
+    {
+        content(); // May throw XMLStreamException.
+        printEscaped(text, false); // Throws NullPointerException if text is null. May throw XMLStreamException.
+        drain(); // May throw XMLStreamException.
+    }
+
+    @Override
+    public void writeCharacters(final char[] text, final int start, final int len) throws XMLStreamException
+    {
+        writeCharacters(new String(text, start, len)); // Throws NullPointerException if text is null. May throw IndexOutOfBoundsException, XMLStreamException.
+    }
+
+    @Override
+    public void writeEndElement() throws XMLStreamException
+    {
+        if (_states.isEmpty())
+        {
+            throw new XMLStreamException("No element to end");
+        }
+
+        _nextIndent = Math.max(0, _nextIndent - INDENT);
+
+        // If there is no current line, this indentation level is actually the one of the next line.
+        if ((_line.length() + _spaces + _text.length()) == 0)
+        {
+            _thisIndent = _nextIndent;
+        }
+
+        final ElementState state = _states.remove(_states.size() - 1);
+
+        if (state.empty)
+        {
+            printText("/>");
+        }
+        else
+        {
+            // The last content was another element, so print a line break before the closing tag.
+            if (_indenting && state.afterElement)
+            {
+                breakLine(); // May throw XMLStreamException.
+            }
+
+            printText("</");
+            printText(state.name);
+            printText('>');
+        }
+
+        if (_states.isEmpty())
+        {
+            flush(); // May throw XMLStreamException.
+        }
+        else
+        {
+            final ElementState parent = _states.get(_states.size() - 1);
+            parent.afterElement = true;
+            parent.empty = false;
+            drain(); // May throw XMLStreamException.
+        }
+    }
+
+    @Override
+    public void writeEndDocument() throws XMLStreamException
+    {
+        while (!_states.isEmpty())
+        {
+            writeEndElement(); // May throw XMLStreamException.
+        }
+
+        flush(); // May throw XMLStreamException.
+    }
+
+    @Override
+    public void close() throws XMLStreamException
+    {
+        flush(); // May throw XMLStreamException.
+    }
+
+    @Override
+    public void flush() throws XMLStreamException
+    {
+        if (!_indenting)
+        {
+            write(""); // May throw XMLStreamException.
+        }
+        else if ((_line.length() > 0) || (_text.length() > 0))
+        {
+            breakLine(); // May throw XMLStreamException.
+        }
+
+        try
+        {
+            _out.flush(); // May throw IOException.
+        }
+        catch (IOException e)
+        {
+            throw new XMLStreamException(e);
+        }
+    }
+
+    @Override
+    public void writeComment(final String data) throws XMLStreamException
+    {
+        throw new UnsupportedOperationException("Comments are not supported");
+    }
+
+    @Override
+    public void writeProcessingInstruction(final String target) throws XMLStreamException
+    {
+        throw new UnsupportedOperationException("Processing instructions are not supported");
+    }
+
+    @Override
+    public void writeProcessingInstruction(final String target, final String data) throws XMLStreamException
+    {
+        throw new UnsupportedOperationException("Processing instructions are not supported");
+    }
+
+    @Override
+    public void writeCData(final String data) throws XMLStreamException
+    {
+        throw new UnsupportedOperationException("CDATA sections are not supported");
+    }
+
+    @Override
+    public void writeDTD(final String dtd) throws XMLStreamException
+    {
+        throw new UnsupportedOperationException("DTD are not supported");
+    }
+
+    @Override
+    public void writeEntityRef(final String name) throws XMLStreamException
+    {
+        throw new UnsupportedOperationException("Entity references are not supported");
+    }
+
+    @Override
+    public String getPrefix(final String uri) throws XMLStreamException
+    {
+        return null;
+    }
+
+    @Override
+    public void setPrefix(final String prefix, final String uri) throws XMLStreamException
+    {
+        throw new UnsupportedOperationException("Namespaces are not supported");
+    }
+
+    @Override
+    public void setDefaultNamespace(final String uri) throws XMLStreamException
+    {
+        throw new UnsupportedOperationException("Namespaces are not supported");
+    }
+
+    @Override
+    public void setNamespaceContext(final NamespaceContext context) throws XMLStreamException
+    {
+        throw new UnsupportedOperationException("Namespaces are not supported");
+    }
+
+    @Override
+    public NamespaceContext getNamespaceContext()
+    {
+        return null;
+    }
+
+    @Override
+    public Object getProperty(final String name)
+    {
+        throw new IllegalArgumentException("Unsupported property " + name);
+    }
+
+    /**
+     * Closes the start tag of the current element if necessary, before writing some text in it.
+     * @throws XMLStreamException if there is no current element.
+     */
+    private void content() throws XMLStreamException
+    {
+        if (_states.isEmpty())
+        {
+            throw new XMLStreamException("No element to write the text to");
+        }
+
+        final ElementState state = _states.get(_states.size() - 1);
+
+        if (state.empty)
+        {
+            printText('>');
+            state.empty = false;
+        }
+
+        state.afterElement = false;
+    }
+
+    /**
+     * Writes the specified text, escaping the characters as needed.
+     * @param s the text to write. Shall not be <code>null</code>.
+     * @param attribute specifies if the text is an attribute value (<code>true</code>) or the content of an element (<code>false</code>).
+     * @throws NullPointerException if <code>s</code> is <code>null</code>.
+     * @throws XMLStreamException if the text contains an invalid XML character.
+     */
+    private void printEscaped(final String s, final boolean attribute) throws XMLStreamException
+    {
+        final int length = s.length(); // Throws NullPointerException if s is null.
+
+        for (int i = 0; i < length; i++)
+        {
+            final char ch = s.charAt(i);
+
+            if (!isValid(ch))
+            {
+                // Shall be a surrogate pair.
+                i++;
+
+                if (!Character.isHighSurrogate(ch) || (i >= length))
+                {
+                    throw invalidCharacter(ch);
+                }
+
+                if (!Character.isLowSurrogate(s.charAt(i)))
+                {
+                    throw invalidCharacter(s.charAt(i));
+                }
+
+                printHex(Character.toCodePoint(ch, s.charAt(i)));
+            }
+            else if (ch == '<')
+            {
+                printText("&lt;");
+            }
+            else if (ch == '&')
+            {
+                printText("&amp;");
+            }
+            else if (attribute && (ch == '"'))
+            {
+                printText("&quot;");
+            }
+            else if (!attribute && (ch == '>'))
+            {
+                printText("&gt;");
+            }
+            else if (attribute && ((ch == '\n') || (ch == '\r') || (ch == '\t')))
+            {
+                printHex(ch);
+            }
+            else if (!attribute && ((ch == '\n') || (ch == '\t')))
+            {
+                printText(ch);
+            }
+            else if ((ch >= ' ') && ((ch < '\u0080') || _encoder.canEncode(ch)))
+            {
+                printText(ch);
+            }
+            else
+            {
+                printHex(ch);
+            }
+        }
+    }
+
+    /**
+     * Writes a character reference.
+     * @param ch a Unicode code point.
+     */
+    private void printHex(final int ch)
+    {
+        printText("&#x");
+        printText(Integer.toHexString(ch));
+        printText(';');
+    }
+
+    /**
+     * Appends the specified text to the output.
+     * @param s a text. Shall not be <code>null</code>.
+     */
+    private void printText(final String s)
+    {
+        _text.append(s);
+    }
+
+    /**
+     * Appends the specified character to the output.
+     * @param ch a character.
+     */
+    private void printText(final char ch)
+    {
+        _text.append(ch);
+    }
+
+    /**
+     * Ends the current word.
+     * When indenting, the line is broken before this word if it doesn't fit in the line width.
+     * @throws XMLStreamException if an I/O error occurred.
+     */
+    private void printSpace() throws XMLStreamException
+    {
+        if (_indenting)
+        {
+            if (_text.length() > 0)
+            {
+                if ((_thisIndent + _line.length() + _spaces + _text.length()) > LINE_WIDTH)
+                {
+                    flushLine(); // May throw XMLStreamException.
+                    write("\n"); // May throw XMLStreamException.
+                }
+
+                appendText();
+            }
+
+            _spaces++;
+        }
+        else
+        {
+            _text.append(' ');
+        }
+    }
+
+    /**
+     * Ends the current line.
+     * @throws XMLStreamException if an I/O error occurred.
+     */
+    private void breakLine() throws XMLStreamException
+    {
+        if (_indenting)
+        {
+            if (_text.length() > 0)
+            {
+                appendText();
+            }
+
+            flushLine(); // May throw XMLStreamException.
+        }
+
+        write("\n"); // May throw XMLStreamException.
+    }
+
+    /**
+     * Appends the current word to the current line, after the pending spaces.
+     */
+    private void appendText()
+    {
+        for (; _spaces > 0; _spaces--)
+        {
+            _line.append(' ');
+        }
+
+        _line.append(_text);
+        _text.setLength(0);
+    }
+
+    /**
+     * Writes the current line, indented, without any line separator.
+     * @throws XMLStreamException if an I/O error occurred.
+     */
+    private void flushLine() throws XMLStreamException
+    {
+        if (_line.length() > 0)
+        {
+            // Make sure the indentation does not blow us away.
+            int indent = _thisIndent;
+
+            if ((2 * indent) > LINE_WIDTH)
+            {
+                indent = LINE_WIDTH / 2;
+            }
+
+            final StringBuilder sb = new StringBuilder(indent + _line.length());
+
+            for (; indent > 0; indent--)
+            {
+                sb.append(' ');
+            }
+
+            sb.append(_line);
+            _thisIndent = _nextIndent;
+            // The spaces at the end of the line are simply dropped.
+            _spaces = 0;
+            _line.setLength(0);
+            write(sb.toString()); // May throw XMLStreamException.
+        }
+    }
+
+    /**
+     * Writes the pending text when not indenting, once there are enough characters.
+     * @throws XMLStreamException if an I/O error occurred.
+     */
+    private void drain() throws XMLStreamException
+    {
+        if (!_indenting && (_text.length() >= BUFFER_SIZE))
+        {
+            write(""); // May throw XMLStreamException.
+        }
+    }
+
+    /**
+     * Writes the specified text to the underlying writer, after the pending text if not indenting.
+     * @param s a text. Shall not be <code>null</code>.
+     * @throws XMLStreamException if an I/O error occurred.
+     */
+    private void write(final String s) throws XMLStreamException
+    {
+        try
+        {
+            if (!_indenting)
+            {
+                _out.append(_text); // May throw IOException.
+                _text.setLength(0);
+            }
+
+            _out.write(s); // May throw IOException.
+        }
+        catch (IOException e)
+        {
+            throw new XMLStreamException(e);
+        }
+    }
+
+    /**
+     * Tells if the specified character is a valid XML character by itself.
+     * @param ch a character.
+     * @return <code>true</code> if the character is valid, <code>false</code> if it is invalid or a part of a surrogate pair.
+     */
+    private static boolean isValid(final char ch)
+    {
+        return ((ch >= ' ') && (ch <= '\uD7FF')) || (ch == '\n') || (ch == '\r') || (ch == '\t') || ((ch >= '\uE000') && (ch <= '\uFFFD'));
+    }
+
+    /**
+     * Builds the error raised when an invalid XML character is found.
+     * @param ch the invalid character.
+     * @return an exception. Shall not be <code>null</code>.
+     */
+    private static XMLStreamException invalidCharacter(final char ch)
+    {
+        return new XMLStreamException("The character '" + ch + "' is an invalid XML character");
+    }
+
+    /**
+     * The state of an opened element.
+     * @version $Revision: 92 $
+     * @author Christophe Delory
+     * @since 1.3.0
+     */
+    private static final class ElementState
+    {
+        /**
+         * The element name.
+         */
+        private final String name;
+
+        /**
+         * Specifies if the element has no content yet, i.e. if its start tag is still open.
+         */
+        private boolean empty = true;
+
+        /**
+         * Specifies if the last content of the element is a child element.
+         */
+        private boolean afterElement = false;
+
+        /**
+         * Builds the state of a new element.
+         * @param elementName the element name. Shall not be <code>null</code>.
+         */
+        private ElementState(final String elementName)
+        {
+            name = elementName;
+        }
+    }
+}
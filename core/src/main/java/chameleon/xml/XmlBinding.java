@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.xml;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * The Java-XML binding of the classes of a given package, generated at build time from their Castor mapping.
+ * A subclass named <code>StaxBinding</code> is generated in the package of the mapped classes, from the same <code>@castor.*</code> javadoc tags than the mapping file,
+ * and reads and writes these classes through StAX, without any reflection.
+ * It follows the rules applied by Castor with the same mapping: the namespaces are ignored (except that an element holding a simple value shall not be qualified),
+ * the unknown attributes are ignored, and the output is formatted the same way.
+ * <br>
+ * An instance is stateless, and can be used by several threads at the same time.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ * @see XmlSerializer
+ */
+public abstract class XmlBinding
+{
+    /**
+     * Reads an object from the specified XML stream, up to the end of the document.
+     * @param reader a StAX reader, positioned before the root element. It shall not be namespace aware. Shall not be <code>null</code>.
+     * @param ignoreExtraElements if <code>true</code>, the elements not described by the mapping are ignored; otherwise they raise an error.
+     * @return the object bound to the root element. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>reader</code> is <code>null</code>.
+     * @throws XMLStreamException if the document is malformed, or doesn't match the mapping.
+     */
+    public final Object unmarshal(final XMLStreamReader reader, final boolean ignoreExtraElements) throws XMLStreamException
+    {
+        final XmlBindingReader bindingReader = new XmlBindingReader(reader, ignoreExtraElements);
+
+        if (!bindingReader.nextRoot()) // Throws NullPointerException if reader is null. May throw XMLStreamException.
+        {
+            throw new XMLStreamException("No root element");
+        }
+
+        final String name = bindingReader.getQualifiedName();
+        final Object ret;
+
+        try
+        {
+            ret = read(bindingReader); // May throw XMLStreamException, IllegalArgumentException.
+        }
+        catch (IllegalArgumentException e)
+        {
+            // A value rejected by a setter.
+            throw new XMLStreamException(e);
+        }
+
+        if (ret == null)
+        {
+            throw new XMLStreamException("The class for the root element '" + name + "' could not be found.");
+        }
+
+        // Parse the rest of the document, so that it is checked as well.
+        bindingReader.finish(); // May throw XMLStreamException.
+
+        return ret;
+    }
+
+    /**
+     * Reads the object bound to the root element.
+     * @param reader the XML stream, positioned on the start of the root element. Shall not be <code>null</code>.
+     * @return the object bound to the root element, read up to its end, or <code>null</code> if no class is bound to this element.
+     * @throws XMLStreamException if the element is malformed, or doesn't match the mapping.
+     */
+    protected abstract Object read(XmlBindingReader reader) throws XMLStreamException;
+
+    /**
+     * Writes the specified object as the root element of an XML stream.
+     * @param o the object to write. Shall not be <code>null</code>.
+     * @param writer a StAX writer. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>o</code> is <code>null</code>.
+     * @throws NullPointerException if <code>writer</code> is <code>null</code>.
+     * @throws XMLStreamException if the class of the object is not mapped, if a required value is missing, or if the writing failed.
+     */
+    public abstract void marshal(Object o, XMLStreamWriter writer) throws XMLStreamException;
+
+    /**
+     * Parses an integer value, as Castor does: the surrounding white spaces are ignored, and an empty value stands for zero.
+     * @param value the text to parse. Shall not be <code>null</code>.
+     * @return the integer value.
+     * @throws NullPointerException if <code>value</code> is <code>null</code>.
+     * @throws XMLStreamException if the value is not an integer.
+     */
+    protected static int parseInt(final String value) throws XMLStreamException
+    {
+        final String s = value.trim(); // Throws NullPointerException if value is null.
+        int ret = 0;
+
+        if (s.length() > 0)
+        {
+            try
+            {
+                ret = Integer.parseInt(s); // Throws NumberFormatException.
+            }
+            catch (NumberFormatException e)
+            {
+                throw new XMLStreamException("Invalid integer value '" + value + "'", e);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Builds the error raised when a required value is missing.
+     * @param fieldName the name of the field. Shall not be <code>null</code>.
+     * @param xmlName the XML name of the field. Shall not be <code>null</code>.
+     * @param className the name of the class owning the field. Shall not be <code>null</code>.
+     * @return an exception. Shall not be <code>null</code>.
+     */
+    protected static XMLStreamException requiredField(final String fieldName, final String xmlName, final String className)
+    {
+        return new XMLStreamException("The field '" + fieldName + "' (whose xml name is '" + xmlName + "') is a required field of class '" + className + "'");
+    }
+
+    /**
+     * Builds the error raised when a collection holds a <code>null</code> item.
+     * @param fieldName the name of the collection field. Shall not be <code>null</code>.
+     * @param className the name of the class owning the field. Shall not be <code>null</code>.
+     * @return an exception. Shall not be <code>null</code>.
+     */
+    protected static XMLStreamException nullItem(final String fieldName, final String className)
+    {
+        return new XMLStreamException("The field '" + fieldName + "' of class '" + className + "' contains a null object");
+    }
+}
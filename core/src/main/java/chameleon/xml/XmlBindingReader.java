@@ -0,0 +1,597 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.xml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * An XML stream read by a generated {@link XmlBinding}.
+ * The underlying StAX reader shall not be namespace aware, as Castor accepts the undeclared prefixes:
+ * the names are given without their prefix, and the namespace declarations are resolved here, only when asked for.
+ * <br>
+ * A binding method is called when the stream is positioned on the start of an element, and returns when the stream is positioned on its end.
+ * It reads the attributes of this element with {@link #getAttributes}, then iterates over its child elements with {@link #nextChild}, and passes each of them to the binding method of the corresponding field,
+ * or to {@link #skipElement} if there is none.
+ * <br>
+ * This class shall not be used by several threads at the same time.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+public final class XmlBindingReader
+{
+    /**
+     * The underlying StAX reader.
+     */
+    private final XMLStreamReader _reader;
+
+    /**
+     * Specifies if the elements not described by the mapping shall be ignored, or shall raise an error.
+     */
+    private final boolean _ignoreExtraElements;
+
+    /**
+     * The qualified names of the elements opened so far, from the root element.
+     */
+    private final List<String> _names = new ArrayList<String>();
+
+    /**
+     * The namespace declarations of the elements opened so far, as (prefix, URI) pairs, or <code>null</code> for an element without any.
+     * The default namespace is associated to the empty prefix.
+     */
+    private final List<String[]> _namespaces = new ArrayList<String[]>();
+
+    /**
+     * The attribute names bound to the class of the root element.
+     */
+    private String[] _rootAttributes = new String[0];
+
+    /**
+     * Builds a new XML stream.
+     * @param reader a StAX reader, which is not namespace aware. Shall not be <code>null</code>.
+     * @param ignoreExtraElements if <code>true</code>, the elements not described by the mapping are ignored; otherwise they raise an error.
+     */
+    XmlBindingReader(final XMLStreamReader reader, final boolean ignoreExtraElements)
+    {
+        _reader = reader;
+        _ignoreExtraElements = ignoreExtraElements;
+    }
+
+    /**
+     * Moves to the start of the root element.
+     * @return <code>false</code> if the document has no root element.
+     * @throws NullPointerException if the underlying reader is <code>null</code>.
+     * @throws XMLStreamException if the document is malformed.
+     */
+    boolean nextRoot() throws XMLStreamException
+    {
+        boolean ret = false;
+
+        while (!ret && _reader.hasNext()) // Throws NullPointerException if _reader is null. May throw XMLStreamException.
+        {
+            if (_reader.next() == XMLStreamConstants.START_ELEMENT) // May throw XMLStreamException.
+            {
+                push();
+                ret = true;
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Reads the rest of the document, after the end of the root element.
+     * @throws XMLStreamException if the document is malformed.
+     */
+    void finish() throws XMLStreamException
+    {
+        while (_reader.hasNext()) // May throw XMLStreamException.
+        {
+            _reader.next(); // May throw XMLStreamException.
+        }
+    }
+
+    /**
+     * Returns the name of the current element, with its prefix if any.
+     * @return a name. Shall not be <code>null</code>.
+     */
+    public String getQualifiedName()
+    {
+        return _names.get(_names.size() - 1);
+    }
+
+    /**
+     * Returns the name of the current element, without its prefix.
+     * @return a name. Shall not be <code>null</code>.
+     * @see #getQualifiedName
+     */
+    public String getLocalName()
+    {
+        return localName(getQualifiedName());
+    }
+
+    /**
+     * Returns the namespace of the current element.
+     * @return a namespace URI, or <code>null</code> if the element is not qualified, or if its prefix is not declared.
+     */
+    public String getNamespaceURI()
+    {
+        final String name = getQualifiedName();
+        final int index = name.indexOf(':');
+
+        return resolve((index < 0) ? "" : name.substring(0, index));
+    }
+
+    /**
+     * Returns the namespace bound to the specified prefix in the current scope.
+     * @param prefix a prefix, or an empty string for the default namespace. Shall not be <code>null</code>.
+     * @return a namespace URI, or <code>null</code> if the prefix is not declared, or bound to an empty URI.
+     */
+    private String resolve(final String prefix)
+    {
+        String ret = XMLConstants.XML_NS_PREFIX.equals(prefix) ? XMLConstants.XML_NS_URI : null;
+
+        for (int i = _namespaces.size() - 1; (ret == null) && (i >= 0); i--)
+        {
+            final String[] declarations = _namespaces.get(i);
+
+            if (declarations != null)
+            {
+                for (int j = declarations.length - 2; (ret == null) && (j >= 0); j -= 2)
+                {
+                    if (prefix.equals(declarations[j]))
+                    {
+                        ret = declarations[j + 1];
+                    }
+                }
+            }
+        }
+
+        return ((ret == null) || (ret.length() == 0)) ? null : ret;
+    }
+
+    /**
+     * Returns the attributes of the current element which are bound to the specified names, in the order in which Castor sets them.
+     * The attributes are matched by their name without prefix:
+     * first the attributes which are not in a namespace, in the mapping order,
+     * then the other ones, the attributes without prefix before the prefixed ones.
+     * As Castor does, a prefixed attribute following an unknown one is not considered, unless the current element is the root one,
+     * and even raises an error if its name is bound to the class of the root element.
+     * @param names the attribute names bound to the class of the current element, in the mapping order. Shall not be <code>null</code>.
+     * @return the names and values of the attributes, in sequence: each name is followed by its value. May be empty but not <code>null</code>.
+     * @throws NullPointerException if <code>names</code> is <code>null</code>.
+     * @throws XMLStreamException if an attribute cannot be set.
+     */
+    public String[] getAttributes(final String[] names) throws XMLStreamException
+    {
+        if (_names.size() == 1)
+        {
+            _rootAttributes = names;
+        }
+
+        // Build the attribute set as Castor does: the attributes without prefix first, then the prefixed ones.
+        // An attribute with the same name and namespace as a previous one replaces its value.
+        final List<String[]> attributes = new ArrayList<String[]>();
+        final int count = _reader.getAttributeCount();
+
+        for (int pass = 0; pass < 2; pass++)
+        {
+            for (int i = 0; i < count; i++)
+            {
+                final String name = attributeName(i); // Should not throw IllegalStateException.
+                final int colon = name.indexOf(':');
+
+                if (!isNamespaceDeclaration(name) && ((colon < 0) == (pass == 0)))
+                {
+                    final String localName = name.substring(colon + 1);
+
+                    if ("xmlns".equals(localName))
+                    {
+                        throw new XMLStreamException("'xmlns' is a reserved word for use with XML namespace declarations. It may not be used as an attribute name.", _reader.getLocation());
+                    }
+
+                    final String uri = (colon < 0) ? null : resolve(name.substring(0, colon));
+                    final String namespace = (uri == null) ? "" : uri;
+                    final String value = _reader.getAttributeValue(i); // Should not throw IllegalStateException.
+                    boolean found = false;
+
+                    for (String[] attribute : attributes)
+                    {
+                        if (attribute[0].equals(localName) && attribute[1].equals(namespace))
+                        {
+                            attribute[2] = value;
+                            found = true;
+                            break;
+                        }
+                    }
+
+                    if (!found)
+                    {
+                        attributes.add(new String[] { localName, namespace, value }); // NOPMD Avoid instantiating new objects inside loops
+                    }
+                }
+            }
+        }
+
+        final boolean[] processed = new boolean[attributes.size()];
+        final List<String> ret = new ArrayList<String>();
+
+        // The attributes which are not in a namespace, in the mapping order.
+        for (String name : names) // Throws NullPointerException if names is null.
+        {
+            for (int i = 0; i < processed.length; i++)
+            {
+                final String[] attribute = attributes.get(i);
+
+                if (attribute[0].equals(name) && (attribute[1].length() == 0))
+                {
+                    ret.add(name);
+                    ret.add(attribute[2]);
+                    processed[i] = true;
+                    break;
+                }
+            }
+        }
+
+        // The remaining ones, matched against the root element once an unknown attribute has been found.
+        String[] bound = names;
+
+        for (int i = 0; i < processed.length; i++)
+        {
+            final String[] attribute = attributes.get(i);
+
+            if (!processed[i] && !XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI.equals(attribute[1]))
+            {
+                if (contains(bound, attribute[0]))
+                {
+                    if (bound != names) // NOPMD Compare objects with equals()
+                    {
+                        throw new XMLStreamException("unable to add attribute \"" + attribute[0] + "\" to '" + getLocalName() + "'", _reader.getLocation());
+                    }
+
+                    ret.add(attribute[0]);
+                    ret.add(attribute[2]);
+                }
+                else if (_names.size() > 1)
+                {
+                    bound = _rootAttributes;
+                }
+            }
+        }
+
+        return ret.toArray(new String[ret.size()]);
+    }
+
+    /**
+     * Moves to the start of the next child element of the current element, or to the end of the current element if there is no more child.
+     * The comments and processing instructions are skipped.
+     * @param textAllowed specifies if the current element may contain some text (which is then ignored) or only white spaces.
+     * @return <code>true</code> if the stream is positioned on the start of a child element, <code>false</code> if it is positioned on the end of the current element.
+     * @throws XMLStreamException if the document is malformed, or if some text is found and <code>textAllowed</code> is <code>false</code>.
+     */
+    public boolean nextChild(final boolean textAllowed) throws XMLStreamException
+    {
+        boolean ret = false;
+        boolean done = false;
+
+        while (!done)
+        {
+            switch (_reader.next()) // May throw XMLStreamException.
+            {
+                case XMLStreamConstants.START_ELEMENT:
+                    push();
+                    ret = true;
+                    done = true;
+                    break;
+
+                case XMLStreamConstants.END_ELEMENT:
+                    pop();
+                    done = true;
+                    break;
+
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (!textAllowed && (_reader.getText().trim().length() > 0))
+                    {
+                        throw new XMLStreamException("Illegal text data found as child of: " + getLocalName() + " value: \"" + _reader.getText().trim() + '"', _reader.getLocation());
+                    }
+                    break;
+
+                default:
+                    break;
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Reads the text of the current element, up to its end.
+     * The text of its child elements, if any, is ignored.
+     * As Castor does, each chunk of text reported by the parser is stripped of its leading and trailing white spaces,
+     * and the chunks are joined with a single space where some white spaces have been removed.
+     * @return the text. May be empty but not <code>null</code>.
+     * @throws XMLStreamException if the document is malformed.
+     */
+    public String getElementText() throws XMLStreamException
+    {
+        return readText(false); // May throw XMLStreamException.
+    }
+
+    /**
+     * Reads the text of the current element, up to its end, when this text is bound to a field of its class.
+     * The text is joined as with {@link #getElementText}, but the child elements are not described by the mapping:
+     * they are handled by {@link #skipElement}.
+     * @return the text. May be empty but not <code>null</code>.
+     * @throws XMLStreamException if the document is malformed, or if a child element is found and the extra elements are not ignored.
+     */
+    public String getText() throws XMLStreamException
+    {
+        return readText(true); // May throw XMLStreamException.
+    }
+
+    /**
+     * Reads the text of the current element, up to its end.
+     * @param skipChildren <code>true</code> if the child elements shall be handled by {@link #skipElement}, <code>false</code> if their text shall just be ignored.
+     * @return the text. May be empty but not <code>null</code>.
+     * @throws XMLStreamException if the document is malformed, or if a child element is found, the children are skipped and the extra elements are not ignored.
+     */
+    private String readText(final boolean skipChildren) throws XMLStreamException
+    {
+        final StringBuilder sb = new StringBuilder();
+        boolean trailingSpace = false;
+        int depth = 0;
+
+        while (depth >= 0)
+        {
+            switch (_reader.next()) // May throw XMLStreamException.
+            {
+                case XMLStreamConstants.START_ELEMENT:
+                    push();
+
+                    if (skipChildren)
+                    {
+                        skipElement(); // May throw XMLStreamException.
+                    }
+                    else
+                    {
+                        depth++;
+                    }
+                    break;
+
+                case XMLStreamConstants.END_ELEMENT:
+                    pop();
+                    depth--;
+                    break;
+
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (depth == 0)
+                    {
+                        final char[] text = _reader.getTextCharacters();
+                        final int textStart = _reader.getTextStart();
+                        final int textEnd = textStart + _reader.getTextLength();
+                        int start = textStart;
+                        int end = textEnd;
+
+                        while ((start < end) && isWhitespace(text[start]))
+                        {
+                            start++;
+                        }
+
+                        if (start == end)
+                        {
+                            trailingSpace = true;
+                        }
+                        else
+                        {
+                            while (isWhitespace(text[end - 1]))
+                            {
+                                end--;
+                            }
+
+                            if ((sb.length() > 0) && (trailingSpace || (start > textStart)))
+                            {
+                                sb.append(' ');
+                            }
+
+                            sb.append(text, start, end - start);
+                            trailingSpace = (end < textEnd);
+                        }
+                    }
+                    break;
+
+                default:
+                    break;
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Handles a child element which is not described by the mapping: it is skipped up to its end if the extra elements are ignored, otherwise an error is raised.
+     * @throws XMLStreamException if the extra elements are not ignored, or if the document is malformed.
+     */
+    public void skipElement() throws XMLStreamException
+    {
+        if (!_ignoreExtraElements)
+        {
+            throw new XMLStreamException("unable to find a field for '" + getLocalName() + "' in element " + _names.get(_names.size() - 2), _reader.getLocation());
+        }
+
+        int depth = 0;
+
+        while (depth >= 0)
+        {
+            switch (_reader.next()) // May throw XMLStreamException.
+            {
+                case XMLStreamConstants.START_ELEMENT:
+                    push();
+                    depth++;
+                    break;
+
+                case XMLStreamConstants.END_ELEMENT:
+                    pop();
+                    depth--;
+                    break;
+
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Raises the error reporting that the current element is bound to a single-valued field which has already been read.
+     * @throws XMLStreamException always.
+     */
+    public void duplicateElement() throws XMLStreamException
+    {
+        throw new XMLStreamException("element \"" + getLocalName() + "\" occurs more than once", _reader.getLocation());
+    }
+
+    /**
+     * Records the start of an element.
+     */
+    private void push()
+    {
+        _names.add(_reader.getLocalName());
+
+        String[] declarations = null;
+        final int count = _reader.getAttributeCount();
+
+        for (int i = 0; i < count; i++)
+        {
+            final String name = attributeName(i);
+
+            if (isNamespaceDeclaration(name))
+            {
+                final String prefix = (name.length() > 5) ? name.substring(6) : "";
+
+                if (declarations == null)
+                {
+                    declarations = new String[] { prefix, _reader.getAttributeValue(i) }; // NOPMD Avoid instantiating new objects inside loops
+                }
+                else
+                {
+                    final String[] array = new String[declarations.length + 2]; // NOPMD Avoid instantiating new objects inside loops
+                    System.arraycopy(declarations, 0, array, 0, declarations.length);
+                    array[declarations.length] = prefix;
+                    array[declarations.length + 1] = _reader.getAttributeValue(i);
+                    declarations = array;
+                }
+            }
+        }
+
+        _namespaces.add(declarations);
+    }
+
+    /**
+     * Records the end of the current element.
+     */
+    private void pop()
+    {
+        _names.remove(_names.size() - 1);
+        _namespaces.remove(_namespaces.size() - 1);
+    }
+
+    /**
+     * Returns the qualified name of the specified attribute of the current element.
+     * @param index the index of the attribute.
+     * @return a name. Shall not be <code>null</code>.
+     * @throws IllegalStateException if the stream is not positioned on the start of an element.
+     */
+    private String attributeName(final int index)
+    {
+        // A reader which is not namespace aware may still split the attribute names.
+        final String prefix = _reader.getAttributePrefix(index); // May throw IllegalStateException.
+        final String localName = _reader.getAttributeLocalName(index); // May throw IllegalStateException.
+
+        return ((prefix == null) || (prefix.length() == 0)) ? localName : (prefix + ':' + localName);
+    }
+
+    /**
+     * Tells if the specified attribute name is a namespace declaration.
+     * @param name an attribute name. Shall not be <code>null</code>.
+     * @return <code>true</code> if the name is "<code>xmlns</code>" or starts with "<code>xmlns:</code>".
+     */
+    private static boolean isNamespaceDeclaration(final String name)
+    {
+        return "xmlns".equals(name) || name.startsWith("xmlns:");
+    }
+
+    /**
+     * Specifies if the specified array contains the specified string.
+     * @param array an array of strings. Shall not be <code>null</code>.
+     * @param s a string. Shall not be <code>null</code>.
+     * @return <code>true</code> if one element of the array is equal to the string, <code>false</code> otherwise.
+     */
+    private static boolean contains(final String[] array, final String s)
+    {
+        boolean ret = false;
+
+        for (String element : array)
+        {
+            if (element.equals(s))
+            {
+                ret = true;
+                break;
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Specifies if the specified character is an XML white space.
+     * @param c a character.
+     * @return <code>true</code> if the character is a white space, <code>false</code> otherwise.
+     */
+    private static boolean isWhitespace(final char c)
+    {
+        return (c == ' ') || (c == '\t') || (c == '\n') || (c == '\r');
+    }
+
+    /**
+     * Removes the prefix of the specified name, if any, as Castor does.
+     * @param name a qualified name. Shall not be <code>null</code>.
+     * @return the part of the name following the first colon, or the name itself if there is none.
+     */
+    private static String localName(final String name)
+    {
+        final int index = name.indexOf(':');
+
+        return (index < 0) ? name : name.substring(index + 1);
+    }
+}
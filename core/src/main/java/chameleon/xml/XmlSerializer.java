@@ -24,46 +24,77 @@
  */
 package chameleon.xml;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.InputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
 import java.net.URL;
-import java.util.Hashtable;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.xml.sax.InputSource;
 
+import org.castor.mapping.BindingType;
+import org.castor.mapping.MappingUnmarshaller;
+import org.castor.xml.BackwardCompatibilityContext;
+import org.castor.xml.InternalContext;
+
 import org.exolab.castor.mapping.Mapping;
 import org.exolab.castor.mapping.MappingException;
+import org.exolab.castor.mapping.MappingLoader;
 import org.exolab.castor.xml.Marshaller;
 import org.exolab.castor.xml.Unmarshaller;
 
 /**
  * A collection of utilities when manipulating the Castor framework.
  * The 3d-party <a href="http://www.castor.org/">Castor</a> package achieves the Java-XML data binding.
+ * <br>
+ * An instance is shared by all the threads using the same mapping, but each thread gets its own Castor marshaller and unmarshaller,
+ * so that several documents can be (un)marshalled concurrently.
+ * The mapping is resolved only once, i.e. the mapped classes are introspected only once, and the resulting class descriptors are shared by all these instances.
+ * The options of a marshalling or unmarshalling are given on each call, and only apply to this call.
+ * <br>
+ * If a {@link XmlBinding} has been generated at build time for the package, it is used instead of Castor:
+ * neither the mapping file nor the mapped classes are introspected then, and the (un)marshalling goes through StAX, with the same result.
+ * The Castor marshaller and unmarshaller remain available, but the mapping file is only loaded when one of them is first requested.
  * @version $Revision: 55 $
  * @author Christophe Delory
  */
 public final class XmlSerializer
 {
     /**
-     * The list of mappings already built.
+     * The mappings already requested, indexed by their file name.
+     * Each mapping is built under its own lock, so that different mappings can be loaded concurrently.
      */
-    private static Hashtable<String,XmlSerializer> _mappings = new Hashtable<String,XmlSerializer>();
+    private static final ConcurrentMap<String,MappingHolder> _mappings = new ConcurrentHashMap<String,MappingHolder>();
+
+    /**
+     * The StAX input factory owned by each thread, used with the generated bindings.
+     */
+    private static final ThreadLocal<XMLInputFactory> _inputFactories = new ThreadLocal<XMLInputFactory>();
 
     /**
      * Retrieves the XML serializer instance associated to the specified package name.
      * The full Castor mapping file name will be <code><i>packageName</i>/mapping.xml</code>.
      * Thus the separator character used in <code>packageName</code> <u>shall be the slash</u> ("<code>/</code>").
+     * If the class <code><i>packageName</i>.StaxBinding</code> exists, it is used instead of the mapping file.
      * @param packageName the package name. May be <code>null</code>.
      * @return a <code>XmlSerializer</code> instance. Shall not be <code>null</code>.
      * @throws FileNotFoundException if the mapping file cannot be found.
      * @throws IOException an error occured when reading the mapping file.
-     * @throws MappingException the mapping file is invalid.
+     * @throws MappingException the mapping file is invalid, or the generated binding cannot be instantiated.
      * @throws SecurityException if a security manager exists and its <code>checkPermission</code> method denies access to the class loader for the class.
      */
     public static XmlSerializer getMapping(final String packageName) throws IOException, MappingException
@@ -80,34 +111,20 @@ public final class XmlSerializer
 
         final String mappingFileName = sb.toString();
 
-        synchronized(_mappings)
+        MappingHolder holder = _mappings.get(mappingFileName); // Should not throw NullPointerException.
+
+        if (holder == null)
         {
-            XmlSerializer mappingDescriptor = _mappings.get(mappingFileName); // Should not throw NullPointerException.
+            final MappingHolder newHolder = new MappingHolder();
+            holder = _mappings.putIfAbsent(mappingFileName, newHolder); // Should not throw NullPointerException.
 
-            if (mappingDescriptor == null)
+            if (holder == null)
             {
-                mappingDescriptor = new XmlSerializer();
-                final URL mappingURL = XmlSerializer.class.getClassLoader().getResource(mappingFileName); // May throw SecurityException.
-
-                if (mappingURL == null)
-                {
-                    // Development error.
-                    // Shall not occur, since this file is included in the jar.
-                    // May occur if the jar has been "hacked".
-                    throw new FileNotFoundException(mappingFileName);
-                }
-
-                final Mapping mapping = new Mapping(XmlSerializer.class.getClassLoader());
-
-                // Load the mapping information from the file.
-                mapping.loadMapping(mappingURL); // May throw IOException, MappingException.
-                mappingDescriptor.setMapping(mapping); // Should not throw NullPointerException. May throw MappingException.
-
-                _mappings.put(mappingFileName, mappingDescriptor); // Should not throw NullPointerException.
+                holder = newHolder;
             }
-
-            return mappingDescriptor;
         }
+
+        return holder.get(packageName, mappingFileName); // May throw FileNotFoundException, IOException, MappingException, SecurityException.
     }
 
     /**
@@ -162,38 +179,87 @@ public final class XmlSerializer
 
     /**
      * Unmarshalls an object from an input stream, according to the underlying mapping.
+     * The unknown elements are ignored.
      * @param in an input stream.
      * @throws MappingException an exception indicating an invalid mapping error.
      * @throws org.exolab.castor.xml.MarshalException when there is an error during the unmarshalling process.
      * @throws org.exolab.castor.xml.ValidationException when there is a validation error.
      * @throws NullPointerException if <code>in</code> is <code>null</code>.
+     * @see #unmarshal(InputStream,boolean)
      * @see Mapping
      */
     public Object unmarshal(final InputStream in) throws Exception
     {
-        final InputSource is = new InputSource(in); // Throws NullPointerException if in is null.
+        return unmarshal(in, true); // Throws NullPointerException if in is null. May throw MappingException, MarshalException, ValidationException.
+    }
 
-        synchronized(_unmarshaller)
+    /**
+     * Unmarshalls an object from an input stream, according to the underlying mapping.
+     * @param in an input stream.
+     * @param ignoreExtraElements if <code>true</code>, the elements not described by the mapping are ignored; otherwise they raise an error.
+     * @throws MappingException an exception indicating an invalid mapping error.
+     * @throws org.exolab.castor.xml.MarshalException when there is an error during the unmarshalling process.
+     * @throws org.exolab.castor.xml.ValidationException when there is a validation error.
+     * @throws NullPointerException if <code>in</code> is <code>null</code>.
+     * @since 1.3.0
+     * @see Mapping
+     */
+    public Object unmarshal(final InputStream in, final boolean ignoreExtraElements) throws Exception
+    {
+        if (_binding != null)
         {
-            return _unmarshaller.unmarshal(is); // May throw MarshalException, ValidationException, ClassCastException.
+            final XMLStreamReader reader = getInputFactory().createXMLStreamReader(in); // May throw XMLStreamException.
+
+            return unmarshal(reader, ignoreExtraElements); // May throw XMLStreamException.
         }
+
+        final InputSource is = new InputSource(in); // Throws NullPointerException if in is null.
+        final Unmarshaller unmarshaller = getUnmarshaller();
+        unmarshaller.setIgnoreExtraElements(ignoreExtraElements);
+
+        return unmarshaller.unmarshal(is); // May throw MarshalException, ValidationException, ClassCastException.
     }
 
     /**
      * Unmarshalls an object from a reader, according to the underlying mapping.
+     * The unknown elements are ignored.
      * @param reader a reader.
      * @throws MappingException an exception indicating an invalid mapping error.
      * @throws org.exolab.castor.xml.MarshalException when there is an error during the unmarshalling process.
      * @throws org.exolab.castor.xml.ValidationException when there is a validation error.
      * @throws NullPointerException if <code>reader</code> is <code>null</code>.
+     * @see #unmarshal(Reader,boolean)
      * @see Mapping
      */
     public Object unmarshal(final Reader reader) throws Exception
     {
-        synchronized(_unmarshaller)
+        return unmarshal(reader, true); // Throws NullPointerException if reader is null. May throw MappingException, MarshalException, ValidationException.
+    }
+
+    /**
+     * Unmarshalls an object from a reader, according to the underlying mapping.
+     * @param reader a reader.
+     * @param ignoreExtraElements if <code>true</code>, the elements not described by the mapping are ignored; otherwise they raise an error.
+     * @throws MappingException an exception indicating an invalid mapping error.
+     * @throws org.exolab.castor.xml.MarshalException when there is an error during the unmarshalling process.
+     * @throws org.exolab.castor.xml.ValidationException when there is a validation error.
+     * @throws NullPointerException if <code>reader</code> is <code>null</code>.
+     * @since 1.3.0
+     * @see Mapping
+     */
+    public Object unmarshal(final Reader reader, final boolean ignoreExtraElements) throws Exception
+    {
+        if (_binding != null)
         {
-            return _unmarshaller.unmarshal(reader); // Throws NullPointerException if reader is null. May throw MarshalException, ValidationException, ClassCastException.
+            final XMLStreamReader xmlReader = getInputFactory().createXMLStreamReader(reader); // May throw XMLStreamException.
+
+            return unmarshal(xmlReader, ignoreExtraElements); // May throw XMLStreamException.
         }
+
+        final Unmarshaller unmarshaller = getUnmarshaller();
+        unmarshaller.setIgnoreExtraElements(ignoreExtraElements);
+
+        return unmarshaller.unmarshal(reader); // Throws NullPointerException if reader is null. May throw MarshalException, ValidationException, ClassCastException.
     }
 
     /**
@@ -244,6 +310,7 @@ public final class XmlSerializer
 
     /**
      * Writes the specified object as an XML stream to an output writer.
+     * The output is not indented.
      * @param o the object to serialize.
      * @param out the writer.
      * @param asDocument if <code>true</code>, indicates to marshal as a complete XML document, which includes the XML declaration, and if necessary the DOCTYPE declaration.
@@ -252,74 +319,439 @@ public final class XmlSerializer
      * @throws org.exolab.castor.xml.ValidationException an XML validation error occurred.
      * @throws NullPointerException if <code>o</code> is <code>null</code>.
      * @throws NullPointerException if <code>out</code> is <code>null</code>.
+     * @see #marshal(Object,Writer,boolean,boolean)
      * @see Mapping
      */
     public void marshal(final Object o, final Writer out, final boolean asDocument) throws Exception
     {
-        synchronized(_marshaller)
+        marshal(o, out, asDocument, false); // May throw MappingException, MarshalException, ValidationException. Throws NullPointerException if o or out is null.
+    }
+
+    /**
+     * Writes the specified object as an XML stream to an output writer.
+     * @param o the object to serialize.
+     * @param out the writer.
+     * @param asDocument if <code>true</code>, indicates to marshal as a complete XML document, which includes the XML declaration, and if necessary the DOCTYPE declaration.
+     * @param indent if <code>true</code>, the XML elements are indented.
+     * @throws MappingException an exception indicating an invalid mapping error.
+     * @throws org.exolab.castor.xml.MarshalException a marshalling exception.
+     * @throws org.exolab.castor.xml.ValidationException an XML validation error occurred.
+     * @throws NullPointerException if <code>o</code> is <code>null</code>.
+     * @throws NullPointerException if <code>out</code> is <code>null</code>.
+     * @since 1.3.0
+     * @see Mapping
+     */
+    public void marshal(final Object o, final Writer out, final boolean asDocument, final boolean indent) throws Exception
+    {
+        // The characters which cannot be encoded by the writer shall be escaped.
+        // Any other writer is supposed to be able to handle all the characters, as a StringWriter.
+        String encoding = "UTF-8";
+
+        if (out instanceof OutputStreamWriter)
         {
-            _marshaller.setWriter(out); // May throw IOException.
-            _marshaller.setMarshalAsDocument(asDocument);
-            _marshaller.setEncoding("ISO-8859-1");
-            // Do not use marshal(Object object, Writer out): IT DOESN'T WORK !!!
-            _marshaller.marshal(o); // May throw MarshalException, ValidationException.
+            encoding = Charset.forName(((OutputStreamWriter) out).getEncoding()).name(); // Shall not throw IllegalCharsetNameException, UnsupportedCharsetException.
         }
+
+        marshal(o, out, encoding, asDocument, indent); // May throw MappingException, MarshalException, ValidationException. Throws NullPointerException if o or out is null.
+    }
+
+    /**
+     * Writes the specified object as an XML stream to an output stream, without buffering the whole document beforehand.
+     * The characters are encoded on the fly, and those which cannot be represented in the given encoding are written as character references.
+     * The output stream is flushed, but not closed.
+     * @param o the object to serialize.
+     * @param out the output stream.
+     * @param encoding the character encoding to use. May be <code>null</code>, in which case UTF-8 is used.
+     * @param asDocument if <code>true</code>, indicates to marshal as a complete XML document, which includes the XML declaration, and if necessary the DOCTYPE declaration.
+     * @param indent if <code>true</code>, the XML elements are indented.
+     * @throws java.io.UnsupportedEncodingException if the named encoding is not supported.
+     * @throws IOException if any I/O error occurred.
+     * @throws MappingException an exception indicating an invalid mapping error.
+     * @throws org.exolab.castor.xml.MarshalException a marshalling exception.
+     * @throws org.exolab.castor.xml.ValidationException an XML validation error occurred.
+     * @throws NullPointerException if <code>o</code> is <code>null</code>.
+     * @throws NullPointerException if <code>out</code> is <code>null</code>.
+     * @since 1.3.0
+     * @see Mapping
+     */
+    public void marshal(final Object o, final OutputStream out, final String encoding, final boolean asDocument, final boolean indent) throws Exception
+    {
+        final OutputStreamWriter osw = new OutputStreamWriter(out, (encoding == null) ? "UTF-8" : encoding); // Throws NullPointerException if out is null. May throw UnsupportedEncodingException.
+        final Writer writer = new BufferedWriter(osw);
+        marshal(o, writer, Charset.forName(osw.getEncoding()).name(), asDocument, indent); // May throw MappingException, MarshalException, ValidationException. Throws NullPointerException if o is null.
+        writer.flush(); // May throw IOException.
     }
 
     /**
-     * The associated marshaller.
+     * Writes the specified object as an XML stream to an output writer, using the given encoding.
+     * @param o the object to serialize.
+     * @param out the writer.
+     * @param encoding the encoding of the writer, used to escape the characters and in the XML declaration. Shall not be <code>null</code>.
+     * @param asDocument if <code>true</code>, indicates to marshal as a complete XML document, which includes the XML declaration, and if necessary the DOCTYPE declaration.
+     * @param indent if <code>true</code>, the XML elements are indented.
+     * @throws Exception if the marshalling failed.
      */
-    private Marshaller _marshaller = null;
+    private void marshal(final Object o, final Writer out, final String encoding, final boolean asDocument, final boolean indent) throws Exception
+    {
+        if (_binding != null)
+        {
+            final IndentingXmlStreamWriter writer = new IndentingXmlStreamWriter(out, encoding, indent);
+
+            if (asDocument)
+            {
+                writer.writeStartDocument(encoding, "1.0"); // May throw XMLStreamException.
+            }
+
+            _binding.marshal(o, writer); // Throws NullPointerException if o is null. May throw XMLStreamException.
+            writer.writeEndDocument(); // May throw XMLStreamException.
+
+            return;
+        }
+
+        final Marshaller marshaller = getMarshaller();
+        // Specifies whether XML documents (as generated at marshalling) should use indentation or not. Default is false.
+        // Shall be set before the writer, as it configures the underlying serializer.
+        marshaller.setProperty("org.exolab.castor.indent", Boolean.toString(indent));
+        marshaller.setWriter(out); // May throw IOException.
+        marshaller.setMarshalAsDocument(asDocument);
+        marshaller.setEncoding(encoding);
+        // Do not use marshal(Object object, Writer out): IT DOESN'T WORK !!!
+        marshaller.marshal(o); // May throw MarshalException, ValidationException.
+    }
 
     /**
-     * The associated unmarshaller.
+     * Reads an object from the specified XML stream, using the generated binding.
+     * @param reader a StAX reader. Shall not be <code>null</code>.
+     * @param ignoreExtraElements if <code>true</code>, the elements not described by the mapping are ignored; otherwise they raise an error.
+     * @return the unmarshalled object. Shall not be <code>null</code>.
+     * @throws XMLStreamException if the document is malformed, or doesn't match the mapping.
      */
-    private Unmarshaller _unmarshaller = null;
+    private Object unmarshal(final XMLStreamReader reader, final boolean ignoreExtraElements) throws XMLStreamException
+    {
+        try
+        {
+            return _binding.unmarshal(reader, ignoreExtraElements); // May throw XMLStreamException.
+        }
+        finally
+        {
+            reader.close(); // May throw XMLStreamException.
+        }
+    }
 
     /**
-     * Builds a new and empty XML serializer based on the Castor framework.
+     * Returns the StAX input factory owned by the calling thread.
+     * As Castor, it is not namespace aware, so that the undeclared prefixes are accepted.
+     * @return a StAX input factory. Shall not be <code>null</code>.
      */
-    private XmlSerializer()
+    private static XMLInputFactory getInputFactory()
     {
+        XMLInputFactory ret = _inputFactories.get();
+
+        if (ret == null)
+        {
+            ret = XMLInputFactory.newInstance(); // May throw FactoryConfigurationError.
+            ret.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE); // Should not throw IllegalArgumentException.
+            _inputFactories.set(ret);
+        }
+
+        return ret;
     }
 
     /**
-     * Returns the associated Castor marshaller.
+     * The binding generated for the mapping, or <code>null</code> if Castor is used.
+     */
+    private final XmlBinding _binding;
+
+    /**
+     * The resource name of the Castor mapping file.
+     */
+    private final String _mappingFileName;
+
+    /**
+     * The class descriptors built from the Castor mapping, or <code>null</code> if the generated binding is used and no Castor object has been requested yet.
+     * They are shared by all the marshallers and unmarshallers.
+     */
+    private volatile MappingLoader _mappingLoader;
+
+    /**
+     * The class loader used to load the mapped classes.
+     */
+    private final ClassLoader _classLoader;
+
+    /**
+     * The marshaller owned by each thread.
+     */
+    private final ThreadLocal<Marshaller> _marshallers = new ThreadLocal<Marshaller>();
+
+    /**
+     * The unmarshaller owned by each thread.
+     */
+    private final ThreadLocal<Unmarshaller> _unmarshallers = new ThreadLocal<Unmarshaller>();
+
+    /**
+     * Builds a new XML serializer based on the Castor framework.
+     * The mapped classes are introspected right away, so that an invalid mapping is reported here.
+     * @param mapping a Castor mapping. Shall not be <code>null</code>.
+     * @param mappingFileName the resource name of the mapping file. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>mapping</code> is <code>null</code>.
+     * @throws MappingException an exception indicating an invalid mapping error.
+     */
+    private XmlSerializer(final Mapping mapping, final String mappingFileName) throws MappingException
+    {
+        _binding = null;
+        _mappingFileName = mappingFileName;
+        _classLoader = mapping.getClassLoader(); // Throws NullPointerException if mapping is null.
+        // Introspect the mapped classes once and for all.
+        _mappingLoader = new MappingUnmarshaller().getMappingLoader(mapping, BindingType.XML); // May throw MappingException.
+    }
+
+    /**
+     * Builds a new XML serializer based on a binding generated at build time.
+     * @param binding a generated binding. Shall not be <code>null</code>.
+     * @param mappingFileName the resource name of the mapping file, loaded only if a Castor object is requested. Shall not be <code>null</code>.
+     */
+    private XmlSerializer(final XmlBinding binding, final String mappingFileName)
+    {
+        _binding = binding;
+        _mappingFileName = mappingFileName;
+        _classLoader = XmlSerializer.class.getClassLoader();
+        _mappingLoader = null;
+    }
+
+    /**
+     * Returns the Castor marshaller owned by the calling thread.
+     * It shall not be shared with other threads, and its options may be overridden by the next marshalling.
+     * If this serializer uses a generated binding, the marshaller relies on the Castor mapping nevertheless.
      * @return a Castor marshaller. Shall not be <code>null</code>.
+     * @throws IllegalStateException if this serializer uses a generated binding, and the Castor mapping cannot be loaded.
      */
     public Marshaller getMarshaller()
     {
-        return _marshaller;
+        Marshaller ret = _marshallers.get();
+
+        if (ret == null)
+        {
+            ret = newMarshaller();
+            _marshallers.set(ret);
+        }
+
+        return ret;
     }
 
     /**
-     * Returns the associated Castor unmarshaller.
+     * Returns the Castor unmarshaller owned by the calling thread.
+     * It shall not be shared with other threads, and its options may be overridden by the next unmarshalling.
+     * If this serializer uses a generated binding, the unmarshaller relies on the Castor mapping nevertheless.
      * @return a Castor unmarshaller. Shall not be <code>null</code>.
+     * @throws IllegalStateException if this serializer uses a generated binding, and the Castor mapping cannot be loaded.
      */
     public Unmarshaller getUnmarshaller()
     {
-        return _unmarshaller;
+        Unmarshaller ret = _unmarshallers.get();
+
+        if (ret == null)
+        {
+            ret = newUnmarshaller();
+            _unmarshallers.set(ret);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the class descriptors built from the Castor mapping.
+     * If this serializer uses a generated binding, the mapping is loaded on the first call.
+     * @return the class descriptors. Shall not be <code>null</code>.
+     * @throws IllegalStateException if the Castor mapping cannot be loaded.
+     */
+    private MappingLoader getMappingLoader()
+    {
+        MappingLoader ret = _mappingLoader;
+
+        if (ret == null)
+        {
+            synchronized(this)
+            {
+                ret = _mappingLoader;
+
+                if (ret == null)
+                {
+                    try
+                    {
+                        ret = new MappingUnmarshaller().getMappingLoader(loadMapping(_mappingFileName), BindingType.XML); // May throw FileNotFoundException, IOException, MappingException.
+                    }
+                    catch (IOException e)
+                    {
+                        throw new IllegalStateException("Cannot load the Castor mapping " + _mappingFileName, e);
+                    }
+                    catch (MappingException e)
+                    {
+                        throw new IllegalStateException("Cannot load the Castor mapping " + _mappingFileName, e);
+                    }
+
+                    _mappingLoader = ret;
+                }
+            }
+        }
+
+        return ret;
     }
 
     /**
-     * Initializes the Castor mapping instance.
-     * @param mapping a Castor mapping. Shall not be <code>null</code>.
-     * @throws NullPointerException if <code>mapping</code> is <code>null</code>.
-     * @throws MappingException an exception indicating an invalid mapping error.
+     * Builds a new Castor marshaller from the shared class descriptors.
+     * @return a Castor marshaller. Shall not be <code>null</code>.
      */
-    private void setMapping(final Mapping mapping) throws MappingException
+    private Marshaller newMarshaller()
     {
-        _unmarshaller = new Unmarshaller(mapping); // May throw MappingException.
-        _unmarshaller.setValidation(false);
-        _unmarshaller.setIgnoreExtraElements(true);
-
-        _marshaller = new Marshaller();
-        _marshaller.setMapping(mapping); // May throw MappingException.
-        _marshaller.setValidation(false);
-        //_marshaller.setDebug(true);
+        final Marshaller ret = new Marshaller(newContext());
+        ret.setValidation(false);
+        //ret.setDebug(true);
         // Specifies whether to support XML namespaces by default. Default is false.
-        //_marshaller.setProperty("org.exolab.castor.parser.namespaces", "true");
-        // Specifies whether XML documents (as generated at marshalling) should use indentation or not. Default is false.
-        //_marshaller.setProperty("org.exolab.castor.indent", "true");
+        //ret.setProperty("org.exolab.castor.parser.namespaces", "true");
+
+        return ret;
+    }
+
+    /**
+     * Builds a new Castor unmarshaller from the shared class descriptors.
+     * @return a Castor unmarshaller. Shall not be <code>null</code>.
+     */
+    private Unmarshaller newUnmarshaller()
+    {
+        final Unmarshaller ret = new Unmarshaller(newContext(), null, _classLoader);
+        ret.setValidation(false);
+        ret.setIgnoreExtraElements(true);
+
+        return ret;
+    }
+
+    /**
+     * Builds a new Castor context, using the shared class descriptors.
+     * Each marshaller or unmarshaller shall have its own context, as its properties are modified by some options, like the indentation.
+     * @return a Castor context. Shall not be <code>null</code>.
+     */
+    private InternalContext newContext()
+    {
+        final InternalContext ret = new BackwardCompatibilityContext();
+        ret.getXMLClassDescriptorResolver().setMappingLoader(getMappingLoader()); // May throw IllegalStateException.
+
+        return ret;
+    }
+
+    /**
+     * Loads the specified Castor mapping file.
+     * @param mappingFileName the resource name of the mapping file. Shall not be <code>null</code>.
+     * @return a Castor mapping. Shall not be <code>null</code>.
+     * @throws FileNotFoundException if the mapping file cannot be found.
+     * @throws IOException an error occured when reading the mapping file.
+     * @throws MappingException the mapping file is invalid.
+     */
+    private static Mapping loadMapping(final String mappingFileName) throws IOException, MappingException
+    {
+        final URL mappingURL = XmlSerializer.class.getClassLoader().getResource(mappingFileName); // May throw SecurityException.
+
+        if (mappingURL == null)
+        {
+            // Development error.
+            // Shall not occur, since this file is included in the jar.
+            // May occur if the jar has been "hacked".
+            throw new FileNotFoundException(mappingFileName);
+        }
+
+        final Mapping ret = new Mapping(XmlSerializer.class.getClassLoader());
+
+        // Load the mapping information from the file.
+        ret.loadMapping(mappingURL); // May throw IOException, MappingException.
+
+        return ret;
+    }
+
+    /**
+     * Instantiates the binding generated for the specified package, if any.
+     * @param packageName the package name, with slashes as separators. May be <code>null</code>.
+     * @return a generated binding, or <code>null</code> if there is none.
+     * @throws MappingException if the generated binding cannot be instantiated.
+     */
+    private static XmlBinding newBinding(final String packageName) throws MappingException
+    {
+        XmlBinding ret = null;
+
+        if ((packageName != null) && (packageName.length() > 0))
+        {
+            final String className = packageName.replace('/', '.') + ".StaxBinding";
+
+            try
+            {
+                final Class<?> bindingClass = Class.forName(className, true, XmlSerializer.class.getClassLoader()); // May throw ClassNotFoundException, LinkageError, ExceptionInInitializerError.
+                ret = (XmlBinding) bindingClass.newInstance(); // May throw InstantiationException, IllegalAccessException, ClassCastException, ExceptionInInitializerError, SecurityException.
+            }
+            catch (ClassNotFoundException e)
+            {
+                // No binding generated for this package: use the mapping file.
+                ret = null;
+            }
+            catch (InstantiationException e)
+            {
+                throw new MappingException(e);
+            }
+            catch (IllegalAccessException e)
+            {
+                throw new MappingException(e);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Holds the XML serializer built from a given mapping file, once loaded.
+     * @version $Revision: 92 $
+     * @author Christophe Delory
+     * @since 1.3.0
+     */
+    private static final class MappingHolder
+    {
+        /**
+         * The XML serializer, or <code>null</code> if not yet built.
+         */
+        private volatile XmlSerializer _serializer = null;
+
+        /**
+         * Returns the XML serializer built from the binding generated for the specified package, or else from the specified mapping file, loading it if necessary.
+         * A failed loading is not remembered, and will be attempted again on the next call.
+         * @param packageName the package name, with slashes as separators. May be <code>null</code>.
+         * @param mappingFileName the resource name of the mapping file. Shall not be <code>null</code>.
+         * @return a <code>XmlSerializer</code> instance. Shall not be <code>null</code>.
+         * @throws FileNotFoundException if the mapping file cannot be found.
+         * @throws IOException an error occured when reading the mapping file.
+         * @throws MappingException the mapping file is invalid, or the generated binding cannot be instantiated.
+         */
+        private XmlSerializer get(final String packageName, final String mappingFileName) throws IOException, MappingException
+        {
+            XmlSerializer ret = _serializer;
+
+            if (ret == null)
+            {
+                synchronized(this)
+                {
+                    ret = _serializer;
+
+                    final XmlBinding binding = (ret == null) ? newBinding(packageName) : null; // May throw MappingException.
+
+                    if (binding != null)
+                    {
+                        ret = new XmlSerializer(binding, mappingFileName);
+                        _serializer = ret;
+                    }
+                    else if (ret == null)
+                    {
+                        ret = new XmlSerializer(loadMapping(mappingFileName), mappingFileName); // May throw FileNotFoundException, IOException, MappingException.
+                        _serializer = ret;
+                    }
+                }
+            }
+
+            return ret;
+        }
     }
 }
@@ -25,20 +25,23 @@
 package chameleon.playlist.asx;
 
 import java.io.InputStream;
-import java.io.StringReader;
+import java.io.InputStreamReader;
+import java.io.Reader;
 
 import org.apache.commons.logging.Log;
 
 import chameleon.content.type.ContentType;
-import chameleon.io.IOUtils;
 import chameleon.player.PlayerSupport;
 import chameleon.playlist.AbstractPlaylistComponent;
 import chameleon.playlist.Media;
 import chameleon.playlist.Parallel;
 import chameleon.playlist.Playlist;
+import chameleon.playlist.PlaylistHeader;
 import chameleon.playlist.Sequence;
 import chameleon.playlist.SpecificPlaylist;
+import chameleon.playlist.SpecificPlaylistProbe;
 import chameleon.playlist.SpecificPlaylistProvider;
+import chameleon.xml.AmpersandRepairReader;
 import chameleon.xml.XmlSerializer;
 
 /**
@@ -47,7 +50,7 @@ import chameleon.xml.XmlSerializer;
  * @version $Revision: 90 $
  * @author Christophe Delory
  */
-public class AsxProvider implements SpecificPlaylistProvider
+public class AsxProvider implements SpecificPlaylistProvider, SpecificPlaylistProbe
 {
     /**
      * A list of compatible content types.
@@ -104,6 +107,13 @@ public class AsxProvider implements SpecificPlaylistProvider
         return FILETYPES.clone();
     }
 
+    @Override
+    public int probe(final PlaylistHeader header)
+    {
+        // Element names are not case sensitive here.
+        return header.matchRootElement("UTF-8", "asx", true, null);
+    }
+
     @Override
     public SpecificPlaylist readFrom(final InputStream in, final String encoding, final Log logger) throws Exception
     {
@@ -114,96 +124,13 @@ public class AsxProvider implements SpecificPlaylistProvider
             enc = "UTF-8"; // FIXME US-ASCII?
         }
 
-        String str = IOUtils.toString(in, enc); // May throw IOException. Throws NullPointerException if in is null.
-
-        // Replace all occurrences of a single '&' with "&amp;" (or leave this construct as is).
-        // First replace blindly all '&' to its corresponding character reference.
-        str = str.replace("&", "&amp;");
-        // Then restore any existing character reference.
-        str = str.replaceAll("&amp;([a-zA-Z0-9#]+;)", "&$1"); // Shall not throw PatternSyntaxException.
-
-        // Convert all XML element/attribute names to lower case.
-        final StringBuilder sb = new StringBuilder();
-        final int len = str.length();
-        boolean inElement = false;
-        boolean inAttribute = false;
-        char previousChar = ' '; // Neutral value in our case.
-        char attributeSeparator = '"'; // Dummy initialization, just to make the compiler happy.
-
-        for (int i = 0; i < len; i++)
-        {
-            final char c = str.charAt(i); // Shall not throw IndexOutOfBoundsException.
-
-            switch (c)
-            {
-                case '<':
-                    inElement = true;
-                    inAttribute = true;
-                    sb.append(c);
-                    break;
-
-                case '>':
-                    inElement = false;
-                    inAttribute = false;
-                    sb.append(c);
-                    break;
-
-                case '"':
-                    if (inElement && (previousChar != '\\'))
-                    {
-                        if (inAttribute)
-                        {
-                            attributeSeparator = '"';
-                            inAttribute = false;
-                        }
-                        else if (attributeSeparator == '"')
-                        {
-                            inAttribute = true;
-                        }
-                    }
-
-                    sb.append(c);
-                    break;
-
-                case '\'':
-                    if (inElement && (previousChar != '\\'))
-                    {
-                        if (inAttribute)
-                        {
-                            attributeSeparator = '\'';
-                            inAttribute = false;
-                        }
-                        else if (attributeSeparator == '\'')
-                        {
-                            inAttribute = true;
-                        }
-                    }
-
-                    sb.append(c);
-                    break;
-
-                default:
-                    if (inElement && inAttribute)
-                    {
-                        sb.append(Character.toLowerCase(c));
-                    }
-                    else
-                    {
-                        sb.append(c);
-                    }
-            }
-
-            previousChar = c;
-        }
-
-        str = sb.toString();
+        // Replace all occurrences of a single '&' with "&amp;" (or leave this construct as is), while reading.
+        // Convert also all XML element/attribute names to lower case, while reading.
+        final Reader reader = new LowerCaseNameReader(new AmpersandRepairReader(new InputStreamReader(in, enc))); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
 
         // Unmarshal the ASX playlist.
         final XmlSerializer serializer = XmlSerializer.getMapping("chameleon/playlist/asx"); // May throw Exception.
-        serializer.getUnmarshaller().setIgnoreExtraElements(false); // Force an error if unknown elements are found.
-
-        final StringReader reader = new StringReader(str);
-        final SpecificPlaylist ret = (SpecificPlaylist) serializer.unmarshal(reader); // May throw Exception.
+        final SpecificPlaylist ret = (SpecificPlaylist) serializer.unmarshal(reader, false); // May throw Exception. Force an error if unknown elements are found.
         ret.setProvider(this);
 
         return ret;
@@ -253,10 +180,9 @@ public class AsxProvider implements SpecificPlaylistProvider
                     newContainer = repeat;
                 }
 
-                final AbstractPlaylistComponent[] components = sequence.getComponents();
-
-                for (AbstractPlaylistComponent c : components)
+                for (int iter = 0; iter < sequence.getComponentsNumber(); iter++)
                 {
+                    final AbstractPlaylistComponent c = sequence.componentAt(iter); // Shall not throw IndexOutOfBoundsException.
                     addToPlaylist(newContainer, c);
                 }
             }
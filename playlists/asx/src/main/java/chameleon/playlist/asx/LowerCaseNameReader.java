@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.asx;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A character stream which converts to lower case the element and attribute names of an XML document, while reading it.
+ * The ASX element and attribute names are not case sensitive, but the XML ones are.
+ * <br>
+ * All the characters of a tag are converted, except those enclosed between quotes (single or double), i.e. the attribute values.
+ * A quote preceded by a backslash does not end a value.
+ * All the characters outside the tags are returned as is, and the contents are never entirely held in memory.
+ * <br>
+ * This stream does not support {@link #mark marking}, and shall not be used by several threads at the same time.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+class LowerCaseNameReader extends FilterReader
+{
+    /**
+     * Specifies if the current character is inside a tag.
+     */
+    private boolean _inElement = false;
+
+    /**
+     * Specifies if the current character is inside a tag, but not inside an attribute value.
+     */
+    private boolean _inAttribute = false;
+
+    /**
+     * The previous character read.
+     */
+    private char _previousChar = ' '; // Neutral value in our case.
+
+    /**
+     * The quote character which started the current attribute value.
+     */
+    private char _attributeSeparator = '"';
+
+    /**
+     * A buffer used by {@link #read()}.
+     */
+    private final char[] _single = new char[1];
+
+    /**
+     * Builds a new reader on top of the specified character stream.
+     * @param in a character stream. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>in</code> is <code>null</code>.
+     */
+    LowerCaseNameReader(final Reader in)
+    {
+        super(in); // Throws NullPointerException if in is null.
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        final int nb = read(_single, 0, 1); // May throw IOException.
+
+        return (nb < 0) ? -1 : _single[0];
+    }
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) throws IOException
+    {
+        final int ret = in.read(cbuf, off, len); // May throw IOException, IndexOutOfBoundsException. Throws NullPointerException if cbuf is null.
+
+        // Convert the characters in place.
+        for (int i = off; i < (off + ret); i++)
+        {
+            final char c = cbuf[i];
+
+            switch (c)
+            {
+                case '<':
+                    _inElement = true;
+                    _inAttribute = true;
+                    break;
+
+                case '>':
+                    _inElement = false;
+                    _inAttribute = false;
+                    break;
+
+                case '"':
+                case '\'':
+                    if (_inElement && (_previousChar != '\\'))
+                    {
+                        if (_inAttribute)
+                        {
+                            _attributeSeparator = c;
+                            _inAttribute = false;
+                        }
+                        else if (_attributeSeparator == c)
+                        {
+                            _inAttribute = true;
+                        }
+                    }
+                    break;
+
+                default:
+                    if (_inElement && _inAttribute)
+                    {
+                        cbuf[i] = Character.toLowerCase(c);
+                    }
+            }
+
+            _previousChar = c;
+        }
+
+        return ret;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException
+    {
+        if (n < 0L)
+        {
+            throw new IllegalArgumentException("Negative skip length " + n);
+        }
+
+        // The skipped characters shall update the current state.
+        final char[] skipped = new char[(int) Math.min(n, 512L)];
+        long ret = 0L;
+
+        while (ret < n)
+        {
+            final int nb = read(skipped, 0, (int) Math.min(n - ret, skipped.length)); // May throw IOException.
+
+            if (nb < 0)
+            {
+                break;
+            }
+
+            ret += nb;
+        }
+
+        return ret;
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+        return false;
+    }
+
+    @Override
+    public void mark(final int readAheadLimit) throws IOException
+    {
+        throw new IOException("mark() not supported");
+    }
+
+    @Override
+    public void reset() throws IOException
+    {
+        throw new IOException("reset() not supported");
+    }
+}
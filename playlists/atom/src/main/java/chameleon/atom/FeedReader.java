@@ -0,0 +1,690 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.atom;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Date;
+
+import javax.xml.XMLConstants;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import chameleon.xml.AmpersandRepairReader;
+
+/**
+ * Reads the entries of an Atom feed document one after the other, without building the whole feed in memory.
+ * The feed-level elements which precede the first entry (title, identifier, links, etc.) are read up front, and are available through {@link #getFeed}.
+ * Each call to {@link #next} then reads and returns a single entry.
+ * <br>
+ * The parser is aware of the namespaces: the Atom elements are recognized in the Atom namespace, whatever their prefix, or in no namespace at all.
+ * The elements belonging to any other namespace (i.e. the extension elements) are skipped.
+ * <br>
+ * When done, the reader shall be closed, which also closes the underlying input stream.
+ * It shall not be used by several threads at the same time.
+ * @author Christophe Delory
+ * @version $Revision: 92 $
+ * @since 1.3.0
+ */
+public class FeedReader implements Closeable
+{
+    /**
+     * The Atom namespace.
+     */
+    public static final String NAMESPACE = "http://www.w3.org/2005/Atom";
+
+    /**
+     * The underlying character stream.
+     */
+    private final Reader _in;
+
+    /**
+     * The XML pull parser.
+     */
+    private final XMLStreamReader _reader;
+
+    /**
+     * Specifies if only the enclosure links of the entries shall be kept.
+     */
+    private final boolean _enclosuresOnly;
+
+    /**
+     * The feed-level elements read so far.
+     */
+    private final Feed _feed = new Feed();
+
+    /**
+     * A factory for the dates.
+     */
+    private final DatatypeFactory _datatypeFactory;
+
+    /**
+     * Specifies if the parser is currently on the start tag of an entry.
+     */
+    private boolean _onEntry = false;
+
+    /**
+     * Specifies if the end of the feed has been reached.
+     */
+    private boolean _done = false;
+
+    /**
+     * Builds a new entry reader on the specified Atom feed document, and reads the feed-level elements preceding the first entry.
+     * @param in an input stream. Shall not be <code>null</code>.
+     * @param encoding the content encoding of the input resource, or <code>null</code> if not known.
+     * @throws NullPointerException if <code>in</code> is <code>null</code>.
+     * @throws IllegalArgumentException if the contents don't look like an Atom feed document.
+     * @throws IOException if an I/O error occurs.
+     * @throws XMLStreamException if the contents are not well-formed.
+     * @throws Exception if a feed-level element is malformed.
+     */
+    public FeedReader(final InputStream in, final String encoding) throws Exception
+    {
+        this(in, encoding, false); // Throws NullPointerException if in is null. May throw IllegalArgumentException, IOException, XMLStreamException, Exception.
+    }
+
+    /**
+     * Builds a new entry reader on the specified Atom feed document, and reads the feed-level elements preceding the first entry.
+     * @param in an input stream. Shall not be <code>null</code>.
+     * @param encoding the content encoding of the input resource, or <code>null</code> if not known.
+     * @param enclosuresOnly if <code>true</code>, only the links of the entries having an "enclosure" relation (i.e. the media) are kept.
+     * @throws NullPointerException if <code>in</code> is <code>null</code>.
+     * @throws IllegalArgumentException if the contents don't look like an Atom feed document.
+     * @throws IOException if an I/O error occurs.
+     * @throws XMLStreamException if the contents are not well-formed.
+     * @throws Exception if a feed-level element is malformed.
+     */
+    public FeedReader(final InputStream in, final String encoding, final boolean enclosuresOnly) throws Exception
+    {
+        _enclosuresOnly = enclosuresOnly;
+        _datatypeFactory = DatatypeFactory.newInstance(); // May throw DatatypeConfigurationException.
+
+        String enc = encoding;
+
+        if (enc == null)
+        {
+            enc = "UTF-8";
+        }
+
+        // Replace all occurrences of a single '&' with "&amp;" (or leave this construct as is), while reading.
+        _in = new AmpersandRepairReader(new InputStreamReader(in, enc)); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
+
+        final XMLInputFactory factory = XMLInputFactory.newInstance(); // May throw FactoryConfigurationError.
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE); // Shall not throw IllegalArgumentException.
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE); // Shall not throw IllegalArgumentException.
+        _reader = factory.createXMLStreamReader(_in); // May throw XMLStreamException.
+
+        while (_reader.next() != XMLStreamConstants.START_ELEMENT) // May throw XMLStreamException, NoSuchElementException.
+        {
+            // Skip the prolog.
+        }
+
+        if (!isAtomElement() || !"feed".equals(_reader.getLocalName()))
+        {
+            throw new IllegalArgumentException("Not an Atom feed document");
+        }
+
+        readCommon(_feed);
+        readFeed(); // May throw Exception.
+    }
+
+    /**
+     * Returns the feed-level elements read so far.
+     * All those preceding the first entry are available as soon as this reader is built.
+     * The returned feed has no entry.
+     * @return an Atom feed. Shall not be <code>null</code>.
+     */
+    public Feed getFeed()
+    {
+        return _feed;
+    }
+
+    /**
+     * Reads the next entry of the feed.
+     * Any feed-level element found after an entry is added to the {@link #getFeed feed}.
+     * @return a new entry, or <code>null</code> if the end of the feed has been reached.
+     * @throws XMLStreamException if the contents are not well-formed.
+     * @throws Exception if an element is malformed.
+     */
+    public Entry next() throws Exception
+    {
+        Entry ret = null;
+
+        if (_onEntry)
+        {
+            _onEntry = false;
+            ret = readEntry(); // May throw Exception.
+            readFeed(); // May throw Exception.
+        }
+
+        return ret;
+    }
+
+    /**
+     * Reads the feed-level elements, up to the start tag of an entry or the end of the feed.
+     * @throws XMLStreamException if the contents are not well-formed.
+     * @throws Exception if an element is malformed.
+     */
+    private void readFeed() throws Exception
+    {
+        while (!_onEntry && !_done)
+        {
+            if (nextTag() == XMLStreamConstants.START_ELEMENT) // May throw XMLStreamException.
+            {
+                if (isAtomElement() && "entry".equals(_reader.getLocalName()))
+                {
+                    _onEntry = true;
+                }
+                else
+                {
+                    readSourceElement(_feed); // May throw Exception.
+                }
+            }
+            else
+            {
+                // End of the feed.
+                _done = true;
+            }
+        }
+    }
+
+    /**
+     * Reads the current entry, up to and including its end tag.
+     * @return a new entry. Shall not be <code>null</code>.
+     * @throws XMLStreamException if the contents are not well-formed.
+     * @throws Exception if an element is malformed.
+     */
+    private Entry readEntry() throws Exception
+    {
+        final Entry ret = new Entry();
+        readCommon(ret);
+
+        while (nextTag() == XMLStreamConstants.START_ELEMENT) // May throw XMLStreamException.
+        {
+            final String name = isAtomElement() ? _reader.getLocalName() : "";
+
+            if ("author".equals(name))
+            {
+                ret.addAuthor(readPerson()); // May throw XMLStreamException.
+            }
+            else if ("category".equals(name))
+            {
+                ret.addCategory(readCategory()); // May throw XMLStreamException.
+            }
+            else if ("content".equals(name))
+            {
+                ret.addContent(readContent()); // May throw XMLStreamException.
+            }
+            else if ("contributor".equals(name))
+            {
+                ret.addContributor(readPerson()); // May throw XMLStreamException.
+            }
+            else if ("id".equals(name))
+            {
+                ret.setId(readURIContainer()); // May throw XMLStreamException.
+            }
+            else if ("link".equals(name))
+            {
+                final Link link = readLink(); // May throw XMLStreamException, NumberFormatException.
+
+                if (!_enclosuresOnly || "enclosure".equals(link.getRel()))
+                {
+                    ret.addLink(link);
+                }
+            }
+            else if ("published".equals(name))
+            {
+                ret.setPublished(readDate()); // May throw XMLStreamException, IllegalArgumentException.
+            }
+            else if ("rights".equals(name))
+            {
+                ret.setRights(readTextContainer()); // May throw XMLStreamException.
+            }
+            else if ("source".equals(name))
+            {
+                final Source source = new Source(); // NOPMD Avoid instantiating new objects inside loops
+                readCommon(source);
+
+                while (nextTag() == XMLStreamConstants.START_ELEMENT) // May throw XMLStreamException.
+                {
+                    readSourceElement(source); // May throw Exception.
+                }
+
+                ret.setSource(source);
+            }
+            else if ("summary".equals(name))
+            {
+                ret.setSummary(readTextContainer()); // May throw XMLStreamException.
+            }
+            else if ("title".equals(name))
+            {
+                ret.setTitle(readTextContainer()); // May throw XMLStreamException.
+            }
+            else if ("updated".equals(name))
+            {
+                ret.setUpdated(readDate()); // May throw XMLStreamException, IllegalArgumentException.
+            }
+            else
+            {
+                skipElement(); // May throw XMLStreamException.
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Reads the current element, which is a child of a feed or of a source element, up to and including its end tag.
+     * @param source the feed or the source being read. Shall not be <code>null</code>.
+     * @throws XMLStreamException if the contents are not well-formed.
+     * @throws Exception if the element is malformed.
+     */
+    private void readSourceElement(final Source source) throws Exception
+    {
+        final String name = isAtomElement() ? _reader.getLocalName() : "";
+
+        if ("author".equals(name))
+        {
+            source.addAuthor(readPerson()); // May throw XMLStreamException.
+        }
+        else if ("category".equals(name))
+        {
+            source.addCategory(readCategory()); // May throw XMLStreamException.
+        }
+        else if ("contributor".equals(name))
+        {
+            source.addContributor(readPerson()); // May throw XMLStreamException.
+        }
+        else if ("generator".equals(name))
+        {
+            final Generator generator = new Generator();
+            readCommon(generator);
+            final String uri = getAttribute("uri");
+
+            if (uri != null)
+            {
+                generator.setURIString(uri);
+            }
+
+            final String version = getAttribute("version");
+
+            if (version != null)
+            {
+                generator.setVersion(version);
+            }
+
+            final String value = readText(); // May throw XMLStreamException.
+
+            if (value != null)
+            {
+                generator.setValue(value);
+            }
+
+            source.setGenerator(generator);
+        }
+        else if ("icon".equals(name))
+        {
+            source.setIcon(readURIContainer()); // May throw XMLStreamException.
+        }
+        else if ("id".equals(name))
+        {
+            source.setId(readURIContainer()); // May throw XMLStreamException.
+        }
+        else if ("link".equals(name))
+        {
+            source.addLink(readLink()); // May throw XMLStreamException, NumberFormatException.
+        }
+        else if ("logo".equals(name))
+        {
+            source.setLogo(readURIContainer()); // May throw XMLStreamException.
+        }
+        else if ("rights".equals(name))
+        {
+            source.setRights(readTextContainer()); // May throw XMLStreamException.
+        }
+        else if ("subtitle".equals(name))
+        {
+            source.setSubtitle(readTextContainer()); // May throw XMLStreamException.
+        }
+        else if ("title".equals(name))
+        {
+            source.setTitle(readTextContainer()); // May throw XMLStreamException.
+        }
+        else if ("updated".equals(name))
+        {
+            source.setUpdated(readDate()); // May throw XMLStreamException, IllegalArgumentException.
+        }
+        else
+        {
+            skipElement(); // May throw XMLStreamException.
+        }
+    }
+
+    /**
+     * Reads the current person construct (an author or a contributor), up to and including its end tag.
+     * @return a new person. Shall not be <code>null</code>.
+     * @throws XMLStreamException if the contents are not well-formed.
+     */
+    private Person readPerson() throws XMLStreamException
+    {
+        final Person ret = new Person();
+        readCommon(ret);
+
+        while (nextTag() == XMLStreamConstants.START_ELEMENT) // May throw XMLStreamException.
+        {
+            final String name = isAtomElement() ? _reader.getLocalName() : "";
+
+            if ("name".equals(name))
+            {
+                final String text = readText(); // May throw XMLStreamException.
+
+                if (text != null)
+                {
+                    ret.setName(text);
+                }
+            }
+            else if ("uri".equals(name))
+            {
+                ret.setURIString(readText()); // May throw XMLStreamException.
+            }
+            else if ("email".equals(name))
+            {
+                ret.setEmail(readText()); // May throw XMLStreamException.
+            }
+            else
+            {
+                skipElement(); // May throw XMLStreamException.
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Reads the current category element, up to and including its end tag.
+     * @return a new category. Shall not be <code>null</code>.
+     * @throws XMLStreamException if the contents are not well-formed.
+     */
+    private Category readCategory() throws XMLStreamException
+    {
+        final Category ret = new Category();
+        readCommon(ret);
+        final String term = getAttribute("term");
+
+        if (term != null)
+        {
+            ret.setTerm(term);
+        }
+
+        ret.setScheme(getAttribute("scheme"));
+        ret.setLabel(getAttribute("label"));
+        skipElement(); // May throw XMLStreamException.
+
+        return ret;
+    }
+
+    /**
+     * Reads the current content element, up to and including its end tag.
+     * @return a new content. Shall not be <code>null</code>.
+     * @throws XMLStreamException if the contents are not well-formed.
+     */
+    private Content readContent() throws XMLStreamException
+    {
+        final Content ret = new Content();
+        readCommon(ret);
+        ret.setType(getAttribute("type"));
+        ret.setSrc(getAttribute("src"));
+        ret.setText(readText()); // May throw XMLStreamException.
+
+        return ret;
+    }
+
+    /**
+     * Reads the current link element, up to and including its end tag.
+     * @return a new link. Shall not be <code>null</code>.
+     * @throws XMLStreamException if the contents are not well-formed.
+     * @throws NumberFormatException if the length of the link is malformed.
+     */
+    private Link readLink() throws XMLStreamException
+    {
+        final Link ret = new Link();
+        readCommon(ret);
+        final String href = getAttribute("href");
+
+        if (href != null)
+        {
+            ret.setHref(href);
+        }
+
+        ret.setRel(getAttribute("rel"));
+        ret.setHrefLang(getAttribute("hreflang"));
+        ret.setTitle(getAttribute("title"));
+        ret.setType(getAttribute("type"));
+        final String length = getAttribute("length");
+
+        if (length != null)
+        {
+            ret.setLength(Long.valueOf(length.trim())); // May throw NumberFormatException.
+        }
+
+        skipElement(); // May throw XMLStreamException.
+
+        return ret;
+    }
+
+    /**
+     * Reads the current text construct, up to and including its end tag.
+     * @return a new text container. Shall not be <code>null</code>.
+     * @throws XMLStreamException if the contents are not well-formed.
+     */
+    private TextContainer readTextContainer() throws XMLStreamException
+    {
+        final TextContainer ret = new TextContainer();
+        readCommon(ret);
+        ret.setType(getAttribute("type"));
+        final String text = readText(); // May throw XMLStreamException.
+
+        if (text != null)
+        {
+            ret.setText(text);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Reads the current URI element, up to and including its end tag.
+     * @return a new URI container. Shall not be <code>null</code>.
+     * @throws XMLStreamException if the contents are not well-formed.
+     */
+    private URIContainer readURIContainer() throws XMLStreamException
+    {
+        final URIContainer ret = new URIContainer();
+        readCommon(ret);
+        final String text = readText(); // May throw XMLStreamException.
+
+        if (text != null)
+        {
+            ret.setURIString(text);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Reads the current date construct, up to and including its end tag.
+     * @return a date. Shall not be <code>null</code>.
+     * @throws XMLStreamException if the contents are not well-formed.
+     * @throws IllegalArgumentException if the date is malformed.
+     */
+    private Date readDate() throws XMLStreamException
+    {
+        final String text = readText(); // May throw XMLStreamException.
+
+        if (text == null)
+        {
+            throw new IllegalArgumentException("Empty date");
+        }
+
+        return _datatypeFactory.newXMLGregorianCalendar(text.trim()).toGregorianCalendar().getTime(); // May throw IllegalArgumentException.
+    }
+
+    /**
+     * Reads the "xml:base" and "xml:lang" attributes of the current element.
+     * @param common the Atom element being read. Shall not be <code>null</code>.
+     */
+    private void readCommon(final Common common)
+    {
+        final String base = _reader.getAttributeValue(XMLConstants.XML_NS_URI, "base");
+
+        if (base != null)
+        {
+            common.setBaseString(base);
+        }
+
+        final String lang = _reader.getAttributeValue(XMLConstants.XML_NS_URI, "lang");
+
+        if (lang != null)
+        {
+            common.setLang(lang);
+        }
+    }
+
+    /**
+     * Returns the value of the specified unqualified attribute of the current element.
+     * @param name an attribute name. Shall not be <code>null</code>.
+     * @return the attribute value, or <code>null</code> if the attribute is not present.
+     */
+    private String getAttribute(final String name)
+    {
+        return _reader.getAttributeValue(XMLConstants.NULL_NS_URI, name);
+    }
+
+    /**
+     * Reads the text of the current element, up to and including its end tag.
+     * Like the unmarshaller, only the text directly contained in the element is taken into account:
+     * the child elements, if any, are skipped.
+     * @return the text of the element, or <code>null</code> if the element contains no text at all.
+     * @throws XMLStreamException if the contents are not well-formed.
+     */
+    private String readText() throws XMLStreamException
+    {
+        final StringBuilder sb = new StringBuilder();
+        int event = _reader.next(); // May throw XMLStreamException.
+
+        while (event != XMLStreamConstants.END_ELEMENT)
+        {
+            if (event == XMLStreamConstants.START_ELEMENT)
+            {
+                skipElement(); // May throw XMLStreamException.
+            }
+            else if ((event == XMLStreamConstants.CHARACTERS) || (event == XMLStreamConstants.CDATA) || (event == XMLStreamConstants.SPACE) || (event == XMLStreamConstants.ENTITY_REFERENCE))
+            {
+                sb.append(_reader.getText());
+            }
+
+            event = _reader.next(); // May throw XMLStreamException.
+        }
+
+        return (sb.length() > 0) ? sb.toString() : null;
+    }
+
+    /**
+     * Specifies if the current element belongs to the Atom namespace, or to no namespace at all.
+     * @return <code>true</code> if the current element is an Atom element.
+     */
+    private boolean isAtomElement()
+    {
+        final String uri = _reader.getNamespaceURI();
+
+        return (uri == null) || (uri.length() == 0) || NAMESPACE.equals(uri);
+    }
+
+    /**
+     * Skips the current element, up to and including its end tag.
+     * @throws XMLStreamException if the contents are not well-formed.
+     */
+    private void skipElement() throws XMLStreamException
+    {
+        int level = 1;
+
+        while (level > 0)
+        {
+            final int event = _reader.next(); // May throw XMLStreamException.
+
+            if (event == XMLStreamConstants.START_ELEMENT)
+            {
+                level++;
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT)
+            {
+                level--;
+            }
+        }
+    }
+
+    /**
+     * Moves to the next start or end tag, skipping any text in between.
+     * Contrary to {@link XMLStreamReader#nextTag}, non-whitespace text is allowed.
+     * @return the event type of the tag.
+     * @throws XMLStreamException if the contents are not well-formed.
+     */
+    private int nextTag() throws XMLStreamException
+    {
+        int event = _reader.next(); // May throw XMLStreamException.
+
+        while ((event != XMLStreamConstants.START_ELEMENT) && (event != XMLStreamConstants.END_ELEMENT))
+        {
+            event = _reader.next(); // May throw XMLStreamException.
+        }
+
+        return event;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            _reader.close(); // May throw XMLStreamException.
+        }
+        catch (XMLStreamException e)
+        {
+            final IOException ioe = new IOException(e.toString());
+            ioe.initCause(e);
+            throw ioe;
+        }
+        finally
+        {
+            _in.close(); // May throw IOException.
+        }
+    }
+}
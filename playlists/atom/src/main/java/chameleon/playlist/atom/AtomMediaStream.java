@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.atom;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import chameleon.atom.Entry;
+import chameleon.atom.FeedReader;
+import chameleon.atom.Link;
+import chameleon.content.Content;
+import chameleon.playlist.Media;
+import chameleon.playlist.MediaStream;
+
+/**
+ * The media of an Atom feed, read one entry after the other.
+ * Only the enclosure links of each entry are taken into account.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ * @see FeedReader
+ */
+final class AtomMediaStream implements MediaStream
+{
+    /**
+     * The underlying entry reader.
+     */
+    private final FeedReader _reader;
+
+    /**
+     * The remaining links of the current entry, if any.
+     */
+    private Iterator<Link> _links = null;
+
+    /**
+     * Builds a new stream of media on the specified Atom feed document, and reads the feed-level elements preceding the first entry.
+     * @param in an input stream. Shall not be <code>null</code>.
+     * @param encoding the content encoding of the input resource, or <code>null</code> if not known.
+     * @throws NullPointerException if <code>in</code> is <code>null</code>.
+     * @throws IllegalArgumentException if the contents don't look like an Atom feed document.
+     * @throws IOException if an I/O error occurs.
+     * @throws Exception if the contents are malformed.
+     */
+    AtomMediaStream(final InputStream in, final String encoding) throws Exception
+    {
+        _reader = new FeedReader(in, encoding, true); // Throws NullPointerException if in is null. May throw IllegalArgumentException, IOException, XMLStreamException, Exception.
+    }
+
+    @Override
+    public Media next() throws Exception
+    {
+        Media ret = null;
+
+        while (ret == null)
+        {
+            if ((_links == null) || !_links.hasNext())
+            {
+                final Entry entry = _reader.next(); // May throw Exception.
+
+                if (entry == null)
+                {
+                    break;
+                }
+
+                _links = entry.getLinks().iterator();
+            }
+            else
+            {
+                final Link link = _links.next(); // Shall not throw NoSuchElementException.
+
+                // Same as AtomPlaylist.toPlaylist().
+                if ((link.getHref() != null) && "enclosure".equals(link.getRel()))
+                {
+                    ret = new Media(); // NOPMD Avoid instantiating new objects inside loops
+                    final Content content = new Content(link.getHref()); // NOPMD Avoid instantiating new objects inside loops
+                    content.setType(link.getType());
+
+                    if (link.getLength() != null)
+                    {
+                        content.setLength(link.getLength().longValue());
+                    }
+
+                    ret.setSource(content);
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        _reader.close(); // May throw IOException.
+    }
+}
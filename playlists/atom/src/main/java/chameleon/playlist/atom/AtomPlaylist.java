@@ -25,7 +25,6 @@
 package chameleon.playlist.atom;
 
 import java.io.OutputStream;
-import java.io.StringWriter;
 
 import chameleon.atom.Entry;
 import chameleon.atom.Feed;
@@ -69,22 +68,9 @@ public class AtomPlaylist implements SpecificPlaylist
     public void writeTo(final OutputStream out, final String encoding) throws Exception
     {
         // Marshal the document.
-        final StringWriter writer = new StringWriter();
         final XmlSerializer serializer = XmlSerializer.getMapping("chameleon/atom"); // May throw Exception.
-        // Specifies whether XML documents (as generated at marshalling) should use indentation or not. Default is false.
-        serializer.getMarshaller().setProperty("org.exolab.castor.indent", "true");
         //serializer.getMarshaller().setNamespaceMapping("", "http://www.w3.org/2005/Atom");
-        serializer.marshal(_feed, writer, false); // May throw Exception.
-
-        String enc = encoding;
-
-        if (enc == null)
-        {
-            enc = "UTF-8";
-        }
-
-        final byte[] bytes = writer.toString().getBytes(enc); // May throw UnsupportedEncodingException.
-        out.write(bytes); // Throws NullPointerException if out is null. May throw IOException.
+        serializer.marshal(_feed, out, encoding, false, true); // Throws NullPointerException if out is null. May throw Exception.
         out.flush(); // May throw IOException.
     }
 
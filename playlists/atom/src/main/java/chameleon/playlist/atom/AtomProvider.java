@@ -26,7 +26,6 @@ package chameleon.playlist.atom;
 
 import java.io.File;
 import java.io.InputStream;
-import java.io.StringReader;
 import java.net.URI;
 import java.util.Date;
 
@@ -35,30 +34,33 @@ import org.apache.commons.logging.Log;
 
 import chameleon.atom.Entry;
 import chameleon.atom.Feed;
+import chameleon.atom.FeedReader;
 import chameleon.atom.Generator;
 import chameleon.atom.Link;
 import chameleon.atom.Person;
 import chameleon.atom.TextContainer;
 import chameleon.atom.URIContainer;
 import chameleon.content.type.ContentType;
-import chameleon.io.IOUtils;
 import chameleon.player.PlayerSupport;
 import chameleon.playlist.AbstractPlaylistComponent;
 import chameleon.playlist.Media;
+import chameleon.playlist.MediaStream;
 import chameleon.playlist.Parallel;
 import chameleon.playlist.Playlist;
+import chameleon.playlist.PlaylistHeader;
 import chameleon.playlist.Sequence;
 import chameleon.playlist.SpecificPlaylist;
+import chameleon.playlist.SpecificPlaylistProbe;
 import chameleon.playlist.SpecificPlaylistProvider;
+import chameleon.playlist.StreamingPlaylistProvider;
 import chameleon.xml.Version;
-import chameleon.xml.XmlSerializer;
 
 /**
  * The Atom playlist provider.
  * @version $Revision: 91 $
  * @author Christophe Delory
  */
-public class AtomProvider implements SpecificPlaylistProvider
+public class AtomProvider implements SpecificPlaylistProvider, SpecificPlaylistProbe, StreamingPlaylistProvider
 {
     /**
      * A list of compatible content types.
@@ -85,35 +87,26 @@ public class AtomProvider implements SpecificPlaylistProvider
         return FILETYPES.clone();
     }
 
+    @Override
+    public int probe(final PlaylistHeader header)
+    {
+        return header.matchRootElement("UTF-8", "feed", false, "http://www.w3.org/2005/Atom");
+    }
+
     @Override
     public SpecificPlaylist readFrom(final InputStream in, final String encoding, final Log logger) throws Exception
     {
-        String enc = encoding;
+        // The Atom namespace is handled by the reader, whatever its prefix.
+        final FeedReader reader = new FeedReader(in, encoding); // Throws NullPointerException if in is null. May throw IllegalArgumentException, IOException, XMLStreamException, Exception.
+        // TODO Allow also an Entry.
+        final Feed feed = reader.getFeed();
+        Entry entry;
 
-        if (enc == null)
+        while ((entry = reader.next()) != null) // May throw Exception.
         {
-            enc = "UTF-8";
+            feed.addEntry(entry);
         }
 
-        String str = IOUtils.toString(in, enc); // May throw IOException. Throws NullPointerException if in is null.
-
-        // Replace all occurrences of a single '&' with "&amp;" (or leave this construct as is).
-        // First replace blindly all '&' to its corresponding character reference.
-        str = str.replace("&", "&amp;");
-        // Then restore any existing character reference.
-        str = str.replaceAll("&amp;([a-zA-Z0-9#]+;)", "&$1"); // Shall not throw PatternSyntaxException.
-
-        // Workaround Castor bug 2521:
-        str = str.replace("xmlns=\"http://www.w3.org/2005/Atom\"", "");
-
-        // Unmarshal the SMIL playlist.
-        final XmlSerializer serializer = XmlSerializer.getMapping("chameleon/atom"); // May throw Exception.
-        serializer.getUnmarshaller().setIgnoreExtraElements(true);
-
-        final StringReader reader = new StringReader(str);
-        // TODO Allow also an Entry.
-        final Feed feed = (Feed) serializer.unmarshal(reader); // May throw Exception.
-
         final AtomPlaylist ret = new AtomPlaylist();
         ret.setProvider(this);
         ret.setFeed(feed);
@@ -121,6 +114,12 @@ public class AtomProvider implements SpecificPlaylistProvider
         return ret;
     }
 
+    @Override
+    public MediaStream openStream(final InputStream in, final String encoding, final Log logger) throws Exception
+    {
+        return new AtomMediaStream(in, encoding); // Throws NullPointerException if in is null. May throw IllegalArgumentException, IOException, Exception.
+    }
+
     @Override
     public SpecificPlaylist toSpecificPlaylist(final Playlist playlist) throws Exception
     {
@@ -184,12 +183,11 @@ public class AtomProvider implements SpecificPlaylistProvider
                 throw new IllegalArgumentException("An Atom playlist cannot handle a sequence repeated indefinitely");
             }
 
-            final AbstractPlaylistComponent[] components = sequence.getComponents();
-
             for (int iter = 0; iter < sequence.getRepeatCount(); iter++)
             {
-                for (AbstractPlaylistComponent c : components)
+                for (int i = 0; i < sequence.getComponentsNumber(); i++)
                 {
+                    final AbstractPlaylistComponent c = sequence.componentAt(i); // Shall not throw IndexOutOfBoundsException.
                     addToPlaylist(feed, c); // May throw Exception.
                 }
             }
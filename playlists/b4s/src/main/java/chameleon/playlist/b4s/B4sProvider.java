@@ -25,19 +25,22 @@
 package chameleon.playlist.b4s;
 
 import java.io.InputStream;
-import java.io.StringReader;
+import java.io.InputStreamReader;
+import java.io.Reader;
 
 import org.apache.commons.logging.Log;
 
 import chameleon.content.type.ContentType;
-import chameleon.io.IOUtils;
 import chameleon.player.PlayerSupport;
 import chameleon.playlist.AbstractPlaylistComponent;
 import chameleon.playlist.Media;
 import chameleon.playlist.Parallel;
+import chameleon.playlist.PlaylistHeader;
 import chameleon.playlist.Sequence;
 import chameleon.playlist.SpecificPlaylist;
+import chameleon.playlist.SpecificPlaylistProbe;
 import chameleon.playlist.SpecificPlaylistProvider;
+import chameleon.xml.AmpersandRepairReader;
 import chameleon.xml.XmlSerializer;
 
 /**
@@ -46,7 +49,7 @@ import chameleon.xml.XmlSerializer;
  * @version $Revision: 91 $
  * @author Christophe Delory
  */
-public class B4sProvider implements SpecificPlaylistProvider
+public class B4sProvider implements SpecificPlaylistProvider, SpecificPlaylistProbe
 {
     /**
      * A list of compatible content types.
@@ -75,6 +78,12 @@ public class B4sProvider implements SpecificPlaylistProvider
         return FILETYPES.clone();
     }
 
+    @Override
+    public int probe(final PlaylistHeader header)
+    {
+        return header.matchRootElement("UTF-8", "WinampXML", false, null);
+    }
+
     @Override
     public SpecificPlaylist readFrom(final InputStream in, final String encoding, final Log logger) throws Exception
     {
@@ -85,20 +94,13 @@ public class B4sProvider implements SpecificPlaylistProvider
             enc = "UTF-8";
         }
 
-        String str = IOUtils.toString(in, enc); // May throw IOException. Throws NullPointerException if in is null.
-
-        // Replace all occurrences of a single '&' with "&amp;" (or leave this construct as is).
-        // First replace blindly all '&' to its corresponding character reference.
-        str = str.replace("&", "&amp;");
-        // Then restore any existing character reference.
-        str = str.replaceAll("&amp;([a-zA-Z0-9#]+;)", "&$1"); // Shall not throw PatternSyntaxException.
+        // Replace all occurrences of a single '&' with "&amp;" (or leave this construct as is), while reading.
+        final Reader reader = new AmpersandRepairReader(new InputStreamReader(in, enc)); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
 
         // Unmarshal the B4S playlist.
         final XmlSerializer serializer = XmlSerializer.getMapping("chameleon/playlist/b4s"); // May throw Exception.
-        serializer.getUnmarshaller().setIgnoreExtraElements(false); // Force an error if unknown elements are found.
 
-        final StringReader reader = new StringReader(str);
-        final SpecificPlaylist ret = (SpecificPlaylist) serializer.unmarshal(reader); // May throw Exception.
+        final SpecificPlaylist ret = (SpecificPlaylist) serializer.unmarshal(reader, false); // May throw Exception. Force an error if unknown elements are found.
         ret.setProvider(this);
 
         return ret;
@@ -134,12 +136,11 @@ public class B4sProvider implements SpecificPlaylistProvider
                 throw new IllegalArgumentException("A B4S playlist cannot handle a sequence repeated indefinitely");
             }
 
-            final AbstractPlaylistComponent[] components = sequence.getComponents();
-
             for (int iter = 0; iter < sequence.getRepeatCount(); iter++)
             {
-                for (AbstractPlaylistComponent c : components)
+                for (int i = 0; i < sequence.getComponentsNumber(); i++)
                 {
+                    final AbstractPlaylistComponent c = sequence.componentAt(i); // Shall not throw IndexOutOfBoundsException.
                     addToPlaylist(playlist, c); // May throw Exception.
                 }
             }
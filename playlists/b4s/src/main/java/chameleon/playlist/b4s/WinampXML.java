@@ -25,7 +25,6 @@
 package chameleon.playlist.b4s;
 
 import java.io.OutputStream;
-import java.io.StringWriter;
 
 import chameleon.content.Content;
 import chameleon.playlist.Media;
@@ -67,21 +66,8 @@ public class WinampXML implements SpecificPlaylist
     public void writeTo(final OutputStream out, final String encoding) throws Exception
     {
         // Marshal the B4S playlist.
-        final StringWriter writer = new StringWriter();
         final XmlSerializer serializer = XmlSerializer.getMapping("chameleon/playlist/b4s"); // May throw Exception.
-        // Specifies whether XML documents (as generated at marshalling) should use indentation or not. Default is false.
-        serializer.getMarshaller().setProperty("org.exolab.castor.indent", "true");
-        serializer.marshal(this, writer, false); // May throw Exception.
-
-        String enc = encoding;
-
-        if (enc == null)
-        {
-            enc = "UTF-8";
-        }
-
-        final byte[] bytes = writer.toString().getBytes(enc); // May throw UnsupportedEncodingException.
-        out.write(bytes); // Throws NullPointerException if out is null. May throw IOException.
+        serializer.marshal(this, out, encoding, false, true); // Throws NullPointerException if out is null. May throw Exception.
         out.flush(); // May throw IOException.
     }
 
@@ -25,19 +25,22 @@
 package chameleon.playlist.hypetape;
 
 import java.io.InputStream;
-import java.io.StringReader;
+import java.io.InputStreamReader;
+import java.io.Reader;
 
 import org.apache.commons.logging.Log;
 
 import chameleon.content.type.ContentType;
-import chameleon.io.IOUtils;
 import chameleon.player.PlayerSupport;
 import chameleon.playlist.AbstractPlaylistComponent;
 import chameleon.playlist.Media;
 import chameleon.playlist.Parallel;
+import chameleon.playlist.PlaylistHeader;
 import chameleon.playlist.Sequence;
 import chameleon.playlist.SpecificPlaylist;
+import chameleon.playlist.SpecificPlaylistProbe;
 import chameleon.playlist.SpecificPlaylistProvider;
+import chameleon.xml.AmpersandRepairReader;
 import chameleon.xml.XmlSerializer;
 
 /**
@@ -45,7 +48,7 @@ import chameleon.xml.XmlSerializer;
  * @version $Revision: 91 $
  * @author Christophe Delory
  */
-public class HypetapeProvider implements SpecificPlaylistProvider
+public class HypetapeProvider implements SpecificPlaylistProvider, SpecificPlaylistProbe
 {
     /**
      * A list of compatible content types.
@@ -72,6 +75,20 @@ public class HypetapeProvider implements SpecificPlaylistProvider
         return FILETYPES.clone();
     }
 
+    @Override
+    public int probe(final PlaylistHeader header)
+    {
+        int ret = header.matchRootElement("UTF-8", "playlist", false, null);
+
+        // Let the XSPF provider handle the playlists in its own namespace first.
+        if ((ret == SpecificPlaylistProbe.CERTAIN_MATCH) && (header.getRootNamespace("UTF-8") != null))
+        {
+            ret = SpecificPlaylistProbe.LIKELY_MATCH;
+        }
+
+        return ret;
+    }
+
     @Override
     public SpecificPlaylist readFrom(final InputStream in, final String encoding, final Log logger) throws Exception
     {
@@ -82,21 +99,14 @@ public class HypetapeProvider implements SpecificPlaylistProvider
             enc = "UTF-8";
         }
 
-        String str = IOUtils.toString(in, enc); // May throw IOException. Throws NullPointerException if in is null.
-
-        // Replace all occurrences of a single '&' with "&amp;" (or leave this construct as is).
-        // First replace blindly all '&' to its corresponding character reference.
-        str = str.replace("&", "&amp;");
-        // Then restore any existing character reference.
-        str = str.replaceAll("&amp;([a-zA-Z0-9#]+;)", "&$1"); // Shall not throw PatternSyntaxException.
+        // Replace all occurrences of a single '&' with "&amp;" (or leave this construct as is), while reading.
+        final Reader reader = new AmpersandRepairReader(new InputStreamReader(in, enc)); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
 
         // Unmarshal the WPL playlist.
         final XmlSerializer serializer = XmlSerializer.getMapping(
                 "chameleon/playlist/hypetape"); // May throw Exception.
-        serializer.getUnmarshaller().setIgnoreExtraElements(false);
 
-        final StringReader reader = new StringReader(str);
-        final SpecificPlaylist ret = (SpecificPlaylist) serializer.unmarshal(reader); // May throw Exception.
+        final SpecificPlaylist ret = (SpecificPlaylist) serializer.unmarshal(reader, false); // May throw Exception.
         ret.setProvider(this);
 
         return ret;
@@ -132,12 +142,11 @@ public class HypetapeProvider implements SpecificPlaylistProvider
                 throw new IllegalArgumentException("A Hypetape playlist cannot handle a sequence repeated indefinitely");
             }
 
-            final AbstractPlaylistComponent[] components = sequence.getComponents();
-
             for (int iter = 0; iter < sequence.getRepeatCount(); iter++)
             {
-                for (AbstractPlaylistComponent c : components)
+                for (int i = 0; i < sequence.getComponentsNumber(); i++)
                 {
+                    final AbstractPlaylistComponent c = sequence.componentAt(i); // Shall not throw IndexOutOfBoundsException.
                     addToPlaylist(playlist, c); // May throw Exception.
                 }
             }
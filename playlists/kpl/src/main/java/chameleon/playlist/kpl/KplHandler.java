@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.kpl;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Builds a Kalliope playlist in a single pass over its SAX events.
+ * The numeric element names shall have been prefixed by a {@link NumericElementReader}.
+ * <br>
+ * The playlist entries are the elements named "<code>x0</code>", "<code>x1</code>", etc., wherever they appear in the document.
+ * The first element with a given name is used, and the entries stop at the first missing index.
+ * The tag of an entry is the first "<code>tag</code>" element inside it, and the playlist information is the first "<code>info</code>" element of the document.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+class KplHandler extends DefaultHandler
+{
+    /**
+     * The entries already found, indexed by their number.
+     */
+    private final Map<Integer, Entry> _entries = new HashMap<Integer, Entry>();
+
+    /**
+     * For each currently open element, the entry it defines, or <code>null</code> if none.
+     */
+    private final List<Entry> _elements = new ArrayList<Entry>();
+
+    /**
+     * The attributes of the first "<code>info</code>" element, or <code>null</code> if none was found yet.
+     */
+    private Attributes _info = null;
+
+    /**
+     * Specifies if the root element has been checked.
+     */
+    private boolean _rootChecked = false;
+
+    @Override
+    public void startElement(final String uri, final String localName, final String qName, final Attributes attributes)
+    {
+        if (!_rootChecked)
+        {
+            if (!"xml".equals(qName))
+            {
+                throw new IllegalArgumentException("Not a Kalliope playlist (root element is not named 'xml')");
+            }
+
+            _rootChecked = true;
+        }
+
+        Entry entry = null;
+        final int index = getEntryIndex(qName);
+
+        if ((index >= 0) && !_entries.containsKey(index))
+        {
+            entry = new Entry();
+            entry.setFilename(getAttribute(attributes, "filename"));
+            _entries.put(index, entry);
+        }
+
+        _elements.add(entry);
+
+        if ("tag".equals(qName))
+        {
+            // This is the first tag of the enclosing entries which have none yet.
+            for (Entry parent : _elements)
+            {
+                if ((parent != null) && (parent.getTag() == null))
+                {
+                    final Tag tag = new Tag(); // NOPMD Avoid instantiating new objects inside loops
+                    tag.setArtist(getAttribute(attributes, "artist"));
+                    tag.setAlbum(getAttribute(attributes, "album"));
+                    tag.setTitle(getAttribute(attributes, "title"));
+                    tag.setYear(getAttribute(attributes, "year"));
+                    tag.setComment(getAttribute(attributes, "comment"));
+                    tag.setGenre(getAttribute(attributes, "genre"));
+                    tag.setTrack(getAttribute(attributes, "track"));
+                    tag.setGid(getAttribute(attributes, "gid"));
+                    tag.setHasTag(getAttribute(attributes, "has_tag"));
+                    parent.setTag(tag);
+                }
+            }
+        }
+        else if ("info".equals(qName) && (_info == null))
+        {
+            // The attributes are only valid during this call.
+            _info = new AttributesImpl(attributes);
+        }
+    }
+
+    @Override
+    public void endElement(final String uri, final String localName, final String qName)
+    {
+        _elements.remove(_elements.size() - 1); // Shall not throw IndexOutOfBoundsException.
+    }
+
+    /**
+     * Builds the Kalliope playlist from the parsed document.
+     * @return a new playlist. Shall not be <code>null</code>.
+     * @throws ParseException if a day of the playlist information cannot be parsed.
+     */
+    Xml getPlaylist() throws ParseException
+    {
+        final Xml ret = new Xml();
+
+        for (int nb = 0; _entries.containsKey(nb); nb++)
+        {
+            ret.getEntries().add(_entries.get(nb));
+        }
+
+        if (_info != null)
+        {
+            ret.getInfo().setCreationDayString(getAttribute(_info, "creation_day")); // May throw ParseException.
+            ret.getInfo().setModifiedDayString(getAttribute(_info, "modified_day")); // May throw ParseException.
+            ret.getInfo().setAuthor(getAttribute(_info, "author"));
+            ret.getInfo().setPlayer(getAttribute(_info, "player"));
+            ret.getInfo().setPlayerVersion(getAttribute(_info, "player_version"));
+            ret.getInfo().setKplVersion(getAttribute(_info, "kpl_version"));
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the index of the entry defined by an element with the given name.
+     * @param qName the (prefixed) element name. Shall not be <code>null</code>.
+     * @return a positive index, or <code>-1</code> if the element does not define an entry.
+     */
+    private static int getEntryIndex(final String qName)
+    {
+        final int length = qName.length();
+        int ret = -1;
+
+        // Only the canonical decimal representation of an integer is accepted: no sign, no leading zero.
+        if ((length >= 2) && (length <= 11) && (qName.charAt(0) == NumericElementReader.PREFIX) && ((length == 2) || (qName.charAt(1) != '0')))
+        {
+            long value = 0L;
+
+            for (int i = 1; i < length; i++)
+            {
+                final char c = qName.charAt(i);
+
+                if ((c < '0') || (c > '9'))
+                {
+                    value = -1L;
+                    break;
+                }
+
+                value = (value * 10L) + (c - '0');
+            }
+
+            if ((value >= 0L) && (value <= Integer.MAX_VALUE))
+            {
+                ret = (int) value;
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the value of the specified attribute.
+     * @param attributes a list of attributes. Shall not be <code>null</code>.
+     * @param name the attribute name. Shall not be <code>null</code>.
+     * @return the attribute value, or an empty string if there is no such attribute.
+     */
+    private static String getAttribute(final Attributes attributes, final String name)
+    {
+        final String ret = attributes.getValue(name);
+
+        return (ret == null) ? "" : ret;
+    }
+}
@@ -25,33 +25,31 @@
 package chameleon.playlist.kpl;
 
 import java.io.InputStream;
-import java.io.StringReader;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.Date;
 import java.util.List;
 
 import chameleon.Chameleon;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
 
 import org.xml.sax.InputSource;
-import org.xml.sax.helpers.DefaultHandler;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
 import org.apache.commons.logging.Log;
 
 import chameleon.content.type.ContentType;
-import chameleon.io.IOUtils;
 import chameleon.player.PlayerSupport;
 import chameleon.playlist.AbstractPlaylistComponent;
 import chameleon.playlist.Media;
 import chameleon.playlist.Parallel;
 import chameleon.playlist.Playlist;
+import chameleon.playlist.PlaylistHeader;
 import chameleon.playlist.Sequence;
 import chameleon.playlist.SpecificPlaylist;
+import chameleon.playlist.SpecificPlaylistProbe;
 import chameleon.playlist.SpecificPlaylistProvider;
+import chameleon.xml.AmpersandRepairReader;
 import chameleon.xml.Version;
 
 /**
@@ -61,7 +59,7 @@ import chameleon.xml.Version;
  * @version $Revision: 91 $
  * @author Christophe Delory
  */
-public class KplProvider implements SpecificPlaylistProvider
+public class KplProvider implements SpecificPlaylistProvider, SpecificPlaylistProbe
 {
     /**
      * A list of compatible content types.
@@ -88,6 +86,12 @@ public class KplProvider implements SpecificPlaylistProvider
         return FILETYPES.clone();
     }
 
+    @Override
+    public int probe(final PlaylistHeader header)
+    {
+        return header.matchRootElement("UTF-8", "xml", false, null);
+    }
+
     @Override
     public SpecificPlaylist readFrom(final InputStream in, final String encoding, final Log logger) throws Exception
     {
@@ -98,82 +102,20 @@ public class KplProvider implements SpecificPlaylistProvider
             enc = "UTF-8";
         }
 
-        String str = IOUtils.toString(in, enc); // May throw IOException. Throws NullPointerException if in is null.
-
-        // Replace all occurrences of a single '&' with "&amp;" (or leave this construct as is).
-        // First replace blindly all '&' to its corresponding character reference.
-        str = str.replace("&", "&amp;");
-        // Then restore any existing character reference.
-        str = str.replaceAll("&amp;([a-zA-Z0-9#]+;)", "&$1"); // Shall not throw PatternSyntaxException.
-
-        // An XML element name cannot begin with a digit (like in "0").
-        // Thus the document we are about to parse is NOT well-formed.
-        // But I can't set the "well-formed" parameter to the DOMConfiguration before parsing, nor call setStrictErrorChecking(false).
-        // Thus this trick.
-        str = str.replaceAll("<([0-9]+) ", "<x$1 "); // Shall not throw PatternSyntaxException.
-        str = str.replaceAll("</([0-9]+)", "</x$1"); // Shall not throw PatternSyntaxException.
+        // Replace all occurrences of a single '&' with "&amp;" (or leave this construct as is), while reading.
+        // An XML element name cannot begin with a digit (like in "0"): thus the numeric element names are also prefixed, while reading.
+        final Reader reader = new NumericElementReader(new AmpersandRepairReader(new InputStreamReader(in, enc))); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
 
-        // Unmarshal the KPL playlist.
-        final StringReader reader = new StringReader(str);
+        // Unmarshal the KPL playlist, in a single pass.
+        final SAXParserFactory parserFactory = SAXParserFactory.newInstance(); // May throw FactoryConfigurationError.
+        final SAXParser parser = parserFactory.newSAXParser(); // May throw ParserConfigurationException, SAXException.
+        final KplHandler handler = new KplHandler();
+        // The handler is also the error handler, which avoids logs on System.err like "[Fatal Error] :1:1: Content is not allowed in prolog."
+        parser.parse(new InputSource(reader), handler); // May throw IOException, SAXException, IllegalArgumentException.
 
-        final DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance(); // May throw FactoryConfigurationError.
-        final DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder(); // May throw ParserConfigurationException.
-        documentBuilder.setErrorHandler(new DefaultHandler()); // To avoid logs on System.err like "[Fatal Error] :1:1: Content is not allowed in prolog."
-        final Document document = documentBuilder.parse(new InputSource(reader)); // May throw IOException, SAXException. Shall not throw IllegalArgumentException.
-
-        if (!"xml".equals(document.getDocumentElement().getTagName())) // Throws NullPointerException if getDocumentElement() is null.
-        {
-            throw new IllegalArgumentException("Not a Kalliope playlist (root element is not named 'xml')");
-        }
-
-        final Xml ret = new Xml();
+        final Xml ret = handler.getPlaylist(); // May throw ParseException.
         ret.setProvider(this);
 
-        int nb = 0;
-        NodeList nodeList = document.getElementsByTagName('x' + Integer.toString(nb));
-
-        while (nodeList.getLength() > 0)
-        {
-            final Entry entry = new Entry(); // NOPMD Avoid instantiating new objects inside loops
-            final Element element = (Element) nodeList.item(0); // Shall not be null.
-            entry.setFilename(element.getAttribute("filename"));
-            ret.getEntries().add(entry);
-
-            final NodeList tagNodeList = element.getElementsByTagName("tag");
-
-            if (tagNodeList.getLength() > 0)
-            {
-                final Tag tag = new Tag(); // NOPMD Avoid instantiating new objects inside loops
-                final Element tagElement = (Element) tagNodeList.item(0); // Shall not be null.
-                tag.setArtist(tagElement.getAttribute("artist"));
-                tag.setAlbum(tagElement.getAttribute("album"));
-                tag.setTitle(tagElement.getAttribute("title"));
-                tag.setYear(tagElement.getAttribute("year"));
-                tag.setComment(tagElement.getAttribute("comment"));
-                tag.setGenre(tagElement.getAttribute("genre"));
-                tag.setTrack(tagElement.getAttribute("track"));
-                tag.setGid(tagElement.getAttribute("gid"));
-                tag.setHasTag(tagElement.getAttribute("has_tag"));
-                entry.setTag(tag);
-            }
-
-            nb++;
-            nodeList = document.getElementsByTagName('x' + Integer.toString(nb));
-        }
-
-        nodeList = document.getElementsByTagName("info");
-
-        if (nodeList.getLength() > 0)
-        {
-            final Element infoElement = (Element) nodeList.item(0); // Shall not be null.
-            ret.getInfo().setCreationDayString(infoElement.getAttribute("creation_day")); // May throw ParseException.
-            ret.getInfo().setModifiedDayString(infoElement.getAttribute("modified_day")); // May throw ParseException.
-            ret.getInfo().setAuthor(infoElement.getAttribute("author"));
-            ret.getInfo().setPlayer(infoElement.getAttribute("player"));
-            ret.getInfo().setPlayerVersion(infoElement.getAttribute("player_version"));
-            ret.getInfo().setKplVersion(infoElement.getAttribute("kpl_version"));
-        }
-
         return ret;
     }
 
@@ -212,12 +154,11 @@ public class KplProvider implements SpecificPlaylistProvider
                 throw new IllegalArgumentException("A KPL playlist cannot handle a sequence repeated indefinitely");
             }
 
-            final AbstractPlaylistComponent[] components = sequence.getComponents();
-
             for (int iter = 0; iter < sequence.getRepeatCount(); iter++)
             {
-                for (AbstractPlaylistComponent c : components)
+                for (int i = 0; i < sequence.getComponentsNumber(); i++)
                 {
+                    final AbstractPlaylistComponent c = sequence.componentAt(i); // Shall not throw IndexOutOfBoundsException.
                     addToPlaylist(entries, c); // May throw Exception.
                 }
             }
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.kpl;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A character stream which makes the numeric element names of a Kalliope playlist acceptable to an XML parser, while reading it.
+ * An XML element name cannot begin with a digit, but the KPL entries are named "<code>0</code>", "<code>1</code>", etc.
+ * Thus an '<code>x</code>' is inserted before each element name beginning with a digit, in the start and end tags:
+ * "<code>&lt;12 filename="..."&gt;</code>" is read as "<code>&lt;x12 filename="..."&gt;</code>", and "<code>&lt;/12&gt;</code>" as "<code>&lt;/x12&gt;</code>".
+ * All the other characters are returned as is, and the contents are never entirely held in memory.
+ * <br>
+ * This stream does not support {@link #mark marking}, and shall not be used by several threads at the same time.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+class NumericElementReader extends FilterReader
+{
+    /**
+     * The prefix inserted before a numeric element name.
+     */
+    static final char PREFIX = 'x';
+
+    /**
+     * The characters read from the underlying stream, but not returned yet.
+     */
+    private final char[] _buffer = new char[8 * 1024];
+
+    /**
+     * The index of the next character to return in {@link #_buffer}.
+     */
+    private int _position = 0;
+
+    /**
+     * The number of valid characters in {@link #_buffer}.
+     */
+    private int _limit = 0;
+
+    /**
+     * The index in {@link #_buffer} of the numeric element name before which the prefix shall be inserted, or a negative value if none.
+     */
+    private int _insertion = -1;
+
+    /**
+     * A buffer used by {@link #read()}.
+     */
+    private final char[] _single = new char[1];
+
+    /**
+     * Builds a new reader on top of the specified character stream.
+     * @param in a character stream. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>in</code> is <code>null</code>.
+     */
+    NumericElementReader(final Reader in)
+    {
+        super(in); // Throws NullPointerException if in is null.
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        final int nb = read(_single, 0, 1); // May throw IOException.
+
+        return (nb < 0) ? -1 : _single[0];
+    }
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) throws IOException
+    {
+        if ((off < 0) || (len < 0) || (len > (cbuf.length - off))) // Throws NullPointerException if cbuf is null.
+        {
+            throw new IndexOutOfBoundsException();
+        }
+
+        int ret = 0;
+
+        while (ret < len)
+        {
+            if (_position == _insertion)
+            {
+                cbuf[off + ret] = PREFIX;
+                _insertion = -1;
+                ret++;
+            }
+            else if ((_position >= _limit) && ((ret > 0) || !fill(1))) // May throw IOException.
+            {
+                // Return what we have, rather than blocking again.
+                break;
+            }
+            else if ((_buffer[_position] == '<') && (_insertion < 0))
+            {
+                _insertion = findNumericName(); // May throw IOException.
+                cbuf[off + ret] = '<';
+                _position++;
+                ret++;
+            }
+            else
+            {
+                // Copy the characters up to the next tag, or up to the insertion.
+                final int max = Math.min((_insertion < 0) ? _limit : _insertion, _position + (len - ret));
+                int end = _position + 1;
+
+                while ((end < max) && (_buffer[end] != '<'))
+                {
+                    end++;
+                }
+
+                System.arraycopy(_buffer, _position, cbuf, off + ret, end - _position);
+                ret += end - _position;
+                _position = end;
+            }
+        }
+
+        return ((ret == 0) && (len > 0)) ? -1 : ret;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException
+    {
+        if (n < 0L)
+        {
+            throw new IllegalArgumentException("Negative skip length " + n);
+        }
+
+        final char[] skipped = new char[(int) Math.min(n, 512L)];
+        long ret = 0L;
+
+        while (ret < n)
+        {
+            final int nb = read(skipped, 0, (int) Math.min(n - ret, skipped.length)); // May throw IOException.
+
+            if (nb < 0)
+            {
+                break;
+            }
+
+            ret += nb;
+        }
+
+        return ret;
+    }
+
+    @Override
+    public boolean ready() throws IOException
+    {
+        return (_position < _limit) || in.ready(); // May throw IOException.
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+        return false;
+    }
+
+    @Override
+    public void mark(final int readAheadLimit) throws IOException
+    {
+        throw new IOException("mark() not supported");
+    }
+
+    @Override
+    public void reset() throws IOException
+    {
+        throw new IOException("reset() not supported");
+    }
+
+    /**
+     * Specifies if the '<code>&lt;</code>' at the current position starts a tag with a numeric element name.
+     * @return the index in the buffer of the first digit of the element name, or a negative value if the tag is not a numeric one.
+     * @throws IOException if an I/O error occurs.
+     */
+    private int findNumericName() throws IOException
+    {
+        fill(3); // May throw IOException.
+
+        int ret = _position + 1;
+
+        if ((ret < _limit) && (_buffer[ret] == '/'))
+        {
+            ret++;
+        }
+
+        if ((ret >= _limit) || (_buffer[ret] < '0') || (_buffer[ret] > '9'))
+        {
+            ret = -1;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Reads from the underlying stream until the specified number of characters are available, or the end of the stream is reached.
+     * Shall not be called while an insertion is pending.
+     * @param count the minimum number of characters wanted. Shall be lower than the buffer size.
+     * @return <code>true</code> if at least one character is available.
+     * @throws IOException if an I/O error occurs.
+     */
+    private boolean fill(final int count) throws IOException
+    {
+        if ((_limit - _position) < count)
+        {
+            // Move the remaining characters to the beginning of the buffer.
+            System.arraycopy(_buffer, _position, _buffer, 0, _limit - _position);
+            _limit -= _position;
+            _position = 0;
+
+            while (_limit < count)
+            {
+                final int nb = in.read(_buffer, _limit, _buffer.length - _limit); // May throw IOException.
+
+                if (nb < 0)
+                {
+                    break;
+                }
+
+                _limit += nb;
+            }
+        }
+
+        return _position < _limit;
+    }
+}
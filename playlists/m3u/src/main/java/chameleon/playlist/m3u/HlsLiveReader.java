@@ -0,0 +1,508 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.m3u;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Polls a live HTTP Live Streaming media playlist, and returns the segments added since the previous poll.
+ * <br>
+ * A live playlist is either appended to, or rewritten as a sliding window of its latest segments.
+ * In order not to read and parse the whole playlist on each poll, only the bytes following the ones already read are requested,
+ * with a seek in the case of a file, or with a byte range request in the case of an HTTP URL.
+ * These bytes are preceded by the last bytes already read, which shall not have changed:
+ * otherwise, or if the playlist has shrunk, or if the server doesn't honor the byte range, the whole playlist is read again.
+ * A sliding window playlist, whose media sequence number moves from one full read to the next, is then read as a whole on each poll,
+ * until it is only appended to again, instead of trying a byte range first.
+ * In all cases, the segments are identified by their media sequence number, and only the ones following the last segment returned are returned.
+ * <br>
+ * A last line which is not terminated may still be being written: it is read again as a whole on the next poll,
+ * unless it is the <code>#EXT-X-ENDLIST</code> tag, or the playlist has already been ended.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+public class HlsLiveReader
+{
+    /**
+     * The maximum number of bytes already read used to check that the playlist has only been appended to.
+     */
+    private static final int ANCHOR_SIZE = 64;
+
+    /**
+     * The playlist file, or <code>null</code> if the playlist is read from an URL.
+     */
+    private final File _file;
+
+    /**
+     * The playlist URL, or <code>null</code> if the playlist is read from a file.
+     */
+    private final URL _url;
+
+    /**
+     * The content encoding of the playlist.
+     */
+    private final String _encoding;
+
+    /**
+     * The reader of the playlist read so far, or <code>null</code> if the playlist has not been read yet.
+     */
+    private HlsReader _reader = null;
+
+    /**
+     * The number of bytes of the playlist read so far.
+     */
+    private long _offset = 0L;
+
+    /**
+     * The last bytes of the playlist read so far.
+     */
+    private byte[] _anchor = new byte[0];
+
+    /**
+     * Specifies if the media sequence number of the playlist has moved at the last full read, i.e. if the playlist is a sliding window.
+     */
+    private boolean _sliding = false;
+
+    /**
+     * The media sequence number of the last segment returned, or -1 if none.
+     */
+    private long _lastMediaSequence = -1L;
+
+    /**
+     * The offset in the playlist of the bytes last fetched.
+     */
+    private long _fetchOffset = 0L;
+
+    /**
+     * Builds a new live reader on the specified playlist file.
+     * @param file a playlist file. Shall not be <code>null</code>.
+     * @param encoding the content encoding of the playlist, or <code>null</code> if not known, in which case UTF-8 is assumed.
+     * @throws NullPointerException if <code>file</code> is <code>null</code>.
+     */
+    public HlsLiveReader(final File file, final String encoding)
+    {
+        if (file == null)
+        {
+            throw new NullPointerException("no file");
+        }
+
+        _file = file;
+        _url = null;
+        _encoding = encoding;
+    }
+
+    /**
+     * Builds a new live reader on the specified playlist URL.
+     * @param url a playlist URL. Shall not be <code>null</code>.
+     * @param encoding the content encoding of the playlist, or <code>null</code> if not known, in which case UTF-8 is assumed.
+     * @throws NullPointerException if <code>url</code> is <code>null</code>.
+     */
+    public HlsLiveReader(final URL url, final String encoding)
+    {
+        if (url == null)
+        {
+            throw new NullPointerException("no URL");
+        }
+
+        _file = null;
+        _url = url;
+        _encoding = encoding;
+    }
+
+    /**
+     * Reads the playlist again, and returns the segments added since the previous poll.
+     * @return the list of new segments, in playing order. May be empty but not <code>null</code>.
+     * @throws IllegalArgumentException if the contents don't look like an HTTP Live Streaming media playlist.
+     * @throws NumberFormatException if a tag value is malformed.
+     * @throws IOException if an I/O error occurs.
+     */
+    public List<HlsSegment> poll() throws IOException
+    {
+        List<HlsSegment> segments = null;
+
+        if ((_reader != null) && !_sliding)
+        {
+            final long from = _offset - _anchor.length;
+            final byte[] tail = fetch(from); // May throw IOException.
+
+            if ((tail != null) && (_fetchOffset == from) && startsWith(tail, _anchor))
+            {
+                // Only appended to.
+                segments = parse(_reader, tail, _anchor.length); // May throw IllegalArgumentException, NumberFormatException, IOException.
+            }
+            else if ((tail != null) && (_fetchOffset == 0L))
+            {
+                // The whole playlist has been sent anyway.
+                segments = reload(tail); // May throw IllegalArgumentException, NumberFormatException, IOException.
+            }
+        }
+
+        if (segments == null)
+        {
+            final byte[] all = fetch(0L); // May throw IOException.
+            segments = reload((all == null) ? new byte[0] : all); // May throw IllegalArgumentException, NumberFormatException, IOException.
+        }
+
+        if (_reader.getPlaylist().isMaster())
+        {
+            throw new IllegalArgumentException("Not a media playlist");
+        }
+
+        // The segments are only needed once: don't keep them.
+        _reader.getPlaylist().getSegments().clear();
+
+        final List<HlsSegment> ret = new ArrayList<HlsSegment>(segments.size());
+
+        for (HlsSegment segment : segments)
+        {
+            if (segment.getMediaSequence() > _lastMediaSequence)
+            {
+                ret.add(segment);
+                _lastMediaSequence = segment.getMediaSequence();
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Specifies if no more segments will be added to the playlist, as far as the last poll is concerned.
+     * @return <code>true</code> if the playlist is complete.
+     */
+    public boolean isEndList()
+    {
+        return (_reader != null) && _reader.getPlaylist().isEndList();
+    }
+
+    /**
+     * Returns the maximum segment duration in seconds, i.e. the recommended interval between two polls.
+     * @return a duration in seconds, or -1 if unknown.
+     */
+    public long getTargetDuration()
+    {
+        return (_reader == null) ? -1L : _reader.getPlaylist().getTargetDuration();
+    }
+
+    /**
+     * Returns the media sequence number of the last segment returned by {@link #poll}.
+     * @return a media sequence number, or -1 if none.
+     */
+    public long getLastMediaSequence()
+    {
+        return _lastMediaSequence;
+    }
+
+    /**
+     * Reads the whole specified playlist with a new reader.
+     * @param data the playlist bytes. Shall not be <code>null</code>.
+     * @return the list of segments read.
+     * @throws IllegalArgumentException if the contents don't look like an HTTP Live Streaming playlist.
+     * @throws NumberFormatException if a tag value is malformed.
+     * @throws IOException if an I/O error occurs.
+     */
+    private List<HlsSegment> reload(final byte[] data) throws IOException
+    {
+        final HlsReader previous = _reader;
+        _reader = new HlsReader(_encoding);
+        _offset = 0L;
+        _anchor = new byte[0];
+        _fetchOffset = 0L;
+
+        final List<HlsSegment> ret = parse(_reader, data, 0); // May throw IllegalArgumentException, NumberFormatException, IOException.
+
+        if ((previous != null) && (previous.getPlaylist().getMediaSequence() != _reader.getPlaylist().getMediaSequence()))
+        {
+            // The oldest segments have been removed: a byte range would not match next time either.
+            _sliding = true;
+        }
+        else if (!ret.isEmpty() && (ret.get(ret.size() - 1).getMediaSequence() > _lastMediaSequence))
+        {
+            // New segments, and none removed: the playlist may only be appended to.
+            _sliding = false;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Reads the complete lines of the specified bytes, fetched at {@link #_fetchOffset}.
+     * @param reader the reader of the playlist. Shall not be <code>null</code>.
+     * @param data the fetched bytes. Shall not be <code>null</code>.
+     * @param start the offset of the first byte not read yet.
+     * @return the list of segments read.
+     * @throws IllegalArgumentException if the contents don't look like an HTTP Live Streaming playlist.
+     * @throws NumberFormatException if a tag value is malformed.
+     * @throws IOException if an I/O error occurs.
+     */
+    private List<HlsSegment> parse(final HlsReader reader, final byte[] data, final int start) throws IOException
+    {
+        int end = data.length;
+
+        while ((end > start) && (data[end - 1] != '\n') && (data[end - 1] != '\r'))
+        {
+            end--;
+        }
+
+        // The last line, if not terminated, is fetched and read again as a whole on the next poll:
+        // only read it now if the playlist is complete.
+        if ((end < data.length) && (reader.getPlaylist().isEndList() || HlsReader.isEndList(data, end, data.length)))
+        {
+            end = data.length;
+        }
+
+        final List<HlsSegment> ret = reader.read(new ByteArrayInputStream(data, start, end - start)); // May throw IllegalArgumentException, NumberFormatException, IOException.
+
+        _offset = _fetchOffset + end;
+        final int anchorStart = Math.max(0, end - ANCHOR_SIZE);
+        _anchor = Arrays.copyOfRange(data, anchorStart, end);
+
+        return ret;
+    }
+
+    /**
+     * Fetches the bytes of the playlist from the specified offset, and sets {@link #_fetchOffset} to the offset actually used.
+     * @param from an offset in the playlist.
+     * @return the bytes of the playlist, or <code>null</code> if the playlist is now shorter than the specified offset.
+     * @throws IOException if an I/O error occurs.
+     */
+    private byte[] fetch(final long from) throws IOException
+    {
+        return (_file == null) ? fetchURL(from) : fetchFile(from); // May throw IOException.
+    }
+
+    /**
+     * Fetches the bytes of the playlist file from the specified offset.
+     * @param from an offset in the file.
+     * @return the bytes of the file, or <code>null</code> if the file is now shorter than the specified offset.
+     * @throws IOException if an I/O error occurs.
+     */
+    private byte[] fetchFile(final long from) throws IOException
+    {
+        final RandomAccessFile file = new RandomAccessFile(_file, "r"); // May throw FileNotFoundException, SecurityException.
+        byte[] ret = null;
+
+        try
+        {
+            final long length = file.length(); // May throw IOException.
+
+            if (length >= from)
+            {
+                if ((length - from) > Integer.MAX_VALUE)
+                {
+                    throw new IOException("Playlist too large: " + length + " bytes");
+                }
+
+                ret = new byte[(int) (length - from)];
+                file.seek(from); // May throw IOException.
+                // The file may have been truncated in the meantime.
+                final int n = readFully(file, ret); // May throw IOException.
+                ret = Arrays.copyOf(ret, n);
+                _fetchOffset = from;
+            }
+        }
+        finally
+        {
+            file.close(); // May throw IOException.
+        }
+
+        return ret;
+    }
+
+    /**
+     * Fetches the bytes of the playlist URL from the specified offset, with a byte range request if needed.
+     * If the server sends the whole playlist instead, {@link #_fetchOffset} is set to 0.
+     * @param from an offset in the playlist.
+     * @return the bytes of the playlist, or <code>null</code> if the requested range cannot be satisfied.
+     * @throws IOException if an I/O error occurs, or if the server replies with an unexpected status.
+     */
+    private byte[] fetchURL(final long from) throws IOException
+    {
+        final URLConnection urlConnection = _url.openConnection(); // May throw IOException.
+        urlConnection.setAllowUserInteraction(false); // Shall not throw IllegalStateException.
+        urlConnection.setConnectTimeout(10000); // Shall not throw IllegalArgumentException.
+        urlConnection.setDoInput(true); // Shall not throw IllegalStateException.
+        urlConnection.setDoOutput(false); // Shall not throw IllegalStateException.
+        urlConnection.setReadTimeout(60000); // Shall not throw IllegalArgumentException.
+        urlConnection.setUseCaches(false); // Shall not throw IllegalStateException.
+
+        if (from > 0L)
+        {
+            urlConnection.setRequestProperty("Range", "bytes=" + from + '-'); // Shall not throw IllegalStateException, NullPointerException.
+        }
+
+        urlConnection.connect(); // May throw SocketTimeoutException, IOException.
+
+        int status = HttpURLConnection.HTTP_OK;
+
+        if (urlConnection instanceof HttpURLConnection)
+        {
+            status = ((HttpURLConnection) urlConnection).getResponseCode(); // May throw IOException.
+        }
+
+        byte[] ret = null;
+
+        if (status == HttpURLConnection.HTTP_PARTIAL)
+        {
+            final long rangeStart = getRangeStart(urlConnection.getHeaderField("Content-Range"));
+            final InputStream in = urlConnection.getInputStream(); // May throw IOException, UnknownServiceException.
+
+            try
+            {
+                // A range not starting where requested is useless.
+                if (rangeStart == from)
+                {
+                    ret = readFully(in); // May throw IOException.
+                    _fetchOffset = from;
+                }
+            }
+            finally
+            {
+                in.close(); // May throw IOException.
+            }
+        }
+        else if (status == HttpURLConnection.HTTP_OK)
+        {
+            // The range has been ignored, if any.
+            final InputStream in = urlConnection.getInputStream(); // May throw IOException, UnknownServiceException.
+
+            try
+            {
+                ret = readFully(in); // May throw IOException.
+                _fetchOffset = 0L;
+            }
+            finally
+            {
+                in.close(); // May throw IOException.
+            }
+        }
+        else if (status != 416) // Requested Range Not Satisfiable.
+        {
+            throw new IOException("Unexpected HTTP status " + status + " for " + _url);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the first byte position of the specified <code>Content-Range</code> header value, such as "bytes 100-199/200".
+     * @param contentRange a header value. May be <code>null</code>.
+     * @return a byte position, or -1 if the value is missing or malformed.
+     */
+    private static long getRangeStart(final String contentRange)
+    {
+        long ret = -1L;
+
+        if (contentRange != null)
+        {
+            final String value = contentRange.trim();
+            final int space = value.indexOf(' ');
+            final int dash = value.indexOf('-', space + 1);
+
+            if ((space > 0) && (dash > space))
+            {
+                try
+                {
+                    ret = Long.parseLong(value.substring(space + 1, dash).trim()); // Shall not throw IndexOutOfBoundsException. May throw NumberFormatException.
+                }
+                catch (NumberFormatException e)
+                {
+                    ret = -1L;
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Specifies if the specified bytes begin with the specified prefix.
+     * @param data some bytes. Shall not be <code>null</code>.
+     * @param prefix a prefix. Shall not be <code>null</code>.
+     * @return <code>true</code> if the bytes begin with the prefix.
+     */
+    private static boolean startsWith(final byte[] data, final byte[] prefix)
+    {
+        boolean ret = data.length >= prefix.length;
+
+        for (int i = 0; ret && (i < prefix.length); i++)
+        {
+            ret = (data[i] == prefix[i]);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Reads the specified file up to its end, or up to the end of the specified buffer.
+     * @param file a file. Shall not be <code>null</code>.
+     * @param buffer the buffer to fill. Shall not be <code>null</code>.
+     * @return the number of bytes read.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static int readFully(final RandomAccessFile file, final byte[] buffer) throws IOException
+    {
+        int ret = 0;
+        int n = 0;
+
+        while ((ret < buffer.length) && ((n = file.read(buffer, ret, buffer.length - ret)) >= 0)) // May throw IOException.
+        {
+            ret += n;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Reads the specified input stream up to its end.
+     * @param in an input stream. Shall not be <code>null</code>.
+     * @return the bytes read.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static byte[] readFully(final InputStream in) throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int n;
+
+        while ((n = in.read(buffer)) >= 0) // May throw IOException.
+        {
+            out.write(buffer, 0, n);
+        }
+
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.m3u;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An HTTP Live Streaming playlist, as read by a {@link HlsReader}.
+ * <br>
+ * A master playlist only lists {@link HlsVariant variant streams}, whereas a media playlist lists {@link HlsSegment media segments}.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+public class HlsPlaylist
+{
+    /**
+     * The compatibility version of the playlist.
+     */
+    private int _version = 1;
+
+    /**
+     * The maximum segment duration in seconds.
+     */
+    private long _targetDuration = -1L;
+
+    /**
+     * The media sequence number of the first segment.
+     */
+    private long _mediaSequence = 0L;
+
+    /**
+     * The playlist type.
+     */
+    private String _playlistType = null;
+
+    /**
+     * Specifies if no more segments will be added to the playlist.
+     */
+    private boolean _endList = false;
+
+    /**
+     * The list of media segments.
+     */
+    private final List<HlsSegment> _segments = new ArrayList<HlsSegment>();
+
+    /**
+     * The list of variant streams.
+     */
+    private final List<HlsVariant> _variants = new ArrayList<HlsVariant>();
+
+    /**
+     * Returns the compatibility version of this playlist, as given by the <code>#EXT-X-VERSION</code> tag.
+     * Defaults to 1.
+     * @return a version number.
+     * @see #setVersion
+     */
+    public int getVersion()
+    {
+        return _version;
+    }
+
+    /**
+     * Initializes the compatibility version of this playlist.
+     * @param version a version number.
+     * @see #getVersion
+     */
+    public void setVersion(final int version)
+    {
+        _version = version;
+    }
+
+    /**
+     * Returns the maximum segment duration in seconds, as given by the <code>#EXT-X-TARGETDURATION</code> tag.
+     * Defaults to -1 (unknown).
+     * @return a duration in seconds.
+     * @see #setTargetDuration
+     */
+    public long getTargetDuration()
+    {
+        return _targetDuration;
+    }
+
+    /**
+     * Initializes the maximum segment duration in seconds.
+     * @param targetDuration a duration in seconds.
+     * @see #getTargetDuration
+     */
+    public void setTargetDuration(final long targetDuration)
+    {
+        // Enforce the value of -1.
+        _targetDuration = (targetDuration < 0L) ? -1L : targetDuration;
+    }
+
+    /**
+     * Returns the media sequence number of the first segment of this playlist, as given by the <code>#EXT-X-MEDIA-SEQUENCE</code> tag.
+     * Defaults to 0.
+     * @return a media sequence number.
+     * @see #setMediaSequence
+     */
+    public long getMediaSequence()
+    {
+        return _mediaSequence;
+    }
+
+    /**
+     * Initializes the media sequence number of the first segment of this playlist.
+     * @param mediaSequence a media sequence number.
+     * @see #getMediaSequence
+     */
+    public void setMediaSequence(final long mediaSequence)
+    {
+        _mediaSequence = mediaSequence;
+    }
+
+    /**
+     * Returns the type of this playlist, as given by the <code>#EXT-X-PLAYLIST-TYPE</code> tag.
+     * @return "EVENT", "VOD", or <code>null</code> if not specified.
+     * @see #setPlaylistType
+     */
+    public String getPlaylistType()
+    {
+        return _playlistType;
+    }
+
+    /**
+     * Initializes the type of this playlist.
+     * @param playlistType a playlist type. May be <code>null</code>.
+     * @see #getPlaylistType
+     */
+    public void setPlaylistType(final String playlistType)
+    {
+        _playlistType = playlistType;
+    }
+
+    /**
+     * Specifies if no more segments will be added to this playlist, i.e. if it contains a <code>#EXT-X-ENDLIST</code> tag.
+     * Defaults to <code>false</code>.
+     * @return <code>true</code> if the playlist is complete.
+     * @see #setEndList
+     */
+    public boolean isEndList()
+    {
+        return _endList;
+    }
+
+    /**
+     * Specifies if no more segments will be added to this playlist.
+     * @param endList <code>true</code> if the playlist is complete.
+     * @see #isEndList
+     */
+    public void setEndList(final boolean endList)
+    {
+        _endList = endList;
+    }
+
+    /**
+     * Returns the list of media segments.
+     * @return a list of media segments. May be empty but not <code>null</code>.
+     */
+    public List<HlsSegment> getSegments()
+    {
+        return _segments;
+    }
+
+    /**
+     * Returns the list of variant streams.
+     * @return a list of variant streams. May be empty but not <code>null</code>.
+     */
+    public List<HlsVariant> getVariants()
+    {
+        return _variants;
+    }
+
+    /**
+     * Specifies if this playlist is a master playlist, i.e. if it lists variant streams.
+     * @return <code>true</code> if this is a master playlist.
+     */
+    public boolean isMaster()
+    {
+        return !_variants.isEmpty();
+    }
+}
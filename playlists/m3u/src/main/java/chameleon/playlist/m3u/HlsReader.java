@@ -0,0 +1,407 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.m3u;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads an HTTP Live Streaming playlist, either a master playlist or a media playlist.
+ * <br>
+ * The state of the reader is kept from one {@link #read} to the other,
+ * so that the contents appended to a live media playlist can be read on their own, after the ones already read:
+ * the media sequence numbers of the new segments follow the ones of the previous segments.
+ * <br>
+ * The tags are recognized ignoring the case, and the unknown ones are ignored.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ * @see HlsLiveReader
+ */
+public class HlsReader
+{
+    /**
+     * The EXTINF tag, in upper case.
+     */
+    private static final byte[] EXTINF = tag("#EXTINF");
+
+    /**
+     * The EXT-X-TARGETDURATION tag, in upper case.
+     */
+    private static final byte[] TARGET_DURATION = tag("#EXT-X-TARGETDURATION");
+
+    /**
+     * The EXT-X-MEDIA-SEQUENCE tag, in upper case.
+     */
+    private static final byte[] MEDIA_SEQUENCE = tag("#EXT-X-MEDIA-SEQUENCE");
+
+    /**
+     * The EXT-X-DISCONTINUITY tag, in upper case.
+     */
+    private static final byte[] DISCONTINUITY = tag("#EXT-X-DISCONTINUITY");
+
+    /**
+     * The EXT-X-ENDLIST tag, in upper case.
+     */
+    private static final byte[] END_LIST = tag("#EXT-X-ENDLIST");
+
+    /**
+     * The EXT-X-PLAYLIST-TYPE tag, in upper case.
+     */
+    private static final byte[] PLAYLIST_TYPE = tag("#EXT-X-PLAYLIST-TYPE");
+
+    /**
+     * The EXT-X-VERSION tag, in upper case.
+     */
+    private static final byte[] VERSION = tag("#EXT-X-VERSION");
+
+    /**
+     * The EXT-X-STREAM-INF tag, in upper case.
+     */
+    private static final byte[] STREAM_INF = tag("#EXT-X-STREAM-INF");
+
+    /**
+     * The content encoding of the playlist.
+     */
+    private final String _encoding;
+
+    /**
+     * The playlist being read.
+     */
+    private final HlsPlaylist _playlist = new HlsPlaylist();
+
+    /**
+     * The media sequence number of the next segment.
+     */
+    private long _nextMediaSequence = 0L;
+
+    /**
+     * The duration in milliseconds of the next segment, as given by the last <code>#EXTINF</code> tag.
+     */
+    private long _duration = -1L;
+
+    /**
+     * The title of the next segment, as given by the last <code>#EXTINF</code> tag.
+     */
+    private String _title = null;
+
+    /**
+     * Specifies if a discontinuity precedes the next segment.
+     */
+    private boolean _discontinuity = false;
+
+    /**
+     * The variant stream waiting for its location, or <code>null</code> if none.
+     */
+    private HlsVariant _variant = null;
+
+    /**
+     * Builds a new HTTP Live Streaming reader.
+     * @param encoding the content encoding of the playlist, or <code>null</code> if not known, in which case UTF-8 is assumed.
+     */
+    public HlsReader(final String encoding)
+    {
+        _encoding = encoding;
+    }
+
+    /**
+     * Returns the playlist read so far.
+     * @return a playlist. Shall not be <code>null</code>.
+     */
+    public HlsPlaylist getPlaylist()
+    {
+        return _playlist;
+    }
+
+    /**
+     * Reads the specified playlist contents, or the contents appended to the ones already read.
+     * The segments and the variant streams read are added to the {@link #getPlaylist playlist}.
+     * The input stream is not closed.
+     * @param in an input stream. Shall not be <code>null</code>.
+     * @return the list of new segments. May be empty but not <code>null</code>.
+     * @throws NullPointerException if <code>in</code> is <code>null</code>.
+     * @throws java.io.UnsupportedEncodingException if the content encoding is not supported.
+     * @throws IllegalArgumentException if the contents don't look like an HTTP Live Streaming playlist.
+     * @throws NumberFormatException if a tag value is malformed.
+     * @throws IOException if an I/O error occurs.
+     */
+    public List<HlsSegment> read(final InputStream in) throws IOException
+    {
+        final M3ULineReader lines = new M3ULineReader(in, _encoding); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
+        final List<HlsSegment> ret = new ArrayList<HlsSegment>();
+
+        while (lines.nextLine()) // May throw IOException.
+        {
+            final byte[] line = lines.getBuffer();
+            final int start = lines.getStart();
+            final int end = lines.getEnd();
+
+            if (start < end)
+            {
+                final byte firstChar = line[start];
+
+                // Same test as in M3UReader.
+                if ((firstChar == '<') || (firstChar == '['))
+                {
+                    throw new IllegalArgumentException("Doesn't seem to be an HTTP Live Streaming playlist");
+                }
+                else if (firstChar == '#')
+                {
+                    readTag(lines, start, end); // May throw NumberFormatException.
+                }
+                else if (_variant != null)
+                {
+                    _variant.setLocation(lines.toString(start, end));
+                    _playlist.getVariants().add(_variant);
+                    _variant = null;
+                }
+                else
+                {
+                    final HlsSegment segment = new HlsSegment(); // NOPMD Avoid instantiating new objects inside loops
+                    segment.setLocation(lines.toString(start, end));
+                    segment.setTitle(_title);
+                    segment.setDuration(_duration);
+                    segment.setDiscontinuity(_discontinuity);
+                    segment.setMediaSequence(_nextMediaSequence);
+                    _nextMediaSequence++;
+                    _playlist.getSegments().add(segment);
+                    ret.add(segment);
+
+                    _title = null;
+                    _duration = -1L;
+                    _discontinuity = false;
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Handles the specified tag line.
+     * @param lines the line reader. Shall not be <code>null</code>.
+     * @param start the offset of the first byte of the line.
+     * @param end the offset following the last byte of the line.
+     * @throws NumberFormatException if the tag value is malformed.
+     */
+    private void readTag(final M3ULineReader lines, final int start, final int end)
+    {
+        final byte[] line = lines.getBuffer();
+
+        if (isTag(line, start, end, EXTINF))
+        {
+            final int valueStart = Math.min(start + EXTINF.length + 1, end);
+            int comma = M3ULineReader.indexOf(line, valueStart, end, (byte) ',');
+
+            if (comma < 0)
+            {
+                comma = end;
+                _title = null;
+            }
+            else
+            {
+                _title = lines.toString(comma + 1, end);
+            }
+
+            final int durationStart = M3ULineReader.trimStart(line, valueStart, comma);
+            final int durationEnd = M3ULineReader.trimEnd(line, durationStart, comma);
+
+            if (durationStart >= durationEnd)
+            {
+                _duration = -1L;
+            }
+            else if (M3ULineReader.isPlainDecimal(line, durationStart, durationEnd))
+            {
+                _duration = M3ULineReader.parseDecimalMillis(line, durationStart, durationEnd);
+            }
+            else
+            {
+                _duration = Math.round(Double.parseDouble(lines.toString(durationStart, durationEnd)) * 1000d); // May throw NumberFormatException.
+            }
+        }
+        else if (isTag(line, start, end, TARGET_DURATION))
+        {
+            _playlist.setTargetDuration(parseLong(lines, start + TARGET_DURATION.length + 1, end)); // May throw NumberFormatException.
+        }
+        else if (isTag(line, start, end, MEDIA_SEQUENCE))
+        {
+            final long mediaSequence = parseLong(lines, start + MEDIA_SEQUENCE.length + 1, end); // May throw NumberFormatException.
+            _playlist.setMediaSequence(mediaSequence);
+            _nextMediaSequence = mediaSequence;
+        }
+        else if (isTag(line, start, end, DISCONTINUITY))
+        {
+            _discontinuity = true;
+        }
+        else if (isTag(line, start, end, END_LIST))
+        {
+            _playlist.setEndList(true);
+        }
+        else if (isTag(line, start, end, PLAYLIST_TYPE))
+        {
+            final int valueStart = M3ULineReader.trimStart(line, Math.min(start + PLAYLIST_TYPE.length + 1, end), end);
+            _playlist.setPlaylistType(lines.toString(valueStart, end).toUpperCase(Locale.ENGLISH));
+        }
+        else if (isTag(line, start, end, VERSION))
+        {
+            _playlist.setVersion((int) parseLong(lines, start + VERSION.length + 1, end)); // May throw NumberFormatException.
+        }
+        else if (isTag(line, start, end, STREAM_INF))
+        {
+            _variant = new HlsVariant();
+            readAttributes(lines, Math.min(start + STREAM_INF.length + 1, end), end, _variant);
+        }
+        // Otherwise ignore the tag, or the comment.
+    }
+
+    /**
+     * Reads the specified attribute list into the specified variant stream.
+     * @param lines the line reader. Shall not be <code>null</code>.
+     * @param start the offset of the first byte of the attribute list.
+     * @param end the offset following the last byte of the attribute list.
+     * @param variant the variant stream. Shall not be <code>null</code>.
+     */
+    private static void readAttributes(final M3ULineReader lines, final int start, final int end, final HlsVariant variant)
+    {
+        final byte[] line = lines.getBuffer();
+        int i = start;
+
+        while (i < end)
+        {
+            final int nameStart = M3ULineReader.trimStart(line, i, end);
+            int equal = M3ULineReader.indexOf(line, nameStart, end, (byte) '=');
+
+            if (equal < 0)
+            {
+                equal = end;
+            }
+
+            final String name = lines.toString(nameStart, M3ULineReader.trimEnd(line, nameStart, equal)).toUpperCase(Locale.ENGLISH);
+            int valueStart = M3ULineReader.trimStart(line, Math.min(equal + 1, end), end);
+            int valueEnd;
+
+            if ((valueStart < end) && (line[valueStart] == '"'))
+            {
+                // A quoted-string may contain commas.
+                valueStart++;
+                valueEnd = M3ULineReader.indexOf(line, valueStart, end, (byte) '"');
+
+                if (valueEnd < 0)
+                {
+                    valueEnd = end;
+                }
+
+                i = M3ULineReader.indexOf(line, valueEnd, end, (byte) ',');
+            }
+            else
+            {
+                i = M3ULineReader.indexOf(line, valueStart, end, (byte) ',');
+                valueEnd = M3ULineReader.trimEnd(line, valueStart, (i < 0) ? end : i);
+            }
+
+            if (name.length() > 0)
+            {
+                variant.getAttributes().put(name, lines.toString(valueStart, valueEnd));
+            }
+
+            i = (i < 0) ? end : (i + 1);
+        }
+    }
+
+    /**
+     * Parses the decimal integer value of a tag.
+     * @param lines the line reader. Shall not be <code>null</code>.
+     * @param start the offset of the first byte of the value, which may be past the end.
+     * @param end the offset following the last byte of the value.
+     * @return the value.
+     * @throws NumberFormatException if the value is malformed.
+     */
+    private static long parseLong(final M3ULineReader lines, final int start, final int end)
+    {
+        final byte[] line = lines.getBuffer();
+        final int valueStart = M3ULineReader.trimStart(line, Math.min(start, end), end);
+        final long ret;
+
+        if (M3ULineReader.isPlainLong(line, valueStart, end))
+        {
+            ret = M3ULineReader.parsePlainLong(line, valueStart, end);
+        }
+        else
+        {
+            ret = Long.parseLong(lines.toString(valueStart, end)); // May throw NumberFormatException.
+        }
+
+        return ret;
+    }
+
+    /**
+     * Specifies if the specified line is the <code>#EXT-X-ENDLIST</code> tag, ignoring the surrounding white spaces.
+     * @param line the line bytes. Shall not be <code>null</code>.
+     * @param start the offset of the first byte of the line.
+     * @param end the offset following the last byte of the line.
+     * @return <code>true</code> if the line is the tag.
+     */
+    static boolean isEndList(final byte[] line, final int start, final int end)
+    {
+        final int tagStart = M3ULineReader.trimStart(line, start, end);
+
+        return isTag(line, tagStart, M3ULineReader.trimEnd(line, tagStart, end), END_LIST);
+    }
+
+    /**
+     * Specifies if the specified line is the specified tag, i.e. if it begins with the tag name, followed by a colon or nothing else.
+     * @param line the line bytes. Shall not be <code>null</code>.
+     * @param start the offset of the first byte of the line.
+     * @param end the offset following the last byte of the line.
+     * @param tag a tag name, in upper case. Shall not be <code>null</code>.
+     * @return <code>true</code> if the line is the tag.
+     */
+    private static boolean isTag(final byte[] line, final int start, final int end, final byte[] tag)
+    {
+        final int next = start + tag.length;
+
+        return M3ULineReader.startsWithIgnoreCase(line, start, end, tag) && ((next == end) || (line[next] == ':'));
+    }
+
+    /**
+     * Returns the bytes of the specified ASCII tag name.
+     * @param name a tag name, in upper case. Shall not be <code>null</code>.
+     * @return the tag bytes.
+     */
+    private static byte[] tag(final String name)
+    {
+        final byte[] ret = new byte[name.length()];
+
+        for (int i = 0; i < ret.length; i++)
+        {
+            ret[i] = (byte) name.charAt(i);
+        }
+
+        return ret;
+    }
+}
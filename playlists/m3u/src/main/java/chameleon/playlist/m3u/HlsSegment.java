@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.m3u;
+
+import chameleon.lang.StringUtils;
+
+/**
+ * A media segment of an HTTP Live Streaming media playlist.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ * @see HlsPlaylist
+ */
+public class HlsSegment
+{
+    /**
+     * The segment location.
+     */
+    private String _location = null;
+
+    /**
+     * The title of the segment.
+     */
+    private String _title = null;
+
+    /**
+     * The duration in milliseconds.
+     */
+    private long _duration = -1L;
+
+    /**
+     * The media sequence number of the segment.
+     */
+    private long _mediaSequence = 0L;
+
+    /**
+     * Specifies if a discontinuity precedes the segment.
+     */
+    private boolean _discontinuity = false;
+
+    /**
+     * Returns the location of this segment, as a string.
+     * It may be relative to the location of the playlist.
+     * @return the segment location. May be <code>null</code> if not yet initialized.
+     * @see #setLocation
+     */
+    public String getLocation()
+    {
+        return _location;
+    }
+
+    /**
+     * Initializes the location of this segment from the specified string.
+     * @param location a segment location. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>location</code> is <code>null</code>.
+     * @see #getLocation
+     */
+    public void setLocation(final String location)
+    {
+        _location = location.trim(); // Throws NullPointerException if location is null.
+    }
+
+    /**
+     * Returns the title of this segment, as given by its <code>#EXTINF</code> tag.
+     * @return the segment title. May be <code>null</code>.
+     * @see #setTitle
+     */
+    public String getTitle()
+    {
+        return _title;
+    }
+
+    /**
+     * Initializes the title of this segment.
+     * @param title a segment title. May be <code>null</code>.
+     * @see #getTitle
+     */
+    public void setTitle(final String title)
+    {
+        _title = StringUtils.normalize(title);
+    }
+
+    /**
+     * Returns the duration of this segment in milliseconds.
+     * Defaults to -1 (unknown).
+     * @return a duration in milliseconds.
+     * @see #setDuration
+     */
+    public long getDuration()
+    {
+        return _duration;
+    }
+
+    /**
+     * Initializes the duration of this segment in milliseconds.
+     * @param duration a duration in milliseconds.
+     * @see #getDuration
+     */
+    public void setDuration(final long duration)
+    {
+        // Enforce the value of -1.
+        _duration = (duration < 0L) ? -1L : duration;
+    }
+
+    /**
+     * Returns the media sequence number of this segment.
+     * It identifies the segment uniquely in a live playlist, even when older segments are removed from it.
+     * @return a media sequence number.
+     * @see #setMediaSequence
+     */
+    public long getMediaSequence()
+    {
+        return _mediaSequence;
+    }
+
+    /**
+     * Initializes the media sequence number of this segment.
+     * @param mediaSequence a media sequence number.
+     * @see #getMediaSequence
+     */
+    public void setMediaSequence(final long mediaSequence)
+    {
+        _mediaSequence = mediaSequence;
+    }
+
+    /**
+     * Specifies if a discontinuity, i.e. a <code>#EXT-X-DISCONTINUITY</code> tag, precedes this segment.
+     * Defaults to <code>false</code>.
+     * @return <code>true</code> if a discontinuity precedes this segment.
+     * @see #setDiscontinuity
+     */
+    public boolean isDiscontinuity()
+    {
+        return _discontinuity;
+    }
+
+    /**
+     * Specifies if a discontinuity precedes this segment.
+     * @param discontinuity <code>true</code> if a discontinuity precedes this segment.
+     * @see #isDiscontinuity
+     */
+    public void setDiscontinuity(final boolean discontinuity)
+    {
+        _discontinuity = discontinuity;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.m3u;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A variant stream of an HTTP Live Streaming master playlist, as given by a <code>#EXT-X-STREAM-INF</code> tag and the following location.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ * @see HlsPlaylist
+ */
+public class HlsVariant
+{
+    /**
+     * The location of the media playlist of this variant.
+     */
+    private String _location = null;
+
+    /**
+     * The attributes of the <code>#EXT-X-STREAM-INF</code> tag, in order.
+     */
+    private final Map<String, String> _attributes = new LinkedHashMap<String, String>();
+
+    /**
+     * Returns the location of the media playlist of this variant, as a string.
+     * It may be relative to the location of the master playlist.
+     * @return the variant location. May be <code>null</code> if not yet initialized.
+     * @see #setLocation
+     */
+    public String getLocation()
+    {
+        return _location;
+    }
+
+    /**
+     * Initializes the location of the media playlist of this variant.
+     * @param location a variant location. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>location</code> is <code>null</code>.
+     * @see #getLocation
+     */
+    public void setLocation(final String location)
+    {
+        _location = location.trim(); // Throws NullPointerException if location is null.
+    }
+
+    /**
+     * Returns the attributes of the <code>#EXT-X-STREAM-INF</code> tag, keyed by upper case name.
+     * The quotes around a quoted-string value have been removed.
+     * @return a map of attribute values. May be empty but not <code>null</code>.
+     */
+    public Map<String, String> getAttributes()
+    {
+        return _attributes;
+    }
+
+    /**
+     * Returns the peak bit rate of this variant, in bits per second, as given by the <code>BANDWIDTH</code> attribute.
+     * @return a bit rate, or -1 if unknown or malformed.
+     */
+    public long getBandwidth()
+    {
+        return getLongAttribute("BANDWIDTH");
+    }
+
+    /**
+     * Returns the average bit rate of this variant, in bits per second, as given by the <code>AVERAGE-BANDWIDTH</code> attribute.
+     * @return a bit rate, or -1 if unknown or malformed.
+     */
+    public long getAverageBandwidth()
+    {
+        return getLongAttribute("AVERAGE-BANDWIDTH");
+    }
+
+    /**
+     * Returns the list of formats of this variant, as given by the <code>CODECS</code> attribute.
+     * @return a comma-separated list of formats. May be <code>null</code>.
+     */
+    public String getCodecs()
+    {
+        return _attributes.get("CODECS");
+    }
+
+    /**
+     * Returns the video resolution of this variant, as given by the <code>RESOLUTION</code> attribute.
+     * @return a resolution such as "1280x720". May be <code>null</code>.
+     */
+    public String getResolution()
+    {
+        return _attributes.get("RESOLUTION");
+    }
+
+    /**
+     * Returns the value of the specified decimal integer attribute.
+     * @param name an attribute name. Shall not be <code>null</code>.
+     * @return the attribute value, or -1 if unknown or malformed.
+     */
+    private long getLongAttribute(final String name)
+    {
+        final String value = _attributes.get(name);
+        long ret = -1L;
+
+        if (value != null)
+        {
+            try
+            {
+                ret = Long.parseLong(value); // May throw NumberFormatException.
+            }
+            catch (NumberFormatException e)
+            {
+                ret = -1L;
+            }
+        }
+
+        return ret;
+    }
+}
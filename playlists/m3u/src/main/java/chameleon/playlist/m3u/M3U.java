@@ -24,9 +24,7 @@
  */
 package chameleon.playlist.m3u;
 
-import java.io.BufferedWriter;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -73,43 +71,12 @@ public class M3U implements SpecificPlaylist
     @Override
     public void writeTo(final OutputStream out, final String encoding) throws Exception
     {
-        String enc = encoding;
-
-        if (enc == null)
-        {
-            enc = "UTF-8"; // For the M3U8 case. FIXME US-ASCII?
-        }
-
-        final BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, enc)); // Throws NullPointerException if out is null. May throw UnsupportedEncodingException.
-
-        if (_extensionM3U)
-        {
-            writer.write("#EXTM3U"); // May throw IOException.
-            writer.newLine(); // May throw IOException.
-        }
+        final M3UWriter writer = new M3UWriter(out, encoding, _extensionM3U); // Throws NullPointerException if out is null. May throw UnsupportedEncodingException.
+        writer.writeHeader(); // May throw IOException.
 
         for (Resource resource : _resources)
         {
-            if (_extensionM3U)
-            {
-                writer.write("#EXTINF:"); // May throw IOException.
-                writer.write(Long.toString(resource.getLength())); // May throw IOException.
-                writer.write(","); // May throw IOException.
-
-                if (resource.getName() == null)
-                {
-                    writer.write(resource.getLocation()); // May throw NullPointerException, IOException.
-                }
-                else
-                {
-                    writer.write(resource.getName()); // May throw IOException.
-                }
-
-                writer.newLine(); // May throw IOException.
-            }
-
-            writer.write(resource.getLocation()); // May throw NullPointerException, IOException.
-            writer.newLine(); // May throw IOException.
+            writer.write(resource); // May throw NullPointerException, IOException.
         }
 
         writer.flush(); // May throw IOException.
@@ -0,0 +1,396 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.m3u;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An index of the entries of a large M3U playlist file, giving a direct access to any range of its resources.
+ * <br>
+ * The index records the offset in the file of each entry, i.e. of the first line following the location of the previous resource,
+ * so that reading the file from there gives the resource with its EXTINF directives.
+ * The offsets are kept outside of the Java heap, 8 bytes per entry:
+ * either in a direct buffer when the index is {@link #build built}, or in a memory-mapped sidecar file when it is {@link #load loaded}.
+ * <br>
+ * The index is bound to the size and the last modification time of the file when it was built:
+ * once the file has changed, the index is no longer {@link #isUpToDate up to date}, and shall be built again.
+ * <br>
+ * Only the playlists encoded in UTF-8, US-ASCII or ISO-8859-1 can be indexed.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+public final class M3UIndex
+{
+    /**
+     * The magic number at the beginning of a sidecar file, i.e. "M3UI".
+     */
+    private static final int MAGIC = 0x4d335549;
+
+    /**
+     * The version of the sidecar file format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The size of the header of a sidecar file, in bytes.
+     */
+    private static final int HEADER_SIZE = 32;
+
+    /**
+     * The initial number of entries of a new index.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * The maximum number of entries of an index.
+     */
+    private static final int MAX_ENTRIES = Integer.MAX_VALUE / 8;
+
+    /**
+     * The indexed playlist file.
+     */
+    private final File _playlist;
+
+    /**
+     * The content encoding of the playlist.
+     */
+    private final String _encoding;
+
+    /**
+     * The size of the playlist file when it was indexed.
+     */
+    private final long _length;
+
+    /**
+     * The last modification time of the playlist file when it was indexed.
+     */
+    private final long _lastModified;
+
+    /**
+     * The offsets of the entries, as bytes.
+     */
+    private ByteBuffer _bytes;
+
+    /**
+     * The offsets of the entries.
+     */
+    private LongBuffer _offsets;
+
+    /**
+     * The number of entries.
+     */
+    private int _size;
+
+    /**
+     * Builds a new index.
+     * @param playlist the indexed playlist file. Shall not be <code>null</code>.
+     * @param encoding the content encoding of the playlist, or <code>null</code> if not known.
+     * @param length the size of the playlist file when it was indexed.
+     * @param lastModified the last modification time of the playlist file when it was indexed.
+     * @param bytes the offsets of the entries, as bytes. Shall not be <code>null</code>.
+     * @param size the number of entries.
+     */
+    private M3UIndex(final File playlist, final String encoding, final long length, final long lastModified, final ByteBuffer bytes, final int size)
+    {
+        _playlist = playlist;
+        _encoding = encoding;
+        _length = length;
+        _lastModified = lastModified;
+        _bytes = bytes;
+        _offsets = bytes.asLongBuffer();
+        _size = size;
+    }
+
+    /**
+     * Indexes the specified M3U playlist file.
+     * The file is read once, sequentially.
+     * @param playlist a M3U playlist file. Shall not be <code>null</code>.
+     * @param encoding the content encoding of the playlist, or <code>null</code> if not known.
+     * @return a new index. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>playlist</code> is <code>null</code>.
+     * @throws java.io.UnsupportedEncodingException if the content encoding is not supported.
+     * @throws IllegalArgumentException if the content encoding doesn't allow the playlist to be indexed, or if the contents don't look like a M3U playlist.
+     * @throws NumberFormatException if the length of a resource is malformed.
+     * @throws IOException if an I/O error occurs.
+     */
+    public static M3UIndex build(final File playlist, final String encoding) throws IOException
+    {
+        if (!M3ULineReader.isAsciiCompatible(M3ULineReader.toCharset(encoding))) // May throw UnsupportedEncodingException.
+        {
+            throw new IllegalArgumentException("Cannot index a M3U playlist encoded in " + encoding);
+        }
+
+        // Any change from now on shall invalidate the index.
+        final long length = playlist.length(); // Throws NullPointerException if playlist is null. May throw SecurityException.
+        final long lastModified = playlist.lastModified(); // May throw SecurityException.
+        final M3UIndex ret = new M3UIndex(playlist, encoding, length, lastModified, ByteBuffer.allocateDirect(INITIAL_CAPACITY * 8), 0);
+        final M3UReader reader = new M3UReader(new FileInputStream(playlist), encoding); // May throw FileNotFoundException, SecurityException, UnsupportedEncodingException.
+
+        try
+        {
+            long offset = 0L;
+
+            while (reader.readResource() != null) // May throw IllegalArgumentException, NumberFormatException, IOException.
+            {
+                ret.add(offset);
+                offset = reader.getOffset();
+            }
+        }
+        finally
+        {
+            reader.close(); // May throw IOException.
+        }
+
+        return ret;
+    }
+
+    /**
+     * Loads the index of the specified M3U playlist file from the specified sidecar file, as {@link #save saved} before.
+     * The sidecar file is memory-mapped.
+     * @param index a sidecar file. Shall not be <code>null</code>.
+     * @param playlist the indexed M3U playlist file. Shall not be <code>null</code>.
+     * @param encoding the content encoding of the playlist, or <code>null</code> if not known.
+     * @return the index, or <code>null</code> if the playlist file has changed since it was indexed.
+     * @throws NullPointerException if <code>index</code> is <code>null</code>.
+     * @throws NullPointerException if <code>playlist</code> is <code>null</code>.
+     * @throws IOException if an I/O error occurs, or if the sidecar file is not a M3U index.
+     */
+    public static M3UIndex load(final File index, final File playlist, final String encoding) throws IOException
+    {
+        final RandomAccessFile file = new RandomAccessFile(index, "r"); // Throws NullPointerException if index is null. May throw FileNotFoundException, SecurityException.
+        M3UIndex ret = null;
+
+        try
+        {
+            final FileChannel channel = file.getChannel();
+            final long fileSize = channel.size(); // May throw IOException.
+
+            if (fileSize < HEADER_SIZE)
+            {
+                throw new IOException("Not a M3U index: " + index);
+            }
+
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+            while (header.hasRemaining() && (channel.read(header) >= 0)) // May throw IOException.
+            {
+                // Keep reading.
+            }
+
+            header.flip();
+
+            final int magic = header.getInt();
+            final int version = header.getInt();
+            final long length = header.getLong();
+            final long lastModified = header.getLong();
+            final int size = header.getInt();
+
+            if ((magic != MAGIC) || (version != VERSION) || (size < 0) || (size > MAX_ENTRIES) || (fileSize < (HEADER_SIZE + (size * 8L))))
+            {
+                throw new IOException("Not a M3U index: " + index);
+            }
+
+            if ((playlist.length() == length) && (playlist.lastModified() == lastModified)) // Throws NullPointerException if playlist is null. May throw SecurityException.
+            {
+                final ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, size * 8L); // May throw IOException.
+                ret = new M3UIndex(playlist, encoding, length, lastModified, bytes, size);
+            }
+        }
+        finally
+        {
+            file.close(); // May throw IOException.
+        }
+
+        return ret;
+    }
+
+    /**
+     * Saves this index to the specified sidecar file, typically next to the playlist file.
+     * @param index a sidecar file, replaced if it already exists. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>index</code> is <code>null</code>.
+     * @throws IOException if an I/O error occurs.
+     * @see #load
+     */
+    public void save(final File index) throws IOException
+    {
+        final RandomAccessFile file = new RandomAccessFile(index, "rw"); // Throws NullPointerException if index is null. May throw FileNotFoundException, SecurityException.
+
+        try
+        {
+            file.setLength(0L); // May throw IOException.
+            final FileChannel channel = file.getChannel();
+
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putLong(_length);
+            header.putLong(_lastModified);
+            header.putInt(_size);
+            header.putInt(0); // Reserved.
+            header.flip();
+
+            final ByteBuffer offsets = _bytes.duplicate();
+            offsets.position(0);
+            offsets.limit(_size * 8);
+
+            while (header.hasRemaining() || offsets.hasRemaining())
+            {
+                channel.write(new ByteBuffer[] { header, offsets }); // NOPMD Avoid instantiating new objects inside loops
+            }
+        }
+        finally
+        {
+            file.close(); // May throw IOException.
+        }
+    }
+
+    /**
+     * Returns the indexed playlist file.
+     * @return a file. Shall not be <code>null</code>.
+     */
+    public File getPlaylist()
+    {
+        return _playlist;
+    }
+
+    /**
+     * Returns the number of entries, i.e. of resources, of the playlist.
+     * @return a number of entries.
+     */
+    public int size()
+    {
+        return _size;
+    }
+
+    /**
+     * Returns the offset in the playlist file of the specified entry.
+     * @param entry the index of an entry.
+     * @return an offset in the playlist file.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    public long getOffset(final int entry)
+    {
+        if ((entry < 0) || (entry >= _size))
+        {
+            throw new IndexOutOfBoundsException("Entry " + entry + " out of " + _size);
+        }
+
+        return _offsets.get(entry);
+    }
+
+    /**
+     * Specifies if the playlist file has not changed since it was indexed, as far as its size and its last modification time are concerned.
+     * @return <code>true</code> if the index can be used.
+     */
+    public boolean isUpToDate()
+    {
+        return (_playlist.length() == _length) && (_playlist.lastModified() == _lastModified); // May throw SecurityException.
+    }
+
+    /**
+     * Reads the specified range of resources of the playlist, seeking directly to the first one.
+     * @param from the index of the first entry.
+     * @param count the maximum number of entries to read.
+     * @return a list of resources, with at most <code>count</code> elements. May be empty but not <code>null</code>.
+     * @throws IndexOutOfBoundsException if <code>from</code> is out of range, or if <code>count</code> is negative.
+     * @throws IllegalStateException if the playlist file has changed since it was indexed.
+     * @throws IllegalArgumentException if the contents don't look like a M3U playlist.
+     * @throws NumberFormatException if the length of a resource is malformed.
+     * @throws IOException if an I/O error occurs.
+     */
+    public List<Resource> read(final int from, final int count) throws IOException
+    {
+        if (count < 0)
+        {
+            throw new IndexOutOfBoundsException("Negative count: " + count);
+        }
+
+        final long offset = getOffset(from); // May throw IndexOutOfBoundsException.
+
+        if (!isUpToDate())
+        {
+            throw new IllegalStateException("The playlist has changed since it was indexed: " + _playlist);
+        }
+
+        final int n = Math.min(count, _size - from);
+        final List<Resource> ret = new ArrayList<Resource>(n);
+        final FileInputStream in = new FileInputStream(_playlist); // May throw FileNotFoundException, SecurityException.
+
+        try
+        {
+            in.getChannel().position(offset); // May throw IOException.
+            final M3UReader reader = new M3UReader(in, _encoding, offset == 0L); // Shall not throw UnsupportedEncodingException.
+            Resource resource;
+
+            while ((ret.size() < n) && ((resource = reader.readResource()) != null)) // May throw IllegalArgumentException, NumberFormatException, IOException.
+            {
+                ret.add(resource);
+            }
+        }
+        finally
+        {
+            in.close(); // May throw IOException.
+        }
+
+        return ret;
+    }
+
+    /**
+     * Adds an entry to this index.
+     * @param offset the offset of the entry in the playlist file.
+     * @throws IllegalArgumentException if the index is full.
+     */
+    private void add(final long offset)
+    {
+        if (_size == _offsets.capacity())
+        {
+            if (_size >= MAX_ENTRIES)
+            {
+                throw new IllegalArgumentException("Too many entries in " + _playlist);
+            }
+
+            final ByteBuffer bytes = ByteBuffer.allocateDirect((int) Math.min(_size * 2L, (long) MAX_ENTRIES) * 8);
+            final ByteBuffer old = _bytes.duplicate();
+            old.position(0);
+            old.limit(_size * 8);
+            bytes.put(old);
+            bytes.clear();
+            _bytes = bytes;
+            _offsets = bytes.asLongBuffer();
+        }
+
+        _offsets.put(_size, offset);
+        _size++;
+    }
+}
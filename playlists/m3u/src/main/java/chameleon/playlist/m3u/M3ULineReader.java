@@ -0,0 +1,664 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.m3u;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reads the lines of a M3U-like playlist one after the other, as raw bytes.
+ * <br>
+ * When the encoding of the playlist is UTF-8, US-ASCII or ISO-8859-1, the raw bytes are scanned directly, without decoding anything.
+ * Any other encoding is decoded first, line by line, and each line is encoded again in UTF-8.
+ * In all cases, an ASCII character can thus be looked for as a single byte,
+ * and only the parts of a line actually needed have to be turned into strings, with {@link #toString(int, int)}.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+final class M3ULineReader
+{
+    /**
+     * The initial size of the byte buffer.
+     * It grows as needed to hold the longest line of the playlist.
+     */
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * The UTF-8 character set.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The underlying input stream, if the bytes are scanned directly, or <code>null</code> otherwise.
+     */
+    private final InputStream _in;
+
+    /**
+     * The underlying reader, if the playlist shall be decoded first, or <code>null</code> otherwise.
+     */
+    private final BufferedReader _reader;
+
+    /**
+     * The character set of the line bytes.
+     */
+    private final Charset _charset;
+
+    /**
+     * The bytes read so far, and not yet consumed.
+     */
+    private byte[] _buffer;
+
+    /**
+     * The offset in the input stream of the first byte in the buffer.
+     */
+    private long _base = 0L;
+
+    /**
+     * The offset of the first byte in the buffer not yet consumed.
+     */
+    private int _position = 0;
+
+    /**
+     * The offset following the last byte read in the buffer.
+     */
+    private int _limit = 0;
+
+    /**
+     * The offset of the first byte of the current line in the buffer, once trimmed.
+     */
+    private int _start = 0;
+
+    /**
+     * The offset following the last byte of the current line in the buffer, once trimmed.
+     */
+    private int _end = 0;
+
+    /**
+     * Specifies if the previous line ended with a carriage return, in which case a following line feed shall be skipped.
+     */
+    private boolean _skipLF = false;
+
+    /**
+     * Specifies if the end of the input stream has been reached.
+     */
+    private boolean _eof = false;
+
+    /**
+     * Specifies if the first line of the playlist has not been read yet.
+     */
+    private boolean _firstLine;
+
+    /**
+     * Builds a new line reader.
+     * @param in an input stream. Shall not be <code>null</code>.
+     * @param encoding the content encoding of the input resource, or <code>null</code> if not known.
+     * @throws NullPointerException if <code>in</code> is <code>null</code>.
+     * @throws UnsupportedEncodingException if the specified encoding is not supported.
+     */
+    M3ULineReader(final InputStream in, final String encoding) throws UnsupportedEncodingException
+    {
+        this(in, encoding, true); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
+    }
+
+    /**
+     * Builds a new line reader, which may start in the middle of a playlist.
+     * @param in an input stream. Shall not be <code>null</code>.
+     * @param encoding the content encoding of the input resource, or <code>null</code> if not known.
+     * @param start <code>true</code> if the input stream starts at the beginning of the playlist, where a byte order mark shall be skipped.
+     * @throws NullPointerException if <code>in</code> is <code>null</code>.
+     * @throws UnsupportedEncodingException if the specified encoding is not supported.
+     */
+    M3ULineReader(final InputStream in, final String encoding, final boolean start) throws UnsupportedEncodingException
+    {
+        final Charset charset = toCharset(encoding); // May throw UnsupportedEncodingException.
+        _firstLine = start;
+
+        if (isAsciiCompatible(charset))
+        {
+            if (in == null)
+            {
+                throw new NullPointerException("no input stream");
+            }
+
+            _in = in;
+            _reader = null;
+            _charset = charset;
+            _buffer = new byte[BUFFER_SIZE];
+        }
+        else
+        {
+            _in = null;
+            _reader = new BufferedReader(new InputStreamReader(in, charset)); // Throws NullPointerException if in is null.
+            _charset = UTF_8;
+        }
+    }
+
+    /**
+     * Returns the character set of the specified playlist encoding.
+     * @param encoding the content encoding of the playlist, or <code>null</code> if not known, in which case UTF-8 is assumed.
+     * @return a character set. Shall not be <code>null</code>.
+     * @throws UnsupportedEncodingException if the specified encoding is not supported.
+     */
+    static Charset toCharset(final String encoding) throws UnsupportedEncodingException
+    {
+        String enc = encoding;
+
+        if (enc == null)
+        {
+            enc = "UTF-8"; // For the M3U8 case. FIXME US-ASCII?
+        }
+
+        final Charset ret;
+
+        try
+        {
+            ret = Charset.forName(enc); // May throw IllegalCharsetNameException, UnsupportedCharsetException.
+        }
+        catch (IllegalArgumentException e)
+        {
+            final UnsupportedEncodingException uee = new UnsupportedEncodingException(enc);
+            uee.initCause(e);
+            throw uee;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Specifies if the bytes of the specified character set can be scanned directly, i.e. if it is UTF-8, US-ASCII or ISO-8859-1.
+     * In these encodings, an ASCII byte always stands for the same ASCII character, and is never part of a multi-byte sequence.
+     * @param charset a character set. Shall not be <code>null</code>.
+     * @return <code>true</code> if the bytes can be scanned directly.
+     * @throws NullPointerException if <code>charset</code> is <code>null</code>.
+     */
+    static boolean isAsciiCompatible(final Charset charset)
+    {
+        final String name = charset.name(); // Throws NullPointerException if charset is null.
+
+        return "UTF-8".equals(name) || "US-ASCII".equals(name) || "ISO-8859-1".equals(name);
+    }
+
+    /**
+     * Moves to the next line of the playlist.
+     * As with {@link BufferedReader#readLine}, a line is terminated by a line feed, a carriage return, or a carriage return followed immediately by a line feed.
+     * The line is then trimmed, as with {@link String#trim}, and a UTF-8 byte order mark at the beginning of the playlist is skipped.
+     * @return <code>false</code> if the end of the playlist has been reached.
+     * @throws IOException if an I/O error occurs.
+     * @see #getBuffer
+     * @see #getStart
+     * @see #getEnd
+     */
+    boolean nextLine() throws IOException
+    {
+        final boolean ret = (_reader == null) ? scanLine() : decodeLine(); // May throw IOException.
+
+        if (ret)
+        {
+            if (_firstLine)
+            {
+                _firstLine = false;
+
+                // The decoded lines are encoded in UTF-8 again, thus the same test applies to both cases.
+                if (UTF_8.equals(_charset) && ((_end - _start) >= 3) && (_buffer[_start] == (byte) 0xef) && (_buffer[_start + 1] == (byte) 0xbb) && (_buffer[_start + 2] == (byte) 0xbf))
+                {
+                    _start += 3;
+                }
+            }
+
+            _start = trimStart(_buffer, _start, _end);
+            _end = trimEnd(_buffer, _start, _end);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the buffer holding the current line.
+     * It shall not be modified, and is only valid until the next call to {@link #nextLine}.
+     * @return a byte array. Shall not be <code>null</code>.
+     * @see #getStart
+     * @see #getEnd
+     */
+    byte[] getBuffer()
+    {
+        return _buffer;
+    }
+
+    /**
+     * Returns the offset of the first byte of the current line, once trimmed.
+     * @return an offset in the {@link #getBuffer buffer}.
+     */
+    int getStart()
+    {
+        return _start;
+    }
+
+    /**
+     * Returns the offset following the last byte of the current line, once trimmed.
+     * The line is empty if it is equal to the {@link #getStart start} offset.
+     * @return an offset in the {@link #getBuffer buffer}.
+     */
+    int getEnd()
+    {
+        return _end;
+    }
+
+    /**
+     * Returns the offset in the input stream following the current line and its terminator.
+     * In the case of a carriage return followed by a line feed, this is the offset of the line feed, which then reads as an empty line.
+     * @return an offset in the input stream, or -1 if the playlist is decoded first.
+     */
+    long getNextOffset()
+    {
+        return (_reader == null) ? (_base + _position) : -1L;
+    }
+
+    /**
+     * Builds a string from the specified part of the current line.
+     * @param start the offset of the first byte in the {@link #getBuffer buffer}.
+     * @param end the offset following the last byte in the buffer.
+     * @return a new string. Shall not be <code>null</code>.
+     */
+    String toString(final int start, final int end)
+    {
+        return new String(_buffer, start, end - start, _charset);
+    }
+
+    /**
+     * Scans the next line of the input stream.
+     * @return <code>false</code> if the end of the playlist has been reached.
+     * @throws IOException if an I/O error occurs.
+     */
+    private boolean scanLine() throws IOException
+    {
+        boolean ret = false;
+
+        if (_skipLF && ((_position < _limit) || fill())) // May throw IOException.
+        {
+            if (_buffer[_position] == '\n')
+            {
+                _position++;
+            }
+        }
+
+        _skipLF = false;
+        int i = _position;
+
+        while (!ret)
+        {
+            if (i < _limit)
+            {
+                final byte b = _buffer[i];
+
+                if ((b == '\n') || (b == '\r'))
+                {
+                    _start = _position;
+                    _end = i;
+                    _position = i + 1;
+                    _skipLF = (b == '\r');
+                    ret = true;
+                }
+                else
+                {
+                    i++;
+                }
+            }
+            else
+            {
+                final int scanned = i - _position;
+
+                if (fill()) // May throw IOException.
+                {
+                    i = _position + scanned;
+                }
+                else
+                {
+                    // The last line may not be terminated.
+                    ret = (_position < _limit);
+                    _start = _position;
+                    _end = _limit;
+                    _position = _limit;
+                    break;
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Decodes the next line of the underlying reader, and encodes it again in UTF-8.
+     * @return <code>false</code> if the end of the playlist has been reached.
+     * @throws IOException if an I/O error occurs.
+     */
+    private boolean decodeLine() throws IOException
+    {
+        final String line = _reader.readLine(); // May throw IOException.
+
+        if (line != null)
+        {
+            _buffer = line.getBytes(UTF_8);
+            _start = 0;
+            _end = _buffer.length;
+        }
+
+        return line != null;
+    }
+
+    /**
+     * Reads more bytes from the input stream, after the ones not yet consumed.
+     * The bytes not yet consumed are first moved to the beginning of the buffer, which is enlarged if it is full.
+     * @return <code>true</code> if some bytes have been read, <code>false</code> if the end of the input stream has been reached.
+     * @throws IOException if an I/O error occurs.
+     */
+    private boolean fill() throws IOException
+    {
+        boolean ret = false;
+
+        if (!_eof)
+        {
+            if (_position > 0)
+            {
+                _base += _position;
+                System.arraycopy(_buffer, _position, _buffer, 0, _limit - _position);
+                _limit -= _position;
+                _position = 0;
+            }
+
+            if (_limit == _buffer.length)
+            {
+                _buffer = Arrays.copyOf(_buffer, _buffer.length * 2);
+            }
+
+            final int n = _in.read(_buffer, _limit, _buffer.length - _limit); // May throw IOException.
+
+            if (n < 0)
+            {
+                _eof = true;
+            }
+            else
+            {
+                _limit += n;
+                ret = true;
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Closes this reader, and the underlying input stream.
+     * @throws IOException if an I/O error occurs.
+     */
+    void close() throws IOException
+    {
+        if (_reader == null)
+        {
+            _in.close(); // May throw IOException.
+        }
+        else
+        {
+            _reader.close(); // May throw IOException.
+        }
+    }
+
+    /**
+     * Skips the leading white spaces of the specified bytes, as {@link String#trim} would do.
+     * @param line the line bytes. Shall not be <code>null</code>.
+     * @param start the offset of the first byte.
+     * @param end the offset following the last byte.
+     * @return the offset of the first byte which is not a white space, or <code>end</code>.
+     */
+    static int trimStart(final byte[] line, final int start, final int end)
+    {
+        int ret = start;
+
+        while ((ret < end) && ((line[ret] & 0xff) <= ' '))
+        {
+            ret++;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Skips the trailing white spaces of the specified bytes, as {@link String#trim} would do.
+     * @param line the line bytes. Shall not be <code>null</code>.
+     * @param start the offset of the first byte.
+     * @param end the offset following the last byte.
+     * @return the offset following the last byte which is not a white space, or <code>start</code>.
+     */
+    static int trimEnd(final byte[] line, final int start, final int end)
+    {
+        int ret = end;
+
+        while ((ret > start) && ((line[ret - 1] & 0xff) <= ' '))
+        {
+            ret--;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Specifies if the specified bytes begin with the specified ASCII prefix, ignoring the case.
+     * @param line the line bytes. Shall not be <code>null</code>.
+     * @param start the offset of the first byte.
+     * @param end the offset following the last byte.
+     * @param prefix an ASCII prefix, in upper case. Shall not be <code>null</code>.
+     * @return <code>true</code> if the bytes begin with the prefix.
+     */
+    static boolean startsWithIgnoreCase(final byte[] line, final int start, final int end, final byte[] prefix)
+    {
+        boolean ret = (end - start) >= prefix.length;
+
+        for (int i = 0; ret && (i < prefix.length); i++)
+        {
+            int c = line[start + i];
+
+            if ((c >= 'a') && (c <= 'z'))
+            {
+                c -= 'a' - 'A';
+            }
+
+            ret = (c == prefix[i]);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the offset of the first occurrence of the specified ASCII character in the specified bytes.
+     * @param line the line bytes. Shall not be <code>null</code>.
+     * @param start the offset of the first byte.
+     * @param end the offset following the last byte.
+     * @param c an ASCII character.
+     * @return the offset of the character, or -1 if it cannot be found.
+     */
+    static int indexOf(final byte[] line, final int start, final int end, final byte c)
+    {
+        int ret = -1;
+
+        for (int i = start; (ret < 0) && (i < end); i++)
+        {
+            if (line[i] == c)
+            {
+                ret = i;
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Specifies if the specified bytes are an optional sign followed by at most 18 ASCII digits,
+     * i.e. a number that {@link #parsePlainLong} can handle without overflowing.
+     * @param line the line bytes. Shall not be <code>null</code>.
+     * @param start the offset of the first byte of the number.
+     * @param end the offset following the last byte of the number.
+     * @return <code>true</code> if the number can be parsed directly.
+     */
+    static boolean isPlainLong(final byte[] line, final int start, final int end)
+    {
+        int i = start;
+
+        if ((i < end) && ((line[i] == '-') || (line[i] == '+')))
+        {
+            i++;
+        }
+
+        boolean ret = (i < end) && ((end - i) <= 18);
+
+        for (; ret && (i < end); i++)
+        {
+            ret = (line[i] >= '0') && (line[i] <= '9');
+        }
+
+        return ret;
+    }
+
+    /**
+     * Parses the specified number, already checked by {@link #isPlainLong}.
+     * @param line the line bytes. Shall not be <code>null</code>.
+     * @param start the offset of the first byte of the number.
+     * @param end the offset following the last byte of the number.
+     * @return the number value.
+     */
+    static long parsePlainLong(final byte[] line, final int start, final int end)
+    {
+        int i = start;
+        final boolean negative = (line[i] == '-');
+
+        if (negative || (line[i] == '+'))
+        {
+            i++;
+        }
+
+        long ret = 0L;
+
+        for (; i < end; i++)
+        {
+            ret = (ret * 10L) + (line[i] - '0');
+        }
+
+        return negative ? -ret : ret;
+    }
+
+    /**
+     * Specifies if the specified bytes are a decimal number of seconds that {@link #parseDecimalMillis} can handle,
+     * i.e. an optional sign, at most 15 ASCII digits, and an optional fractional part made of a dot and ASCII digits.
+     * @param line the line bytes. Shall not be <code>null</code>.
+     * @param start the offset of the first byte of the number.
+     * @param end the offset following the last byte of the number.
+     * @return <code>true</code> if the number can be parsed directly.
+     */
+    static boolean isPlainDecimal(final byte[] line, final int start, final int end)
+    {
+        int i = start;
+
+        if ((i < end) && ((line[i] == '-') || (line[i] == '+')))
+        {
+            i++;
+        }
+
+        final int digitsStart = i;
+
+        while ((i < end) && (line[i] >= '0') && (line[i] <= '9'))
+        {
+            i++;
+        }
+
+        boolean ret = (i > digitsStart) && ((i - digitsStart) <= 15);
+
+        if (ret && (i < end))
+        {
+            ret = (line[i] == '.');
+
+            for (i++; ret && (i < end); i++)
+            {
+                ret = (line[i] >= '0') && (line[i] <= '9');
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Parses the specified decimal number of seconds, already checked by {@link #isPlainDecimal}.
+     * @param line the line bytes. Shall not be <code>null</code>.
+     * @param start the offset of the first byte of the number.
+     * @param end the offset following the last byte of the number.
+     * @return the number value, in milliseconds, rounded to the nearest one.
+     */
+    static long parseDecimalMillis(final byte[] line, final int start, final int end)
+    {
+        int i = start;
+        final boolean negative = (line[i] == '-');
+
+        if (negative || (line[i] == '+'))
+        {
+            i++;
+        }
+
+        long ret = 0L;
+
+        for (; (i < end) && (line[i] != '.'); i++)
+        {
+            ret = (ret * 10L) + (line[i] - '0');
+        }
+
+        ret *= 1000L;
+        long scale = 100L;
+
+        // Skip the dot, if any.
+        for (i++; i < end; i++)
+        {
+            final int digit = line[i] - '0';
+
+            if (scale > 0L)
+            {
+                ret += digit * scale;
+                scale /= 10L;
+            }
+            else
+            {
+                if (digit >= 5)
+                {
+                    ret++;
+                }
+
+                break;
+            }
+        }
+
+        return negative ? -ret : ret;
+    }
+}
@@ -0,0 +1,520 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.m3u;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Reads the resources of a large M3U playlist file in parallel.
+ * <br>
+ * The file is split into chunks at line boundaries, and each chunk is memory-mapped and parsed on its own by a {@link M3UReader}.
+ * The EXTINF directives which are not followed by a resource in their chunk are handed over to the first resource of the following chunks,
+ * when the resources of the chunks are concatenated in order.
+ * The result, including the exception thrown if any, is thus the same as if the file were parsed sequentially.
+ * <br>
+ * Only the playlists encoded in UTF-8, US-ASCII or ISO-8859-1 can be split this way: the other ones, as well as the small ones, are parsed sequentially.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+final class M3UParallelReader
+{
+    /**
+     * The minimum size of a chunk, in bytes.
+     */
+    private static final long MIN_CHUNK_SIZE = 1024L * 1024L;
+
+    /**
+     * The size of the window mapped to look for a line boundary.
+     */
+    private static final int WINDOW_SIZE = 65536;
+
+    /**
+     * The playlist file.
+     */
+    private final File _file;
+
+    /**
+     * The content encoding of the playlist.
+     */
+    private final String _encoding;
+
+    /**
+     * Specifies if the parsing tasks shall stop as soon as possible, because the result is not needed anymore.
+     */
+    private volatile boolean _aborted = false;
+
+    /**
+     * Builds a new parallel M3U reader.
+     * @param file the playlist file. Shall not be <code>null</code>.
+     * @param encoding the content encoding of the playlist, or <code>null</code> if not known.
+     * @throws NullPointerException if <code>file</code> is <code>null</code>.
+     */
+    M3UParallelReader(final File file, final String encoding)
+    {
+        if (file == null)
+        {
+            throw new NullPointerException("no file");
+        }
+
+        _file = file;
+        _encoding = encoding;
+    }
+
+    /**
+     * Reads all the resources of the playlist, and adds them in order to the specified list.
+     * @param resources a list of resources. Shall not be <code>null</code>.
+     * @param executor the executor running the parsing tasks. Shall not be <code>null</code>.
+     * @param parallelism the maximum number of chunks to parse in parallel.
+     * @throws NullPointerException if <code>resources</code> is <code>null</code>.
+     * @throws NullPointerException if <code>executor</code> is <code>null</code>.
+     * @throws IllegalArgumentException if the contents don't look like a M3U playlist.
+     * @throws NumberFormatException if the length of a resource is malformed.
+     * @throws java.io.UnsupportedEncodingException if the content encoding is not supported.
+     * @throws InterruptedIOException if the current thread has been interrupted while waiting for the parsing tasks.
+     * @throws IOException if an I/O error occurs.
+     */
+    void readInto(final List<Resource> resources, final ExecutorService executor, final int parallelism) throws IOException
+    {
+        if ((resources == null) || (executor == null))
+        {
+            throw new NullPointerException("no resource list or no executor");
+        }
+
+        final RandomAccessFile file = new RandomAccessFile(_file, "r"); // May throw FileNotFoundException, SecurityException.
+
+        try
+        {
+            final FileChannel channel = file.getChannel();
+            final long size = channel.size(); // May throw IOException.
+            long count = Math.min(Math.max(parallelism, 1), size / MIN_CHUNK_SIZE);
+            // A chunk cannot be mapped at once if larger than 2 GB.
+            count = Math.max(count, (size / Integer.MAX_VALUE) + 1L);
+
+            if ((count <= 1L) || !M3ULineReader.isAsciiCompatible(M3ULineReader.toCharset(_encoding))) // May throw UnsupportedEncodingException.
+            {
+                readSequentially(resources); // May throw IllegalArgumentException, NumberFormatException, IOException.
+            }
+            else
+            {
+                readChunks(resources, executor, channel, size, count); // May throw IllegalArgumentException, NumberFormatException, IOException, RejectedExecutionException.
+            }
+        }
+        finally
+        {
+            file.close(); // May throw IOException.
+        }
+    }
+
+    /**
+     * Reads all the resources of the playlist sequentially.
+     * @param resources a list of resources. Shall not be <code>null</code>.
+     * @throws IllegalArgumentException if the contents don't look like a M3U playlist.
+     * @throws NumberFormatException if the length of a resource is malformed.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void readSequentially(final List<Resource> resources) throws IOException
+    {
+        final M3UReader reader = new M3UReader(new FileInputStream(_file), _encoding); // May throw FileNotFoundException, SecurityException, UnsupportedEncodingException.
+
+        try
+        {
+            Resource resource;
+
+            while ((resource = reader.readResource()) != null) // May throw IllegalArgumentException, NumberFormatException, IOException.
+            {
+                resources.add(resource);
+            }
+        }
+        finally
+        {
+            reader.close(); // May throw IOException.
+        }
+    }
+
+    /**
+     * Splits the playlist into chunks, parses them in parallel, and adds their resources in order to the specified list.
+     * When this method returns, normally or not, none of the parsing tasks is still running.
+     * @param resources a list of resources. Shall not be <code>null</code>.
+     * @param executor the executor running the parsing tasks. Shall not be <code>null</code>.
+     * @param channel the channel of the playlist file. Shall not be <code>null</code>.
+     * @param size the size of the file.
+     * @param count the number of chunks.
+     * @throws IllegalArgumentException if the contents don't look like a M3U playlist.
+     * @throws NumberFormatException if the length of a resource is malformed.
+     * @throws java.util.concurrent.RejectedExecutionException if a parsing task cannot be submitted.
+     * @throws InterruptedIOException if the current thread has been interrupted while waiting for the parsing tasks.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void readChunks(final List<Resource> resources, final ExecutorService executor, final FileChannel channel, final long size, final long count) throws IOException
+    {
+        final List<Future<Chunk>> futures = new ArrayList<Future<Chunk>>();
+        boolean done = false;
+
+        try
+        {
+            long start = 0L;
+
+            for (long i = 1L; i <= count; i++)
+            {
+                final long end = (i == count) ? size : nextLineStart(channel, Math.max(start, (size / count) * i), size); // May throw IOException.
+
+                if (end > start)
+                {
+                    futures.add(executor.submit(new Chunk(channel, start, end - start))); // NOPMD Avoid instantiating new objects inside loops
+                    start = end;
+                }
+            }
+
+            merge(resources, futures); // May throw IllegalArgumentException, NumberFormatException, IOException.
+            done = true;
+        }
+        finally
+        {
+            if (!done)
+            {
+                // The mapped chunks shall not be read anymore once this method returns, as the file may then be truncated.
+                _aborted = true;
+                await(futures);
+            }
+        }
+    }
+
+    /**
+     * Concatenates in order the resources of the specified chunks, once parsed.
+     * @param resources a list of resources. Shall not be <code>null</code>.
+     * @param futures the chunks being parsed, in order. Shall not be <code>null</code>.
+     * @throws IllegalArgumentException if the contents don't look like a M3U playlist.
+     * @throws NumberFormatException if the length of a resource is malformed.
+     * @throws InterruptedIOException if the current thread has been interrupted while waiting.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void merge(final List<Resource> resources, final List<Future<Chunk>> futures) throws IOException
+    {
+        final M3UReader.Extinf carried = new M3UReader.Extinf();
+
+        for (Future<Chunk> future : futures)
+        {
+            final Chunk chunk = get(future); // May throw InterruptedIOException.
+
+            if (chunk._resources.isEmpty())
+            {
+                chunk._pending.inherit(carried);
+            }
+            else
+            {
+                // The first resource of the chunk may be preceded by EXTINF directives of the previous chunks.
+                chunk._first.inherit(carried);
+                chunk._first.applyTo(chunk._resources.get(0)); // May throw NumberFormatException.
+                resources.addAll(chunk._resources);
+            }
+
+            carried.copyFrom(chunk._pending);
+
+            if (chunk._ioException != null)
+            {
+                throw chunk._ioException;
+            }
+
+            if (chunk._runtimeException != null)
+            {
+                throw chunk._runtimeException;
+            }
+        }
+    }
+
+    /**
+     * Waits for the specified chunk to be parsed.
+     * @param future a chunk being parsed. Shall not be <code>null</code>.
+     * @return the parsed chunk. Shall not be <code>null</code>.
+     * @throws InterruptedIOException if the current thread has been interrupted while waiting.
+     */
+    private static Chunk get(final Future<Chunk> future) throws InterruptedIOException
+    {
+        final Chunk ret;
+
+        try
+        {
+            ret = future.get(); // May throw CancellationException, ExecutionException, InterruptedException.
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            final InterruptedIOException iioe = new InterruptedIOException("Interrupted while parsing a M3U playlist");
+            iioe.initCause(e);
+            throw iioe; // NOPMD Preserve stack trace
+        }
+        catch (ExecutionException e)
+        {
+            // The chunks keep their exceptions: only errors are left.
+            final Throwable cause = e.getCause();
+
+            if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+
+            throw new IllegalStateException(cause); // NOPMD Preserve stack trace
+        }
+
+        return ret;
+    }
+
+    /**
+     * Waits for the parsing of the specified chunks to be over, whatever its outcome.
+     * The interrupted status of the current thread is kept, but doesn't stop the wait.
+     * @param futures the chunks being parsed. Shall not be <code>null</code>.
+     */
+    private static void await(final List<Future<Chunk>> futures)
+    {
+        boolean interrupted = false;
+
+        for (Future<Chunk> future : futures)
+        {
+            boolean over = false;
+
+            while (!over)
+            {
+                try
+                {
+                    future.get(); // May throw CancellationException, ExecutionException, InterruptedException.
+                    over = true;
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+                catch (ExecutionException e)
+                {
+                    over = true;
+                }
+            }
+        }
+
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the offset of the first line starting after the specified offset.
+     * @param channel the channel of the playlist file. Shall not be <code>null</code>.
+     * @param from an offset in the file.
+     * @param size the size of the file.
+     * @return the offset following the first line terminator found from the specified offset, or the size of the file.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static long nextLineStart(final FileChannel channel, final long from, final long size) throws IOException
+    {
+        long ret = size;
+        long position = from;
+        boolean found = false;
+
+        while (!found && (position < size))
+        {
+            final MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, size - position)); // May throw IOException.
+
+            while (!found && window.hasRemaining())
+            {
+                final byte b = window.get();
+                position++;
+
+                if ((b == '\n') || (b == '\r'))
+                {
+                    found = true;
+                    ret = position;
+
+                    // A CR LF pair shall not be split.
+                    if ((b == '\r') && (ret < size))
+                    {
+                        final byte next = window.hasRemaining() ? window.get() : channel.map(FileChannel.MapMode.READ_ONLY, ret, 1L).get(); // May throw IOException.
+
+                        if (next == '\n')
+                        {
+                            ret++;
+                        }
+                    }
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * A chunk of the playlist, i.e. a sequence of complete lines, and the result of its parsing.
+     */
+    private final class Chunk implements Callable<Chunk>
+    {
+        /**
+         * The channel of the playlist file.
+         */
+        private final FileChannel _channel;
+
+        /**
+         * The offset of the chunk in the file.
+         */
+        private final long _offset;
+
+        /**
+         * The size of the chunk, in bytes.
+         */
+        private final long _size;
+
+        /**
+         * The resources of the chunk.
+         */
+        private final List<Resource> _resources = new ArrayList<Resource>();
+
+        /**
+         * The EXTINF state read in the chunk before its first resource.
+         */
+        private final M3UReader.Extinf _first = new M3UReader.Extinf();
+
+        /**
+         * The EXTINF state read in the chunk after its last resource.
+         */
+        private M3UReader.Extinf _pending = new M3UReader.Extinf();
+
+        /**
+         * The I/O exception thrown while parsing the chunk, if any.
+         */
+        private IOException _ioException = null;
+
+        /**
+         * The runtime exception thrown while parsing the chunk, if any.
+         */
+        private RuntimeException _runtimeException = null;
+
+        /**
+         * Builds a new chunk.
+         * @param channel the channel of the playlist file. Shall not be <code>null</code>.
+         * @param offset the offset of the chunk in the file.
+         * @param size the size of the chunk, in bytes.
+         */
+        private Chunk(final FileChannel channel, final long offset, final long size)
+        {
+            _channel = channel;
+            _offset = offset;
+            _size = size;
+        }
+
+        @Override
+        public Chunk call()
+        {
+            // Nothing to do if another chunk has already failed.
+            if (!_aborted)
+            {
+                try
+                {
+                    final MappedByteBuffer buffer = _channel.map(FileChannel.MapMode.READ_ONLY, _offset, _size); // May throw IOException.
+                    final M3UReader reader = new M3UReader(new ByteBufferInputStream(buffer), _encoding, _offset == 0L); // May throw UnsupportedEncodingException.
+                    Resource resource;
+
+                    while (!_aborted && ((resource = reader.readResource()) != null)) // May throw IllegalArgumentException, NumberFormatException, IOException.
+                    {
+                        if (_resources.isEmpty())
+                        {
+                            _first.copyFrom(reader.getApplied());
+                        }
+
+                        _resources.add(resource);
+                    }
+
+                    _pending = reader.getPending();
+                }
+                catch (IllegalArgumentException e) // Including NumberFormatException.
+                {
+                    _runtimeException = e;
+                }
+                catch (IOException e)
+                {
+                    _ioException = e;
+                }
+            }
+
+            return this;
+        }
+    }
+
+    /**
+     * An input stream reading the remaining bytes of a byte buffer.
+     */
+    private static final class ByteBufferInputStream extends InputStream
+    {
+        /**
+         * The underlying byte buffer.
+         */
+        private final ByteBuffer _buffer;
+
+        /**
+         * Builds a new input stream on the specified byte buffer.
+         * @param buffer a byte buffer. Shall not be <code>null</code>.
+         */
+        private ByteBufferInputStream(final ByteBuffer buffer)
+        {
+            _buffer = buffer;
+        }
+
+        @Override
+        public int read()
+        {
+            return _buffer.hasRemaining() ? (_buffer.get() & 0xff) : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len)
+        {
+            int ret = -1;
+
+            if (len == 0)
+            {
+                ret = 0;
+            }
+            else if (_buffer.hasRemaining())
+            {
+                ret = Math.min(len, _buffer.remaining());
+                _buffer.get(b, off, ret); // May throw IndexOutOfBoundsException.
+            }
+
+            return ret;
+        }
+    }
+}
@@ -24,11 +24,13 @@
  */
 package chameleon.playlist.m3u;
 
-import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.commons.logging.Log;
 
@@ -36,18 +38,24 @@ import chameleon.content.type.ContentType;
 import chameleon.player.PlayerSupport;
 import chameleon.playlist.AbstractPlaylistComponent;
 import chameleon.playlist.Media;
+import chameleon.playlist.MediaStream;
 import chameleon.playlist.Parallel;
 import chameleon.playlist.Playlist;
+import chameleon.playlist.PlaylistCursor;
+import chameleon.playlist.PlaylistHeader;
 import chameleon.playlist.Sequence;
 import chameleon.playlist.SpecificPlaylist;
+import chameleon.playlist.SpecificPlaylistProbe;
 import chameleon.playlist.SpecificPlaylistProvider;
+import chameleon.playlist.StreamingPlaylistProvider;
+import chameleon.playlist.StreamingPlaylistWriter;
 
 /**
  * A simple text-based list of the locations of the items, with each item on a new line.
  * @version $Revision: 91 $
  * @author Christophe Delory
  */
-public class M3UProvider implements SpecificPlaylistProvider
+public class M3UProvider implements SpecificPlaylistProvider, SpecificPlaylistProbe, StreamingPlaylistProvider, StreamingPlaylistWriter
 {
     /**
      * A list of compatible content types.
@@ -93,6 +101,11 @@ public class M3UProvider implements SpecificPlaylistProvider
                         "Real Audio Metadata (RAM)"),
     };
 
+    /**
+     * Specifies that the output playlists shall have the Extension M3U format.
+     */
+    private boolean _extensionM3U = false;
+
     @Override
     public String getId()
     {
@@ -106,155 +119,236 @@ public class M3UProvider implements SpecificPlaylistProvider
     }
 
     @Override
-    public SpecificPlaylist readFrom(final InputStream in, final String encoding, final Log logger) throws Exception
+    public int probe(final PlaylistHeader header)
     {
-        String enc = encoding;
+        final String line = header.getFirstLine("UTF-8");
+        int ret = SpecificPlaylistProbe.POSSIBLE_MATCH;
 
-        if (enc == null)
+        if ((line != null) && (line.length() > 0))
         {
-            enc = "UTF-8"; // For the M3U8 case. FIXME US-ASCII?
+            final char firstChar = line.charAt(0); // Shall not throw IndexOutOfBoundsException.
+
+            // Same test as in readFrom().
+            if ((firstChar == '<') || (firstChar == '['))
+            {
+                ret = SpecificPlaylistProbe.NO_MATCH;
+            }
+            else if (line.toUpperCase(Locale.ENGLISH).startsWith("#EXTM3U"))
+            {
+                ret = SpecificPlaylistProbe.CERTAIN_MATCH;
+            }
         }
 
-        final BufferedReader reader = new BufferedReader(new InputStreamReader(in, enc)); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException, IOException.
+        return ret;
+    }
+
+    @Override
+    public SpecificPlaylist readFrom(final InputStream in, final String encoding, final Log logger) throws Exception
+    {
+        final M3UReader reader = new M3UReader(in, encoding); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
 
         final M3U ret = new M3U();
         ret.setProvider(this);
 
-        String line;
-        String songName = null;
-        String songLength = null;
+        Resource resource;
 
-        while ((line = reader.readLine()) != null) // May throw IOException.
+        while ((resource = reader.readResource()) != null) // May throw IllegalArgumentException, NumberFormatException, IOException.
         {
-            line = line.trim();
-
-            if (line.length() > 0)
-            {
-                final char firstChar = line.charAt(0); // Shall not throw IndexOutOfBoundsException.
-
-                // Exclude what looks like an XML file, or a Windows .ini file.
-                // Files or URLs "usually" don't begin with such characters.
-                if ((firstChar == '<') || (firstChar == '['))
-                {
-                    throw new IllegalArgumentException("Doesn't seem to be a M3U playlist (and related ones)");
-                }
-                else if (firstChar == '#')
-                {
-                    if (line.toUpperCase(Locale.ENGLISH).startsWith("#EXTINF"))
-                    {
-                        final int indA = line.indexOf(',', 0);
-
-                        if (indA >= 0) // NOPMD Deeply nested if then statement
-                        {
-                            songName = line.substring(indA + 1, line.length());
-                        }
-
-                        final int indB = line.indexOf(':', 0);
-
-                        if ((indB >= 0) && (indB < indA)) // NOPMD Deeply nested if then statement
-                        {
-                            songLength = line.substring(indB + 1, indA).trim();
-                        }
-                    }
-                    // Otherwise ignore the comment.
-                    // In particular VLC directives "EXTVLCOPT:<param>=<value>" are ignored.
-                    // The same applies to #EXTART for album artist and #EXTALB for album title.
-                }
-                else
-                {
-                    final Resource resource = new Resource(); // NOPMD Avoid instantiating new objects inside loops
-                    resource.setLocation(line);
-                    resource.setName(songName); // songName may be null.
+            ret.getResources().add(resource);
+        }
 
-                    if (songLength != null)
-                    {
-                        resource.setLength(Long.parseLong(songLength)); // May throw NumberFormatException.
-                    }
+        return ret;
+    }
 
-                    ret.getResources().add(resource);
+    /**
+     * Reads a large M3U playlist file, parsing chunks of it in parallel.
+     * The file is split into at most <code>parallelism</code> chunks at line boundaries, each of them memory-mapped and parsed by a task submitted to the specified executor,
+     * and the resources are then concatenated in order, as if the file were parsed sequentially.
+     * The playlists encoded otherwise than in UTF-8, US-ASCII or ISO-8859-1, as well as the small ones, are parsed sequentially.
+     * @param file a M3U playlist file. Shall not be <code>null</code>.
+     * @param encoding the content encoding of the playlist, or <code>null</code> if not known.
+     * @param executor the executor running the parsing tasks. Shall not be <code>null</code>. It is not shut down.
+     * @param parallelism the maximum number of chunks, typically the number of threads of the executor.
+     * @return a new M3U playlist. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>file</code> is <code>null</code>.
+     * @throws NullPointerException if <code>executor</code> is <code>null</code>.
+     * @throws IllegalArgumentException if the contents don't look like a M3U playlist.
+     * @throws NumberFormatException if the length of a resource is malformed.
+     * @throws java.io.UnsupportedEncodingException if the content encoding is not supported.
+     * @throws java.io.InterruptedIOException if the current thread has been interrupted while waiting for the parsing tasks.
+     * @throws IOException if an I/O error occurs.
+     */
+    public M3U readFrom(final File file, final String encoding, final ExecutorService executor, final int parallelism) throws IOException
+    {
+        final M3U ret = new M3U();
+        ret.setProvider(this);
 
-                    songName = null;
-                    songLength = null;
-                }
-            }
-        }
+        new M3UParallelReader(file, encoding).readInto(ret.getResources(), executor, parallelism); // Throws NullPointerException if file or executor is null. May throw IllegalArgumentException, NumberFormatException, IOException.
 
         return ret;
     }
 
+    @Override
+    public MediaStream openStream(final InputStream in, final String encoding, final Log logger) throws Exception
+    {
+        return new M3UMediaStream(new M3UReader(in, encoding)); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
+    }
+
     @Override
     public SpecificPlaylist toSpecificPlaylist(final Playlist playlist) throws Exception
     {
         final M3U ret = new M3U();
         ret.setProvider(this);
-
-        addToPlaylist(ret.getResources(), playlist.getRootSequence()); // May throw Exception.
+        ret.setExtensionM3U(_extensionM3U);
+        addResources(ret.getResources(), playlist); // Throws NullPointerException if playlist is null. May throw IllegalArgumentException.
 
         return ret;
     }
 
+    @Override
+    public void writeTo(final Playlist playlist, final OutputStream out, final String encoding) throws Exception
+    {
+        final M3UWriter writer = new M3UWriter(out, encoding, _extensionM3U); // Throws NullPointerException if out is null. May throw UnsupportedEncodingException.
+        writer.writeHeader(); // May throw IOException.
+        writeResources(writer, playlist); // Throws NullPointerException if playlist is null. May throw IllegalArgumentException, IOException.
+        writer.flush(); // May throw IOException.
+    }
+
     /**
-     * Adds the resources referenced in the specified generic playlist component to the input list.
-     * @param resources the resulting list of resources. Shall not be <code>null</code>.
-     * @param component the generic playlist component to handle. Shall not be <code>null</code>.
+     * Specifies if the output playlists shall have the Extension M3U format or not.
+     * It applies to the playlists built by {@link #toSpecificPlaylist}, and to the ones written by {@link #writeTo}.
+     * The default case is to use the simple M3U format.
+     * @param extensionM3U <code>true</code> if the output playlists shall be Extension M3U, <code>false</code> otherwise.
+     * @since 1.3.0
+     * @see #isExtensionM3U
+     * @see M3U#setExtensionM3U
+     */
+    public void setExtensionM3U(final boolean extensionM3U)
+    {
+        _extensionM3U = extensionM3U;
+    }
+
+    /**
+     * Specifies if the output playlists shall have the Extension M3U format or not.
+     * Defaults to <code>false</code>.
+     * @return <code>true</code> if the output playlists shall be Extension M3U, <code>false</code> otherwise.
+     * @since 1.3.0
+     * @see #setExtensionM3U
+     */
+    public boolean isExtensionM3U()
+    {
+        return _extensionM3U;
+    }
+
+    /**
+     * Adds to the given list the M3U resources built from the specified generic playlist.
+     * A media repeated several times gives as many resources.
+     * @param resources a list of resources. Shall not be <code>null</code>.
+     * @param playlist a generic playlist. Shall not be <code>null</code>.
      * @throws NullPointerException if <code>resources</code> is <code>null</code>.
-     * @throws NullPointerException if <code>component</code> is <code>null</code>.
-     * @throws Exception if this service provider is unable to represent the input playlist.
+     * @throws NullPointerException if <code>playlist</code> is <code>null</code>.
+     * @throws IllegalArgumentException if this service provider is unable to represent the input playlist.
      */
-    private void addToPlaylist(final List<Resource> resources, final AbstractPlaylistComponent component) throws Exception
+    private static void addResources(final List<Resource> resources, final Playlist playlist)
     {
-        if (component instanceof Sequence)
+        final PlaylistCursor cursor = new PlaylistCursor(playlist); // Throws NullPointerException if playlist is null.
+        AbstractPlaylistComponent component;
+
+        while ((component = cursor.next()) != null)
         {
-            final Sequence seq = (Sequence) component;
+            final Media media = toMedia(component); // May throw IllegalArgumentException.
 
-            if (seq.getRepeatCount() < 0)
+            if (media.getSource() != null)
             {
-                throw new IllegalArgumentException("A M3U playlist cannot handle a sequence repeated indefinitely");
+                for (long iter = 0L; iter < cursor.getMultiplicity(); iter++)
+                {
+                    resources.add(toResource(media)); // NOPMD Avoid instantiating new objects inside loops
+                }
             }
+        }
+    }
 
-            final AbstractPlaylistComponent[] components = seq.getComponents();
+    /**
+     * Writes the M3U resources built from the specified generic playlist, without keeping them in memory.
+     * @param writer the M3U writer to use. Shall not be <code>null</code>.
+     * @param playlist a generic playlist. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>writer</code> is <code>null</code>.
+     * @throws NullPointerException if <code>playlist</code> is <code>null</code>.
+     * @throws IllegalArgumentException if this service provider is unable to represent the input playlist.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void writeResources(final M3UWriter writer, final Playlist playlist) throws IOException
+    {
+        final PlaylistCursor cursor = new PlaylistCursor(playlist); // Throws NullPointerException if playlist is null.
+        AbstractPlaylistComponent component;
 
-            for (int iter = 0; iter < seq.getRepeatCount(); iter++)
+        while ((component = cursor.next()) != null)
+        {
+            final Media media = toMedia(component); // May throw IllegalArgumentException.
+
+            if (media.getSource() != null)
             {
-                for (AbstractPlaylistComponent c : components)
+                final Resource resource = toResource(media);
+
+                for (long iter = 0L; iter < cursor.getMultiplicity(); iter++)
                 {
-                    addToPlaylist(resources, c); // May throw Exception.
+                    writer.write(resource); // Throws NullPointerException if writer is null. May throw IOException.
                 }
             }
         }
-        else if (component instanceof Parallel)
+    }
+
+    /**
+     * Checks that the specified playlist component, as returned by a {@link PlaylistCursor}, can be represented in a M3U playlist.
+     * @param component a playlist component. Shall not be <code>null</code>.
+     * @return the component as a media. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>component</code> is <code>null</code>.
+     * @throws IllegalArgumentException if this service provider is unable to represent the input component.
+     */
+    private static Media toMedia(final AbstractPlaylistComponent component)
+    {
+        if (component instanceof Parallel)
         {
             throw new IllegalArgumentException("A parallel time container is incompatible with a M3U playlist");
         }
-        else if (component instanceof Media)
+
+        // The cursor only returns the sequences repeated indefinitely.
+        if (component instanceof Sequence)
         {
-            final Media media = (Media) component;
+            throw new IllegalArgumentException("A M3U playlist cannot handle a sequence repeated indefinitely");
+        }
 
-            if (media.getDuration() != null)
-            {
-                throw new IllegalArgumentException("A M3U playlist cannot handle a timed media");
-            }
+        final Media media = (Media) component; // Throws NullPointerException if component is null. Shall not throw ClassCastException.
 
-            if (media.getRepeatCount() < 0)
-            {
-                throw new IllegalArgumentException("A M3U playlist cannot handle a media repeated indefinitely");
-            }
+        if (media.getDuration() != null)
+        {
+            throw new IllegalArgumentException("A M3U playlist cannot handle a timed media");
+        }
 
-            if (media.getSource() != null)
-            {
-                for (int iter = 0; iter < media.getRepeatCount(); iter++)
-                {
-                    final Resource resource = new Resource(); // NOPMD Avoid instantiating new objects inside loops
-                    resource.setLocation(media.getSource().toString());
+        if (media.getRepeatCount() < 0)
+        {
+            throw new IllegalArgumentException("A M3U playlist cannot handle a media repeated indefinitely");
+        }
 
-                    if (media.getSource().getDuration() >= 0L)
-                    {
-                        resource.setLength((media.getSource().getDuration() + 999L) / 1000L);
-                    }
+        return media;
+    }
 
-                    resources.add(resource); // Shall not throw UnsupportedOperationException, ClassCastException, NullPointerException, IllegalArgumentException.
-                }
-            }
+    /**
+     * Builds a M3U resource from the specified media.
+     * @param media a media with a source. Shall not be <code>null</code>.
+     * @return a new resource. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>media</code> is <code>null</code>, or if it has no source.
+     */
+    private static Resource toResource(final Media media)
+    {
+        final Resource ret = new Resource();
+        ret.setLocation(media.getSource().toString());
+
+        if (media.getSource().getDuration() >= 0L)
+        {
+            ret.setLength((media.getSource().getDuration() + 999L) / 1000L);
         }
+
+        return ret;
     }
 }
@@ -0,0 +1,332 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.m3u;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Reads the resources of a M3U playlist one after the other.
+ * <br>
+ * The lines are read as raw bytes by a {@link M3ULineReader}:
+ * the directives are recognized and the lengths are parsed without decoding anything,
+ * and only the locations and the names of the resources are turned into strings.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+final class M3UReader
+{
+    /**
+     * The EXTINF directive, in upper case.
+     */
+    private static final byte[] EXTINF = { '#', 'E', 'X', 'T', 'I', 'N', 'F' };
+
+    /**
+     * The underlying line reader.
+     */
+    private final M3ULineReader _lines;
+
+    /**
+     * The state given by the EXTINF directives read since the last resource.
+     */
+    private Extinf _pending = new Extinf();
+
+    /**
+     * The state given by the EXTINF directives preceding the last resource.
+     */
+    private Extinf _applied = new Extinf();
+
+    /**
+     * Builds a new M3U reader.
+     * @param in an input stream. Shall not be <code>null</code>.
+     * @param encoding the content encoding of the input resource, or <code>null</code> if not known.
+     * @throws NullPointerException if <code>in</code> is <code>null</code>.
+     * @throws UnsupportedEncodingException if the specified encoding is not supported.
+     */
+    M3UReader(final InputStream in, final String encoding) throws UnsupportedEncodingException
+    {
+        this(in, encoding, true); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
+    }
+
+    /**
+     * Builds a new M3U reader, which may start in the middle of a playlist, at the beginning of a line.
+     * @param in an input stream. Shall not be <code>null</code>.
+     * @param encoding the content encoding of the input resource, or <code>null</code> if not known.
+     * @param start <code>true</code> if the input stream starts at the beginning of the playlist.
+     * @throws NullPointerException if <code>in</code> is <code>null</code>.
+     * @throws UnsupportedEncodingException if the specified encoding is not supported.
+     */
+    M3UReader(final InputStream in, final String encoding, final boolean start) throws UnsupportedEncodingException
+    {
+        _lines = new M3ULineReader(in, encoding, start); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
+    }
+
+    /**
+     * Reads the next resource of the playlist.
+     * @return a new resource, or <code>null</code> if the end of the playlist has been reached.
+     * @throws IllegalArgumentException if the contents don't look like a M3U playlist.
+     * @throws NumberFormatException if the length of a resource is malformed.
+     * @throws IOException if an I/O error occurs.
+     */
+    Resource readResource() throws IOException
+    {
+        Resource ret = null;
+
+        while ((ret == null) && _lines.nextLine()) // May throw IOException.
+        {
+            final byte[] line = _lines.getBuffer();
+            final int start = _lines.getStart();
+            final int end = _lines.getEnd();
+
+            if (start < end)
+            {
+                final byte firstChar = line[start];
+
+                // Exclude what looks like an XML file, or a Windows .ini file.
+                // Files or URLs "usually" don't begin with such characters.
+                if ((firstChar == '<') || (firstChar == '['))
+                {
+                    throw new IllegalArgumentException("Doesn't seem to be a M3U playlist (and related ones)");
+                }
+                else if (firstChar == '#')
+                {
+                    if (M3ULineReader.startsWithIgnoreCase(line, start, end, EXTINF))
+                    {
+                        readExtinf(line, start, end);
+                    }
+                    // Otherwise ignore the comment.
+                    // In particular VLC directives "EXTVLCOPT:<param>=<value>" are ignored.
+                    // The same applies to #EXTART for album artist and #EXTALB for album title.
+                }
+                else
+                {
+                    ret = new Resource(); // NOPMD Avoid instantiating new objects inside loops
+                    ret.setLocation(_lines.toString(start, end));
+                    _pending.applyTo(ret); // May throw NumberFormatException.
+
+                    // Keep the applied state, and reuse the previous one.
+                    final Extinf applied = _pending;
+                    _pending = _applied;
+                    _pending.reset();
+                    _applied = applied;
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the offset in the input stream following the location of the last resource returned by {@link #readResource}.
+     * Reading the input stream from this offset gives the following resources, with their EXTINF directives.
+     * @return an offset in the input stream, or -1 if the playlist is not read as raw bytes.
+     */
+    long getOffset()
+    {
+        return _lines.getNextOffset();
+    }
+
+    /**
+     * Returns the state given by the EXTINF directives read since the last resource returned by {@link #readResource}.
+     * Once the end of the playlist has been reached, this is the state which would have applied to a following resource.
+     * It shall not be modified.
+     * @return an EXTINF state. Shall not be <code>null</code>.
+     */
+    Extinf getPending()
+    {
+        return _pending;
+    }
+
+    /**
+     * Returns the state given by the EXTINF directives preceding the last resource returned by {@link #readResource}.
+     * It is only valid until the next call to {@link #readResource}, and shall not be modified.
+     * @return an EXTINF state. Shall not be <code>null</code>.
+     */
+    Extinf getApplied()
+    {
+        return _applied;
+    }
+
+    /**
+     * Handles the specified EXTINF directive.
+     * @param line the line bytes. Shall not be <code>null</code>.
+     * @param start the offset of the first byte of the line.
+     * @param end the offset following the last byte of the line.
+     */
+    private void readExtinf(final byte[] line, final int start, final int end)
+    {
+        final int indA = M3ULineReader.indexOf(line, start, end, (byte) ',');
+
+        if (indA >= 0)
+        {
+            _pending._hasName = true;
+            _pending._name = _lines.toString(indA + 1, end);
+        }
+
+        final int indB = M3ULineReader.indexOf(line, start, end, (byte) ':');
+
+        if ((indB >= 0) && (indB < indA))
+        {
+            final int lengthStart = M3ULineReader.trimStart(line, indB + 1, indA);
+            final int lengthEnd = M3ULineReader.trimEnd(line, lengthStart, indA);
+            _pending._hasLength = true;
+            _pending._lengthText = null;
+
+            if (M3ULineReader.isPlainLong(line, lengthStart, lengthEnd))
+            {
+                _pending._length = M3ULineReader.parsePlainLong(line, lengthStart, lengthEnd);
+            }
+            else if (M3ULineReader.isPlainDecimal(line, lengthStart, lengthEnd))
+            {
+                // The HTTP Live Streaming extended M3U allows decimal durations, such as "9.009".
+                _pending._length = toSeconds(M3ULineReader.parseDecimalMillis(line, lengthStart, lengthEnd));
+            }
+            else
+            {
+                // Let Long.parseLong() decide, when the resource is built.
+                _pending._lengthText = _lines.toString(lengthStart, lengthEnd);
+            }
+        }
+    }
+
+    /**
+     * Rounds the specified duration to the nearest second.
+     * @param millis a duration, in milliseconds.
+     * @return the same duration, in seconds.
+     */
+    private static long toSeconds(final long millis)
+    {
+        return (millis < 0L) ? -((500L - millis) / 1000L) : ((millis + 500L) / 1000L);
+    }
+
+    /**
+     * Closes this reader, and the underlying input stream.
+     * @throws IOException if an I/O error occurs.
+     */
+    void close() throws IOException
+    {
+        _lines.close(); // May throw IOException.
+    }
+
+    /**
+     * The name and the length of a resource, as given by the EXTINF directives preceding it.
+     * Each of them is only set by the last directive specifying it.
+     */
+    static final class Extinf
+    {
+        /**
+         * Specifies if the name is set.
+         */
+        private boolean _hasName = false;
+
+        /**
+         * The name, if set.
+         */
+        private String _name = null;
+
+        /**
+         * Specifies if the length is set.
+         */
+        private boolean _hasLength = false;
+
+        /**
+         * The length in seconds, if set and if the text below is <code>null</code>.
+         */
+        private long _length = 0L;
+
+        /**
+         * The text of the length, to be parsed when the resource is built, or <code>null</code> if already parsed.
+         */
+        private String _lengthText = null;
+
+        /**
+         * Clears the name and the length.
+         */
+        void reset()
+        {
+            _hasName = false;
+            _name = null;
+            _hasLength = false;
+            _length = 0L;
+            _lengthText = null;
+        }
+
+        /**
+         * Sets the name and the length not set in this state from the specified preceding state.
+         * @param previous the state given by the directives preceding the ones of this state. Shall not be <code>null</code>.
+         * @throws NullPointerException if <code>previous</code> is <code>null</code>.
+         */
+        void inherit(final Extinf previous)
+        {
+            if (!_hasName && previous._hasName) // Throws NullPointerException if previous is null.
+            {
+                _hasName = true;
+                _name = previous._name;
+            }
+
+            if (!_hasLength && previous._hasLength)
+            {
+                _hasLength = true;
+                _length = previous._length;
+                _lengthText = previous._lengthText;
+            }
+        }
+
+        /**
+         * Copies the specified state into this one.
+         * @param other a state. Shall not be <code>null</code>.
+         * @throws NullPointerException if <code>other</code> is <code>null</code>.
+         */
+        void copyFrom(final Extinf other)
+        {
+            _hasName = other._hasName; // Throws NullPointerException if other is null.
+            _name = other._name;
+            _hasLength = other._hasLength;
+            _length = other._length;
+            _lengthText = other._lengthText;
+        }
+
+        /**
+         * Sets the name and the length of the specified resource, if set in this state.
+         * @param resource a resource. Shall not be <code>null</code>.
+         * @throws NullPointerException if <code>resource</code> is <code>null</code>.
+         * @throws NumberFormatException if the length is malformed.
+         */
+        void applyTo(final Resource resource)
+        {
+            if (_hasName)
+            {
+                resource.setName(_name); // Throws NullPointerException if resource is null.
+            }
+
+            if (_hasLength)
+            {
+                resource.setLength((_lengthText == null) ? _length : Long.parseLong(_lengthText)); // Throws NullPointerException if resource is null. May throw NumberFormatException.
+            }
+        }
+    }
+}
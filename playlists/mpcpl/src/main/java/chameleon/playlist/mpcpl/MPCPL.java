@@ -24,9 +24,7 @@
  */
 package chameleon.playlist.mpcpl;
 
-import java.io.BufferedWriter;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -69,41 +67,12 @@ public class MPCPL implements SpecificPlaylist
     @Override
     public void writeTo(final OutputStream out, final String encoding) throws Exception
     {
-        String enc = encoding;
-
-        if (enc == null)
-        {
-            enc = "UTF-8"; // FIXME US-ASCII?
-        }
-
-        final BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, enc)); // Throws NullPointerException if out is null. May throw UnsupportedEncodingException.
-
-        writer.write("MPCPLAYLIST"); // May throw IOException.
-        writer.newLine(); // May throw IOException.
-
-        int i = 1;
+        final MPCPLWriter writer = new MPCPLWriter(out, encoding); // Throws NullPointerException if out is null. May throw UnsupportedEncodingException.
+        writer.writeHeader(); // May throw IOException.
 
         for (Resource resource : _resources)
         {
-            writer.write(Integer.toString(i)); // May throw IOException.
-            writer.write(",type,"); // May throw IOException.
-            writer.write(resource.getType()); // May throw IOException.
-            writer.newLine(); // May throw IOException.
-
-            writer.write(Integer.toString(i)); // May throw IOException.
-            writer.write(",filename,"); // May throw IOException.
-            writer.write(resource.getFilename()); // May throw NullPointerException, IOException.
-            writer.newLine(); // May throw IOException.
-
-            if (resource.getSubtitle() != null)
-            {
-                writer.write(Integer.toString(i)); // May throw IOException.
-                writer.write(",subtitle,"); // May throw IOException.
-                writer.write(resource.getSubtitle()); // May throw IOException.
-                writer.newLine(); // May throw IOException.
-            }
-
-            i++;
+            writer.write(resource); // May throw NullPointerException, IOException.
         }
 
         writer.flush(); // May throw IOException.
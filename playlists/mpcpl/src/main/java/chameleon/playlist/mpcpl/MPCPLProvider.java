@@ -24,9 +24,9 @@
  */
 package chameleon.playlist.mpcpl;
 
-import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
@@ -35,11 +35,17 @@ import chameleon.content.type.ContentType;
 import chameleon.player.PlayerSupport;
 import chameleon.playlist.AbstractPlaylistComponent;
 import chameleon.playlist.Media;
+import chameleon.playlist.MediaStream;
 import chameleon.playlist.Parallel;
 import chameleon.playlist.Playlist;
+import chameleon.playlist.PlaylistCursor;
+import chameleon.playlist.PlaylistHeader;
 import chameleon.playlist.Sequence;
 import chameleon.playlist.SpecificPlaylist;
+import chameleon.playlist.SpecificPlaylistProbe;
 import chameleon.playlist.SpecificPlaylistProvider;
+import chameleon.playlist.StreamingPlaylistProvider;
+import chameleon.playlist.StreamingPlaylistWriter;
 
 /**
  * The Media Player Classic Playlist (MPCPL) provider.
@@ -47,7 +53,7 @@ import chameleon.playlist.SpecificPlaylistProvider;
  * @author Christophe Delory
  * @since 0.3.0
  */
-public class MPCPLProvider implements SpecificPlaylistProvider
+public class MPCPLProvider implements SpecificPlaylistProvider, SpecificPlaylistProbe, StreamingPlaylistProvider, StreamingPlaylistWriter
 {
     /**
      * A list of compatible content types.
@@ -76,175 +82,178 @@ public class MPCPLProvider implements SpecificPlaylistProvider
     }
 
     @Override
-    public SpecificPlaylist readFrom(final InputStream in, final String encoding, final Log logger) throws Exception
+    public int probe(final PlaylistHeader header)
     {
-        String enc = encoding;
+        final String line = header.getFirstLine("UTF-8");
+        int ret = SpecificPlaylistProbe.POSSIBLE_MATCH;
 
-        if (enc == null)
+        // An empty file is still a valid (empty) MPCPL playlist.
+        if ((line != null) && (line.length() > 0))
         {
-            enc = "UTF-8"; // FIXME US-ASCII?
+            ret = line.equalsIgnoreCase("MPCPLAYLIST") ? SpecificPlaylistProbe.CERTAIN_MATCH : SpecificPlaylistProbe.NO_MATCH;
         }
 
-        final BufferedReader reader = new BufferedReader(new InputStreamReader(in, enc)); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException, IOException.
+        return ret;
+    }
+
+    @Override
+    public SpecificPlaylist readFrom(final InputStream in, final String encoding, final Log logger) throws Exception
+    {
+        final MPCPLReader reader = new MPCPLReader(in, encoding, logger); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
 
         MPCPL ret = new MPCPL();
         ret.setProvider(this);
 
-        String line;
-        boolean magicFound = false;
-
-        while ((line = reader.readLine()) != null) // May throw IOException.
+        while (reader.readField()) // May throw IllegalArgumentException, IOException.
         {
-            line = line.trim();
+            final int resourceIndex = reader.getResourceIndex();
 
-            if (line.length() > 0)
+            // Ensure that the resource list has enough slots.
+            for (int i = ret.getResources().size(); i < (resourceIndex + 1); i++)
             {
-                // First the MPCPL marker string.
-                if (!magicFound)
-                {
-                    if (!line.equalsIgnoreCase("MPCPLAYLIST")) // NOPMD Deeply nested if then statement
-                    {
-                        throw new IllegalArgumentException("Not a MPCPL playlist format");
-                    }
-
-                    magicFound = true;
-                    continue;
-                }
-
-                int idx = line.indexOf(',');
-
-                if (idx <= 0)
-                {
-                    logger.error("Malformed MPCPL playlist entry " + line);
-                    ret = null;
-                    break;
-                }
-
-                final String resourceIndexString = line.substring(0, idx).trim(); // Shall not throw IndexOutOfBoundsException.
-                line = line.substring(idx + 1); // Shall not throw IndexOutOfBoundsException.
-
-                idx = line.indexOf(',');
-
-                if (idx <= 0)
-                {
-                    logger.error("Malformed MPCPL playlist entry " + line);
-                    ret = null;
-                    break;
-                }
-
-                final String key = line.substring(0, idx).trim().toLowerCase(); // Shall not throw IndexOutOfBoundsException.
-                final String value = line.substring(idx + 1).trim(); // Shall not throw IndexOutOfBoundsException.
-
-                int resourceIndex;
-
-                try
-                {
-                    resourceIndex = Integer.parseInt(resourceIndexString) - 1; // May throw NumberFormatException.
-                }
-                catch (NumberFormatException e)
-                {
-                    logger.error(e.toString());
-                    ret = null;
-                    break;
-                }
-
-                // Ensure that the resource list has enough slots.
-                for (int i = ret.getResources().size(); i < (resourceIndex + 1); i++)
-                {
-                    ret.getResources().add(new Resource()); // NOPMD Avoid instantiating new objects inside loops
-                }
+                ret.getResources().add(new Resource()); // NOPMD Avoid instantiating new objects inside loops
+            }
 
-                final Resource resource = ret.getResources().get(resourceIndex); // Shall not throw ArrayIndexOutOfBoundsException.
+            reader.applyTo(ret.getResources().get(resourceIndex)); // Shall not throw ArrayIndexOutOfBoundsException.
+        }
 
-                if ("filename".equals(key))
-                {
-                    resource.setFilename(value);
-                }
-                else if ("type".equals(key))
-                {
-                    resource.setType(value);
-                }
-                else if ("subtitle".equals(key))
-                {
-                    resource.setSubtitle(value);
-                }
-                else
-                {
-                    logger.warn("Unknown MPCPL keyword " + key);
-                }
-            }
+        if (reader.isMalformed())
+        {
+            ret = null;
         }
 
         return ret;
     }
 
+    @Override
+    public MediaStream openStream(final InputStream in, final String encoding, final Log logger) throws Exception
+    {
+        return new MPCPLMediaStream(new MPCPLReader(in, encoding, logger), logger); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
+    }
+
     @Override
     public SpecificPlaylist toSpecificPlaylist(final Playlist playlist) throws Exception
     {
         final MPCPL ret = new MPCPL();
         ret.setProvider(this);
-
-        addToPlaylist(ret.getResources(), playlist.getRootSequence()); // May throw Exception.
+        addResources(ret.getResources(), playlist); // Throws NullPointerException if playlist is null. May throw IllegalArgumentException.
 
         return ret;
     }
 
+    @Override
+    public void writeTo(final Playlist playlist, final OutputStream out, final String encoding) throws Exception
+    {
+        final MPCPLWriter writer = new MPCPLWriter(out, encoding); // Throws NullPointerException if out is null. May throw UnsupportedEncodingException.
+        writer.writeHeader(); // May throw IOException.
+        writeResources(writer, playlist); // Throws NullPointerException if playlist is null. May throw IllegalArgumentException, IOException.
+        writer.flush(); // May throw IOException.
+    }
+
     /**
-     * Adds the resources referenced in the specified generic playlist component to the input list.
-     * @param resources the resulting list of resources. Shall not be <code>null</code>.
-     * @param component the generic playlist component to handle. Shall not be <code>null</code>.
+     * Adds to the given list the MPCPL resources built from the specified generic playlist.
+     * A media repeated several times gives as many resources.
+     * @param resources a list of resources. Shall not be <code>null</code>.
+     * @param playlist a generic playlist. Shall not be <code>null</code>.
      * @throws NullPointerException if <code>resources</code> is <code>null</code>.
-     * @throws NullPointerException if <code>component</code> is <code>null</code>.
-     * @throws Exception if this service provider is unable to represent the input playlist.
+     * @throws NullPointerException if <code>playlist</code> is <code>null</code>.
+     * @throws IllegalArgumentException if this service provider is unable to represent the input playlist.
      */
-    private void addToPlaylist(final List<Resource> resources, final AbstractPlaylistComponent component) throws Exception
+    private static void addResources(final List<Resource> resources, final Playlist playlist)
     {
-        if (component instanceof Sequence)
+        final PlaylistCursor cursor = new PlaylistCursor(playlist); // Throws NullPointerException if playlist is null.
+        AbstractPlaylistComponent component;
+
+        while ((component = cursor.next()) != null)
         {
-            final Sequence seq = (Sequence) component;
+            final Media media = toMedia(component); // May throw IllegalArgumentException.
 
-            if (seq.getRepeatCount() < 0)
+            if (media.getSource() != null)
             {
-                throw new IllegalArgumentException("A MPCPL playlist cannot handle a sequence repeated indefinitely");
+                for (long iter = 0L; iter < cursor.getMultiplicity(); iter++)
+                {
+                    resources.add(toResource(media)); // NOPMD Avoid instantiating new objects inside loops
+                }
             }
+        }
+    }
+
+    /**
+     * Writes the MPCPL resources built from the specified generic playlist, without keeping them in memory.
+     * @param writer the MPCPL writer to use, the header being already written. Shall not be <code>null</code>.
+     * @param playlist a generic playlist. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>writer</code> is <code>null</code>.
+     * @throws NullPointerException if <code>playlist</code> is <code>null</code>.
+     * @throws IllegalArgumentException if this service provider is unable to represent the input playlist.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void writeResources(final MPCPLWriter writer, final Playlist playlist) throws IOException
+    {
+        final PlaylistCursor cursor = new PlaylistCursor(playlist); // Throws NullPointerException if playlist is null.
+        AbstractPlaylistComponent component;
 
-            final AbstractPlaylistComponent[] components = seq.getComponents();
+        while ((component = cursor.next()) != null)
+        {
+            final Media media = toMedia(component); // May throw IllegalArgumentException.
 
-            for (int iter = 0; iter < seq.getRepeatCount(); iter++)
+            if (media.getSource() != null)
             {
-                for (AbstractPlaylistComponent c : components)
+                final Resource resource = toResource(media);
+
+                for (long iter = 0L; iter < cursor.getMultiplicity(); iter++)
                 {
-                    addToPlaylist(resources, c); // May throw Exception.
+                    writer.write(resource); // Throws NullPointerException if writer is null. May throw IOException.
                 }
             }
         }
-        else if (component instanceof Parallel)
+    }
+
+    /**
+     * Checks that the specified playlist component, as returned by a {@link PlaylistCursor}, can be represented in a MPCPL playlist.
+     * @param component a playlist component. Shall not be <code>null</code>.
+     * @return the component as a media. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>component</code> is <code>null</code>.
+     * @throws IllegalArgumentException if this service provider is unable to represent the input component.
+     */
+    private static Media toMedia(final AbstractPlaylistComponent component)
+    {
+        if (component instanceof Parallel)
         {
             throw new IllegalArgumentException("A parallel time container is incompatible with a MPCPL playlist");
         }
-        else if (component instanceof Media)
+
+        // The cursor only returns the sequences repeated indefinitely.
+        if (component instanceof Sequence)
         {
-            final Media media = (Media) component;
+            throw new IllegalArgumentException("A MPCPL playlist cannot handle a sequence repeated indefinitely");
+        }
 
-            if (media.getDuration() != null)
-            {
-                throw new IllegalArgumentException("A MPCPL playlist cannot handle a timed media");
-            }
+        final Media media = (Media) component; // Throws NullPointerException if component is null. Shall not throw ClassCastException.
 
-            if (media.getRepeatCount() < 0)
-            {
-                throw new IllegalArgumentException("A MPCPL playlist cannot handle a media repeated indefinitely");
-            }
+        if (media.getDuration() != null)
+        {
+            throw new IllegalArgumentException("A MPCPL playlist cannot handle a timed media");
+        }
 
-            if (media.getSource() != null)
-            {
-                for (int iter = 0; iter < media.getRepeatCount(); iter++)
-                {
-                    final Resource resource = new Resource(); // NOPMD Avoid instantiating new objects inside loops
-                    resource.setFilename(media.getSource().toString());
-                    resources.add(resource); // Shall not throw UnsupportedOperationException, ClassCastException, NullPointerException, IllegalArgumentException.
-                }
-            }
+        if (media.getRepeatCount() < 0)
+        {
+            throw new IllegalArgumentException("A MPCPL playlist cannot handle a media repeated indefinitely");
         }
+
+        return media;
+    }
+
+    /**
+     * Builds a MPCPL resource from the specified media.
+     * @param media a media with a source. Shall not be <code>null</code>.
+     * @return a new resource. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>media</code> is <code>null</code>, or if it has no source.
+     */
+    private static Resource toResource(final Media media)
+    {
+        final Resource ret = new Resource();
+        ret.setFilename(media.getSource().toString());
+
+        return ret;
     }
 }
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.mpcpl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Reads the resource fields of a MPCPL playlist one after the other.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+final class MPCPLReader
+{
+    /**
+     * The underlying reader.
+     */
+    private final BufferedReader _reader;
+
+    /**
+     * The logger to use.
+     */
+    private final Log _logger;
+
+    /**
+     * Specifies if the MPCPL marker string has been found.
+     */
+    private boolean _magicFound = false;
+
+    /**
+     * Specifies if the playlist has been detected as malformed.
+     */
+    private boolean _malformed = false;
+
+    /**
+     * The zero-based index of the resource concerned by the last field read.
+     */
+    private int _resourceIndex = -1;
+
+    /**
+     * The lower-case keyword of the last field read.
+     */
+    private String _key = null;
+
+    /**
+     * The value of the last field read.
+     */
+    private String _value = null;
+
+    /**
+     * Builds a new MPCPL reader.
+     * @param in an input stream. Shall not be <code>null</code>.
+     * @param encoding the content encoding of the input resource, or <code>null</code> if not known.
+     * @param logger the logger to use. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>in</code> is <code>null</code>.
+     * @throws UnsupportedEncodingException if the specified encoding is not supported.
+     */
+    MPCPLReader(final InputStream in, final String encoding, final Log logger) throws UnsupportedEncodingException
+    {
+        String enc = encoding;
+
+        if (enc == null)
+        {
+            enc = "UTF-8"; // FIXME US-ASCII?
+        }
+
+        _reader = new BufferedReader(new InputStreamReader(in, enc)); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
+        _logger = logger;
+    }
+
+    /**
+     * Reads the next resource field of the playlist.
+     * @return <code>true</code> if a resource field has been read, <code>false</code> if the end of the playlist has been reached, or if the playlist is malformed.
+     * @throws IllegalArgumentException if the contents don't look like a MPCPL playlist.
+     * @throws IOException if an I/O error occurs.
+     * @see #isMalformed
+     * @see #getResourceIndex
+     * @see #applyTo
+     */
+    boolean readField() throws IOException
+    {
+        boolean ret = false;
+        String line;
+
+        while (!ret && !_malformed && ((line = _reader.readLine()) != null)) // May throw IOException.
+        {
+            line = line.trim();
+
+            if (line.length() > 0)
+            {
+                // First the MPCPL marker string.
+                if (!_magicFound)
+                {
+                    if (!line.equalsIgnoreCase("MPCPLAYLIST")) // NOPMD Deeply nested if then statement
+                    {
+                        throw new IllegalArgumentException("Not a MPCPL playlist format");
+                    }
+
+                    _magicFound = true;
+                    continue;
+                }
+
+                int idx = line.indexOf(',');
+
+                if (idx <= 0)
+                {
+                    _logger.error("Malformed MPCPL playlist entry " + line);
+                    _malformed = true;
+                    break;
+                }
+
+                final String resourceIndexString = line.substring(0, idx).trim(); // Shall not throw IndexOutOfBoundsException.
+                line = line.substring(idx + 1); // Shall not throw IndexOutOfBoundsException.
+
+                idx = line.indexOf(',');
+
+                if (idx <= 0)
+                {
+                    _logger.error("Malformed MPCPL playlist entry " + line);
+                    _malformed = true;
+                    break;
+                }
+
+                _key = line.substring(0, idx).trim().toLowerCase(); // Shall not throw IndexOutOfBoundsException.
+                _value = line.substring(idx + 1).trim(); // Shall not throw IndexOutOfBoundsException.
+
+                try
+                {
+                    _resourceIndex = Integer.parseInt(resourceIndexString) - 1; // May throw NumberFormatException.
+                    ret = true;
+                }
+                catch (NumberFormatException e)
+                {
+                    _logger.error(e.toString());
+                    _malformed = true;
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the zero-based index of the resource concerned by the last field read.
+     * @return a resource index.
+     * @see #readField
+     */
+    int getResourceIndex()
+    {
+        return _resourceIndex;
+    }
+
+    /**
+     * Stores the last field read in the specified resource.
+     * @param resource the resource at the {@link #getResourceIndex index} of the last field read. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>resource</code> is <code>null</code>.
+     * @see #readField
+     */
+    void applyTo(final Resource resource)
+    {
+        if ("filename".equals(_key))
+        {
+            resource.setFilename(_value); // Throws NullPointerException if resource is null.
+        }
+        else if ("type".equals(_key))
+        {
+            resource.setType(_value); // Throws NullPointerException if resource is null.
+        }
+        else if ("subtitle".equals(_key))
+        {
+            resource.setSubtitle(_value); // Throws NullPointerException if resource is null.
+        }
+        else
+        {
+            _logger.warn("Unknown MPCPL keyword " + _key);
+        }
+    }
+
+    /**
+     * Specifies if the playlist has been detected as malformed.
+     * In this case, the error has already been logged.
+     * @return the malformed indicator.
+     */
+    boolean isMalformed()
+    {
+        return _malformed;
+    }
+
+    /**
+     * Closes this reader, and the underlying input stream.
+     * @throws IOException if an I/O error occurs.
+     */
+    void close() throws IOException
+    {
+        _reader.close(); // May throw IOException.
+    }
+}
@@ -25,7 +25,6 @@
 package chameleon.playlist.pla;
 
 import java.io.OutputStream;
-import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -68,60 +67,15 @@ public class PLA implements SpecificPlaylist
     @Override
     public void writeTo(final OutputStream out, final String encoding) throws Exception
     {
-        byte[] array = new byte[512];
-        Arrays.fill(array, (byte) 0);
-        array[4] = 'i';
-        array[5] = 'r';
-        array[6] = 'i';
-        array[7] = 'v';
-        array[8] = 'e';
-        array[9] = 'r';
-        array[10] = ' ';
-        array[11] = 'U';
-        array[12] = 'M';
-        array[13] = 'S';
-        array[14] = ' ';
-        array[15] = 'P';
-        array[16] = 'L';
-        array[17] = 'A';
-
-        final int nbSongs = _filenames.size();
-        array[3] = (byte)((nbSongs & 0x000000ff) >> 0);
-        array[2] = (byte)((nbSongs & 0x0000ff00) >> 8);
-        array[1] = (byte)((nbSongs & 0x00ff0000) >> 16);
-        array[0] = (byte)((nbSongs & 0xff000000) >> 24);
-
-        out.write(array); // Throws NullPointerException if out is null. May throw IOException.
+        final PLAWriter writer = new PLAWriter(out); // Throws NullPointerException if out is null.
+        writer.writeHeader(_filenames.size()); // May throw IOException.
 
         for (String filename : _filenames)
         {
-            Arrays.fill(array, (byte) 0);
-
-            final int slashIndex = filename.lastIndexOf('/'); // May equal -1.
-            final int antislashIndex = filename.lastIndexOf('\\'); // May equal -1.
-            int fileIndex = 0; // Default case if none is found.
-
-            if (slashIndex > antislashIndex) // And thus is greater or equal to 0.
-            {
-                fileIndex = slashIndex + 1;
-            }
-            else if (antislashIndex > slashIndex) // And thus is greater or equal to 0.
-            {
-                fileIndex = antislashIndex + 1;
-            }
-
-            // File index is one-based.
-            fileIndex++;
-            array[1] = (byte)((fileIndex & 0x000000ff) >> 0);
-            array[0] = (byte)((fileIndex & 0x0000ff00) >> 8);
-
-            final byte[] tmp = filename.getBytes("UTF-16BE"); // Shall not throw UnsupportedEncodingException.
-            System.arraycopy(tmp, 0, array, 2, tmp.length); // May throw IndexOutOfBoundsException. Shall not throw ArrayStoreException, NullPointerException.
-
-            out.write(array); // May throw IOException.
+            writer.write(filename); // May throw IndexOutOfBoundsException, IOException.
         }
 
-        out.flush(); // May throw IOException.
+        writer.flush(); // May throw IOException.
     }
 
     @Override
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.pla;
+
+import java.io.IOException;
+
+import chameleon.content.Content;
+import chameleon.playlist.Media;
+import chameleon.playlist.MediaStream;
+
+/**
+ * The media of a PLA playlist, read one after the other.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+final class PLAMediaStream implements MediaStream
+{
+    /**
+     * The underlying PLA reader.
+     */
+    private final PLAReader _reader;
+
+    /**
+     * Builds a new stream of media on top of the specified PLA reader.
+     * @param reader a PLA reader. Shall not be <code>null</code>.
+     */
+    PLAMediaStream(final PLAReader reader)
+    {
+        _reader = reader;
+    }
+
+    @Override
+    public Media next() throws Exception
+    {
+        final String filename = _reader.readFilename(); // May throw IOException.
+
+        if (_reader.isMalformed())
+        {
+            throw new IllegalArgumentException("Malformed PLA playlist");
+        }
+
+        Media ret = null;
+
+        // Same as PLA.toPlaylist().
+        if (filename != null)
+        {
+            ret = new Media();
+            final Content content = new Content(filename);
+            ret.setSource(content);
+        }
+
+        return ret;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        _reader.close(); // May throw IOException.
+    }
+}
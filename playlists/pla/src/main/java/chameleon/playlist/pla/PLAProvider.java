@@ -24,7 +24,9 @@
  */
 package chameleon.playlist.pla;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
@@ -33,11 +35,17 @@ import chameleon.content.type.ContentType;
 import chameleon.player.PlayerSupport;
 import chameleon.playlist.AbstractPlaylistComponent;
 import chameleon.playlist.Media;
+import chameleon.playlist.MediaStream;
 import chameleon.playlist.Parallel;
 import chameleon.playlist.Playlist;
+import chameleon.playlist.PlaylistCursor;
+import chameleon.playlist.PlaylistHeader;
 import chameleon.playlist.Sequence;
 import chameleon.playlist.SpecificPlaylist;
+import chameleon.playlist.SpecificPlaylistProbe;
 import chameleon.playlist.SpecificPlaylistProvider;
+import chameleon.playlist.StreamingPlaylistProvider;
+import chameleon.playlist.StreamingPlaylistWriter;
 
 /**
  * Playlist format for iRiver devices.
@@ -45,7 +53,7 @@ import chameleon.playlist.SpecificPlaylistProvider;
  * @author Christophe Delory
  * @since 0.2.0
  */
-public class PLAProvider implements SpecificPlaylistProvider
+public class PLAProvider implements SpecificPlaylistProvider, SpecificPlaylistProbe, StreamingPlaylistProvider, StreamingPlaylistWriter
 {
     /**
      * A list of compatible content types.
@@ -73,133 +81,185 @@ public class PLAProvider implements SpecificPlaylistProvider
     }
 
     @Override
-    public SpecificPlaylist readFrom(final InputStream in, final String encoding, final Log logger) throws Exception
+    public int probe(final PlaylistHeader header)
     {
-        PLA ret = new PLA();
-        ret.setProvider(this);
+        int ret = SpecificPlaylistProbe.NO_MATCH;
 
-        // The playlist format is very simple.
-        // A conforming playlist file consists of 1+N null-padded 512-byte frames, where N is the number of songs in the playlist.
-        final byte[] array = new byte[512];
-
-        if (in.read(array) != 512) // Throws NullPointerException if in is null. May throw IOException.
+        // Same tests as in readFrom(): a header frame of 512 bytes, with a magic string at offset 4.
+        if (header.matchAscii(4, "iriver UMS PLA") && ((header.getLength() >= 512) || !header.isComplete()))
         {
-            throw new IllegalArgumentException("Not a PLA playlist format (file too small)");
+            ret = SpecificPlaylistProbe.CERTAIN_MATCH;
         }
 
-        // First frame is a header starting with a 32-bit big-endian unsigned integer specifying the number of songs in the playlist.
-        // Immediately after this there is an ASCII string "iriver UMS PLA", and that's all for the header frame.
-        final String magic = new String(array, 4, 14, "US-ASCII"); // Shall not throw UnsupportedEncodingException, IndexOutOfBoundsException.
+        return ret;
+    }
 
-        if (!"iriver UMS PLA".equals(magic))
-        {
-            throw new IllegalArgumentException("Not a PLA playlist format (bad magic)");
-        }
+    @Override
+    public SpecificPlaylist readFrom(final InputStream in, final String encoding, final Log logger) throws Exception
+    {
+        final PLAReader reader = new PLAReader(in, logger); // Throws NullPointerException if in is null. May throw IllegalArgumentException, IOException.
 
-        // In addition, player's own Quick Lists have an apparently superfluous extra string "Quick List" starting from 0x20
-        //magic = new String(array, 32, 10); // May equal "Quick List".
+        PLA ret = new PLA();
+        ret.setProvider(this);
 
-        final int nbSongs =   (((int) array[3] & 0x0ff) << 0) |
-                        (((int) array[2] & 0x0ff) << 8) |
-                        (((int) array[1] & 0x0ff) << 16) |
-                        (((int) array[0] & 0x0ff) << 24);
+        String filename;
 
-        for (int i = 0; i < nbSongs; i++)
+        while ((filename = reader.readFilename()) != null) // May throw IOException.
         {
-            if (in.read(array) != 512) // May throw IOException.
-            {
-                logger.error("Malformed PLA playlist (file too small)");
-                ret = null;
-                break;
-            }
+            ret.getFilenames().add(filename); // Shall not throw UnsupportedOperationException, ClassCastException, NullPointerException, IllegalArgumentException.
+        }
 
-            // Each song frame begins with a 16-bit big-endian unsigned integer
-            // specifying the index of the first non-directory character of the song's full filename.
-            // This index is one-based.
-            // The index is there probably just to help the player to strip the directory part out of the song's filename,
-            // if there is no title tag in the song file.
-            //int fileIndex = (((int) array[1] & 0x0ff) << 0) | (((int) array[0] & 0x0ff) << 8);
-
-            // Immediately after the index comes the song's null-terminated full filename.
-            // As the filesystem type is VFAT, it is encoded as big-endian UTF-16 without a byte order mark.
-            // I have not tried whether the player recognizes wider than two-byte characters.
-            // Also, I have used only absolute paths, I don't know if relative paths would work.
-            final String songFilename = new String(array, 2, 510, "UTF-16BE"); // Shall not throw UnsupportedEncodingException, IndexOutOfBoundsException. NOPMD Avoid instantiating new objects inside loops
-
-            // The index and filename are everything there is in a single song frame.
-            // Note that the filename must fit into one 512-byte frame.
-            // So the filename, including the directory part, can have at most 255 (two-byte) characters.
-            ret.getFilenames().add(songFilename); // Shall not throw UnsupportedOperationException, ClassCastException, NullPointerException, IllegalArgumentException.
+        if (reader.isMalformed())
+        {
+            ret = null;
         }
 
         return ret;
     }
 
+    @Override
+    public MediaStream openStream(final InputStream in, final String encoding, final Log logger) throws Exception
+    {
+        return new PLAMediaStream(new PLAReader(in, logger)); // Throws NullPointerException if in is null. May throw IllegalArgumentException, IOException.
+    }
+
     @Override
     public SpecificPlaylist toSpecificPlaylist(final Playlist playlist) throws Exception
     {
         final PLA ret = new PLA();
         ret.setProvider(this);
+        addFilenames(ret.getFilenames(), playlist); // Throws NullPointerException if playlist is null. May throw IllegalArgumentException.
+
+        return ret;
+    }
 
-        addToPlaylist(ret.getFilenames(), playlist.getRootSequence()); // May throw Exception.
+    @Override
+    public void writeTo(final Playlist playlist, final OutputStream out, final String encoding) throws Exception
+    {
+        final PLAWriter writer = new PLAWriter(out); // Throws NullPointerException if out is null.
+        writer.writeHeader(countEntries(playlist)); // Throws NullPointerException if playlist is null. May throw IllegalArgumentException, IOException.
+        writeFilenames(writer, playlist); // May throw IOException.
+        writer.flush(); // May throw IOException.
+    }
+
+    /**
+     * Counts the entries needed to represent the specified generic playlist.
+     * @param playlist a generic playlist. Shall not be <code>null</code>.
+     * @return a number of entries.
+     * @throws NullPointerException if <code>playlist</code> is <code>null</code>.
+     * @throws IllegalArgumentException if this service provider is unable to represent the input playlist.
+     */
+    private static long countEntries(final Playlist playlist)
+    {
+        long ret = 0L;
+        final PlaylistCursor cursor = new PlaylistCursor(playlist); // Throws NullPointerException if playlist is null.
+        AbstractPlaylistComponent component;
+
+        while ((component = cursor.next()) != null)
+        {
+            final Media media = toMedia(component); // May throw IllegalArgumentException.
+
+            if (media.getSource() != null)
+            {
+                ret += cursor.getMultiplicity();
+            }
+        }
 
         return ret;
     }
 
     /**
-     * Adds the song file names referenced in the specified generic playlist component to the input list.
-     * @param filenames the resulting list of file names. Shall not be <code>null</code>.
-     * @param component the generic playlist component to handle. Shall not be <code>null</code>.
+     * Adds to the given list the song file names built from the specified generic playlist.
+     * A media repeated several times gives as many file names.
+     * @param filenames a list of file names. Shall not be <code>null</code>.
+     * @param playlist a generic playlist. Shall not be <code>null</code>.
      * @throws NullPointerException if <code>filenames</code> is <code>null</code>.
-     * @throws NullPointerException if <code>component</code> is <code>null</code>.
-     * @throws Exception if this service provider is unable to represent the input playlist.
+     * @throws NullPointerException if <code>playlist</code> is <code>null</code>.
+     * @throws IllegalArgumentException if this service provider is unable to represent the input playlist.
      */
-    private void addToPlaylist(final List<String> filenames, final AbstractPlaylistComponent component) throws Exception
+    private static void addFilenames(final List<String> filenames, final Playlist playlist)
     {
-        if (component instanceof Sequence)
+        final PlaylistCursor cursor = new PlaylistCursor(playlist); // Throws NullPointerException if playlist is null.
+        AbstractPlaylistComponent component;
+
+        while ((component = cursor.next()) != null)
         {
-            final Sequence seq = (Sequence) component;
+            final Media media = toMedia(component); // May throw IllegalArgumentException.
 
-            if (seq.getRepeatCount() < 0)
+            if (media.getSource() != null)
             {
-                throw new IllegalArgumentException("A PLA playlist cannot handle a sequence repeated indefinitely");
+                final String filename = media.getSource().toString();
+
+                for (long iter = 0L; iter < cursor.getMultiplicity(); iter++)
+                {
+                    filenames.add(filename); // Throws NullPointerException if filenames is null.
+                }
             }
+        }
+    }
 
-            final AbstractPlaylistComponent[] components = seq.getComponents();
+    /**
+     * Writes the song file names built from the specified generic playlist, without keeping them in memory.
+     * @param writer the PLA writer to use, the header being already written. Shall not be <code>null</code>.
+     * @param playlist a generic playlist. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>writer</code> is <code>null</code>.
+     * @throws NullPointerException if <code>playlist</code> is <code>null</code>.
+     * @throws IllegalArgumentException if this service provider is unable to represent the input playlist.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void writeFilenames(final PLAWriter writer, final Playlist playlist) throws IOException
+    {
+        final PlaylistCursor cursor = new PlaylistCursor(playlist); // Throws NullPointerException if playlist is null.
+        AbstractPlaylistComponent component;
 
-            for (int iter = 0; iter < seq.getRepeatCount(); iter++)
+        while ((component = cursor.next()) != null)
+        {
+            final Media media = toMedia(component); // May throw IllegalArgumentException.
+
+            if (media.getSource() != null)
             {
-                for (AbstractPlaylistComponent c : components)
+                final String filename = media.getSource().toString();
+
+                for (long iter = 0L; iter < cursor.getMultiplicity(); iter++)
                 {
-                    addToPlaylist(filenames, c); // May throw Exception.
+                    writer.write(filename); // Throws NullPointerException if writer is null. May throw IOException.
                 }
             }
         }
-        else if (component instanceof Parallel)
+    }
+
+    /**
+     * Checks that the specified playlist component, as returned by a {@link PlaylistCursor}, can be represented in a PLA playlist.
+     * @param component a playlist component. Shall not be <code>null</code>.
+     * @return the component as a media. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>component</code> is <code>null</code>.
+     * @throws IllegalArgumentException if this service provider is unable to represent the input component.
+     */
+    private static Media toMedia(final AbstractPlaylistComponent component)
+    {
+        if (component instanceof Parallel)
         {
             throw new IllegalArgumentException("A parallel time container is incompatible with a PLA playlist");
         }
-        else if (component instanceof Media)
+
+        // The cursor only returns the sequences repeated indefinitely.
+        if (component instanceof Sequence)
         {
-            final Media media = (Media) component;
+            throw new IllegalArgumentException("A PLA playlist cannot handle a sequence repeated indefinitely");
+        }
 
-            if (media.getDuration() != null)
-            {
-                throw new IllegalArgumentException("A PLA playlist cannot handle a timed media");
-            }
+        final Media media = (Media) component; // Throws NullPointerException if component is null. Shall not throw ClassCastException.
 
-            if (media.getRepeatCount() < 0)
-            {
-                throw new IllegalArgumentException("A PLA playlist cannot handle a media repeated indefinitely");
-            }
+        if (media.getDuration() != null)
+        {
+            throw new IllegalArgumentException("A PLA playlist cannot handle a timed media");
+        }
 
-            if (media.getSource() != null)
-            {
-                for (int iter = 0; iter < media.getRepeatCount(); iter++)
-                {
-                    filenames.add(media.getSource().toString()); // Shall not throw UnsupportedOperationException, ClassCastException, NullPointerException, IllegalArgumentException.
-                }
-            }
+        if (media.getRepeatCount() < 0)
+        {
+            throw new IllegalArgumentException("A PLA playlist cannot handle a media repeated indefinitely");
         }
+
+        return media;
     }
 }
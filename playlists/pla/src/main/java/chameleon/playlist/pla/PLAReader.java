@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.pla;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Reads the file names of a PLA playlist one after the other.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+final class PLAReader
+{
+    /**
+     * The size in bytes of a PLA frame.
+     */
+    private static final int FRAME_SIZE = 512;
+
+    /**
+     * The underlying input stream.
+     */
+    private final InputStream _in;
+
+    /**
+     * The logger to use.
+     */
+    private final Log _logger;
+
+    /**
+     * The current frame.
+     */
+    private final byte[] _array = new byte[FRAME_SIZE];
+
+    /**
+     * The number of songs announced in the header frame.
+     */
+    private final int _nbSongs;
+
+    /**
+     * The number of songs read so far.
+     */
+    private int _songsRead = 0;
+
+    /**
+     * Specifies if the playlist has been detected as malformed.
+     */
+    private boolean _malformed = false;
+
+    /**
+     * Builds a new PLA reader, and reads the header frame.
+     * @param in an input stream. Shall not be <code>null</code>.
+     * @param logger the logger to use. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>in</code> is <code>null</code>.
+     * @throws IllegalArgumentException if the contents don't look like a PLA playlist.
+     * @throws IOException if an I/O error occurs.
+     */
+    PLAReader(final InputStream in, final Log logger) throws IOException
+    {
+        _in = in;
+        _logger = logger;
+
+        // The playlist format is very simple.
+        // A conforming playlist file consists of 1+N null-padded 512-byte frames, where N is the number of songs in the playlist.
+        if (!readFrame()) // Throws NullPointerException if in is null. May throw IOException.
+        {
+            throw new IllegalArgumentException("Not a PLA playlist format (file too small)");
+        }
+
+        // First frame is a header starting with a 32-bit big-endian unsigned integer specifying the number of songs in the playlist.
+        // Immediately after this there is an ASCII string "iriver UMS PLA", and that's all for the header frame.
+        final String magic = new String(_array, 4, 14, "US-ASCII"); // Shall not throw UnsupportedEncodingException, IndexOutOfBoundsException.
+
+        if (!"iriver UMS PLA".equals(magic))
+        {
+            throw new IllegalArgumentException("Not a PLA playlist format (bad magic)");
+        }
+
+        // In addition, player's own Quick Lists have an apparently superfluous extra string "Quick List" starting from 0x20
+        //magic = new String(array, 32, 10); // May equal "Quick List".
+
+        _nbSongs =   (((int) _array[3] & 0x0ff) << 0) |
+                    (((int) _array[2] & 0x0ff) << 8) |
+                    (((int) _array[1] & 0x0ff) << 16) |
+                    (((int) _array[0] & 0x0ff) << 24);
+    }
+
+    /**
+     * Reads the next file name of the playlist.
+     * @return a file name, or <code>null</code> if the end of the playlist has been reached, or if the playlist is malformed.
+     * @throws IOException if an I/O error occurs.
+     * @see #isMalformed
+     */
+    String readFilename() throws IOException
+    {
+        String ret = null;
+
+        if (!_malformed && (_songsRead < _nbSongs))
+        {
+            if (readFrame()) // May throw IOException.
+            {
+                // Each song frame begins with a 16-bit big-endian unsigned integer
+                // specifying the index of the first non-directory character of the song's full filename.
+                // This index is one-based.
+                // The index is there probably just to help the player to strip the directory part out of the song's filename,
+                // if there is no title tag in the song file.
+                //int fileIndex = (((int) array[1] & 0x0ff) << 0) | (((int) array[0] & 0x0ff) << 8);
+
+                // Immediately after the index comes the song's null-terminated full filename.
+                // As the filesystem type is VFAT, it is encoded as big-endian UTF-16 without a byte order mark.
+                // I have not tried whether the player recognizes wider than two-byte characters.
+                // Also, I have used only absolute paths, I don't know if relative paths would work.
+                // The index and filename are everything there is in a single song frame.
+                // Note that the filename must fit into one 512-byte frame.
+                // So the filename, including the directory part, can have at most 255 (two-byte) characters.
+                ret = new String(_array, 2, 510, "UTF-16BE"); // Shall not throw UnsupportedEncodingException, IndexOutOfBoundsException.
+                _songsRead++;
+            }
+            else
+            {
+                _logger.error("Malformed PLA playlist (file too small)");
+                _malformed = true;
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Reads a whole frame from the input stream.
+     * @return <code>true</code> if a whole frame has been read, <code>false</code> if the end of the stream has been reached before.
+     * @throws IOException if an I/O error occurs.
+     */
+    private boolean readFrame() throws IOException
+    {
+        int offset = 0;
+        int count = 0;
+
+        while ((offset < FRAME_SIZE) && (count >= 0))
+        {
+            count = _in.read(_array, offset, FRAME_SIZE - offset); // Throws NullPointerException if _in is null. May throw IOException.
+
+            if (count > 0)
+            {
+                offset += count;
+            }
+        }
+
+        return offset == FRAME_SIZE;
+    }
+
+    /**
+     * Specifies if the playlist has been detected as malformed.
+     * In this case, the error has already been logged.
+     * @return the malformed indicator.
+     */
+    boolean isMalformed()
+    {
+        return _malformed;
+    }
+
+    /**
+     * Closes this reader, and the underlying input stream.
+     * @throws IOException if an I/O error occurs.
+     */
+    void close() throws IOException
+    {
+        _in.close(); // May throw IOException.
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.pla;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes the file names of a PLA playlist one after the other.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+final class PLAWriter
+{
+    /**
+     * The underlying output stream.
+     */
+    private final OutputStream _out;
+
+    /**
+     * The current frame.
+     */
+    private final byte[] _array = new byte[512];
+
+    /**
+     * Builds a new PLA writer.
+     * @param out an output stream. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>out</code> is <code>null</code>.
+     */
+    PLAWriter(final OutputStream out)
+    {
+        if (out == null)
+        {
+            throw new NullPointerException("no output stream");
+        }
+
+        _out = out;
+    }
+
+    /**
+     * Writes the playlist header frame.
+     * @param nbSongs the number of file names which will be written.
+     * @throws IllegalArgumentException if the number of songs cannot be represented in a PLA playlist.
+     * @throws IOException if an I/O error occurs.
+     */
+    void writeHeader(final long nbSongs) throws IOException
+    {
+        if ((nbSongs < 0L) || (nbSongs > 0xffffffffL))
+        {
+            throw new IllegalArgumentException("A PLA playlist cannot handle " + nbSongs + " songs");
+        }
+
+        Arrays.fill(_array, (byte) 0);
+        _array[4] = 'i';
+        _array[5] = 'r';
+        _array[6] = 'i';
+        _array[7] = 'v';
+        _array[8] = 'e';
+        _array[9] = 'r';
+        _array[10] = ' ';
+        _array[11] = 'U';
+        _array[12] = 'M';
+        _array[13] = 'S';
+        _array[14] = ' ';
+        _array[15] = 'P';
+        _array[16] = 'L';
+        _array[17] = 'A';
+
+        _array[3] = (byte)((nbSongs & 0x000000ffL) >> 0);
+        _array[2] = (byte)((nbSongs & 0x0000ff00L) >> 8);
+        _array[1] = (byte)((nbSongs & 0x00ff0000L) >> 16);
+        _array[0] = (byte)((nbSongs & 0xff000000L) >> 24);
+
+        _out.write(_array); // May throw IOException.
+    }
+
+    /**
+     * Writes the specified file name.
+     * @param filename a file name. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>filename</code> is <code>null</code>.
+     * @throws IndexOutOfBoundsException if the file name is too long.
+     * @throws IOException if an I/O error occurs.
+     */
+    void write(final String filename) throws IOException
+    {
+        Arrays.fill(_array, (byte) 0);
+
+        final int slashIndex = filename.lastIndexOf('/'); // Throws NullPointerException if filename is null. May equal -1.
+        final int antislashIndex = filename.lastIndexOf('\\'); // May equal -1.
+        int fileIndex = 0; // Default case if none is found.
+
+        if (slashIndex > antislashIndex) // And thus is greater or equal to 0.
+        {
+            fileIndex = slashIndex + 1;
+        }
+        else if (antislashIndex > slashIndex) // And thus is greater or equal to 0.
+        {
+            fileIndex = antislashIndex + 1;
+        }
+
+        // File index is one-based.
+        fileIndex++;
+        _array[1] = (byte)((fileIndex & 0x000000ff) >> 0);
+        _array[0] = (byte)((fileIndex & 0x0000ff00) >> 8);
+
+        final byte[] tmp = filename.getBytes("UTF-16BE"); // Shall not throw UnsupportedEncodingException.
+        System.arraycopy(tmp, 0, _array, 2, tmp.length); // May throw IndexOutOfBoundsException. Shall not throw ArrayStoreException, NullPointerException.
+
+        _out.write(_array); // May throw IOException.
+    }
+
+    /**
+     * Flushes the underlying output stream.
+     * @throws IOException if an I/O error occurs.
+     */
+    void flush() throws IOException
+    {
+        _out.flush(); // May throw IOException.
+    }
+}
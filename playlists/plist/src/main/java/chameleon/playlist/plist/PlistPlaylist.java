@@ -25,7 +25,6 @@
 package chameleon.playlist.plist;
 
 import java.io.OutputStream;
-import java.io.StringWriter;
 import java.util.Date;
 
 import chameleon.content.Content;
@@ -74,21 +73,8 @@ public class PlistPlaylist implements SpecificPlaylist
     public void writeTo(final OutputStream out, final String encoding) throws Exception
     {
         // Marshal the PLIST playlist.
-        final StringWriter writer = new StringWriter();
         final XmlSerializer serializer = XmlSerializer.getMapping("chameleon/plist"); // May throw Exception.
-        // Specifies whether XML documents (as generated at marshalling) should use indentation or not. Default is false.
-        serializer.getMarshaller().setProperty("org.exolab.castor.indent", "true");
-        serializer.marshal(_plist, writer, false); // May throw Exception.
-
-        String enc = encoding;
-
-        if (enc == null)
-        {
-            enc = "UTF-8";
-        }
-
-        final byte[] bytes = writer.toString().getBytes(enc); // May throw UnsupportedEncodingException.
-        out.write(bytes); // Throws NullPointerException if out is null. May throw IOException.
+        serializer.marshal(_plist, out, encoding, false, true); // Throws NullPointerException if out is null. May throw Exception.
         out.flush(); // May throw IOException.
     }
 
@@ -25,26 +25,29 @@
 package chameleon.playlist.plist;
 
 import java.io.InputStream;
-import java.io.StringReader;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.Date;
 
 import chameleon.Chameleon;
 import org.apache.commons.logging.Log;
 
 import chameleon.content.type.ContentType;
-import chameleon.io.IOUtils;
 import chameleon.player.PlayerSupport;
 import chameleon.playlist.AbstractPlaylistComponent;
 import chameleon.playlist.Media;
 import chameleon.playlist.Parallel;
 import chameleon.playlist.Playlist;
+import chameleon.playlist.PlaylistHeader;
 import chameleon.playlist.Sequence;
 import chameleon.playlist.SpecificPlaylist;
+import chameleon.playlist.SpecificPlaylistProbe;
 import chameleon.playlist.SpecificPlaylistProvider;
 import chameleon.plist.Array;
 import chameleon.plist.Dict;
 import chameleon.plist.Plist;
 import chameleon.plist.True;
+import chameleon.xml.AmpersandRepairReader;
 import chameleon.xml.Version;
 import chameleon.xml.XmlSerializer;
 
@@ -53,7 +56,7 @@ import chameleon.xml.XmlSerializer;
  * @version $Revision: 90 $
  * @author Christophe Delory
  */
-public class PlistProvider implements SpecificPlaylistProvider
+public class PlistProvider implements SpecificPlaylistProvider, SpecificPlaylistProbe
 {
     /**
      * A list of compatible content types.
@@ -81,6 +84,12 @@ public class PlistProvider implements SpecificPlaylistProvider
         return FILETYPES.clone();
     }
 
+    @Override
+    public int probe(final PlaylistHeader header)
+    {
+        return header.matchRootElement("UTF-8", "plist", false, null);
+    }
+
     @Override
     public SpecificPlaylist readFrom(final InputStream in, final String encoding, final Log logger) throws Exception
     {
@@ -91,20 +100,13 @@ public class PlistProvider implements SpecificPlaylistProvider
             enc = "UTF-8";
         }
 
-        String str = IOUtils.toString(in, enc); // May throw IOException. Throws NullPointerException if in is null.
-
-        // Replace all occurrences of a single '&' with "&amp;" (or leave this construct as is).
-        // First replace blindly all '&' to its corresponding character reference.
-        str = str.replace("&", "&amp;");
-        // Then restore any existing character reference.
-        str = str.replaceAll("&amp;([a-zA-Z0-9#]+;)", "&$1"); // Shall not throw PatternSyntaxException.
+        // Replace all occurrences of a single '&' with "&amp;" (or leave this construct as is), while reading.
+        final Reader reader = new AmpersandRepairReader(new InputStreamReader(in, enc)); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
 
         // Unmarshal the playlist.
         final XmlSerializer serializer = XmlSerializer.getMapping("chameleon/plist"); // May throw Exception.
-        serializer.getUnmarshaller().setIgnoreExtraElements(false); // Force an error if unknown elements are found.
 
-        final StringReader reader = new StringReader(str);
-        final Plist plist = (Plist) serializer.unmarshal(reader); // May throw Exception.
+        final Plist plist = (Plist) serializer.unmarshal(reader, false); // May throw Exception. Force an error if unknown elements are found.
 
         final PlistPlaylist ret = new PlistPlaylist();
         ret.setProvider(this);
@@ -167,12 +169,11 @@ public class PlistProvider implements SpecificPlaylistProvider
                 throw new IllegalArgumentException("A PLIST playlist cannot handle a sequence repeated indefinitely");
             }
 
-            final AbstractPlaylistComponent[] components = sequence.getComponents();
-
             for (int iter = 0; iter < sequence.getRepeatCount(); iter++)
             {
-                for (AbstractPlaylistComponent c : components)
+                for (int i = 0; i < sequence.getComponentsNumber(); i++)
                 {
+                    final AbstractPlaylistComponent c = sequence.componentAt(i); // Shall not throw IndexOutOfBoundsException.
                     addToPlaylist(tracks, playlist, c); // May throw Exception.
                 }
             }
@@ -24,9 +24,7 @@
  */
 package chameleon.playlist.plp;
 
-import java.io.BufferedWriter;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -44,6 +42,11 @@ import chameleon.playlist.SpecificPlaylistProvider;
  */
 public class PLP implements SpecificPlaylist
 {
+    /**
+     * The default disk specifier.
+     */
+    static final String DEFAULT_DISK_SPECIFIER = "HARP";
+
     /**
      * The provider of this specific playlist.
      */
@@ -57,7 +60,7 @@ public class PLP implements SpecificPlaylist
     /**
      * The disk specifier of the playlist.
      */
-    private String _diskSpecifier = "HARP";
+    private String _diskSpecifier = DEFAULT_DISK_SPECIFIER;
 
     @Override
     public void setProvider(final SpecificPlaylistProvider provider)
@@ -74,31 +77,12 @@ public class PLP implements SpecificPlaylist
     @Override
     public void writeTo(final OutputStream out, final String encoding) throws Exception
     {
-        String enc = encoding;
-
-        if (enc == null)
-        {
-            enc = "UTF-16LE";
-        }
-
-        final BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, enc)); // Throws NullPointerException if out is null. May throw UnsupportedEncodingException.
-
-        writer.write("PLP PLAYLIST"); // May throw IOException.
-        writer.write('\r'); // May throw IOException.
-        writer.write('\n'); // May throw IOException.
-        writer.write("VERSION 1.20"); // May throw IOException.
-        writer.write('\r'); // May throw IOException.
-        writer.write('\n'); // May throw IOException.
-        writer.write('\r'); // May throw IOException.
-        writer.write('\n'); // May throw IOException.
+        final PLPWriter writer = new PLPWriter(out, encoding, _diskSpecifier); // Throws NullPointerException if out is null. May throw UnsupportedEncodingException.
+        writer.writeHeader(); // May throw IOException.
 
         for (String filename : _filenames)
         {
-            writer.write(_diskSpecifier); // May throw IOException.
-            writer.write(", "); // May throw IOException.
             writer.write(filename); // May throw IOException.
-            writer.write('\r'); // May throw IOException.
-            writer.write('\n'); // May throw IOException.
         }
 
         writer.flush(); // May throw IOException.
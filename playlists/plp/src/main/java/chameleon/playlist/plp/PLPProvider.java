@@ -24,9 +24,9 @@
  */
 package chameleon.playlist.plp;
 
-import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
@@ -35,11 +35,17 @@ import chameleon.content.type.ContentType;
 import chameleon.player.PlayerSupport;
 import chameleon.playlist.AbstractPlaylistComponent;
 import chameleon.playlist.Media;
+import chameleon.playlist.MediaStream;
 import chameleon.playlist.Parallel;
 import chameleon.playlist.Playlist;
+import chameleon.playlist.PlaylistCursor;
+import chameleon.playlist.PlaylistHeader;
 import chameleon.playlist.Sequence;
 import chameleon.playlist.SpecificPlaylist;
+import chameleon.playlist.SpecificPlaylistProbe;
 import chameleon.playlist.SpecificPlaylistProvider;
+import chameleon.playlist.StreamingPlaylistProvider;
+import chameleon.playlist.StreamingPlaylistWriter;
 
 /**
  * The PLP playlist format, which lists locations of files in a standard text format.
@@ -47,7 +53,7 @@ import chameleon.playlist.SpecificPlaylistProvider;
  * @author Christophe Delory
  * @since 0.2.0
  */
-public class PLPProvider implements SpecificPlaylistProvider
+public class PLPProvider implements SpecificPlaylistProvider, SpecificPlaylistProbe, StreamingPlaylistProvider, StreamingPlaylistWriter
 {
     /**
      * A list of compatible content types.
@@ -62,6 +68,11 @@ public class PLPProvider implements SpecificPlaylistProvider
                         "Sansa Playlist File"),
     };
 
+    /**
+     * The disk specifier of the output playlists.
+     */
+    private String _diskSpecifier = PLP.DEFAULT_DISK_SPECIFIER;
+
     @Override
     public String getId()
     {
@@ -75,156 +86,191 @@ public class PLPProvider implements SpecificPlaylistProvider
     }
 
     @Override
-    public SpecificPlaylist readFrom(final InputStream in, final String encoding, final Log logger) throws Exception
+    public int probe(final PlaylistHeader header)
     {
-        String enc = encoding;
+        final String line = header.getFirstLine("UTF-16LE");
+        int ret = SpecificPlaylistProbe.POSSIBLE_MATCH;
 
-        if (enc == null)
+        // An empty file is still a valid (empty) PLP playlist.
+        if ((line != null) && (line.length() > 0))
         {
-            enc = "UTF-16LE";
+            ret = "PLP PLAYLIST".equals(line) ? SpecificPlaylistProbe.CERTAIN_MATCH : SpecificPlaylistProbe.NO_MATCH;
         }
 
-        final BufferedReader reader = new BufferedReader(new InputStreamReader(in, enc)); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException, IOException.
+        return ret;
+    }
+
+    @Override
+    public SpecificPlaylist readFrom(final InputStream in, final String encoding, final Log logger) throws Exception
+    {
+        final PLPReader reader = new PLPReader(in, encoding, logger); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
 
         PLP ret = new PLP();
         ret.setProvider(this);
 
-        String line;
-        boolean magic1Found = false;
-        boolean magic2Found = false;
-        String disk = null;
+        String filename;
 
-        while ((line = reader.readLine()) != null) // May throw IOException.
+        while ((filename = reader.readFilename()) != null) // May throw IllegalArgumentException, IOException.
         {
-            line = line.trim();
-
-            if (line.length() > 0)
-            {
-                // First the PLP marker string.
-                if (!magic1Found)
-                {
-                    if (!"PLP PLAYLIST".equals(line)) // NOPMD Deeply nested if then statement
-                    {
-                        throw new IllegalArgumentException("Not a PLP playlist format");
-                    }
-
-                    magic1Found = true;
-                    continue;
-                }
-
-                // Then the version marker string.
-                if (!magic2Found)
-                {
-                    if (!"VERSION 1.20".equals(line)) // NOPMD Deeply nested if then statement
-                    {
-                        logger.error("Malformed PLP playlist (no version information)");
-                        ret = null;
-                        break;
-                    }
-
-                    magic2Found = true;
-                    continue;
-                }
-
-                final int idx = line.indexOf(',');
-
-                if (idx <= 0)
-                {
-                    logger.error("Malformed PLP playlist (playlist entry line format)");
-                    ret = null;
-                    break;
-                }
-
-                final String tmpDisk = line.substring(0, idx).trim(); // Shall not throw IndexOutOfBoundsException.
-
-                if (disk == null)
-                {
-                    disk = tmpDisk;
-                }
-                else if (!disk.equals(tmpDisk))
-                {
-                    logger.error("Malformed PLP playlist (inconsistent disk specifier)");
-                    ret = null;
-                    break;
-                }
-
-                ret.getFilenames().add(line.substring(idx + 1).trim()); // Shall not throw IndexOutOfBoundsException.
-            }
+            ret.getFilenames().add(filename);
         }
 
-        if ((ret != null) && (disk != null))
+        if (reader.isMalformed())
+        {
+            ret = null;
+        }
+        else if (reader.getDiskSpecifier() != null)
         {
-            ret.setDiskSpecifier(disk);
+            ret.setDiskSpecifier(reader.getDiskSpecifier());
         }
 
         return ret;
     }
 
+    @Override
+    public MediaStream openStream(final InputStream in, final String encoding, final Log logger) throws Exception
+    {
+        return new PLPMediaStream(new PLPReader(in, encoding, logger)); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
+    }
+
     @Override
     public SpecificPlaylist toSpecificPlaylist(final Playlist playlist) throws Exception
     {
         final PLP ret = new PLP();
         ret.setProvider(this);
-
-        addToPlaylist(ret.getFilenames(), playlist.getRootSequence()); // May throw Exception.
+        ret.setDiskSpecifier(_diskSpecifier);
+        addFilenames(ret.getFilenames(), playlist); // Throws NullPointerException if playlist is null. May throw IllegalArgumentException.
 
         return ret;
     }
 
+    @Override
+    public void writeTo(final Playlist playlist, final OutputStream out, final String encoding) throws Exception
+    {
+        final PLPWriter writer = new PLPWriter(out, encoding, _diskSpecifier); // Throws NullPointerException if out is null. May throw UnsupportedEncodingException.
+        writer.writeHeader(); // May throw IOException.
+        writeFilenames(writer, playlist); // Throws NullPointerException if playlist is null. May throw IllegalArgumentException, IOException.
+        writer.flush(); // May throw IOException.
+    }
+
     /**
-     * Adds the song file names referenced in the specified generic playlist component to the input list.
-     * @param filenames the resulting list of file names. Shall not be <code>null</code>.
-     * @param component the generic playlist component to handle. Shall not be <code>null</code>.
+     * Returns the disk specifier of the output playlists.
+     * Defaults to "<code>HARP</code>".
+     * @return a disk specifier. Must not be <code>null</code>.
+     * @since 1.3.0
+     * @see #setDiskSpecifier
+     */
+    public String getDiskSpecifier()
+    {
+        return _diskSpecifier;
+    }
+
+    /**
+     * Initializes the disk specifier of the output playlists.
+     * It applies to the playlists built by {@link #toSpecificPlaylist}, and to the ones written by {@link #writeTo}.
+     * @param diskSpecifier a disk specifier. Must not be <code>null</code>.
+     * @throws NullPointerException if <code>diskSpecifier</code> is <code>null</code>.
+     * @since 1.3.0
+     * @see #getDiskSpecifier
+     * @see PLP#setDiskSpecifier
+     */
+    public void setDiskSpecifier(final String diskSpecifier)
+    {
+        _diskSpecifier = diskSpecifier.trim(); // Throws NullPointerException if diskSpecifier is null.
+    }
+
+    /**
+     * Adds to the given list the song file names built from the specified generic playlist.
+     * A media repeated several times gives as many file names.
+     * @param filenames a list of file names. Shall not be <code>null</code>.
+     * @param playlist a generic playlist. Shall not be <code>null</code>.
      * @throws NullPointerException if <code>filenames</code> is <code>null</code>.
-     * @throws NullPointerException if <code>component</code> is <code>null</code>.
-     * @throws Exception if this service provider is unable to represent the input playlist.
+     * @throws NullPointerException if <code>playlist</code> is <code>null</code>.
+     * @throws IllegalArgumentException if this service provider is unable to represent the input playlist.
      */
-    private void addToPlaylist(final List<String> filenames, final AbstractPlaylistComponent component) throws Exception
+    private static void addFilenames(final List<String> filenames, final Playlist playlist)
     {
-        if (component instanceof Sequence)
+        final PlaylistCursor cursor = new PlaylistCursor(playlist); // Throws NullPointerException if playlist is null.
+        AbstractPlaylistComponent component;
+
+        while ((component = cursor.next()) != null)
         {
-            final Sequence seq = (Sequence) component;
+            final Media media = toMedia(component); // May throw IllegalArgumentException.
 
-            if (seq.getRepeatCount() < 0)
+            if (media.getSource() != null)
             {
-                throw new IllegalArgumentException("A PLP playlist cannot handle a sequence repeated indefinitely");
+                final String filename = media.getSource().toString();
+
+                for (long iter = 0L; iter < cursor.getMultiplicity(); iter++)
+                {
+                    filenames.add(filename); // Throws NullPointerException if filenames is null.
+                }
             }
+        }
+    }
 
-            final AbstractPlaylistComponent[] components = seq.getComponents();
+    /**
+     * Writes the song file names built from the specified generic playlist, without keeping them in memory.
+     * @param writer the PLP writer to use, the header being already written. Shall not be <code>null</code>.
+     * @param playlist a generic playlist. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>writer</code> is <code>null</code>.
+     * @throws NullPointerException if <code>playlist</code> is <code>null</code>.
+     * @throws IllegalArgumentException if this service provider is unable to represent the input playlist.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void writeFilenames(final PLPWriter writer, final Playlist playlist) throws IOException
+    {
+        final PlaylistCursor cursor = new PlaylistCursor(playlist); // Throws NullPointerException if playlist is null.
+        AbstractPlaylistComponent component;
+
+        while ((component = cursor.next()) != null)
+        {
+            final Media media = toMedia(component); // May throw IllegalArgumentException.
 
-            for (int iter = 0; iter < seq.getRepeatCount(); iter++)
+            if (media.getSource() != null)
             {
-                for (AbstractPlaylistComponent c : components)
+                final String filename = media.getSource().toString();
+
+                for (long iter = 0L; iter < cursor.getMultiplicity(); iter++)
                 {
-                    addToPlaylist(filenames, c); // May throw Exception.
+                    writer.write(filename); // Throws NullPointerException if writer is null. May throw IOException.
                 }
             }
         }
-        else if (component instanceof Parallel)
+    }
+
+    /**
+     * Checks that the specified playlist component, as returned by a {@link PlaylistCursor}, can be represented in a PLP playlist.
+     * @param component a playlist component. Shall not be <code>null</code>.
+     * @return the component as a media. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>component</code> is <code>null</code>.
+     * @throws IllegalArgumentException if this service provider is unable to represent the input component.
+     */
+    private static Media toMedia(final AbstractPlaylistComponent component)
+    {
+        if (component instanceof Parallel)
         {
             throw new IllegalArgumentException("A parallel time container is incompatible with a PLP playlist");
         }
-        else if (component instanceof Media)
+
+        // The cursor only returns the sequences repeated indefinitely.
+        if (component instanceof Sequence)
         {
-            final Media media = (Media) component;
+            throw new IllegalArgumentException("A PLP playlist cannot handle a sequence repeated indefinitely");
+        }
 
-            if (media.getDuration() != null)
-            {
-                throw new IllegalArgumentException("A PLP playlist cannot handle a timed media");
-            }
+        final Media media = (Media) component; // Throws NullPointerException if component is null. Shall not throw ClassCastException.
 
-            if (media.getRepeatCount() < 0)
-            {
-                throw new IllegalArgumentException("A PLP playlist cannot handle a media repeated indefinitely");
-            }
+        if (media.getDuration() != null)
+        {
+            throw new IllegalArgumentException("A PLP playlist cannot handle a timed media");
+        }
 
-            if (media.getSource() != null)
-            {
-                for (int iter = 0; iter < media.getRepeatCount(); iter++)
-                {
-                    filenames.add(media.getSource().toString()); // Shall not throw UnsupportedOperationException, ClassCastException, NullPointerException, IllegalArgumentException.
-                }
-            }
+        if (media.getRepeatCount() < 0)
+        {
+            throw new IllegalArgumentException("A PLP playlist cannot handle a media repeated indefinitely");
         }
+
+        return media;
     }
 }
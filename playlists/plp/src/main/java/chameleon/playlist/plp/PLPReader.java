@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.plp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Reads the file names of a PLP playlist one after the other.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+final class PLPReader
+{
+    /**
+     * The underlying reader.
+     */
+    private final BufferedReader _reader;
+
+    /**
+     * The logger to use.
+     */
+    private final Log _logger;
+
+    /**
+     * Specifies if the PLP marker string has been found.
+     */
+    private boolean _magic1Found = false;
+
+    /**
+     * Specifies if the version marker string has been found.
+     */
+    private boolean _magic2Found = false;
+
+    /**
+     * Specifies if the playlist has been detected as malformed.
+     */
+    private boolean _malformed = false;
+
+    /**
+     * The disk specifier found so far, if any.
+     */
+    private String _disk = null;
+
+    /**
+     * Builds a new PLP reader.
+     * @param in an input stream. Shall not be <code>null</code>.
+     * @param encoding the content encoding of the input resource, or <code>null</code> if not known.
+     * @param logger the logger to use. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>in</code> is <code>null</code>.
+     * @throws UnsupportedEncodingException if the specified encoding is not supported.
+     */
+    PLPReader(final InputStream in, final String encoding, final Log logger) throws UnsupportedEncodingException
+    {
+        String enc = encoding;
+
+        if (enc == null)
+        {
+            enc = "UTF-16LE";
+        }
+
+        _reader = new BufferedReader(new InputStreamReader(in, enc)); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
+        _logger = logger;
+    }
+
+    /**
+     * Reads the next file name of the playlist.
+     * @return a file name, or <code>null</code> if the end of the playlist has been reached, or if the playlist is malformed.
+     * @throws IllegalArgumentException if the contents don't look like a PLP playlist.
+     * @throws IOException if an I/O error occurs.
+     * @see #isMalformed
+     */
+    String readFilename() throws IOException
+    {
+        String ret = null;
+        String line;
+
+        while ((ret == null) && !_malformed && ((line = _reader.readLine()) != null)) // May throw IOException.
+        {
+            line = line.trim();
+
+            if (line.length() > 0)
+            {
+                // First the PLP marker string.
+                if (!_magic1Found)
+                {
+                    if (!"PLP PLAYLIST".equals(line)) // NOPMD Deeply nested if then statement
+                    {
+                        throw new IllegalArgumentException("Not a PLP playlist format");
+                    }
+
+                    _magic1Found = true;
+                    continue;
+                }
+
+                // Then the version marker string.
+                if (!_magic2Found)
+                {
+                    if (!"VERSION 1.20".equals(line)) // NOPMD Deeply nested if then statement
+                    {
+                        _logger.error("Malformed PLP playlist (no version information)");
+                        _malformed = true;
+                        break;
+                    }
+
+                    _magic2Found = true;
+                    continue;
+                }
+
+                final int idx = line.indexOf(',');
+
+                if (idx <= 0)
+                {
+                    _logger.error("Malformed PLP playlist (playlist entry line format)");
+                    _malformed = true;
+                    break;
+                }
+
+                final String tmpDisk = line.substring(0, idx).trim(); // Shall not throw IndexOutOfBoundsException.
+
+                if (_disk == null)
+                {
+                    _disk = tmpDisk;
+                }
+                else if (!_disk.equals(tmpDisk))
+                {
+                    _logger.error("Malformed PLP playlist (inconsistent disk specifier)");
+                    _malformed = true;
+                    break;
+                }
+
+                ret = line.substring(idx + 1).trim(); // Shall not throw IndexOutOfBoundsException.
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Specifies if the playlist has been detected as malformed.
+     * In this case, the error has already been logged.
+     * @return the malformed indicator.
+     */
+    boolean isMalformed()
+    {
+        return _malformed;
+    }
+
+    /**
+     * Returns the disk specifier found so far.
+     * @return a disk specifier, or <code>null</code> if none has been found so far.
+     */
+    String getDiskSpecifier()
+    {
+        return _disk;
+    }
+
+    /**
+     * Closes this reader, and the underlying input stream.
+     * @throws IOException if an I/O error occurs.
+     */
+    void close() throws IOException
+    {
+        _reader.close(); // May throw IOException.
+    }
+}
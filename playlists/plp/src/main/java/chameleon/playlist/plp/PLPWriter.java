@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.plp;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Writes the file names of a PLP playlist one after the other.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+final class PLPWriter
+{
+    /**
+     * The underlying writer.
+     */
+    private final BufferedWriter _writer;
+
+    /**
+     * The disk specifier.
+     */
+    private final String _diskSpecifier;
+
+    /**
+     * Builds a new PLP writer.
+     * @param out an output stream. Shall not be <code>null</code>.
+     * @param encoding the content encoding of the output resource, or <code>null</code> if not known.
+     * @param diskSpecifier the disk specifier. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>out</code> is <code>null</code>.
+     * @throws UnsupportedEncodingException if the specified encoding is not supported.
+     */
+    PLPWriter(final OutputStream out, final String encoding, final String diskSpecifier) throws UnsupportedEncodingException
+    {
+        String enc = encoding;
+
+        if (enc == null)
+        {
+            enc = "UTF-16LE";
+        }
+
+        _writer = new BufferedWriter(new OutputStreamWriter(out, enc)); // Throws NullPointerException if out is null. May throw UnsupportedEncodingException.
+        _diskSpecifier = diskSpecifier;
+    }
+
+    /**
+     * Writes the playlist header.
+     * @throws IOException if an I/O error occurs.
+     */
+    void writeHeader() throws IOException
+    {
+        _writer.write("PLP PLAYLIST"); // May throw IOException.
+        _writer.write('\r'); // May throw IOException.
+        _writer.write('\n'); // May throw IOException.
+        _writer.write("VERSION 1.20"); // May throw IOException.
+        _writer.write('\r'); // May throw IOException.
+        _writer.write('\n'); // May throw IOException.
+        _writer.write('\r'); // May throw IOException.
+        _writer.write('\n'); // May throw IOException.
+    }
+
+    /**
+     * Writes the specified file name.
+     * @param filename a file name. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>filename</code> is <code>null</code>.
+     * @throws IOException if an I/O error occurs.
+     */
+    void write(final String filename) throws IOException
+    {
+        _writer.write(_diskSpecifier); // May throw IOException.
+        _writer.write(", "); // May throw IOException.
+        _writer.write(filename); // Throws NullPointerException if filename is null. May throw IOException.
+        _writer.write('\r'); // May throw IOException.
+        _writer.write('\n'); // May throw IOException.
+    }
+
+    /**
+     * Flushes this writer, and the underlying output stream.
+     * @throws IOException if an I/O error occurs.
+     */
+    void flush() throws IOException
+    {
+        _writer.flush(); // May throw IOException.
+    }
+}
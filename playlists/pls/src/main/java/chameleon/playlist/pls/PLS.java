@@ -24,9 +24,7 @@
  */
 package chameleon.playlist.pls;
 
-import java.io.BufferedWriter;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -57,6 +55,10 @@ import chameleon.playlist.SpecificPlaylistProvider;
  * <li>"Version": playlist version. Currently only a value of 2 is valid.</li>
  * </ul>
  * </ul>
+ * When a playlist is read, its track entries are kept in index order, but the missing entries are skipped:
+ * the position of a resource in {@link #getResources} is therefore not necessarily its "X" index minus one.
+ * The entries beyond "NumberOfEntries", if specified, are ignored.
+ * When a playlist is written, the resources are numbered again from 1, in list order.
  * @version $Revision: 91 $
  * @author Christophe Delory
  */
@@ -87,58 +89,15 @@ public class PLS implements SpecificPlaylist
     @Override
     public void writeTo(final OutputStream out, final String encoding) throws Exception
     {
-        String enc = encoding;
-
-        if (enc == null)
-        {
-            enc = "UTF-8"; // FIXME US-ASCII?
-        }
-
-        final BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, enc)); // Throws NullPointerException if out is null. May throw UnsupportedEncodingException.
-
-        writer.write("[Playlist]"); // May throw IOException.
-        writer.newLine(); // May throw IOException.
-
-        writer.write("NumberOfEntries="); // May throw IOException.
-
-        writer.write(Integer.toString(_resources.size()));
-        writer.newLine(); // May throw IOException.
-
-        int i = 1;
+        final PLSWriter writer = new PLSWriter(out, encoding); // Throws NullPointerException if out is null. May throw UnsupportedEncodingException.
+        writer.writeHeader(_resources.size()); // May throw IOException.
 
         for (Resource resource : _resources)
         {
-            writer.write("File"); // May throw IOException.
-            writer.write(Integer.toString(i)); // May throw IOException.
-            writer.write("="); // May throw IOException.
-            writer.write(resource.getLocation()); // May throw NullPointerException, IOException.
-            writer.newLine(); // May throw IOException.
-
-            if (resource.getName() != null)
-            {
-                writer.write("Title"); // May throw IOException.
-                writer.write(Integer.toString(i)); // May throw IOException.
-                writer.write("="); // May throw IOException.
-                writer.write(resource.getName()); // May throw IOException.
-                writer.newLine(); // May throw IOException.
-            }
-
-            if (resource.getLength() >= 0L)
-            {
-                writer.write("Length"); // May throw IOException.
-                writer.write(Integer.toString(i)); // May throw IOException.
-                writer.write("="); // May throw IOException.
-                writer.write(Long.toString(resource.getLength())); // May throw IOException.
-                writer.newLine(); // May throw IOException.
-            }
-
-            i++;
+            writer.write(resource); // May throw NullPointerException, IOException.
         }
 
-        writer.write("Version=2"); // May throw IOException.
-        writer.newLine(); // May throw IOException.
-
-        writer.flush(); // May throw IOException.
+        writer.writeFooter(); // May throw IOException.
     }
 
     @Override
@@ -165,6 +124,7 @@ public class PLS implements SpecificPlaylist
 
     /**
      * Returns the list of playlist resources.
+     * After a read, it contains the track entries found, in index order, without gaps for the missing indexes.
      * @return a list of child resources. May be empty but not <code>null</code>.
      */
     public List<Resource> getResources()
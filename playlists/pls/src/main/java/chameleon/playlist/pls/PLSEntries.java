@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.pls;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import chameleon.playlist.m3u.Resource;
+
+/**
+ * The entries of a PLS playlist being read, by zero-based index.
+ * <br>
+ * The entry indexes are usually dense, and the entries are then kept in an array.
+ * This array only grows in proportion to the number of entries actually found, though:
+ * the entries too far away from the others are kept in a sorted map instead,
+ * so that a huge entry index doesn't allocate anything for the missing entries.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+final class PLSEntries
+{
+    /**
+     * The initial size of the array of entries.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The maximum size of the array of entries allocated according to the "NumberOfEntries" keyword.
+     */
+    private static final int MAX_PRESIZE = 65536;
+
+    /**
+     * The number of missing entries the array of entries may hold, beyond twice the number of entries found.
+     */
+    private static final int SLACK = 1024;
+
+    /**
+     * The maximum number of entries, or a negative value if unlimited.
+     */
+    private final int _maxEntries;
+
+    /**
+     * The entries with a small enough index, possibly <code>null</code>.
+     */
+    private Resource[] _slots = new Resource[INITIAL_CAPACITY];
+
+    /**
+     * The entries with an index beyond the array of entries, or <code>null</code> if none so far.
+     */
+    private SortedMap<Integer, Resource> _sparse = null;
+
+    /**
+     * The number of entries found.
+     */
+    private int _count = 0;
+
+    /**
+     * Builds a new set of entries.
+     * @param maxEntries the maximum number of entries, or a negative value if unlimited.
+     */
+    PLSEntries(final int maxEntries)
+    {
+        _maxEntries = maxEntries;
+    }
+
+    /**
+     * Prepares room for the specified number of entries, if it is sane.
+     * @param numberOfEntries the number of entries specified by the playlist.
+     */
+    void presize(final int numberOfEntries)
+    {
+        if ((numberOfEntries <= MAX_PRESIZE) && ((_maxEntries < 0) || (numberOfEntries <= _maxEntries)))
+        {
+            grow(numberOfEntries);
+        }
+    }
+
+    /**
+     * Returns the entry at the specified index, created if needed.
+     * @param index the zero-based index of an entry.
+     * @return an entry, or <code>null</code> if a new entry would exceed the maximum number of entries.
+     * @throws IndexOutOfBoundsException if the index is negative.
+     */
+    Resource get(final int index)
+    {
+        if (index < 0)
+        {
+            throw new IndexOutOfBoundsException("Invalid PLS entry index " + (index + 1));
+        }
+
+        if ((index >= _slots.length) && (index < ((2L * _count) + SLACK)))
+        {
+            grow((int) Math.min(Math.max(index + 1L, 2L * _slots.length), (2L * _count) + SLACK));
+        }
+
+        Resource ret = (index < _slots.length) ? _slots[index] : ((_sparse == null) ? null : _sparse.get(Integer.valueOf(index)));
+
+        if (ret == null)
+        {
+            ret = newEntry();
+
+            if ((ret != null) && (index < _slots.length))
+            {
+                _slots[index] = ret;
+            }
+            else if (ret != null)
+            {
+                if (_sparse == null)
+                {
+                    _sparse = new TreeMap<Integer, Resource>();
+                }
+
+                _sparse.put(Integer.valueOf(index), ret);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Adds the entries, in index order, to the specified list, skipping the missing ones.
+     * @param resources a list of resources. Shall not be <code>null</code>.
+     * @param numberOfEntries the number of entries specified by the playlist, or -1 if not specified: the entries with a higher index are ignored.
+     * @return the number of entries ignored.
+     * @throws NullPointerException if <code>resources</code> is <code>null</code>.
+     */
+    int addTo(final List<Resource> resources, final int numberOfEntries)
+    {
+        final int limit = (numberOfEntries < 0) ? Integer.MAX_VALUE : numberOfEntries;
+        int added = 0;
+
+        for (int i = 0; i < Math.min(limit, _slots.length); i++)
+        {
+            if (_slots[i] != null)
+            {
+                resources.add(_slots[i]); // Throws NullPointerException if resources is null.
+                added++;
+            }
+        }
+
+        if ((_sparse != null) && (limit > _slots.length))
+        {
+            final Iterator<Map.Entry<Integer, Resource>> iterator = _sparse.entrySet().iterator();
+            Map.Entry<Integer, Resource> entry;
+
+            while (iterator.hasNext() && ((entry = iterator.next()).getKey().intValue() < limit))
+            {
+                resources.add(entry.getValue()); // Throws NullPointerException if resources is null.
+                added++;
+            }
+        }
+
+        return _count - added;
+    }
+
+    /**
+     * Creates a new entry, if the maximum number of entries allows it.
+     * @return a new entry, or <code>null</code> if the maximum number of entries has been reached.
+     */
+    private Resource newEntry()
+    {
+        Resource ret = null;
+
+        if ((_maxEntries < 0) || (_count < _maxEntries))
+        {
+            ret = new Resource();
+            _count++;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Enlarges the array of entries to the specified size, and moves the entries of the sorted map it now covers.
+     * @param size the new size of the array. Nothing is done if it is not larger than the current one.
+     */
+    private void grow(final int size)
+    {
+        if (size > _slots.length)
+        {
+            _slots = Arrays.copyOf(_slots, size);
+
+            if (_sparse != null)
+            {
+                final Iterator<Map.Entry<Integer, Resource>> iterator = _sparse.headMap(Integer.valueOf(size)).entrySet().iterator();
+
+                while (iterator.hasNext())
+                {
+                    final Map.Entry<Integer, Resource> entry = iterator.next();
+                    _slots[entry.getKey().intValue()] = entry.getValue();
+                    iterator.remove();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.pls;
+
+import java.io.IOException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+
+import chameleon.content.Content;
+import chameleon.playlist.Media;
+import chameleon.playlist.MediaStream;
+import chameleon.playlist.m3u.Resource;
+
+/**
+ * The media of a PLS playlist, read one after the other.
+ * As the fields of a given entry may appear in any order, an entry is considered complete only when a field of an entry with a higher index is found (or at the end of the playlist).
+ * The fields of an entry which has already been returned are ignored.
+ * <br>
+ * The entries read but not returned yet are kept in a sorted map, and their number may be limited, so that entries in reverse order cannot exhaust the memory.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+final class PLSMediaStream implements MediaStream
+{
+    /**
+     * The underlying PLS reader.
+     */
+    private final PLSReader _reader;
+
+    /**
+     * The logger to use.
+     */
+    private final Log _logger;
+
+    /**
+     * The maximum number of entries read but not returned yet, or a negative value if unlimited.
+     */
+    private final int _maxEntries;
+
+    /**
+     * The entries read so far and not returned yet, by zero-based index.
+     */
+    private final SortedMap<Integer, Resource> _pending = new TreeMap<Integer, Resource>();
+
+    /**
+     * The highest entry index found so far.
+     */
+    private int _highestIndex = -1;
+
+    /**
+     * The index of the last entry returned, or -1 if none.
+     */
+    private int _lastIndex = -1;
+
+    /**
+     * Specifies if the end of the playlist has been reached.
+     */
+    private boolean _done = false;
+
+    /**
+     * Builds a new stream of media on top of the specified PLS reader.
+     * @param reader a PLS reader. Shall not be <code>null</code>.
+     * @param logger the logger to use. Shall not be <code>null</code>.
+     * @param maxEntries the maximum number of entries read but not returned yet, or a negative value if unlimited.
+     */
+    PLSMediaStream(final PLSReader reader, final Log logger, final int maxEntries)
+    {
+        _reader = reader;
+        _logger = logger;
+        _maxEntries = maxEntries;
+    }
+
+    @Override
+    public Media next() throws Exception
+    {
+        Media ret = null;
+        Resource resource;
+
+        while ((ret == null) && ((resource = nextResource()) != null)) // May throw Exception.
+        {
+            final int numberOfEntries = _reader.getNumberOfEntries();
+
+            // Ignore any extra entry, if the number of entries has been specified so far.
+            if ((numberOfEntries >= 0) && (_lastIndex >= numberOfEntries))
+            {
+                _logger.warn("Ignoring extra resource " + (_lastIndex + 1) + " according to the specified number of entries " + numberOfEntries);
+            }
+            // Same as PLS.toPlaylist().
+            else if (resource.getLocation() != null)
+            {
+                ret = new Media(); // NOPMD Avoid instantiating new objects inside loops
+                final Content content = new Content(resource.getLocation()); // NOPMD Avoid instantiating new objects inside loops
+                ret.setSource(content);
+                content.setDuration(resource.getLength() * 1000L);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the next complete entry of the playlist.
+     * @return an entry, or <code>null</code> if the end of the playlist has been reached.
+     * @throws IllegalArgumentException if the contents are not a valid PLS playlist, or if there are too many pending entries.
+     * @throws IndexOutOfBoundsException if an entry index is not strictly positive.
+     * @throws IOException if an I/O error occurs.
+     */
+    private Resource nextResource() throws IOException
+    {
+        while (!_done && (_pending.isEmpty() || (_pending.firstKey().intValue() >= _highestIndex)))
+        {
+            if (_reader.readField()) // May throw IllegalArgumentException, IOException.
+            {
+                final int index = _reader.getResourceIndex();
+
+                if (index < 0)
+                {
+                    throw new IndexOutOfBoundsException("Invalid PLS entry index " + (index + 1));
+                }
+
+                if (index <= _lastIndex)
+                {
+                    _logger.warn("Ignoring PLS entry " + (index + 1) + " found after the following entries");
+                    continue;
+                }
+
+                Resource resource = _pending.get(index);
+
+                if (resource == null)
+                {
+                    if ((_maxEntries >= 0) && (_pending.size() >= _maxEntries))
+                    {
+                        throw new IllegalArgumentException("Too many entries in PLS playlist (maximum " + _maxEntries + ")");
+                    }
+
+                    resource = new Resource(); // NOPMD Avoid instantiating new objects inside loops
+                    _pending.put(index, resource);
+                }
+
+                _reader.applyTo(resource);
+                _highestIndex = Math.max(_highestIndex, index);
+            }
+            else
+            {
+                if (_reader.isMalformed())
+                {
+                    throw new IllegalArgumentException("Malformed PLS playlist");
+                }
+
+                if (_reader.getNumberOfEntries() < 0)
+                {
+                    _logger.warn("No number of entries in PLS playlist");
+                }
+
+                _done = true;
+            }
+        }
+
+        Resource ret = null;
+
+        if (!_pending.isEmpty())
+        {
+            final Integer index = _pending.firstKey(); // Shall not throw NoSuchElementException.
+            ret = _pending.remove(index);
+            _lastIndex = index.intValue();
+        }
+
+        return ret;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        _reader.close(); // May throw IOException.
+    }
+}
@@ -24,9 +24,9 @@
  */
 package chameleon.playlist.pls;
 
-import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
@@ -35,11 +35,17 @@ import chameleon.content.type.ContentType;
 import chameleon.player.PlayerSupport;
 import chameleon.playlist.AbstractPlaylistComponent;
 import chameleon.playlist.Media;
+import chameleon.playlist.MediaStream;
 import chameleon.playlist.Parallel;
 import chameleon.playlist.Playlist;
+import chameleon.playlist.PlaylistCursor;
+import chameleon.playlist.PlaylistHeader;
 import chameleon.playlist.Sequence;
 import chameleon.playlist.SpecificPlaylist;
+import chameleon.playlist.SpecificPlaylistProbe;
 import chameleon.playlist.SpecificPlaylistProvider;
+import chameleon.playlist.StreamingPlaylistProvider;
+import chameleon.playlist.StreamingPlaylistWriter;
 import chameleon.playlist.m3u.Resource;
 
 /**
@@ -51,7 +57,7 @@ import chameleon.playlist.m3u.Resource;
  * @version $Revision: 91 $
  * @author Christophe Delory
  */
-public class PLSProvider implements SpecificPlaylistProvider
+public class PLSProvider implements SpecificPlaylistProvider, SpecificPlaylistProbe, StreamingPlaylistProvider, StreamingPlaylistWriter
 {
     /**
      * A list of compatible content types.
@@ -74,6 +80,16 @@ public class PLSProvider implements SpecificPlaylistProvider
                         "Winamp PLSv2 Playlist"),
     };
 
+    /**
+     * The default maximum number of entries allowed in a playlist.
+     */
+    private static final int DEFAULT_MAX_ENTRIES = 1000000;
+
+    /**
+     * The maximum number of entries allowed in a playlist, or a negative value if there is no limit.
+     */
+    private volatile int _maxEntries = DEFAULT_MAX_ENTRIES;
+
     @Override
     public String getId()
     {
@@ -87,289 +103,263 @@ public class PLSProvider implements SpecificPlaylistProvider
     }
 
     @Override
-    public SpecificPlaylist readFrom(final InputStream in, final String encoding, final Log logger) throws Exception
+    public int probe(final PlaylistHeader header)
     {
-        String enc = encoding;
+        final String line = header.getFirstLine("UTF-8");
+        int ret = SpecificPlaylistProbe.POSSIBLE_MATCH;
 
-        if (enc == null)
+        // An empty file is still a valid (empty) PLS playlist.
+        if ((line != null) && (line.length() > 0))
         {
-            enc = "UTF-8"; // FIXME US-ASCII?
+            ret = line.equalsIgnoreCase("[playlist]") ? SpecificPlaylistProbe.CERTAIN_MATCH : SpecificPlaylistProbe.NO_MATCH;
         }
 
-        final BufferedReader reader = new BufferedReader(new InputStreamReader(in, enc)); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException, IOException.
+        return ret;
+    }
+
+    @Override
+    public SpecificPlaylist readFrom(final InputStream in, final String encoding, final Log logger) throws Exception
+    {
+        final PLSReader reader = new PLSReader(in, encoding, logger); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
+        final int maxEntries = _maxEntries;
+
+        // The entries may be sparse, and appear in any order.
+        final PLSEntries entries = new PLSEntries(maxEntries);
+        boolean presized = false;
 
         PLS ret = new PLS();
         ret.setProvider(this);
 
-        String line;
-        boolean magicFound = false;
-        int numberOfEntries = -1;
-
-        while ((line = reader.readLine()) != null) // May throw IOException.
+        while (reader.readField()) // May throw IllegalArgumentException, IOException.
         {
-            line = line.trim();
-
-            if (line.length() > 0)
+            if (!presized && (reader.getNumberOfEntries() >= 0))
             {
-                // First the PLS marker string.
-                if (!magicFound)
-                {
-                    if (!line.equalsIgnoreCase("[playlist]")) // NOPMD Deeply nested if..then statements are hard to read
-                    {
-                        throw new IllegalArgumentException("Not a PLS playlist format");
-                    }
-
-                    magicFound = true;
-                    continue;
-                }
-
-                final int idx = line.indexOf('=');
-
-                if (idx <= 0)
-                {
-                    logger.error("Malformed PLS playlist");
-                    ret = null;
-                    break;
-                }
+                entries.presize(reader.getNumberOfEntries());
+                presized = true;
+            }
 
-                String key = line.substring(0, idx).trim().toLowerCase(); // Shall not throw IndexOutOfBoundsException.
-                final String value = line.substring(idx + 1).trim(); // Shall not throw IndexOutOfBoundsException.
+            final Resource resource = entries.get(reader.getResourceIndex()); // May throw IndexOutOfBoundsException.
 
-                if ("numberofentries".equals(key))
-                {
-                    int tmpValue;
-                    
-                    try
-                    {
-                        tmpValue = Integer.parseInt(value); // May throw NumberFormatException.
-                    }
-                    catch (NumberFormatException e)
-                    {
-                        logger.error(e.toString());
-                        ret = null;
-                        break;
-                    }
-
-                    if (tmpValue < 0)
-                    {
-                        logger.warn("Invalid NumberOfEntries in PLS playlist: " + tmpValue);
-                        ret = null;
-                        break;
-                    }
-
-                    // Test if already found.
-                    if ((numberOfEntries >= 0) && (numberOfEntries != tmpValue))
-                    {
-                        logger.error("PLS playlist number of entries already specified with a different value");
-                        ret = null;
-                        break;
-                    }
-
-                    numberOfEntries = tmpValue;
-                }
-                else if (key.startsWith("file"))
-                {
-                    key = key.substring(4); // Shall not throw IndexOutOfBoundsException.
-                    int resourceIndex;
-
-                    try
-                    {
-                        resourceIndex = Integer.parseInt(key) - 1; // May throw NumberFormatException.
-                    }
-                    catch (NumberFormatException e)
-                    {
-                        logger.error(e.toString());
-                        ret = null;
-                        break;
-                    }
-
-                    // Ensure that the resource list has enough slots.
-                    for (int i = ret.getResources().size(); i < (resourceIndex + 1); i++)
-                    {
-                        ret.getResources().add(new Resource()); // NOPMD Avoid instantiating new objects inside loops
-                    }
-
-                    final Resource resource = ret.getResources().get(resourceIndex); // Shall not throw ArrayIndexOutOfBoundsException.
-                    resource.setLocation(value);
-                }
-                // The Title field is optional.
-                else if (key.startsWith("title"))
-                {
-                    key = key.substring(5); // Shall not throw IndexOutOfBoundsException.
-                    int resourceIndex;
-
-                    try
-                    {
-                        resourceIndex = Integer.parseInt(key) - 1; // May throw NumberFormatException.
-                    }
-                    catch (NumberFormatException e)
-                    {
-                        logger.error(e.toString());
-                        ret = null;
-                        break;
-                    }
-
-                    // Ensure that the resource list has enough slots.
-                    for (int i = ret.getResources().size(); i < (resourceIndex + 1); i++)
-                    {
-                        ret.getResources().add(new Resource()); // NOPMD Avoid instantiating new objects inside loops
-                    }
-
-                    final Resource resource = ret.getResources().get(resourceIndex); // Shall not throw ArrayIndexOutOfBoundsException.
-                    resource.setName(value);
-                }
-                // The Length field is either the length of the recording in seconds or -1 (unspecified or live stream).
-                else if (key.startsWith("length"))
-                {
-                    key = key.substring(6); // Shall not throw IndexOutOfBoundsException.
-                    int resourceIndex;
-
-                    try
-                    {
-                        resourceIndex = Integer.parseInt(key) - 1; // May throw NumberFormatException.
-                    }
-                    catch (NumberFormatException e)
-                    {
-                        logger.error(e.toString());
-                        ret = null;
-                        break;
-                    }
-
-                    // Ensure that the resource list has enough slots.
-                    for (int i = ret.getResources().size(); i < (resourceIndex + 1); i++)
-                    {
-                        ret.getResources().add(new Resource()); // NOPMD Avoid instantiating new objects inside loops
-                    }
-
-                    final Resource resource = ret.getResources().get(resourceIndex); // Shall not throw ArrayIndexOutOfBoundsException.
-
-                    try
-                    {
-                        resource.setLength(Long.parseLong(value)); // May throw NumberFormatException.
-                    }
-                    catch (NumberFormatException e)
-                    {
-                        logger.error(e.toString());
-                        ret = null;
-                        break;
-                    }
-                }
-                else if ("version".equals(key))
-                {
-                    // If present, shall be "2".
-                    if (!"2".equals(value))
-                    {
-                        logger.error("Unknown PLS version " + value);
-                        ret = null;
-                        break;
-                    }
-                }
-                else // FIXME "PlaylistName" ???
-                {
-                    logger.warn("Unknown PLS keyword " + key);
-                }
+            if (resource == null)
+            {
+                logger.error("Too many entries in PLS playlist (maximum " + maxEntries + ")");
+                ret = null;
+                break;
             }
+
+            reader.applyTo(resource);
         }
 
-        if (ret != null)
+        if (reader.isMalformed())
+        {
+            ret = null;
+        }
+        else if (ret != null)
         {
+            final int numberOfEntries = reader.getNumberOfEntries();
+
             if (numberOfEntries < 0)
             {
                 logger.warn("No number of entries in PLS playlist");
             }
-            else
-            {
-                // Ignore any extra resource, if the number of entries has been specified so far.
-                final int extras = ret.getResources().size() - numberOfEntries;
 
-                if (extras > 0)
-                {
-                    logger.warn("Ignoring " + extras + " extra resources according to the specified number of entries " + numberOfEntries);
-                }
+            // Ignore any extra resource, if the number of entries has been specified so far.
+            final int extras = entries.addTo(ret.getResources(), numberOfEntries);
 
-                for (int i = 0; i < extras; i++)
-                {
-                    ret.getResources().remove(numberOfEntries); // Shall not throw UnsupportedOperationException, IndexOutOfBoundsException.
-                }
+            if (extras > 0)
+            {
+                logger.warn("Ignoring " + extras + " extra resources according to the specified number of entries " + numberOfEntries);
             }
         }
 
         return ret;
     }
 
+    @Override
+    public MediaStream openStream(final InputStream in, final String encoding, final Log logger) throws Exception
+    {
+        return new PLSMediaStream(new PLSReader(in, encoding, logger), logger, _maxEntries); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
+    }
+
+    /**
+     * Returns the maximum number of entries allowed in a playlist.
+     * @return a number of entries, or a negative value if there is no limit.
+     * @since 1.3.0
+     * @see #setMaxEntries
+     */
+    public int getMaxEntries()
+    {
+        return _maxEntries;
+    }
+
+    /**
+     * Specifies the maximum number of entries allowed in a playlist, so that a corrupt or hostile playlist cannot exhaust the memory.
+     * A playlist with more entries is considered as malformed.
+     * When streamed, only the entries read but not returned yet are counted.
+     * Defaults to 1,000,000.
+     * @param maxEntries a number of entries, or a negative value if there is no limit.
+     * @since 1.3.0
+     * @see #getMaxEntries
+     */
+    public void setMaxEntries(final int maxEntries)
+    {
+        _maxEntries = maxEntries;
+    }
+
     @Override
     public SpecificPlaylist toSpecificPlaylist(final Playlist playlist) throws Exception
     {
         final PLS ret = new PLS();
         ret.setProvider(this);
+        addResources(ret.getResources(), playlist); // Throws NullPointerException if playlist is null. May throw IllegalArgumentException.
 
-        addToPlaylist(ret.getResources(), playlist.getRootSequence()); // May throw Exception.
+        return ret;
+    }
+
+    @Override
+    public void writeTo(final Playlist playlist, final OutputStream out, final String encoding) throws Exception
+    {
+        final PLSWriter writer = new PLSWriter(out, encoding); // Throws NullPointerException if out is null. May throw UnsupportedEncodingException.
+        writer.writeHeader(countEntries(playlist)); // Throws NullPointerException if playlist is null. May throw IllegalArgumentException, IOException.
+        writeResources(writer, playlist); // May throw IOException.
+        writer.writeFooter(); // May throw IOException.
+    }
+
+    /**
+     * Counts the entries needed to represent the specified generic playlist.
+     * @param playlist a generic playlist. Shall not be <code>null</code>.
+     * @return a number of entries.
+     * @throws NullPointerException if <code>playlist</code> is <code>null</code>.
+     * @throws IllegalArgumentException if this service provider is unable to represent the input playlist.
+     */
+    private static long countEntries(final Playlist playlist)
+    {
+        long ret = 0L;
+        final PlaylistCursor cursor = new PlaylistCursor(playlist); // Throws NullPointerException if playlist is null.
+        AbstractPlaylistComponent component;
+
+        while ((component = cursor.next()) != null)
+        {
+            final Media media = toMedia(component); // May throw IllegalArgumentException.
+
+            if (media.getSource() != null)
+            {
+                ret += cursor.getMultiplicity();
+            }
+        }
 
         return ret;
     }
 
     /**
-     * Adds the resources referenced in the specified generic playlist component to the input list.
-     * @param resources the resulting list of resources. Shall not be <code>null</code>.
-     * @param component the generic playlist component to handle. Shall not be <code>null</code>.
+     * Adds to the given list the PLS resources built from the specified generic playlist.
+     * A media repeated several times gives as many resources.
+     * @param resources a list of resources. Shall not be <code>null</code>.
+     * @param playlist a generic playlist. Shall not be <code>null</code>.
      * @throws NullPointerException if <code>resources</code> is <code>null</code>.
-     * @throws NullPointerException if <code>component</code> is <code>null</code>.
-     * @throws Exception if this service provider is unable to represent the input playlist.
+     * @throws NullPointerException if <code>playlist</code> is <code>null</code>.
+     * @throws IllegalArgumentException if this service provider is unable to represent the input playlist.
      */
-    private void addToPlaylist(final List<Resource> resources, final AbstractPlaylistComponent component) throws Exception
+    private static void addResources(final List<Resource> resources, final Playlist playlist)
     {
-        if (component instanceof Sequence)
+        final PlaylistCursor cursor = new PlaylistCursor(playlist); // Throws NullPointerException if playlist is null.
+        AbstractPlaylistComponent component;
+
+        while ((component = cursor.next()) != null)
         {
-            final Sequence seq = (Sequence) component;
+            final Media media = toMedia(component); // May throw IllegalArgumentException.
 
-            if (seq.getRepeatCount() < 0)
+            if (media.getSource() != null)
             {
-                throw new IllegalArgumentException("A PLS playlist cannot handle a sequence repeated indefinitely");
+                for (long iter = 0L; iter < cursor.getMultiplicity(); iter++)
+                {
+                    resources.add(toResource(media)); // NOPMD Avoid instantiating new objects inside loops
+                }
             }
+        }
+    }
 
-            final AbstractPlaylistComponent[] components = seq.getComponents();
+    /**
+     * Writes the PLS entries built from the specified generic playlist, without keeping them in memory.
+     * @param writer the PLS writer to use, the header being already written. Shall not be <code>null</code>.
+     * @param playlist a generic playlist. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>writer</code> is <code>null</code>.
+     * @throws NullPointerException if <code>playlist</code> is <code>null</code>.
+     * @throws IllegalArgumentException if this service provider is unable to represent the input playlist.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void writeResources(final PLSWriter writer, final Playlist playlist) throws IOException
+    {
+        final PlaylistCursor cursor = new PlaylistCursor(playlist); // Throws NullPointerException if playlist is null.
+        AbstractPlaylistComponent component;
 
-            for (int iter = 0; iter < seq.getRepeatCount(); iter++)
+        while ((component = cursor.next()) != null)
+        {
+            final Media media = toMedia(component); // May throw IllegalArgumentException.
+
+            if (media.getSource() != null)
             {
-                for (AbstractPlaylistComponent c : components)
+                final Resource resource = toResource(media);
+
+                for (long iter = 0L; iter < cursor.getMultiplicity(); iter++)
                 {
-                    addToPlaylist(resources, c); // May throw Exception.
+                    writer.write(resource); // Throws NullPointerException if writer is null. May throw IOException.
                 }
             }
         }
-        else if (component instanceof Parallel)
+    }
+
+    /**
+     * Checks that the specified playlist component, as returned by a {@link PlaylistCursor}, can be represented in a PLS playlist.
+     * @param component a playlist component. Shall not be <code>null</code>.
+     * @return the component as a media. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>component</code> is <code>null</code>.
+     * @throws IllegalArgumentException if this service provider is unable to represent the input component.
+     */
+    private static Media toMedia(final AbstractPlaylistComponent component)
+    {
+        if (component instanceof Parallel)
         {
             throw new IllegalArgumentException("A parallel time container is incompatible with a PLS playlist");
         }
-        else if (component instanceof Media)
+
+        // The cursor only returns the sequences repeated indefinitely.
+        if (component instanceof Sequence)
         {
-            final Media media = (Media) component;
+            throw new IllegalArgumentException("A PLS playlist cannot handle a sequence repeated indefinitely");
+        }
 
-            if (media.getDuration() != null)
-            {
-                throw new IllegalArgumentException("A PLS playlist cannot handle a timed media");
-            }
+        final Media media = (Media) component; // Throws NullPointerException if component is null. Shall not throw ClassCastException.
 
-            if (media.getRepeatCount() < 0)
-            {
-                throw new IllegalArgumentException("A PLS playlist cannot handle a media repeated indefinitely");
-            }
+        if (media.getDuration() != null)
+        {
+            throw new IllegalArgumentException("A PLS playlist cannot handle a timed media");
+        }
 
-            if (media.getSource() != null)
-            {
-                for (int iter = 0; iter < media.getRepeatCount(); iter++)
-                {
-                    final Resource resource = new Resource(); // NOPMD Avoid instantiating new objects inside loops
-                    resource.setLocation(media.getSource().toString());
+        if (media.getRepeatCount() < 0)
+        {
+            throw new IllegalArgumentException("A PLS playlist cannot handle a media repeated indefinitely");
+        }
 
-                    if (media.getSource().getDuration() >= 0L)
-                    {
-                        resource.setLength((media.getSource().getDuration() + 999L) / 1000L);
-                    }
+        return media;
+    }
 
-                    resources.add(resource); // Shall not throw UnsupportedOperationException, ClassCastException, NullPointerException, IllegalArgumentException.
-                }
-            }
+    /**
+     * Builds a PLS resource from the specified media.
+     * @param media a media with a source. Shall not be <code>null</code>.
+     * @return a new resource. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>media</code> is <code>null</code>, or if it has no source.
+     */
+    private static Resource toResource(final Media media)
+    {
+        final Resource ret = new Resource();
+        ret.setLocation(media.getSource().toString());
+
+        if (media.getSource().getDuration() >= 0L)
+        {
+            ret.setLength((media.getSource().getDuration() + 999L) / 1000L);
         }
+
+        return ret;
     }
 }
@@ -0,0 +1,498 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.pls;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+
+import org.apache.commons.logging.Log;
+
+import chameleon.playlist.m3u.Resource;
+
+/**
+ * Reads the resource fields of a PLS playlist one after the other.
+ * The other keywords (number of entries, version) are handled internally.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+final class PLSReader
+{
+    /**
+     * The "FileN" resource field.
+     */
+    private static final int FILE_FIELD = 0;
+
+    /**
+     * The "TitleN" resource field.
+     */
+    private static final int TITLE_FIELD = 1;
+
+    /**
+     * The "LengthN" resource field.
+     */
+    private static final int LENGTH_FIELD = 2;
+
+    /**
+     * The underlying reader.
+     */
+    private final BufferedReader _reader;
+
+    /**
+     * The logger to use.
+     */
+    private final Log _logger;
+
+    /**
+     * Specifies if the PLS marker string has been found.
+     */
+    private boolean _magicFound = false;
+
+    /**
+     * Specifies if the playlist has been detected as malformed.
+     */
+    private boolean _malformed = false;
+
+    /**
+     * The number of entries, or -1 if not specified so far.
+     */
+    private int _numberOfEntries = -1;
+
+    /**
+     * The zero-based index of the resource concerned by the last field read.
+     */
+    private int _resourceIndex = -1;
+
+    /**
+     * The type of the last field read.
+     */
+    private int _field = -1;
+
+    /**
+     * The value of the last field read.
+     */
+    private String _value = null;
+
+    /**
+     * The length of the last field read, if it is a "LengthN" field.
+     */
+    private long _length = -1L;
+
+    /**
+     * Builds a new PLS reader.
+     * @param in an input stream. Shall not be <code>null</code>.
+     * @param encoding the content encoding of the input resource, or <code>null</code> if not known.
+     * @param logger the logger to use. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>in</code> is <code>null</code>.
+     * @throws UnsupportedEncodingException if the specified encoding is not supported.
+     */
+    PLSReader(final InputStream in, final String encoding, final Log logger) throws UnsupportedEncodingException
+    {
+        String enc = encoding;
+
+        if (enc == null)
+        {
+            enc = "UTF-8"; // FIXME US-ASCII?
+        }
+
+        _reader = new BufferedReader(new InputStreamReader(in, enc)); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
+        _logger = logger;
+    }
+
+    /**
+     * Reads the next resource field of the playlist.
+     * The keywords are recognized in place, without building any intermediate string: only the values of the "FileN" and "TitleN" fields are extracted.
+     * @return <code>true</code> if a resource field has been read, <code>false</code> if the end of the playlist has been reached, or if the playlist is malformed.
+     * @throws IllegalArgumentException if the contents don't look like a PLS playlist.
+     * @throws IOException if an I/O error occurs.
+     * @see #isMalformed
+     * @see #getResourceIndex
+     * @see #applyTo
+     */
+    boolean readField() throws IOException
+    {
+        boolean ret = false;
+        String line;
+
+        while (!ret && !_malformed && ((line = _reader.readLine()) != null)) // May throw IOException.
+        {
+            // Same as String.trim().
+            final int start = trimStart(line, 0, line.length());
+            final int end = trimEnd(line, start, line.length());
+
+            if (start < end)
+            {
+                // First the PLS marker string.
+                if (!_magicFound)
+                {
+                    if (((end - start) != 10) || !line.regionMatches(true, start, "[playlist]", 0, 10)) // NOPMD Deeply nested if..then statements are hard to read
+                    {
+                        throw new IllegalArgumentException("Not a PLS playlist format");
+                    }
+
+                    _magicFound = true;
+                    continue;
+                }
+
+                final int idx = line.indexOf('=', start);
+
+                if (idx <= start)
+                {
+                    _logger.error("Malformed PLS playlist");
+                    _malformed = true;
+                    break;
+                }
+
+                final int keyEnd = trimEnd(line, start, idx);
+                final int valueStart = trimStart(line, idx + 1, end);
+
+                if (isKeyword(line, start, keyEnd, "numberofentries"))
+                {
+                    readNumberOfEntries(line, valueStart, end);
+                }
+                else if (startsWithKeyword(line, start, keyEnd, "file"))
+                {
+                    ret = readResourceIndex(line, start + 4, keyEnd, FILE_FIELD);
+
+                    if (ret)
+                    {
+                        _value = line.substring(valueStart, end); // Shall not throw IndexOutOfBoundsException.
+                    }
+                }
+                // The Title field is optional.
+                else if (startsWithKeyword(line, start, keyEnd, "title"))
+                {
+                    ret = readResourceIndex(line, start + 5, keyEnd, TITLE_FIELD);
+
+                    if (ret)
+                    {
+                        _value = line.substring(valueStart, end); // Shall not throw IndexOutOfBoundsException.
+                    }
+                }
+                // The Length field is either the length of the recording in seconds or -1 (unspecified or live stream).
+                else if (startsWithKeyword(line, start, keyEnd, "length"))
+                {
+                    ret = readResourceIndex(line, start + 6, keyEnd, LENGTH_FIELD);
+
+                    if (ret)
+                    {
+                        try
+                        {
+                            _length = parseLong(line, valueStart, end); // May throw NumberFormatException.
+                        }
+                        catch (NumberFormatException e)
+                        {
+                            _logger.error(e.toString());
+                            _malformed = true;
+                            ret = false;
+                        }
+                    }
+                }
+                else if (isKeyword(line, start, keyEnd, "version"))
+                {
+                    // If present, shall be "2".
+                    if (((end - valueStart) != 1) || (line.charAt(valueStart) != '2'))
+                    {
+                        _logger.error("Unknown PLS version " + line.substring(valueStart, end));
+                        _malformed = true;
+                    }
+                }
+                else // FIXME "PlaylistName" ???
+                {
+                    _logger.warn("Unknown PLS keyword " + line.substring(start, keyEnd).toLowerCase());
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Handles the "NumberOfEntries" keyword.
+     * @param line the current line. Shall not be <code>null</code>.
+     * @param start the offset of the first character of the keyword value.
+     * @param end the offset following the last character of the keyword value.
+     */
+    private void readNumberOfEntries(final String line, final int start, final int end)
+    {
+        int tmpValue = -1;
+
+        try
+        {
+            tmpValue = parseInt(line, start, end); // May throw NumberFormatException.
+        }
+        catch (NumberFormatException e)
+        {
+            _logger.error(e.toString());
+            _malformed = true;
+            return;
+        }
+
+        if (tmpValue < 0)
+        {
+            _logger.warn("Invalid NumberOfEntries in PLS playlist: " + tmpValue);
+            _malformed = true;
+        }
+        // Test if already found.
+        else if ((_numberOfEntries >= 0) && (_numberOfEntries != tmpValue))
+        {
+            _logger.error("PLS playlist number of entries already specified with a different value");
+            _malformed = true;
+        }
+        else
+        {
+            _numberOfEntries = tmpValue;
+        }
+    }
+
+    /**
+     * Records the resource field being read.
+     * @param line the current line. Shall not be <code>null</code>.
+     * @param start the offset of the first character of the one-based index of the resource.
+     * @param end the offset following the last character of the index.
+     * @param field the type of resource field.
+     * @return <code>true</code> if the field has been recorded, <code>false</code> if the index is malformed.
+     */
+    private boolean readResourceIndex(final String line, final int start, final int end, final int field)
+    {
+        boolean ret = true;
+
+        try
+        {
+            _resourceIndex = parseInt(line, start, end) - 1; // May throw NumberFormatException.
+            _field = field;
+        }
+        catch (NumberFormatException e)
+        {
+            _logger.error(e.toString());
+            _malformed = true;
+            ret = false;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the zero-based index of the resource concerned by the last field read.
+     * @return a resource index.
+     * @see #readField
+     */
+    int getResourceIndex()
+    {
+        return _resourceIndex;
+    }
+
+    /**
+     * Stores the last field read in the specified resource.
+     * @param resource the resource at the {@link #getResourceIndex index} of the last field read. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>resource</code> is <code>null</code>.
+     * @see #readField
+     */
+    void applyTo(final Resource resource)
+    {
+        switch (_field)
+        {
+            case FILE_FIELD:
+                resource.setLocation(_value); // Throws NullPointerException if resource is null.
+                break;
+            case TITLE_FIELD:
+                resource.setName(_value); // Throws NullPointerException if resource is null.
+                break;
+            default:
+                resource.setLength(_length); // Throws NullPointerException if resource is null.
+                break;
+        }
+    }
+
+    /**
+     * Specifies if the playlist has been detected as malformed.
+     * In this case, the error has already been logged.
+     * @return the malformed indicator.
+     */
+    boolean isMalformed()
+    {
+        return _malformed;
+    }
+
+    /**
+     * Returns the number of entries specified so far in the playlist.
+     * @return a number of entries, or -1 if not specified so far.
+     */
+    int getNumberOfEntries()
+    {
+        return _numberOfEntries;
+    }
+
+    /**
+     * Specifies if the specified part of a line is the specified keyword, ignoring the case of ASCII letters.
+     * @param line a line. Shall not be <code>null</code>.
+     * @param start the offset of the first character of the key.
+     * @param end the offset following the last character of the key.
+     * @param keyword a keyword, in lower case. Shall not be <code>null</code>.
+     * @return <code>true</code> if the key is the keyword.
+     */
+    private static boolean isKeyword(final String line, final int start, final int end, final String keyword)
+    {
+        return ((end - start) == keyword.length()) && startsWithKeyword(line, start, end, keyword);
+    }
+
+    /**
+     * Specifies if the specified part of a line begins with the specified keyword, ignoring the case of ASCII letters.
+     * @param line a line. Shall not be <code>null</code>.
+     * @param start the offset of the first character of the key.
+     * @param end the offset following the last character of the key.
+     * @param keyword a keyword, in lower case. Shall not be <code>null</code>.
+     * @return <code>true</code> if the key begins with the keyword.
+     */
+    private static boolean startsWithKeyword(final String line, final int start, final int end, final String keyword)
+    {
+        boolean ret = (end - start) >= keyword.length();
+
+        for (int i = 0; ret && (i < keyword.length()); i++)
+        {
+            char c = line.charAt(start + i);
+
+            if ((c >= 'A') && (c <= 'Z'))
+            {
+                c += 'a' - 'A';
+            }
+
+            ret = (c == keyword.charAt(i));
+        }
+
+        return ret;
+    }
+
+    /**
+     * Parses the specified part of a line as an integer, as {@link Integer#parseInt(String)} would do.
+     * @param line a line. Shall not be <code>null</code>.
+     * @param start the offset of the first character of the number.
+     * @param end the offset following the last character of the number.
+     * @return the number value.
+     * @throws NumberFormatException if the number is malformed.
+     */
+    private static int parseInt(final String line, final int start, final int end)
+    {
+        final long ret = parseLong(line, start, end); // May throw NumberFormatException.
+
+        if ((ret < Integer.MIN_VALUE) || (ret > Integer.MAX_VALUE))
+        {
+            throw new NumberFormatException("For input string: \"" + line.substring(start, end) + '"');
+        }
+
+        return (int) ret;
+    }
+
+    /**
+     * Parses the specified part of a line as a long integer, as {@link Long#parseLong(String)} would do.
+     * An optional sign followed by at most 18 ASCII digits is parsed in place, and anything else is left to {@link Long#parseLong(String)}.
+     * @param line a line. Shall not be <code>null</code>.
+     * @param start the offset of the first character of the number.
+     * @param end the offset following the last character of the number.
+     * @return the number value.
+     * @throws NumberFormatException if the number is malformed.
+     */
+    private static long parseLong(final String line, final int start, final int end)
+    {
+        int i = start;
+        final boolean negative = (i < end) && (line.charAt(i) == '-');
+
+        if (negative || ((i < end) && (line.charAt(i) == '+')))
+        {
+            i++;
+        }
+
+        boolean plain = (i < end) && ((end - i) <= 18);
+        long ret = 0L;
+
+        for (; plain && (i < end); i++)
+        {
+            final char c = line.charAt(i);
+            plain = (c >= '0') && (c <= '9');
+            ret = (ret * 10L) + (c - '0');
+        }
+
+        if (plain)
+        {
+            ret = negative ? -ret : ret;
+        }
+        else
+        {
+            ret = Long.parseLong(line.substring(start, end)); // May throw NumberFormatException.
+        }
+
+        return ret;
+    }
+
+    /**
+     * Skips the leading white spaces of the specified part of a line, as {@link String#trim} would do.
+     * @param line a line. Shall not be <code>null</code>.
+     * @param start the offset of the first character.
+     * @param end the offset following the last character.
+     * @return the offset of the first character which is not a white space, or <code>end</code>.
+     */
+    private static int trimStart(final String line, final int start, final int end)
+    {
+        int ret = start;
+
+        while ((ret < end) && (line.charAt(ret) <= ' '))
+        {
+            ret++;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Skips the trailing white spaces of the specified part of a line, as {@link String#trim} would do.
+     * @param line a line. Shall not be <code>null</code>.
+     * @param start the offset of the first character.
+     * @param end the offset following the last character.
+     * @return the offset following the last character which is not a white space, or <code>start</code>.
+     */
+    private static int trimEnd(final String line, final int start, final int end)
+    {
+        int ret = end;
+
+        while ((ret > start) && (line.charAt(ret - 1) <= ' '))
+        {
+            ret--;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Closes this reader, and the underlying input stream.
+     * @throws IOException if an I/O error occurs.
+     */
+    void close() throws IOException
+    {
+        _reader.close(); // May throw IOException.
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.pls;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+
+import chameleon.playlist.m3u.Resource;
+
+/**
+ * Writes the resources of a PLS playlist one after the other.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+final class PLSWriter
+{
+    /**
+     * The underlying writer.
+     */
+    private final BufferedWriter _writer;
+
+    /**
+     * The one-based index of the next resource to write.
+     */
+    private long _index = 1L;
+
+    /**
+     * Builds a new PLS writer.
+     * @param out an output stream. Shall not be <code>null</code>.
+     * @param encoding the content encoding of the output resource, or <code>null</code> if not known.
+     * @throws NullPointerException if <code>out</code> is <code>null</code>.
+     * @throws UnsupportedEncodingException if the specified encoding is not supported.
+     */
+    PLSWriter(final OutputStream out, final String encoding) throws UnsupportedEncodingException
+    {
+        String enc = encoding;
+
+        if (enc == null)
+        {
+            enc = "UTF-8"; // FIXME US-ASCII?
+        }
+
+        _writer = new BufferedWriter(new OutputStreamWriter(out, enc)); // Throws NullPointerException if out is null. May throw UnsupportedEncodingException.
+    }
+
+    /**
+     * Writes the playlist header.
+     * @param numberOfEntries the number of resources which will be written.
+     * @throws IOException if an I/O error occurs.
+     */
+    void writeHeader(final long numberOfEntries) throws IOException
+    {
+        _writer.write("[Playlist]"); // May throw IOException.
+        _writer.newLine(); // May throw IOException.
+
+        _writer.write("NumberOfEntries="); // May throw IOException.
+        _writer.write(Long.toString(numberOfEntries)); // May throw IOException.
+        _writer.newLine(); // May throw IOException.
+    }
+
+    /**
+     * Writes the specified resource.
+     * @param resource a resource. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>resource</code> is <code>null</code>, or if its location is <code>null</code>.
+     * @throws IOException if an I/O error occurs.
+     */
+    void write(final Resource resource) throws IOException
+    {
+        final String index = Long.toString(_index);
+
+        _writer.write("File"); // May throw IOException.
+        _writer.write(index); // May throw IOException.
+        _writer.write("="); // May throw IOException.
+        _writer.write(resource.getLocation()); // Throws NullPointerException if resource is null. May throw NullPointerException, IOException.
+        _writer.newLine(); // May throw IOException.
+
+        if (resource.getName() != null)
+        {
+            _writer.write("Title"); // May throw IOException.
+            _writer.write(index); // May throw IOException.
+            _writer.write("="); // May throw IOException.
+            _writer.write(resource.getName()); // May throw IOException.
+            _writer.newLine(); // May throw IOException.
+        }
+
+        if (resource.getLength() >= 0L)
+        {
+            _writer.write("Length"); // May throw IOException.
+            _writer.write(index); // May throw IOException.
+            _writer.write("="); // May throw IOException.
+            _writer.write(Long.toString(resource.getLength())); // May throw IOException.
+            _writer.newLine(); // May throw IOException.
+        }
+
+        _index++;
+    }
+
+    /**
+     * Writes the playlist footer, and flushes this writer and the underlying output stream.
+     * @throws IOException if an I/O error occurs.
+     */
+    void writeFooter() throws IOException
+    {
+        _writer.write("Version=2"); // May throw IOException.
+        _writer.newLine(); // May throw IOException.
+
+        _writer.flush(); // May throw IOException.
+    }
+}
@@ -31,7 +31,6 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
@@ -135,8 +134,7 @@ public class Package implements SpecificPlaylist
         }
 
         // Marshal the playlist.
-        final JAXBContext jc = JAXBContext.newInstance("chameleon.playlist.rmp"); // May throw JAXBException.
-        final Marshaller marshaller = jc.createMarshaller(); // May throw JAXBException.
+        final Marshaller marshaller = RmpContext.getMarshaller(); // May throw JAXBException.
         marshaller.setProperty(Marshaller.JAXB_ENCODING, enc); // May throw PropertyException. Shall not throw IllegalArgumentException.
         // Specifies whether XML documents (as generated at marshalling) should use indentation or not. Default is false.
         marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE); // Shall not throw PropertyException, IllegalArgumentException.
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.rmp;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+/**
+ * The JAXB context of the RMP classes.
+ * Creating a JAXB context is expensive, so it is built once, on first use, and shared by all the threads.
+ * As the marshallers and unmarshallers are not thread-safe, each thread owns its own instances, which are reused from one document to the next.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+final class RmpContext
+{
+    /**
+     * The shared JAXB context, or <code>null</code> if not yet built.
+     */
+    private static volatile JAXBContext _context = null;
+
+    /**
+     * The marshaller owned by each thread.
+     */
+    private static final ThreadLocal<Marshaller> MARSHALLERS = new ThreadLocal<Marshaller>();
+
+    /**
+     * The unmarshaller owned by each thread.
+     */
+    private static final ThreadLocal<Unmarshaller> UNMARSHALLERS = new ThreadLocal<Unmarshaller>();
+
+    /**
+     * Returns the JAXB context of the RMP classes, building it if necessary.
+     * A failed creation is not remembered, and will be attempted again on the next call.
+     * @return a JAXB context. Shall not be <code>null</code>.
+     * @throws JAXBException if the JAXB context cannot be created.
+     */
+    static JAXBContext getContext() throws JAXBException
+    {
+        JAXBContext ret = _context;
+
+        if (ret == null)
+        {
+            synchronized(RmpContext.class)
+            {
+                ret = _context;
+
+                if (ret == null)
+                {
+                    ret = JAXBContext.newInstance("chameleon.playlist.rmp", RmpContext.class.getClassLoader()); // May throw JAXBException.
+                    _context = ret;
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the JAXB marshaller owned by the calling thread.
+     * It shall not be shared with other threads, and its properties may be overridden by the next marshalling.
+     * @return a JAXB marshaller. Shall not be <code>null</code>.
+     * @throws JAXBException if the JAXB context or the marshaller cannot be created.
+     */
+    static Marshaller getMarshaller() throws JAXBException
+    {
+        Marshaller ret = MARSHALLERS.get();
+
+        if (ret == null)
+        {
+            ret = getContext().createMarshaller(); // May throw JAXBException.
+            MARSHALLERS.set(ret);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the JAXB unmarshaller owned by the calling thread.
+     * It shall not be shared with other threads.
+     * @return a JAXB unmarshaller. Shall not be <code>null</code>.
+     * @throws JAXBException if the JAXB context or the unmarshaller cannot be created.
+     */
+    static Unmarshaller getUnmarshaller() throws JAXBException
+    {
+        Unmarshaller ret = UNMARSHALLERS.get();
+
+        if (ret == null)
+        {
+            ret = getContext().createUnmarshaller(); // May throw JAXBException.
+            UNMARSHALLERS.set(ret);
+        }
+
+        return ret;
+    }
+
+    /**
+     * The default no-arg constructor shall not be accessible.
+     */
+    private RmpContext()
+    {
+    }
+}
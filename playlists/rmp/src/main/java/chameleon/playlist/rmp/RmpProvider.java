@@ -25,24 +25,26 @@
 package chameleon.playlist.rmp;
 
 import java.io.InputStream;
-import java.io.StringReader;
+import java.io.InputStreamReader;
+import java.io.Reader;
 
 import chameleon.Chameleon;
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.Unmarshaller;
 
 import org.apache.commons.logging.Log;
 
 import chameleon.content.type.ContentType;
-import chameleon.io.IOUtils;
 import chameleon.player.PlayerSupport;
 import chameleon.playlist.AbstractPlaylistComponent;
 import chameleon.playlist.Media;
 import chameleon.playlist.Parallel;
 import chameleon.playlist.Playlist;
+import chameleon.playlist.PlaylistHeader;
 import chameleon.playlist.Sequence;
 import chameleon.playlist.SpecificPlaylist;
+import chameleon.playlist.SpecificPlaylistProbe;
 import chameleon.playlist.SpecificPlaylistProvider;
+import chameleon.xml.AmpersandRepairReader;
 import chameleon.xml.Version;
 
 import static chameleon.Chameleon.*;
@@ -53,7 +55,7 @@ import static chameleon.Chameleon.*;
  * @author Christophe Delory
  * @since 0.3.0
  */
-public class RmpProvider implements SpecificPlaylistProvider
+public class RmpProvider implements SpecificPlaylistProvider, SpecificPlaylistProbe
 {
     /**
      * A list of compatible content types.
@@ -81,6 +83,12 @@ public class RmpProvider implements SpecificPlaylistProvider
         return FILETYPES.clone();
     }
 
+    @Override
+    public int probe(final PlaylistHeader header)
+    {
+        return header.matchRootElement("UTF-8", "PACKAGE", false, null);
+    }
+
     @Override
     public SpecificPlaylist readFrom(final InputStream in, final String encoding, final Log logger) throws Exception
     {
@@ -91,18 +99,11 @@ public class RmpProvider implements SpecificPlaylistProvider
             enc = "UTF-8";
         }
 
-        String str = IOUtils.toString(in, enc); // May throw IOException. Throws NullPointerException if in is null.
-
-        // Replace all occurrences of a single '&' with "&amp;" (or leave this construct as is).
-        // First replace blindly all '&' to its corresponding character reference.
-        str = str.replace("&", "&amp;");
-        // Then restore any existing character reference.
-        str = str.replaceAll("&amp;([a-zA-Z0-9#]+;)", "&$1"); // Shall not throw PatternSyntaxException.
+        // Replace all occurrences of a single '&' with "&amp;" (or leave this construct as is), while reading.
+        final Reader reader = new AmpersandRepairReader(new InputStreamReader(in, enc)); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
 
         // Unmarshal the RMP playlist.
-        final StringReader reader = new StringReader(str);
-        final JAXBContext jc = JAXBContext.newInstance("chameleon.playlist.rmp"); // May throw JAXBException.
-        final Unmarshaller unmarshaller = jc.createUnmarshaller(); // May throw JAXBException.
+        final Unmarshaller unmarshaller = RmpContext.getUnmarshaller(); // May throw JAXBException.
         final SpecificPlaylist ret = (SpecificPlaylist) unmarshaller.unmarshal(reader); // May throw JAXBException, UnmarshalException. Shall not throw IllegalArgumentException.
         ret.setProvider(this);
 
@@ -153,12 +154,11 @@ public class RmpProvider implements SpecificPlaylistProvider
                 throw new IllegalArgumentException("A RMP playlist cannot handle a sequence repeated indefinitely");
             }
 
-            final AbstractPlaylistComponent[] components = sequence.getComponents();
-
             for (int iter = 0; iter < sequence.getRepeatCount(); iter++)
             {
-                for (AbstractPlaylistComponent c : components)
+                for (int i = 0; i < sequence.getComponentsNumber(); i++)
                 {
+                    final AbstractPlaylistComponent c = sequence.componentAt(i); // Shall not throw IndexOutOfBoundsException.
                     addToPlaylist(trackList, c); // May throw Exception.
                 }
             }
@@ -25,7 +25,6 @@
 package chameleon.playlist.rss;
 
 import java.io.OutputStream;
-import java.io.StringWriter;
 
 import chameleon.playlist.Media;
 import chameleon.playlist.Playlist;
@@ -72,23 +71,10 @@ public class RSSPlaylist implements SpecificPlaylist
     public void writeTo(final OutputStream out, final String encoding) throws Exception
     {
         // Marshal the RSS document.
-        final StringWriter writer = new StringWriter();
         final XmlSerializer serializer = XmlSerializer.getMapping("chameleon/rss"); // May throw Exception.
-        // Specifies whether XML documents (as generated at marshalling) should use indentation or not. Default is false.
-        serializer.getMarshaller().setProperty("org.exolab.castor.indent", "true");
         //serializer.getMarshaller().setNamespaceMapping("", "http://purl.org/rss/1.0/modules/content/");
         serializer.getMarshaller().setNamespaceMapping("media", "http://search.yahoo.com/mrss/");
-        serializer.marshal(_rss, writer, false); // May throw Exception.
-
-        String enc = encoding;
-
-        if (enc == null)
-        {
-            enc = "UTF-8";
-        }
-
-        final byte[] bytes = writer.toString().getBytes(enc); // May throw UnsupportedEncodingException.
-        out.write(bytes); // Throws NullPointerException if out is null. May throw IOException.
+        serializer.marshal(_rss, out, encoding, false, true); // Throws NullPointerException if out is null. May throw Exception.
         out.flush(); // May throw IOException.
     }
 
@@ -26,7 +26,8 @@ package chameleon.playlist.rss;
 
 import java.io.File;
 import java.io.InputStream;
-import java.io.StringReader;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.URI;
 import java.util.Date;
 
@@ -34,20 +35,22 @@ import chameleon.Chameleon;
 import org.apache.commons.logging.Log;
 
 import chameleon.content.type.ContentType;
-import chameleon.io.IOUtils;
 import chameleon.player.PlayerSupport;
 import chameleon.playlist.AbstractPlaylistComponent;
 import chameleon.playlist.Media;
 import chameleon.playlist.Parallel;
 import chameleon.playlist.Playlist;
+import chameleon.playlist.PlaylistHeader;
 import chameleon.playlist.Sequence;
 import chameleon.playlist.SpecificPlaylist;
+import chameleon.playlist.SpecificPlaylistProbe;
 import chameleon.playlist.SpecificPlaylistProvider;
 import chameleon.rss.Channel;
 import chameleon.rss.Enclosure;
 import chameleon.rss.Item;
 import chameleon.rss.RSS;
 import chameleon.rss.media.Content;
+import chameleon.xml.AmpersandRepairReader;
 import chameleon.xml.Version;
 import chameleon.xml.XmlSerializer;
 
@@ -56,7 +59,7 @@ import chameleon.xml.XmlSerializer;
  * @version $Revision: 92 $
  * @author Christophe Delory
  */
-public class RSSProvider implements SpecificPlaylistProvider
+public class RSSProvider implements SpecificPlaylistProvider, SpecificPlaylistProbe
 {
     /**
      * A list of compatible content types.
@@ -88,6 +91,12 @@ public class RSSProvider implements SpecificPlaylistProvider
         return FILETYPES.clone();
     }
 
+    @Override
+    public int probe(final PlaylistHeader header)
+    {
+        return header.matchRootElement("UTF-8", "rss", false, null);
+    }
+
     @Override
     public SpecificPlaylist readFrom(final InputStream in, final String encoding, final Log logger) throws Exception
     {
@@ -98,20 +107,13 @@ public class RSSProvider implements SpecificPlaylistProvider
             enc = "UTF-8";
         }
 
-        String str = IOUtils.toString(in, enc); // May throw IOException. Throws NullPointerException if in is null.
-
-        // Replace all occurrences of a single '&' with "&amp;" (or leave this construct as is).
-        // First replace blindly all '&' to its corresponding character reference.
-        str = str.replace("&", "&amp;");
-        // Then restore any existing character reference.
-        str = str.replaceAll("&amp;([a-zA-Z0-9#]+;)", "&$1"); // Shall not throw PatternSyntaxException.
+        // Replace all occurrences of a single '&' with "&amp;" (or leave this construct as is), while reading.
+        final Reader reader = new AmpersandRepairReader(new InputStreamReader(in, enc)); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
 
         // Unmarshal the SMIL playlist.
         final XmlSerializer serializer = XmlSerializer.getMapping("chameleon/rss"); // May throw Exception.
-        serializer.getUnmarshaller().setIgnoreExtraElements(true);
 
-        final StringReader reader = new StringReader(str);
-        final RSS rss = (RSS) serializer.unmarshal(reader); // May throw Exception.
+        final RSS rss = (RSS) serializer.unmarshal(reader, true); // May throw Exception.
 
         final RSSPlaylist ret = new RSSPlaylist();
         ret.setProvider(this);
@@ -162,12 +164,11 @@ public class RSSProvider implements SpecificPlaylistProvider
                 throw new IllegalArgumentException("A RSS playlist cannot handle a sequence repeated indefinitely");
             }
 
-            final AbstractPlaylistComponent[] components = sequence.getComponents();
-
             for (int iter = 0; iter < sequence.getRepeatCount(); iter++)
             {
-                for (AbstractPlaylistComponent c : components)
+                for (int i = 0; i < sequence.getComponentsNumber(); i++)
                 {
+                    final AbstractPlaylistComponent c = sequence.componentAt(i); // Shall not throw IndexOutOfBoundsException.
                     addToPlaylist(channel, c); // May throw Exception.
                 }
             }
@@ -25,20 +25,23 @@
 package chameleon.playlist.smil;
 
 import java.io.InputStream;
-import java.io.StringReader;
+import java.io.InputStreamReader;
+import java.io.Reader;
 
 import org.apache.commons.logging.Log;
 
 import chameleon.content.type.ContentType;
-import chameleon.io.IOUtils;
 import chameleon.player.PlayerSupport;
 import chameleon.playlist.AbstractPlaylistComponent;
 import chameleon.playlist.Media;
 import chameleon.playlist.Parallel;
 import chameleon.playlist.Playlist;
+import chameleon.playlist.PlaylistHeader;
 import chameleon.playlist.Sequence;
 import chameleon.playlist.SpecificPlaylist;
+import chameleon.playlist.SpecificPlaylistProbe;
 import chameleon.playlist.SpecificPlaylistProvider;
+import chameleon.xml.AmpersandRepairReader;
 import chameleon.xml.XmlSerializer;
 
 /**
@@ -47,7 +50,7 @@ import chameleon.xml.XmlSerializer;
  * @version $Revision: 90 $
  * @author Christophe Delory
  */
-public class SmilProvider implements SpecificPlaylistProvider
+public class SmilProvider implements SpecificPlaylistProvider, SpecificPlaylistProbe
 {
     /**
      * A list of compatible content types.
@@ -77,6 +80,20 @@ public class SmilProvider implements SpecificPlaylistProvider
         return FILETYPES.clone();
     }
 
+    @Override
+    public int probe(final PlaylistHeader header)
+    {
+        int ret = header.matchRootElement("UTF-8", "smil", false, null);
+
+        // A WPL playlist is also a SMIL document, but begins with a "wpl" processing instruction.
+        if ((ret == SpecificPlaylistProbe.CERTAIN_MATCH) && (header.getText("UTF-8").indexOf("<?wpl") >= 0)) // Shall not throw NullPointerException.
+        {
+            ret = SpecificPlaylistProbe.LIKELY_MATCH;
+        }
+
+        return ret;
+    }
+
     @Override
     public SpecificPlaylist readFrom(final InputStream in, final String encoding, final Log logger) throws Exception
     {
@@ -87,20 +104,13 @@ public class SmilProvider implements SpecificPlaylistProvider
             enc = "UTF-8";
         }
 
-        String str = IOUtils.toString(in, enc); // May throw IOException. Throws NullPointerException if in is null.
-
-        // Replace all occurrences of a single '&' with "&amp;" (or leave this construct as is).
-        // First replace blindly all '&' to its corresponding character reference.
-        str = str.replace("&", "&amp;");
-        // Then restore any existing character reference.
-        str = str.replaceAll("&amp;([a-zA-Z0-9#]+;)", "&$1"); // Shall not throw PatternSyntaxException.
+        // Replace all occurrences of a single '&' with "&amp;" (or leave this construct as is), while reading.
+        final Reader reader = new AmpersandRepairReader(new InputStreamReader(in, enc)); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
 
         // Unmarshal the SMIL playlist.
         final XmlSerializer serializer = XmlSerializer.getMapping("chameleon/playlist/smil"); // May throw Exception.
-        serializer.getUnmarshaller().setIgnoreExtraElements(true); // Many SMIL elements are not implemented yet.
 
-        final StringReader reader = new StringReader(str);
-        final SpecificPlaylist ret = (SpecificPlaylist) serializer.unmarshal(reader); // May throw Exception.
+        final SpecificPlaylist ret = (SpecificPlaylist) serializer.unmarshal(reader, true); // May throw Exception. Many SMIL elements are not implemented yet.
         ret.setProvider(this);
 
         return ret;
@@ -116,10 +126,9 @@ public class SmilProvider implements SpecificPlaylistProvider
         body.setRepeatCount(Float.valueOf((float) playlist.getRootSequence().getRepeatCount()));
         ret.setBody(body);
 
-        final AbstractPlaylistComponent[] components = playlist.getRootSequence().getComponents();
-
-        for (AbstractPlaylistComponent component : components)
+        for (int iter = 0; iter < playlist.getRootSequence().getComponentsNumber(); iter++)
         {
+            final AbstractPlaylistComponent component = playlist.getRootSequence().componentAt(iter); // Shall not throw IndexOutOfBoundsException.
             addToPlaylist(body, component);
         }
 
@@ -142,10 +151,9 @@ public class SmilProvider implements SpecificPlaylistProvider
             seq.setRepeatCount(Float.valueOf((float) sequence.getRepeatCount()));
             timingElement.addSmilElement(seq);
 
-            final AbstractPlaylistComponent[] components = sequence.getComponents();
-
-            for (AbstractPlaylistComponent c : components)
+            for (int iter = 0; iter < sequence.getComponentsNumber(); iter++)
             {
+                final AbstractPlaylistComponent c = sequence.componentAt(iter); // Shall not throw IndexOutOfBoundsException.
                 addToPlaylist(seq, c);
             }
         }
@@ -156,10 +164,9 @@ public class SmilProvider implements SpecificPlaylistProvider
             par.setRepeatCount(Float.valueOf((float) parallel.getRepeatCount()));
             timingElement.addSmilElement(par);
 
-            final AbstractPlaylistComponent[] components = parallel.getComponents();
-
-            for (AbstractPlaylistComponent c : components)
+            for (int iter = 0; iter < parallel.getComponentsNumber(); iter++)
             {
+                final AbstractPlaylistComponent c = parallel.componentAt(iter); // Shall not throw IndexOutOfBoundsException.
                 addToPlaylist(par, c);
             }
         }
@@ -0,0 +1,604 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<!--
+Copyright (c) 2008, Christophe Delory
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+  * Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+  * Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+-->
+<!--
+Generates the StAX binding (chameleon.xml.XmlBinding) of a package from its Castor mapping file,
+as produced by xdoclet2 from the @castor.* tags.
+Only a subset of the mapping is supported: simple (string, integer) attributes and elements,
+class-typed elements, collections of class-typed elements, optionally wrapped in a location element,
+and the text content of a class without elements.
+Anything else stops the generation.
+-->
+<xsl:stylesheet version="1.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+
+    <xsl:output method="text" encoding="UTF-8"/>
+
+    <!-- The package of the mapped classes, with slashes as separators. -->
+    <xsl:param name="packagePath"/>
+
+    <xsl:variable name="package" select="translate($packagePath, '/', '.')"/>
+
+    <xsl:template match="/mapping">
+        <xsl:if test="string-length($package) = 0">
+            <xsl:message terminate="yes">The packagePath parameter is missing</xsl:message>
+        </xsl:if>
+        <xsl:text>// Generated from the Castor mapping file by stax.xsl. Do not edit.
+package </xsl:text><xsl:value-of select="$package"/><xsl:text>;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import chameleon.xml.XmlBinding;
+import chameleon.xml.XmlBindingReader;
+
+/**
+ * The StAX binding of the classes mapped in this package.
+ */
+public final class StaxBinding extends XmlBinding
+{
+</xsl:text>
+        <xsl:for-each select="class[field/bind-xml/@node = 'attribute']">
+            <xsl:text>    /**
+     * The attribute names bound to {@link </xsl:text><xsl:apply-templates select="." mode="simple-name"/><xsl:text>}, in the mapping order.
+     */
+    private static final String[] </xsl:text><xsl:apply-templates select="." mode="attributes-constant"/><xsl:text> = { </xsl:text>
+            <xsl:for-each select="field[bind-xml/@node = 'attribute']">
+                <xsl:if test="position() &gt; 1">
+                    <xsl:text>, </xsl:text>
+                </xsl:if>
+                <xsl:text>"</xsl:text><xsl:value-of select="bind-xml/@name"/><xsl:text>"</xsl:text>
+            </xsl:for-each>
+            <xsl:text> };
+
+</xsl:text>
+        </xsl:for-each>
+        <xsl:text>    @Override
+    protected Object read(final XmlBindingReader reader) throws XMLStreamException
+    {
+        final String name = reader.getLocalName();
+        Object ret = null;
+</xsl:text>
+        <xsl:for-each select="class">
+            <xsl:text>
+        </xsl:text>
+            <xsl:if test="position() &gt; 1">
+                <xsl:text>else </xsl:text>
+            </xsl:if>
+            <xsl:text>if ("</xsl:text><xsl:value-of select="map-to/@xml"/><xsl:text>".equals(name))
+        {
+            ret = read</xsl:text><xsl:apply-templates select="." mode="simple-name"/><xsl:text>(reader);
+        }</xsl:text>
+        </xsl:for-each>
+        <xsl:text>
+
+        return ret;
+    }
+
+    @Override
+    public void marshal(final Object o, final XMLStreamWriter writer) throws XMLStreamException
+    {
+        final Class&lt;?&gt; type = o.getClass();
+</xsl:text>
+        <xsl:for-each select="class">
+            <xsl:variable name="simpleName">
+                <xsl:apply-templates select="." mode="simple-name"/>
+            </xsl:variable>
+            <xsl:text>
+        </xsl:text>
+            <xsl:if test="position() &gt; 1">
+                <xsl:text>else </xsl:text>
+            </xsl:if>
+            <xsl:text>if (type == </xsl:text><xsl:value-of select="$simpleName"/><xsl:text>.class)
+        {
+            write</xsl:text><xsl:value-of select="$simpleName"/><xsl:text>((</xsl:text><xsl:value-of select="$simpleName"/><xsl:text>) o, writer, "</xsl:text><xsl:value-of select="map-to/@xml"/><xsl:text>");
+        }</xsl:text>
+        </xsl:for-each>
+        <xsl:text>
+        else
+        {
+            throw new XMLStreamException("The class " + type.getName() + " is not mapped");
+        }
+    }
+</xsl:text>
+        <xsl:apply-templates select="class" mode="read"/>
+        <xsl:apply-templates select="class" mode="write"/>
+        <xsl:text>}
+</xsl:text>
+    </xsl:template>
+
+    <!-- The simple name of a mapped class, which shall belong to the generated package. -->
+    <xsl:template match="class" mode="simple-name">
+        <xsl:if test="not(starts-with(@name, concat($package, '.'))) or contains(substring-after(@name, concat($package, '.')), '.')">
+            <xsl:message terminate="yes">The class <xsl:value-of select="@name"/> does not belong to the package <xsl:value-of select="$package"/></xsl:message>
+        </xsl:if>
+        <xsl:if test="not(map-to/@xml) or map-to/@ns-uri or map-to/@ns-prefix or @extends or @depends or @identity or @auto-complete = 'true'">
+            <xsl:message terminate="yes">Unsupported mapping for the class <xsl:value-of select="@name"/></xsl:message>
+        </xsl:if>
+        <xsl:if test="field[not(bind-xml/@node = 'attribute' or bind-xml/@node = 'element' or bind-xml/@node = 'text')]">
+            <xsl:message terminate="yes">The fields of the class <xsl:value-of select="@name"/> shall be bound to an attribute, an element or the text content</xsl:message>
+        </xsl:if>
+        <xsl:if test="field[bind-xml/@node = 'text'] and (count(field[bind-xml/@node = 'text']) &gt; 1 or field[bind-xml/@node = 'element'])">
+            <xsl:message terminate="yes">The class <xsl:value-of select="@name"/> shall have a single text field, and no element field</xsl:message>
+        </xsl:if>
+        <xsl:value-of select="substring-after(@name, concat($package, '.'))"/>
+    </xsl:template>
+
+    <!-- The name of the constant holding the attribute names bound to a class. -->
+    <xsl:template match="class" mode="attributes-constant">
+        <xsl:variable name="simpleName">
+            <xsl:apply-templates select="." mode="simple-name"/>
+        </xsl:variable>
+        <xsl:value-of select="translate($simpleName, 'abcdefghijklmnopqrstuvwxyz', 'ABCDEFGHIJKLMNOPQRSTUVWXYZ')"/>
+        <xsl:text>_ATTRIBUTES</xsl:text>
+    </xsl:template>
+
+    <!-- The kind of a field: "string", "int", "Integer" or "class". -->
+    <xsl:template match="field" mode="kind">
+        <xsl:choose>
+            <xsl:when test="@type = 'string' or @type = 'java.lang.String'">string</xsl:when>
+            <xsl:when test="@type = 'integer'">int</xsl:when>
+            <xsl:when test="@type = 'java.lang.Integer'">Integer</xsl:when>
+            <xsl:when test="/mapping/class[@name = current()/@type]">class</xsl:when>
+            <xsl:otherwise>
+                <xsl:message terminate="yes">Unsupported type <xsl:value-of select="@type"/> for the field <xsl:value-of select="../@name"/>.<xsl:value-of select="@name"/></xsl:message>
+            </xsl:otherwise>
+        </xsl:choose>
+    </xsl:template>
+
+    <!-- Checks that a field is supported, and returns its kind. -->
+    <xsl:template match="field" mode="check">
+        <xsl:variable name="kind">
+            <xsl:apply-templates select="." mode="kind"/>
+        </xsl:variable>
+        <xsl:if test="not(@get-method) or not(@set-method) or not(bind-xml/@name) and bind-xml/@node != 'text' or @handler or @transient = 'true' or @direct = 'true' or @lazy = 'true' or @container or @collection and @collection != 'arraylist' or bind-xml/@type or bind-xml/@auto-naming or bind-xml/@reference = 'true' or bind-xml/@matches or bind-xml/@QName-prefix">
+            <xsl:message terminate="yes">Unsupported mapping for the field <xsl:value-of select="../@name"/>.<xsl:value-of select="@name"/></xsl:message>
+        </xsl:if>
+        <xsl:if test="not(bind-xml/@node = 'attribute' or bind-xml/@node = 'element' or bind-xml/@node = 'text')">
+            <xsl:message terminate="yes">The field <xsl:value-of select="../@name"/>.<xsl:value-of select="@name"/> shall be bound to an attribute, an element or the text content</xsl:message>
+        </xsl:if>
+        <xsl:if test="bind-xml/@node = 'text' and ($kind != 'string' or @collection)">
+            <xsl:message terminate="yes">The text content bound to the field <xsl:value-of select="../@name"/>.<xsl:value-of select="@name"/> shall be a string</xsl:message>
+        </xsl:if>
+        <xsl:if test="bind-xml/@node = 'attribute' and ($kind = 'class' or @collection)">
+            <xsl:message terminate="yes">The field <xsl:value-of select="../@name"/>.<xsl:value-of select="@name"/> cannot be bound to an attribute</xsl:message>
+        </xsl:if>
+        <xsl:if test="@collection and $kind != 'class'">
+            <xsl:message terminate="yes">The collection <xsl:value-of select="../@name"/>.<xsl:value-of select="@name"/> shall hold mapped classes</xsl:message>
+        </xsl:if>
+        <xsl:if test="bind-xml/@location and not(@collection)">
+            <xsl:message terminate="yes">Only collections may have a location: <xsl:value-of select="../@name"/>.<xsl:value-of select="@name"/></xsl:message>
+        </xsl:if>
+        <xsl:if test="bind-xml/@location and (contains(bind-xml/@location, '/') or ../field[generate-id() != generate-id(current())]/bind-xml[@location = current()/bind-xml/@location or @name = current()/bind-xml/@location])">
+            <xsl:message terminate="yes">Unsupported location for the field <xsl:value-of select="../@name"/>.<xsl:value-of select="@name"/></xsl:message>
+        </xsl:if>
+        <xsl:if test="$kind = 'class' and bind-xml/@name != /mapping/class[@name = current()/@type]/map-to/@xml and (@collection or ../field[generate-id() != generate-id(current())][@type = current()/@type or bind-xml/@name = /mapping/class[@name = current()/@type]/map-to/@xml])">
+            <xsl:message terminate="yes">Unsupported element name for the field <xsl:value-of select="../@name"/>.<xsl:value-of select="@name"/>, which is not the one of its class</xsl:message>
+        </xsl:if>
+        <xsl:if test="../field[generate-id() != generate-id(current())][bind-xml/@node = current()/bind-xml/@node][bind-xml/@name = current()/bind-xml/@name][not(bind-xml/@location) and not(current()/bind-xml/@location) or bind-xml/@location = current()/bind-xml/@location]">
+            <xsl:message terminate="yes">The XML name <xsl:value-of select="bind-xml/@name"/> is bound twice in the class <xsl:value-of select="../@name"/></xsl:message>
+        </xsl:if>
+        <xsl:value-of select="$kind"/>
+    </xsl:template>
+
+    <!-- The Java type of a field. -->
+    <xsl:template match="field" mode="java-type">
+        <xsl:param name="kind"/>
+        <xsl:choose>
+            <xsl:when test="$kind = 'string'">String</xsl:when>
+            <xsl:when test="$kind = 'class'">
+                <xsl:apply-templates select="/mapping/class[@name = current()/@type]" mode="simple-name"/>
+            </xsl:when>
+            <xsl:otherwise><xsl:value-of select="$kind"/></xsl:otherwise>
+        </xsl:choose>
+    </xsl:template>
+
+    <!-- The Java expression converting a text value to the type of a field. -->
+    <xsl:template match="field" mode="convert">
+        <xsl:param name="kind"/>
+        <xsl:param name="value"/>
+        <xsl:choose>
+            <xsl:when test="$kind = 'int'">parseInt(<xsl:value-of select="$value"/>)</xsl:when>
+            <xsl:when test="$kind = 'Integer'">Integer.valueOf(parseInt(<xsl:value-of select="$value"/>))</xsl:when>
+            <xsl:otherwise><xsl:value-of select="$value"/></xsl:otherwise>
+        </xsl:choose>
+    </xsl:template>
+
+    <!-- The reading method of a class. -->
+    <xsl:template match="class" mode="read">
+        <xsl:variable name="simpleName">
+            <xsl:apply-templates select="." mode="simple-name"/>
+        </xsl:variable>
+        <xsl:text>
+    /**
+     * Reads an element bound to {@link </xsl:text><xsl:value-of select="$simpleName"/><xsl:text>}.
+     * @param reader the XML stream, positioned on the start of the element. Shall not be &lt;code&gt;null&lt;/code&gt;.
+     * @return the read object. Shall not be &lt;code&gt;null&lt;/code&gt;.
+     * @throws XMLStreamException if the element is malformed, or doesn't match the mapping.
+     */
+    private static </xsl:text><xsl:value-of select="$simpleName"/><xsl:text> read</xsl:text><xsl:value-of select="$simpleName"/><xsl:text>(final XmlBindingReader reader) throws XMLStreamException
+    {
+        final </xsl:text><xsl:value-of select="$simpleName"/><xsl:text> ret = new </xsl:text><xsl:value-of select="$simpleName"/><xsl:text>();
+</xsl:text>
+        <xsl:if test="field[bind-xml/@node = 'attribute']">
+            <xsl:text>
+        final String[] attributes = reader.getAttributes(</xsl:text>
+            <xsl:apply-templates select="." mode="attributes-constant"/>
+            <xsl:text>);
+
+        for (int i = 0; i &lt; attributes.length; i += 2)
+        {
+            final String name = attributes[i];
+</xsl:text>
+            <xsl:for-each select="field[bind-xml/@node = 'attribute']">
+                <xsl:variable name="kind">
+                    <xsl:apply-templates select="." mode="check"/>
+                </xsl:variable>
+                <xsl:text>
+            </xsl:text>
+                <xsl:if test="position() &gt; 1">
+                    <xsl:text>else </xsl:text>
+                </xsl:if>
+                <xsl:text>if ("</xsl:text><xsl:value-of select="bind-xml/@name"/><xsl:text>".equals(name))
+            {
+                ret.</xsl:text><xsl:value-of select="@set-method"/><xsl:text>(</xsl:text>
+                <xsl:apply-templates select="." mode="convert">
+                    <xsl:with-param name="kind" select="$kind"/>
+                    <xsl:with-param name="value">attributes[i + 1]</xsl:with-param>
+                </xsl:apply-templates>
+                <xsl:text>);
+            }</xsl:text>
+            </xsl:for-each>
+            <xsl:text>
+        }
+</xsl:text>
+        </xsl:if>
+        <xsl:for-each select="field[bind-xml/@node = 'element' and not(@collection)]">
+            <xsl:if test="position() = 1">
+                <xsl:text>
+</xsl:text>
+            </xsl:if>
+            <xsl:text>        boolean has</xsl:text><xsl:value-of select="position()"/><xsl:text> = false;
+</xsl:text>
+        </xsl:for-each>
+        <xsl:choose>
+            <xsl:when test="field[bind-xml/@node = 'text']">
+                <xsl:for-each select="field[bind-xml/@node = 'text']">
+                    <xsl:variable name="kind">
+                        <xsl:apply-templates select="." mode="check"/>
+                    </xsl:variable>
+                    <xsl:text>
+        ret.</xsl:text><xsl:value-of select="@set-method"/><xsl:text>(</xsl:text>
+                    <xsl:apply-templates select="." mode="convert">
+                        <xsl:with-param name="kind" select="$kind"/>
+                        <xsl:with-param name="value">reader.getText()</xsl:with-param>
+                    </xsl:apply-templates>
+                    <xsl:text>);
+</xsl:text>
+                </xsl:for-each>
+            </xsl:when>
+            <xsl:otherwise>
+                <xsl:apply-templates select="." mode="read-children"/>
+            </xsl:otherwise>
+        </xsl:choose>
+        <xsl:text>
+        return ret;
+    }
+</xsl:text>
+    </xsl:template>
+
+    <!-- The reading of the child elements of a class, in its reading method. -->
+    <xsl:template match="class" mode="read-children">
+        <xsl:text>
+        while (reader.nextChild(false))
+        {
+</xsl:text>
+        <xsl:if test="field[bind-xml/@node = 'element']">
+            <xsl:text>            final String name = reader.getLocalName();
+</xsl:text>
+        </xsl:if>
+        <xsl:for-each select="field[bind-xml/@node = 'element' and not(bind-xml/@location)] | field[bind-xml/@node = 'element' and bind-xml/@location and not(bind-xml/@location = preceding-sibling::field/bind-xml/@location)]">
+            <xsl:variable name="kind">
+                <xsl:apply-templates select="." mode="check"/>
+            </xsl:variable>
+            <xsl:text>
+            </xsl:text>
+            <xsl:if test="position() &gt; 1">
+                <xsl:text>else </xsl:text>
+            </xsl:if>
+            <xsl:choose>
+                <xsl:when test="bind-xml/@location">
+                    <xsl:text>if ("</xsl:text><xsl:value-of select="bind-xml/@location"/><xsl:text>".equals(name))
+            {
+                while (reader.nextChild(true))
+                {
+                    if ("</xsl:text><xsl:value-of select="bind-xml/@name"/><xsl:text>".equals(reader.getLocalName()))
+                    {
+                        ret.</xsl:text><xsl:value-of select="@set-method"/><xsl:text>(read</xsl:text>
+                    <xsl:apply-templates select="." mode="java-type">
+                        <xsl:with-param name="kind" select="$kind"/>
+                    </xsl:apply-templates>
+                    <xsl:text>(reader));
+                    }
+                    else
+                    {
+                        reader.skipElement();
+                    }
+                }
+            }
+            else if ("</xsl:text><xsl:value-of select="bind-xml/@name"/><xsl:text>".equals(name) &amp;&amp; (reader.getNamespaceURI() != null))
+            {
+                // Castor also accepts a qualified item outside of its location.
+                ret.</xsl:text><xsl:value-of select="@set-method"/><xsl:text>(read</xsl:text>
+                    <xsl:apply-templates select="." mode="java-type">
+                        <xsl:with-param name="kind" select="$kind"/>
+                    </xsl:apply-templates>
+                    <xsl:text>(reader));
+            }</xsl:text>
+                </xsl:when>
+                <xsl:when test="@collection">
+                    <xsl:text>if ("</xsl:text><xsl:value-of select="bind-xml/@name"/><xsl:text>".equals(name))
+            {
+                ret.</xsl:text><xsl:value-of select="@set-method"/><xsl:text>(read</xsl:text>
+                    <xsl:apply-templates select="." mode="java-type">
+                        <xsl:with-param name="kind" select="$kind"/>
+                    </xsl:apply-templates>
+                    <xsl:text>(reader));
+            }</xsl:text>
+                </xsl:when>
+                <xsl:otherwise>
+                    <xsl:variable name="flag">
+                        <xsl:text>has</xsl:text>
+                        <xsl:value-of select="count(preceding-sibling::field[bind-xml/@node = 'element' and not(@collection)]) + 1"/>
+                    </xsl:variable>
+                    <xsl:variable name="classXml" select="/mapping/class[@name = current()/@type]/map-to/@xml"/>
+                    <xsl:choose>
+                        <xsl:when test="$kind != 'class'">
+                            <xsl:text>if ("</xsl:text><xsl:value-of select="bind-xml/@name"/><xsl:text>".equals(name) &amp;&amp; (reader.getNamespaceURI() == null)</xsl:text>
+                        </xsl:when>
+                        <xsl:when test="bind-xml/@name != $classXml">
+                            <!-- Castor also binds the element named after the class of the field, whatever its namespace, but not the qualified element named after the field. -->
+                            <xsl:text>if (("</xsl:text><xsl:value-of select="bind-xml/@name"/><xsl:text>".equals(name) &amp;&amp; (reader.getNamespaceURI() == null)) || "</xsl:text><xsl:value-of select="$classXml"/><xsl:text>".equals(name)</xsl:text>
+                        </xsl:when>
+                        <xsl:otherwise>
+                            <xsl:text>if ("</xsl:text><xsl:value-of select="bind-xml/@name"/><xsl:text>".equals(name)</xsl:text>
+                        </xsl:otherwise>
+                    </xsl:choose>
+                    <xsl:text>)
+            {
+                if (</xsl:text><xsl:value-of select="$flag"/><xsl:text>)
+                {
+                    reader.duplicateElement();
+                }
+
+                </xsl:text><xsl:value-of select="$flag"/><xsl:text> = true;
+                ret.</xsl:text><xsl:value-of select="@set-method"/><xsl:text>(</xsl:text>
+                    <xsl:choose>
+                        <xsl:when test="$kind = 'class'">
+                            <xsl:text>read</xsl:text>
+                            <xsl:apply-templates select="." mode="java-type">
+                                <xsl:with-param name="kind" select="$kind"/>
+                            </xsl:apply-templates>
+                            <xsl:text>(reader)</xsl:text>
+                        </xsl:when>
+                        <xsl:otherwise>
+                            <xsl:apply-templates select="." mode="convert">
+                                <xsl:with-param name="kind" select="$kind"/>
+                                <xsl:with-param name="value">reader.getElementText()</xsl:with-param>
+                            </xsl:apply-templates>
+                        </xsl:otherwise>
+                    </xsl:choose>
+                    <xsl:text>);
+            }</xsl:text>
+                </xsl:otherwise>
+            </xsl:choose>
+        </xsl:for-each>
+        <xsl:choose>
+            <xsl:when test="field[bind-xml/@node = 'element']">
+                <xsl:text>
+            else
+            {
+                reader.skipElement();
+            }</xsl:text>
+            </xsl:when>
+            <xsl:otherwise>
+                <xsl:text>            reader.skipElement();</xsl:text>
+            </xsl:otherwise>
+        </xsl:choose>
+        <xsl:text>
+        }
+</xsl:text>
+    </xsl:template>
+
+    <!-- The writing method of a class. -->
+    <xsl:template match="class" mode="write">
+        <xsl:variable name="simpleName">
+            <xsl:apply-templates select="." mode="simple-name"/>
+        </xsl:variable>
+        <xsl:text>
+    /**
+     * Writes an element bound to {@link </xsl:text><xsl:value-of select="$simpleName"/><xsl:text>}.
+     * @param o the object to write. Shall not be &lt;code&gt;null&lt;/code&gt;.
+     * @param writer the XML stream. Shall not be &lt;code&gt;null&lt;/code&gt;.
+     * @param name the name of the element. Shall not be &lt;code&gt;null&lt;/code&gt;.
+     * @throws XMLStreamException if a required value is missing, or if the writing failed.
+     */
+    private static void write</xsl:text><xsl:value-of select="$simpleName"/><xsl:text>(final </xsl:text><xsl:value-of select="$simpleName"/><xsl:text> o, final XMLStreamWriter writer, final String name) throws XMLStreamException
+    {
+        writer.writeStartElement(name);
+</xsl:text>
+        <xsl:apply-templates select="field[bind-xml/@node = 'attribute']" mode="write"/>
+        <xsl:apply-templates select="field[bind-xml/@node = 'text']" mode="write"/>
+        <xsl:apply-templates select="field[bind-xml/@node = 'element']" mode="write"/>
+        <xsl:text>
+        writer.writeEndElement();
+    }
+</xsl:text>
+    </xsl:template>
+
+    <!-- The writing of a field. -->
+    <xsl:template match="field" mode="write">
+        <xsl:variable name="kind">
+            <xsl:apply-templates select="." mode="check"/>
+        </xsl:variable>
+        <xsl:variable name="javaType">
+            <xsl:apply-templates select="." mode="java-type">
+                <xsl:with-param name="kind" select="$kind"/>
+            </xsl:apply-templates>
+        </xsl:variable>
+        <xsl:variable name="value" select="concat('value', count(preceding-sibling::field) + 1)"/>
+        <xsl:text>
+</xsl:text>
+        <xsl:choose>
+            <xsl:when test="@collection">
+                <xsl:text>        final java.util.Collection&lt;?&gt; </xsl:text><xsl:value-of select="$value"/><xsl:text> = o.</xsl:text><xsl:value-of select="@get-method"/><xsl:text>();
+
+        if ((</xsl:text><xsl:value-of select="$value"/><xsl:text> != null) &amp;&amp; !</xsl:text><xsl:value-of select="$value"/><xsl:text>.isEmpty())
+        {
+</xsl:text>
+                <xsl:if test="bind-xml/@location">
+                    <xsl:text>            writer.writeStartElement("</xsl:text><xsl:value-of select="bind-xml/@location"/><xsl:text>");
+
+</xsl:text>
+                </xsl:if>
+                <xsl:text>            for (Object item : </xsl:text><xsl:value-of select="$value"/><xsl:text>)
+            {
+                if (item == null)
+                {
+                    throw nullItem("</xsl:text><xsl:value-of select="@name"/><xsl:text>", "</xsl:text><xsl:value-of select="../@name"/><xsl:text>");
+                }
+
+                write</xsl:text><xsl:value-of select="$javaType"/><xsl:text>((</xsl:text><xsl:value-of select="$javaType"/><xsl:text>) item, writer, "</xsl:text><xsl:value-of select="bind-xml/@name"/><xsl:text>");
+            }
+</xsl:text>
+                <xsl:if test="bind-xml/@location">
+                    <xsl:text>
+            writer.writeEndElement();
+</xsl:text>
+                </xsl:if>
+                <xsl:text>        }
+</xsl:text>
+            </xsl:when>
+            <xsl:when test="$kind = 'int'">
+                <xsl:call-template name="write-value">
+                    <xsl:with-param name="text" select="concat('String.valueOf(o.', @get-method, '())')"/>
+                </xsl:call-template>
+            </xsl:when>
+            <xsl:otherwise>
+                <xsl:text>        final </xsl:text><xsl:value-of select="$javaType"/><xsl:text> </xsl:text><xsl:value-of select="$value"/><xsl:text> = o.</xsl:text><xsl:value-of select="@get-method"/><xsl:text>();
+</xsl:text>
+                <xsl:variable name="text">
+                    <xsl:value-of select="$value"/>
+                    <xsl:if test="$kind != 'string'">.toString()</xsl:if>
+                </xsl:variable>
+                <xsl:choose>
+                    <xsl:when test="@required = 'true'">
+                        <xsl:text>
+        if (</xsl:text><xsl:value-of select="$value"/><xsl:text> == null)
+        {
+            throw requiredField("</xsl:text><xsl:value-of select="@name"/><xsl:text>", "</xsl:text><xsl:value-of select="bind-xml/@name"/><xsl:text>", "</xsl:text><xsl:value-of select="../@name"/><xsl:text>");
+        }
+
+</xsl:text>
+                        <xsl:call-template name="write-field">
+                            <xsl:with-param name="kind" select="$kind"/>
+                            <xsl:with-param name="javaType" select="$javaType"/>
+                            <xsl:with-param name="value" select="$value"/>
+                            <xsl:with-param name="text" select="$text"/>
+                            <xsl:with-param name="indent" select="'        '"/>
+                        </xsl:call-template>
+                    </xsl:when>
+                    <xsl:otherwise>
+                        <xsl:text>
+        if (</xsl:text><xsl:value-of select="$value"/><xsl:text> != null)
+        {
+</xsl:text>
+                        <xsl:call-template name="write-field">
+                            <xsl:with-param name="kind" select="$kind"/>
+                            <xsl:with-param name="javaType" select="$javaType"/>
+                            <xsl:with-param name="value" select="$value"/>
+                            <xsl:with-param name="text" select="$text"/>
+                            <xsl:with-param name="indent" select="'            '"/>
+                        </xsl:call-template>
+                        <xsl:text>        }
+</xsl:text>
+                    </xsl:otherwise>
+                </xsl:choose>
+            </xsl:otherwise>
+        </xsl:choose>
+    </xsl:template>
+
+    <!-- Writes the non-null value of a field. -->
+    <xsl:template name="write-field">
+        <xsl:param name="kind"/>
+        <xsl:param name="javaType"/>
+        <xsl:param name="value"/>
+        <xsl:param name="text"/>
+        <xsl:param name="indent"/>
+        <xsl:choose>
+            <xsl:when test="$kind = 'class'">
+                <xsl:value-of select="$indent"/><xsl:text>write</xsl:text><xsl:value-of select="$javaType"/><xsl:text>(</xsl:text><xsl:value-of select="$value"/><xsl:text>, writer, "</xsl:text><xsl:value-of select="bind-xml/@name"/><xsl:text>");
+</xsl:text>
+            </xsl:when>
+            <xsl:otherwise>
+                <xsl:call-template name="write-value">
+                    <xsl:with-param name="text" select="$text"/>
+                    <xsl:with-param name="indent" select="$indent"/>
+                </xsl:call-template>
+            </xsl:otherwise>
+        </xsl:choose>
+    </xsl:template>
+
+    <!-- Writes a simple value, as an attribute, as the text content, or as an element. -->
+    <xsl:template name="write-value">
+        <xsl:param name="text"/>
+        <xsl:param name="indent" select="'        '"/>
+        <xsl:choose>
+            <xsl:when test="bind-xml/@node = 'attribute'">
+                <xsl:value-of select="$indent"/><xsl:text>writer.writeAttribute("</xsl:text><xsl:value-of select="bind-xml/@name"/><xsl:text>", </xsl:text><xsl:value-of select="$text"/><xsl:text>);
+</xsl:text>
+            </xsl:when>
+            <xsl:when test="bind-xml/@node = 'text'">
+                <!-- Castor writes an empty element when the text content is empty. -->
+                <xsl:value-of select="$indent"/><xsl:text>if (</xsl:text><xsl:value-of select="$text"/><xsl:text>.length() > 0)
+</xsl:text>
+                <xsl:value-of select="$indent"/><xsl:text>{
+</xsl:text>
+                <xsl:value-of select="$indent"/><xsl:text>    writer.writeCharacters(</xsl:text><xsl:value-of select="$text"/><xsl:text>);
+</xsl:text>
+                <xsl:value-of select="$indent"/><xsl:text>}
+</xsl:text>
+            </xsl:when>
+            <xsl:otherwise>
+                <xsl:value-of select="$indent"/><xsl:text>writer.writeStartElement("</xsl:text><xsl:value-of select="bind-xml/@name"/><xsl:text>");
+</xsl:text>
+                <xsl:value-of select="$indent"/><xsl:text>writer.writeCharacters(</xsl:text><xsl:value-of select="$text"/><xsl:text>);
+</xsl:text>
+                <xsl:value-of select="$indent"/><xsl:text>writer.writeEndElement();
+</xsl:text>
+            </xsl:otherwise>
+        </xsl:choose>
+    </xsl:template>
+
+</xsl:stylesheet>
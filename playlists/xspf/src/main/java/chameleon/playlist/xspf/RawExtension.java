@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.xspf;
+
+import java.io.StringReader;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.exolab.castor.types.AnyNode;
+import org.exolab.castor.xml.util.SAX2ANY;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+/**
+ * A XSPF extension, kept as an XML string as read by a {@link XspfTrackReader}.
+ * The nested XML is only parsed if asked to, so that the extensions which are not used cost nothing more than their text.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ */
+public final class RawExtension
+{
+    /**
+     * The value of the "application" attribute.
+     */
+    private final String _application;
+
+    /**
+     * The extension element, as an XML string.
+     */
+    private final String _xml;
+
+    /**
+     * Builds a new raw extension.
+     * @param application the value of the "application" attribute. May be <code>null</code>.
+     * @param xml the extension element, as an XML string. Shall not be <code>null</code>.
+     */
+    RawExtension(final String application, final String xml)
+    {
+        _application = application;
+        _xml = xml;
+    }
+
+    /**
+     * Returns the URI of a resource defining the structure and purpose of the nested XML.
+     * @return an URI. May be <code>null</code> if the extension is malformed.
+     */
+    public String getApplication()
+    {
+        return _application;
+    }
+
+    /**
+     * Returns the extension element, including its start and end tags, as an XML string.
+     * The namespaces declared by the enclosing XSPF elements are declared again on the extension element.
+     * @return an XML string. Shall not be <code>null</code>.
+     */
+    public String getXml()
+    {
+        return _xml;
+    }
+
+    /**
+     * Parses the extension element, as the unmarshaller would have done.
+     * The result can be given to {@link Track#addExtension} or {@link Playlist#addExtension}.
+     * @return a new XML node. Shall not be <code>null</code>.
+     * @throws Exception if the XML string cannot be parsed.
+     */
+    public AnyNode toAnyNode() throws Exception
+    {
+        final SAXParserFactory factory = SAXParserFactory.newInstance(); // May throw FactoryConfigurationError.
+        // Like the unmarshaller, be lenient with namespaces.
+        factory.setNamespaceAware(false);
+        final SAXParser parser = factory.newSAXParser(); // May throw ParserConfigurationException, SAXException.
+        final XMLReader xmlReader = parser.getXMLReader(); // May throw SAXException.
+        final SAX2ANY handler = new SAX2ANY();
+        xmlReader.setContentHandler(handler);
+        xmlReader.setErrorHandler(handler);
+        xmlReader.parse(new InputSource(new StringReader(_xml))); // May throw IOException, SAXException.
+
+        return handler.getStartingNode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return _xml;
+    }
+}
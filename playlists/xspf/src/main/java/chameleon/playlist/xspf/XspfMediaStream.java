@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.xspf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import chameleon.content.Content;
+import chameleon.playlist.Media;
+import chameleon.playlist.MediaStream;
+
+/**
+ * The media of a XSPF playlist, read one track after the other.
+ * Only the locations and the duration of each track are taken into account, the extensions being skipped.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ * @see XspfTrackReader
+ */
+final class XspfMediaStream implements MediaStream
+{
+    /**
+     * The underlying track reader.
+     */
+    private final XspfTrackReader _reader;
+
+    /**
+     * The current track, if any.
+     */
+    private Track _track = null;
+
+    /**
+     * The remaining string containers of the current track.
+     */
+    private Iterator<StringContainer> _stringContainers = null;
+
+    /**
+     * Builds a new stream of media on the specified XSPF contents, and reads the playlist-level elements preceding the track list.
+     * @param in an input stream. Shall not be <code>null</code>.
+     * @param encoding the content encoding of the input resource, or <code>null</code> if not known.
+     * @throws NullPointerException if <code>in</code> is <code>null</code>.
+     * @throws IllegalArgumentException if the contents don't look like a XSPF playlist.
+     * @throws IOException if an I/O error occurs.
+     * @throws Exception if the contents are malformed.
+     */
+    XspfMediaStream(final InputStream in, final String encoding) throws Exception
+    {
+        _reader = new XspfTrackReader(in, encoding, false); // Throws NullPointerException if in is null. May throw IllegalArgumentException, IOException, XMLStreamException, Exception.
+    }
+
+    @Override
+    public Media next() throws Exception
+    {
+        Media ret = null;
+
+        while (ret == null)
+        {
+            if ((_stringContainers == null) || !_stringContainers.hasNext())
+            {
+                _track = _reader.next(); // May throw Exception.
+
+                if (_track == null)
+                {
+                    break;
+                }
+
+                _stringContainers = _track.getStringContainers().iterator();
+            }
+            else
+            {
+                final StringContainer stringContainer = _stringContainers.next(); // Shall not throw NoSuchElementException.
+
+                // Same as Playlist.toPlaylist().
+                if ((stringContainer instanceof Location) && (stringContainer.getText() != null) && (stringContainer.getText().length() > 0))
+                {
+                    ret = new Media(); // NOPMD Avoid instantiating new objects inside loops
+                    final Content content = new Content(stringContainer.getText()); // NOPMD Avoid instantiating new objects inside loops
+                    ret.setSource(content);
+
+                    if (_track.getDuration() != null)
+                    {
+                        content.setDuration(_track.getDuration().longValue());
+                    }
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        _reader.close(); // May throw IOException.
+    }
+}
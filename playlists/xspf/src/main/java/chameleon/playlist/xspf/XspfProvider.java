@@ -25,19 +25,25 @@
 package chameleon.playlist.xspf;
 
 import java.io.InputStream;
-import java.io.StringReader;
+import java.io.InputStreamReader;
+import java.io.Reader;
 
 import org.apache.commons.logging.Log;
 
 import chameleon.content.type.ContentType;
-import chameleon.io.IOUtils;
 import chameleon.player.PlayerSupport;
 import chameleon.playlist.AbstractPlaylistComponent;
 import chameleon.playlist.Media;
+import chameleon.playlist.MediaStream;
 import chameleon.playlist.Parallel;
+import chameleon.playlist.PlaylistCursor;
+import chameleon.playlist.PlaylistHeader;
 import chameleon.playlist.Sequence;
 import chameleon.playlist.SpecificPlaylist;
+import chameleon.playlist.SpecificPlaylistProbe;
 import chameleon.playlist.SpecificPlaylistProvider;
+import chameleon.playlist.StreamingPlaylistProvider;
+import chameleon.xml.AmpersandRepairReader;
 import chameleon.xml.XmlSerializer;
 
 /**
@@ -48,7 +54,7 @@ import chameleon.xml.XmlSerializer;
  * @version $Revision: 91 $
  * @author Christophe Delory
  */
-public class XspfProvider implements SpecificPlaylistProvider
+public class XspfProvider implements SpecificPlaylistProvider, SpecificPlaylistProbe, StreamingPlaylistProvider
 {
     /**
      * A list of compatible content types.
@@ -76,6 +82,12 @@ public class XspfProvider implements SpecificPlaylistProvider
         return FILETYPES.clone();
     }
 
+    @Override
+    public int probe(final PlaylistHeader header)
+    {
+        return header.matchRootElement("UTF-8", "playlist", false, "http://xspf.org/ns/0/");
+    }
+
     @Override
     public SpecificPlaylist readFrom(final InputStream in, final String encoding, final Log logger) throws Exception
     {
@@ -86,100 +98,104 @@ public class XspfProvider implements SpecificPlaylistProvider
             enc = "UTF-8";
         }
 
-        String str = IOUtils.toString(in, enc); // May throw IOException. Throws NullPointerException if in is null.
-
-        // Replace all occurrences of a single '&' with "&amp;" (or leave this construct as is).
-        // First replace blindly all '&' to its corresponding character reference.
-        str = str.replace("&", "&amp;");
-        // Then restore any existing character reference.
-        str = str.replaceAll("&amp;([a-zA-Z0-9#]+;)", "&$1"); // Shall not throw PatternSyntaxException.
+        // Replace all occurrences of a single '&' with "&amp;" (or leave this construct as is), while reading.
+        final Reader reader = new AmpersandRepairReader(new InputStreamReader(in, enc)); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
 
         // Unmarshal the WPL playlist.
         final XmlSerializer serializer = XmlSerializer.getMapping("chameleon/playlist/xspf"); // May throw Exception.
-        serializer.getUnmarshaller().setIgnoreExtraElements(true);
 
-        final StringReader reader = new StringReader(str);
-        final SpecificPlaylist ret = (SpecificPlaylist) serializer.unmarshal(reader); // May throw Exception.
+        final SpecificPlaylist ret = (SpecificPlaylist) serializer.unmarshal(reader, true); // May throw Exception.
         ret.setProvider(this);
 
         return ret;
     }
 
+    @Override
+    public MediaStream openStream(final InputStream in, final String encoding, final Log logger) throws Exception
+    {
+        return new XspfMediaStream(in, encoding); // Throws NullPointerException if in is null. May throw IllegalArgumentException, IOException, Exception.
+    }
+
     @Override
     public SpecificPlaylist toSpecificPlaylist(final chameleon.playlist.Playlist playlist) throws Exception
     {
         final Playlist ret = new Playlist();
         ret.setProvider(this);
 
-        addToPlaylist(ret, playlist.getRootSequence()); // May throw Exception.
+        final PlaylistCursor cursor = new PlaylistCursor(playlist); // Throws NullPointerException if playlist is null.
+        AbstractPlaylistComponent component;
+
+        while ((component = cursor.next()) != null)
+        {
+            final Media media = toMedia(component); // May throw IllegalArgumentException.
+
+            if (media.getSource() != null)
+            {
+                // XSPF cannot express a repetition, and there is no streaming writer for it:
+                // the tracks are all built, as the marshaller needs the whole object tree.
+                for (long iter = 0L; iter < cursor.getMultiplicity(); iter++)
+                {
+                    ret.addTrack(toTrack(media)); // NOPMD Avoid instantiating new objects inside loops
+                }
+            }
+        }
 
         return ret;
     }
 
     /**
-     * Adds the specified generic playlist component, and all its childs if any, to the input track list.
-     * @param playlist the parent playlist. Shall not be <code>null</code>.
-     * @param component the generic playlist component to handle. Shall not be <code>null</code>.
-     * @throws NullPointerException if <code>playlist</code> is <code>null</code>.
+     * Checks that the specified playlist component, as returned by a {@link PlaylistCursor}, can be represented in an XSPF playlist.
+     * @param component a playlist component. Shall not be <code>null</code>.
+     * @return the component as a media. Shall not be <code>null</code>.
      * @throws NullPointerException if <code>component</code> is <code>null</code>.
-     * @throws Exception if this service provider is unable to represent the input playlist.
+     * @throws IllegalArgumentException if this service provider is unable to represent the input component.
      */
-    private void addToPlaylist(final Playlist playlist, final AbstractPlaylistComponent component) throws Exception
+    private Media toMedia(final AbstractPlaylistComponent component)
     {
-        if (component instanceof Sequence)
+        if (component instanceof Parallel)
         {
-            final Sequence sequence = (Sequence) component;
+            throw new IllegalArgumentException("An XSPF playlist cannot play different media at the same time");
+        }
 
-            if (sequence.getRepeatCount() < 0)
-            {
-                throw new IllegalArgumentException("An XSPF playlist cannot handle a sequence repeated indefinitely");
-            }
+        // The cursor only returns the sequences repeated indefinitely.
+        if (component instanceof Sequence)
+        {
+            throw new IllegalArgumentException("An XSPF playlist cannot handle a sequence repeated indefinitely");
+        }
 
-            final AbstractPlaylistComponent[] components = sequence.getComponents();
+        final Media media = (Media) component; // Throws NullPointerException if component is null. Shall not throw ClassCastException.
 
-            for (int iter = 0; iter < sequence.getRepeatCount(); iter++)
-            {
-                for (AbstractPlaylistComponent c : components)
-                {
-                    addToPlaylist(playlist, c); // May throw Exception.
-                }
-            }
-        }
-        else if (component instanceof Parallel)
+        if (media.getDuration() != null)
         {
-            throw new IllegalArgumentException("An XSPF playlist cannot play different media at the same time");
+            throw new IllegalArgumentException("An XSPF playlist cannot handle a timed media");
         }
-        else if (component instanceof Media)
-        {
-            final Media media = (Media) component;
 
-            if (media.getDuration() != null)
-            {
-                throw new IllegalArgumentException("An XSPF playlist cannot handle a timed media");
-            }
-
-            if (media.getRepeatCount() < 0)
-            {
-                throw new IllegalArgumentException("An XSPF playlist cannot handle a media repeated indefinitely");
-            }
+        if (media.getRepeatCount() < 0)
+        {
+            throw new IllegalArgumentException("An XSPF playlist cannot handle a media repeated indefinitely");
+        }
 
-            if (media.getSource() != null)
-            {
-                for (int iter = 0; iter < media.getRepeatCount(); iter++)
-                {
-                    final Track track = new Track(); // NOPMD Avoid instantiating new objects inside loops
-                    final Location location = new Location(); // NOPMD Avoid instantiating new objects inside loops
-                    location.setText(media.getSource().toString());
-                    track.addStringContainer(location);
+        return media;
+    }
 
-                    if (media.getSource().getDuration() > 0L) // NOPMD Deeply nested if..then statements are hard to read
-                    {
-                        track.setDuration((int) media.getSource().getDuration());
-                    }
+    /**
+     * Builds an XSPF track from the specified media.
+     * @param media a media with a source. Shall not be <code>null</code>.
+     * @return a new track. Shall not be <code>null</code>.
+     * @throws NullPointerException if <code>media</code> is <code>null</code>, or if it has no source.
+     */
+    private Track toTrack(final Media media)
+    {
+        final Track ret = new Track();
+        final Location location = new Location();
+        location.setText(media.getSource().toString());
+        ret.addStringContainer(location);
 
-                    playlist.addTrack(track);
-                }
-            }
+        if (media.getSource().getDuration() > 0L)
+        {
+            ret.setDuration((int) media.getSource().getDuration());
         }
+
+        return ret;
     }
 }
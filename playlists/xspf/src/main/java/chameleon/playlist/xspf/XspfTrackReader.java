@@ -0,0 +1,728 @@
+/*
+ * Copyright (c) 2008, Christophe Delory
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   * Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *   * Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY CHRISTOPHE DELORY ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL CHRISTOPHE DELORY BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package chameleon.playlist.xspf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import chameleon.xml.AmpersandRepairReader;
+
+/**
+ * Reads the tracks of a XSPF playlist one after the other, without building the whole playlist in memory.
+ * The playlist-level elements which precede the track list (title, creator, links, etc.) are read up front, and are available through {@link #getHeader}.
+ * Each call to {@link #next} then reads and returns a single track.
+ * <br>
+ * The extensions are not parsed: they are kept as {@link RawExtension raw XML strings}, available through {@link #getHeaderExtensions} and {@link #getTrackExtensions}.
+ * Thus the returned playlist header and tracks don't hold any extension.
+ * <br>
+ * Like the unmarshaller, this reader repairs the single '<code>&amp;</code>', and is lenient with namespaces:
+ * the elements are recognized by their local name, whatever their namespace.
+ * When done, the reader shall be closed, which also closes the underlying input stream.
+ * It shall not be used by several threads at the same time.
+ * @version $Revision: 92 $
+ * @author Christophe Delory
+ * @since 1.3.0
+ * @see XspfProvider#readFrom
+ */
+public class XspfTrackReader implements Closeable
+{
+    /**
+     * The underlying character stream.
+     */
+    private final Reader _in;
+
+    /**
+     * The XML pull parser.
+     */
+    private final XMLStreamReader _reader;
+
+    /**
+     * Specifies if the extensions shall be kept, or skipped.
+     */
+    private final boolean _keepExtensions;
+
+    /**
+     * The playlist-level elements read so far.
+     */
+    private final Playlist _header = new Playlist();
+
+    /**
+     * The playlist-level extensions read so far.
+     */
+    private final List<RawExtension> _headerExtensions = new ArrayList<RawExtension>();
+
+    /**
+     * The extensions of the last track returned.
+     */
+    private List<RawExtension> _trackExtensions = Collections.emptyList();
+
+    /**
+     * The namespace declarations of the root element, of the current track list and of the current track, in this order.
+     */
+    private final List<Map<String, String>> _namespaces = new ArrayList<Map<String, String>>();
+
+    /**
+     * Specifies if the parser is currently inside a track list.
+     */
+    private boolean _inTrackList = false;
+
+    /**
+     * Specifies if the end of the playlist has been reached.
+     */
+    private boolean _done = false;
+
+    /**
+     * Builds a new track reader on the specified XSPF contents, and reads the playlist-level elements preceding the track list.
+     * @param in an input stream. Shall not be <code>null</code>.
+     * @param encoding the content encoding of the input resource, or <code>null</code> if not known.
+     * @throws NullPointerException if <code>in</code> is <code>null</code>.
+     * @throws IllegalArgumentException if the contents don't look like a XSPF playlist.
+     * @throws IOException if an I/O error occurs.
+     * @throws XMLStreamException if the contents are not well-formed.
+     * @throws Exception if a playlist-level element is malformed.
+     */
+    public XspfTrackReader(final InputStream in, final String encoding) throws Exception
+    {
+        this(in, encoding, true); // Throws NullPointerException if in is null. May throw IllegalArgumentException, IOException, XMLStreamException, Exception.
+    }
+
+    /**
+     * Builds a new track reader on the specified XSPF contents, and reads the playlist-level elements preceding the track list.
+     * @param in an input stream. Shall not be <code>null</code>.
+     * @param encoding the content encoding of the input resource, or <code>null</code> if not known.
+     * @param keepExtensions if <code>false</code>, the extensions are skipped.
+     * @throws NullPointerException if <code>in</code> is <code>null</code>.
+     * @throws IllegalArgumentException if the contents don't look like a XSPF playlist.
+     * @throws IOException if an I/O error occurs.
+     * @throws XMLStreamException if the contents are not well-formed.
+     * @throws Exception if a playlist-level element is malformed.
+     */
+    XspfTrackReader(final InputStream in, final String encoding, final boolean keepExtensions) throws Exception
+    {
+        _keepExtensions = keepExtensions;
+
+        String enc = encoding;
+
+        if (enc == null)
+        {
+            enc = "UTF-8";
+        }
+
+        // Like the unmarshaller, repair the single '&' while reading.
+        _in = new AmpersandRepairReader(new InputStreamReader(in, enc)); // Throws NullPointerException if in is null. May throw UnsupportedEncodingException.
+
+        final XMLInputFactory factory = XMLInputFactory.newInstance(); // May throw FactoryConfigurationError.
+        // Like the unmarshaller, be lenient with namespaces, which are often wrongly declared (or not declared at all) in the extensions.
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE); // Shall not throw IllegalArgumentException.
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE); // Shall not throw IllegalArgumentException.
+        _reader = factory.createXMLStreamReader(_in); // May throw XMLStreamException.
+
+        while (_reader.next() != XMLStreamConstants.START_ELEMENT) // May throw XMLStreamException, NoSuchElementException.
+        {
+            // Skip the prolog.
+        }
+
+        if (!"playlist".equals(getLocalName()))
+        {
+            throw new IllegalArgumentException("Not a XSPF playlist");
+        }
+
+        final String version = _reader.getAttributeValue(null, "version");
+
+        if (version != null)
+        {
+            _header.setVersion(Integer.valueOf(version.trim())); // May throw NumberFormatException.
+        }
+
+        _namespaces.add(getNamespaceDeclarations());
+        readHeader(); // May throw Exception.
+    }
+
+    /**
+     * Returns the playlist-level elements read so far.
+     * All those preceding the first track list are available as soon as this reader is built.
+     * The returned playlist has no track and no extension.
+     * @return a XSPF playlist. Shall not be <code>null</code>.
+     * @see #getHeaderExtensions
+     */
+    public Playlist getHeader()
+    {
+        return _header;
+    }
+
+    /**
+     * Returns the playlist-level extensions read so far.
+     * @return a list of extensions. May be empty but not <code>null</code>.
+     * @see #getHeader
+     */
+    public List<RawExtension> getHeaderExtensions()
+    {
+        return Collections.unmodifiableList(_headerExtensions);
+    }
+
+    /**
+     * Returns the extensions of the last track returned by {@link #next}.
+     * @return a list of extensions. May be empty but not <code>null</code>.
+     */
+    public List<RawExtension> getTrackExtensions()
+    {
+        return Collections.unmodifiableList(_trackExtensions);
+    }
+
+    /**
+     * Reads the next track of the playlist.
+     * Any playlist-level element found after the track list is added to the {@link #getHeader header}.
+     * @return a new track, without extension, or <code>null</code> if the end of the playlist has been reached.
+     * @throws XMLStreamException if the contents are not well-formed.
+     * @throws Exception if an element is malformed.
+     * @see #getTrackExtensions
+     */
+    public Track next() throws Exception
+    {
+        Track ret = null;
+
+        while ((ret == null) && !_done)
+        {
+            if (_inTrackList)
+            {
+                if (nextTag() == XMLStreamConstants.START_ELEMENT) // May throw XMLStreamException.
+                {
+                    if ("track".equals(getLocalName()))
+                    {
+                        ret = readTrack(); // May throw Exception.
+                    }
+                    else
+                    {
+                        skipElement(); // May throw XMLStreamException.
+                    }
+                }
+                else
+                {
+                    // End of the track list.
+                    _inTrackList = false;
+                    _namespaces.remove(_namespaces.size() - 1); // Shall not throw IndexOutOfBoundsException.
+                }
+            }
+            else
+            {
+                readHeader(); // May throw Exception.
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Reads the playlist-level elements, up to the beginning of a track list or the end of the playlist.
+     * @throws XMLStreamException if the contents are not well-formed.
+     * @throws Exception if an element is malformed.
+     */
+    private void readHeader() throws Exception
+    {
+        while (!_inTrackList && !_done)
+        {
+            if (nextTag() == XMLStreamConstants.START_ELEMENT) // May throw XMLStreamException.
+            {
+                final String name = getLocalName();
+
+                if ("trackList".equals(name))
+                {
+                    _inTrackList = true;
+                    _namespaces.add(getNamespaceDeclarations());
+                }
+                else if ("title".equals(name))
+                {
+                    _header.setTitle(_reader.getElementText()); // May throw XMLStreamException.
+                }
+                else if ("creator".equals(name))
+                {
+                    _header.setCreator(_reader.getElementText()); // May throw XMLStreamException.
+                }
+                else if ("annotation".equals(name))
+                {
+                    _header.setAnnotation(_reader.getElementText()); // May throw XMLStreamException.
+                }
+                else if ("info".equals(name))
+                {
+                    _header.setInfo(_reader.getElementText()); // May throw XMLStreamException.
+                }
+                else if ("location".equals(name))
+                {
+                    _header.setLocation(_reader.getElementText()); // May throw XMLStreamException.
+                }
+                else if ("identifier".equals(name))
+                {
+                    _header.setIdentifier(_reader.getElementText()); // May throw XMLStreamException.
+                }
+                else if ("image".equals(name))
+                {
+                    _header.setImage(_reader.getElementText()); // May throw XMLStreamException.
+                }
+                else if ("date".equals(name))
+                {
+                    _header.setDate(DatatypeFactory.newInstance().newXMLGregorianCalendar(_reader.getElementText().trim()).toGregorianCalendar().getTime()); // May throw XMLStreamException, DatatypeConfigurationException, IllegalArgumentException.
+                }
+                else if ("license".equals(name))
+                {
+                    _header.setLicense(_reader.getElementText()); // May throw XMLStreamException.
+                }
+                else if ("attribution".equals(name))
+                {
+                    final Attribution attribution = new Attribution(); // NOPMD Avoid instantiating new objects inside loops
+                    readAttribution(attribution); // May throw XMLStreamException.
+                    _header.setAttribution(attribution);
+                }
+                else if ("link".equals(name))
+                {
+                    _header.addLink(readLink()); // May throw XMLStreamException.
+                }
+                else if ("meta".equals(name))
+                {
+                    _header.addMeta(readMeta()); // May throw XMLStreamException.
+                }
+                else if ("extension".equals(name) && _keepExtensions)
+                {
+                    _headerExtensions.add(readExtension()); // May throw XMLStreamException.
+                }
+                else
+                {
+                    skipElement(); // May throw XMLStreamException.
+                }
+            }
+            else
+            {
+                // End of the playlist.
+                _done = true;
+            }
+        }
+    }
+
+    /**
+     * Reads the current track, up to and including its end tag.
+     * @return a new track. Shall not be <code>null</code>.
+     * @throws XMLStreamException if the contents are not well-formed.
+     * @throws Exception if an element is malformed.
+     */
+    private Track readTrack() throws Exception
+    {
+        final Track ret = new Track();
+        _trackExtensions = new ArrayList<RawExtension>();
+        _namespaces.add(getNamespaceDeclarations());
+
+        while (nextTag() == XMLStreamConstants.START_ELEMENT) // May throw XMLStreamException.
+        {
+            final String name = getLocalName();
+
+            if (!readStringContainer(ret, name)) // May throw XMLStreamException.
+            {
+                if ("title".equals(name))
+                {
+                    ret.setTitle(_reader.getElementText()); // May throw XMLStreamException.
+                }
+                else if ("creator".equals(name))
+                {
+                    ret.setCreator(_reader.getElementText()); // May throw XMLStreamException.
+                }
+                else if ("annotation".equals(name))
+                {
+                    ret.setAnnotation(_reader.getElementText()); // May throw XMLStreamException.
+                }
+                else if ("info".equals(name))
+                {
+                    ret.setInfo(_reader.getElementText()); // May throw XMLStreamException.
+                }
+                else if ("image".equals(name))
+                {
+                    ret.setImage(_reader.getElementText()); // May throw XMLStreamException.
+                }
+                else if ("album".equals(name))
+                {
+                    ret.setAlbum(_reader.getElementText()); // May throw XMLStreamException.
+                }
+                else if ("trackNum".equals(name))
+                {
+                    ret.setTrackNumber(Integer.valueOf(_reader.getElementText().trim())); // May throw XMLStreamException, NumberFormatException, IllegalArgumentException.
+                }
+                else if ("duration".equals(name))
+                {
+                    ret.setDuration(Integer.valueOf(_reader.getElementText().trim())); // May throw XMLStreamException, NumberFormatException, IllegalArgumentException.
+                }
+                else if ("link".equals(name))
+                {
+                    ret.addLink(readLink()); // May throw XMLStreamException.
+                }
+                else if ("meta".equals(name))
+                {
+                    ret.addMeta(readMeta()); // May throw XMLStreamException.
+                }
+                else if ("extension".equals(name) && _keepExtensions)
+                {
+                    _trackExtensions.add(readExtension()); // May throw XMLStreamException.
+                }
+                else
+                {
+                    skipElement(); // May throw XMLStreamException.
+                }
+            }
+        }
+
+        // Now on the end tag of the track.
+        _namespaces.remove(_namespaces.size() - 1); // Shall not throw IndexOutOfBoundsException.
+
+        return ret;
+    }
+
+    /**
+     * Reads the contents of the current attribution element, up to and including its end tag.
+     * @param attribution the attribution to fill. Shall not be <code>null</code>.
+     * @throws XMLStreamException if the contents are not well-formed.
+     */
+    private void readAttribution(final Attribution attribution) throws XMLStreamException
+    {
+        while (nextTag() == XMLStreamConstants.START_ELEMENT) // May throw XMLStreamException.
+        {
+            if (!readStringContainer(attribution, getLocalName())) // May throw XMLStreamException.
+            {
+                skipElement(); // May throw XMLStreamException.
+            }
+        }
+    }
+
+    /**
+     * Reads the current element if it is a location or an identifier, and adds it to the specified attribution.
+     * @param attribution an attribution, or a track. Shall not be <code>null</code>.
+     * @param name the name of the current element. Shall not be <code>null</code>.
+     * @return <code>true</code> if the element has been read, <code>false</code> if it is not a location or an identifier.
+     * @throws XMLStreamException if the contents are not well-formed.
+     */
+    private boolean readStringContainer(final Attribution attribution, final String name) throws XMLStreamException
+    {
+        StringContainer stringContainer = null;
+
+        if ("location".equals(name))
+        {
+            stringContainer = new Location();
+        }
+        else if ("identifier".equals(name))
+        {
+            stringContainer = new Identifier();
+        }
+
+        if (stringContainer != null)
+        {
+            stringContainer.setText(_reader.getElementText()); // May throw XMLStreamException.
+            attribution.addStringContainer(stringContainer);
+        }
+
+        return stringContainer != null;
+    }
+
+    /**
+     * Reads the current link element, up to and including its end tag.
+     * @return a new link. Shall not be <code>null</code>.
+     * @throws XMLStreamException if the contents are not well-formed.
+     */
+    private Link readLink() throws XMLStreamException
+    {
+        final Link ret = new Link();
+        final String rel = _reader.getAttributeValue(null, "rel");
+
+        if (rel != null)
+        {
+            ret.setRel(rel);
+        }
+
+        ret.setContent(_reader.getElementText()); // May throw XMLStreamException.
+
+        return ret;
+    }
+
+    /**
+     * Reads the current meta element, up to and including its end tag.
+     * @return a new metadata. Shall not be <code>null</code>.
+     * @throws XMLStreamException if the contents are not well-formed.
+     */
+    private Meta readMeta() throws XMLStreamException
+    {
+        final Meta ret = new Meta();
+        final String rel = _reader.getAttributeValue(null, "rel");
+
+        if (rel != null)
+        {
+            ret.setRel(rel);
+        }
+
+        ret.setContent(_reader.getElementText()); // May throw XMLStreamException.
+
+        return ret;
+    }
+
+    /**
+     * Reads the current extension element, up to and including its end tag, as an XML string.
+     * The namespace declarations of the enclosing elements are copied to the extension element, unless it overrides them.
+     * @return a new raw extension. Shall not be <code>null</code>.
+     * @throws XMLStreamException if the contents are not well-formed.
+     */
+    private RawExtension readExtension() throws XMLStreamException
+    {
+        final String application = _reader.getAttributeValue(null, "application");
+        final Map<String, String> namespaces = new LinkedHashMap<String, String>();
+
+        for (Map<String, String> declarations : _namespaces)
+        {
+            namespaces.putAll(declarations);
+        }
+
+        final StringBuilder sb = new StringBuilder();
+        int level = 0;
+
+        do
+        {
+            switch (_reader.getEventType())
+            {
+                case XMLStreamConstants.START_ELEMENT:
+                    sb.append('<').append(_reader.getLocalName());
+
+                    if (level == 0)
+                    {
+                        namespaces.keySet().removeAll(getNamespaceDeclarations().keySet());
+
+                        for (Map.Entry<String, String> entry : namespaces.entrySet())
+                        {
+                            appendAttribute(sb, entry.getKey(), entry.getValue());
+                        }
+                    }
+
+                    for (int i = 0; i < _reader.getAttributeCount(); i++)
+                    {
+                        appendAttribute(sb, getAttributeName(i), _reader.getAttributeValue(i));
+                    }
+
+                    sb.append('>');
+                    level++;
+                    break;
+
+                case XMLStreamConstants.END_ELEMENT:
+                    sb.append("</").append(_reader.getLocalName()).append('>');
+                    level--;
+                    break;
+
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    appendEscaped(sb, _reader.getText(), false);
+                    break;
+
+                default:
+                    // Ignore the comments and processing instructions.
+                    break;
+            }
+
+            if (level > 0)
+            {
+                _reader.next(); // May throw XMLStreamException.
+            }
+        }
+        while (level > 0);
+
+        return new RawExtension(application, sb.toString());
+    }
+
+    /**
+     * Returns the namespace declarations of the current element.
+     * As the parser is not aware of the namespaces, they appear as regular attributes.
+     * @return a map of the declaring attribute names to the namespace URIs. May be empty but not <code>null</code>.
+     */
+    private Map<String, String> getNamespaceDeclarations()
+    {
+        final Map<String, String> ret = new LinkedHashMap<String, String>();
+
+        for (int i = 0; i < _reader.getAttributeCount(); i++)
+        {
+            final String name = getAttributeName(i);
+
+            if ("xmlns".equals(name) || name.startsWith("xmlns:"))
+            {
+                ret.put(name, _reader.getAttributeValue(i));
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the name of the specified attribute of the current element, including its prefix, if any.
+     * @param index the attribute index.
+     * @return an attribute name. Shall not be <code>null</code>.
+     */
+    private String getAttributeName(final int index)
+    {
+        final String prefix = _reader.getAttributePrefix(index);
+        String ret = _reader.getAttributeLocalName(index);
+
+        if ((prefix != null) && (prefix.length() > 0))
+        {
+            ret = prefix + ':' + ret;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Appends an attribute to an XML start tag.
+     * @param sb the XML string being built. Shall not be <code>null</code>.
+     * @param name the attribute name. Shall not be <code>null</code>.
+     * @param value the attribute value. Shall not be <code>null</code>.
+     */
+    private static void appendAttribute(final StringBuilder sb, final String name, final String value)
+    {
+        sb.append(' ').append(name).append("=\"");
+        appendEscaped(sb, value, true);
+        sb.append('"');
+    }
+
+    /**
+     * Appends the specified text to an XML string, escaping the markup characters.
+     * @param sb the XML string being built. Shall not be <code>null</code>.
+     * @param text the text to append. Shall not be <code>null</code>.
+     * @param inAttribute <code>true</code> if the text is an attribute value.
+     */
+    private static void appendEscaped(final StringBuilder sb, final String text, final boolean inAttribute)
+    {
+        final int len = text.length();
+
+        for (int i = 0; i < len; i++)
+        {
+            final char c = text.charAt(i);
+
+            switch (c)
+            {
+                case '&':
+                    sb.append("&amp;");
+                    break;
+
+                case '<':
+                    sb.append("&lt;");
+                    break;
+
+                case '>':
+                    sb.append("&gt;");
+                    break;
+
+                case '"':
+                    sb.append(inAttribute ? "&quot;" : "\"");
+                    break;
+
+                default:
+                    sb.append(c);
+            }
+        }
+    }
+
+    /**
+     * Skips the current element, up to and including its end tag.
+     * @throws XMLStreamException if the contents are not well-formed.
+     */
+    private void skipElement() throws XMLStreamException
+    {
+        int level = 1;
+
+        while (level > 0)
+        {
+            final int event = _reader.next(); // May throw XMLStreamException.
+
+            if (event == XMLStreamConstants.START_ELEMENT)
+            {
+                level++;
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT)
+            {
+                level--;
+            }
+        }
+    }
+
+    /**
+     * Moves to the next start or end tag, skipping any text in between.
+     * Contrary to {@link XMLStreamReader#nextTag}, non-whitespace text is allowed.
+     * @return the event type of the tag.
+     * @throws XMLStreamException if the contents are not well-formed.
+     */
+    private int nextTag() throws XMLStreamException
+    {
+        int event = _reader.next(); // May throw XMLStreamException.
+
+        while ((event != XMLStreamConstants.START_ELEMENT) && (event != XMLStreamConstants.END_ELEMENT))
+        {
+            event = _reader.next(); // May throw XMLStreamException.
+        }
+
+        return event;
+    }
+
+    /**
+     * Returns the name of the current element, without any namespace prefix.
+     * @return an element name. Shall not be <code>null</code>.
+     */
+    private String getLocalName()
+    {
+        final String name = _reader.getLocalName();
+
+        return name.substring(name.indexOf(':') + 1); // Shall not throw IndexOutOfBoundsException.
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            _reader.close(); // May throw XMLStreamException.
+        }
+        catch (XMLStreamException e)
+        {
+            final IOException ioe = new IOException(e.toString());
+            ioe.initCause(e);
+            throw ioe;
+        }
+        finally
+        {
+            _in.close(); // May throw IOException.
+        }
+    }
+}
@@ -0,0 +1,5 @@
+#!/usr/bin/env sh
+# Checks that concurrent lookups never see a partially built provider registry, while another thread keeps on reloading the providers.
+# Takes the duration of the check in seconds, 10 by default. Run from this directory, after "mvn -pl benchmarks -am package". Set JAR to use another build of the benchmarks.
+JAR=${JAR:-../benchmarks/target/benchmarks.jar}
+java -Dorg.apache.commons.logging.Log=org.apache.commons.logging.impl.NoOpLog -cp $JAR chameleon.benchmark.RegistryCheck $*
@@ -35,6 +35,7 @@ import java.net.URLConnection;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 import javax.swing.JFileChooser;
 
@@ -128,6 +129,12 @@ public final class AddToPlaylist
     @Option(name="-o",usage="The output file or URL\nIf missing, a file save dialog is prompted\nIf the output playlist type is not specified (-t), it will be inferred from the output file name extension",metaVar="file/URL")
     private volatile String _output = null;
 
+    /**
+     * Specifies if the output playlist shall be compressed with GZIP.
+     */
+    @Option(name="-z",usage="Compress the output playlist with GZIP")
+    private volatile boolean _gzip = false;
+
     /**
      * Specifies that the marshalled M3U playlist must use the Extension M3U format.
      */
@@ -425,6 +432,11 @@ public final class AddToPlaylist
             out = new FileOutputStream(outputFile); // May throw FileNotFoundException, SecurityException.
         }
 
+        if (_gzip)
+        {
+            out = new GZIPOutputStream(out); // May throw IOException.
+        }
+
         outputSpecificPlaylist.writeTo(out, null); // May throw Exception.
         out.flush(); // May throw IOException.
         out.close(); // May throw IOException.
@@ -33,6 +33,7 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
+import java.util.zip.GZIPOutputStream;
 
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.CmdLineException;
@@ -43,8 +44,9 @@ import chameleon.playlist.Playlist;
 import chameleon.playlist.SpecificPlaylist;
 import chameleon.playlist.SpecificPlaylistFactory;
 import chameleon.playlist.SpecificPlaylistProvider;
-import chameleon.playlist.m3u.M3U;
-import chameleon.playlist.plp.PLP;
+import chameleon.playlist.StreamingPlaylistWriter;
+import chameleon.playlist.m3u.M3UProvider;
+import chameleon.playlist.plp.PLPProvider;
 import chameleon.playlist.rss.RSSProvider;
 import chameleon.xml.Version;
 
@@ -151,6 +153,12 @@ public final class Transcode
     @Option(name="-o",usage="The output file or URL\nIf missing, stdout is used\nIf the output playlist type is not specified (-t), it will be inferred from the output file name extension",metaVar="file/URL")
     private volatile String _output = null;
 
+    /**
+     * Specifies if the output playlist shall be compressed with GZIP.
+     */
+    @Option(name="-z",usage="Compress the output playlist with GZIP")
+    private volatile boolean _gzip = false;
+
     /**
      * Specifies that the marshalled M3U playlist must use the Extension M3U format.
      */
@@ -327,19 +335,28 @@ public final class Transcode
             ((RSSProvider) tmpProvider).setUseRSSMedia(_useRSSMedia);
         }
 
-        final SpecificPlaylist outputSpecificPlaylist = tmpProvider.toSpecificPlaylist(playlist); // May throw Exception. Shall not throw NullPointerException because of playlist.
+        if (tmpProvider instanceof M3UProvider)
+        {
+            ((M3UProvider) tmpProvider).setExtensionM3U(_extM3U);
+        }
 
-        if (outputSpecificPlaylist instanceof M3U)
+        if ((tmpProvider instanceof PLPProvider) && (_diskSpecifier != null))
         {
-            ((M3U) outputSpecificPlaylist).setExtensionM3U(_extM3U);
+            ((PLPProvider) tmpProvider).setDiskSpecifier(_diskSpecifier);
         }
 
-        if ((outputSpecificPlaylist instanceof PLP) && (_diskSpecifier != null))
+        SpecificPlaylist outputSpecificPlaylist = null;
+
+        if (tmpProvider instanceof StreamingPlaylistWriter)
+        {
+            System.err.println("Output playlist type " + tmpProvider.getId());
+        }
+        else
         {
-            ((PLP) outputSpecificPlaylist).setDiskSpecifier(_diskSpecifier);
+            outputSpecificPlaylist = tmpProvider.toSpecificPlaylist(playlist); // May throw Exception. Shall not throw NullPointerException because of playlist.
+            System.err.println("Output playlist " + outputSpecificPlaylist);
         }
 
-        System.err.println("Output playlist " + outputSpecificPlaylist);
         OutputStream tmpOut = out;
 
         if (tmpOut == null)
@@ -347,7 +364,30 @@ public final class Transcode
             tmpOut = System.out;
         }
 
-        outputSpecificPlaylist.writeTo(tmpOut, null); // May throw Exception.
+        GZIPOutputStream gzipOut = null;
+
+        if (_gzip)
+        {
+            gzipOut = new GZIPOutputStream(tmpOut); // May throw IOException.
+            tmpOut = gzipOut;
+        }
+
+        if (outputSpecificPlaylist == null)
+        {
+            // Write the entries as the generic playlist is walked, without building the output playlist in memory.
+            ((StreamingPlaylistWriter) tmpProvider).writeTo(playlist, tmpOut, null); // May throw Exception.
+        }
+        else
+        {
+            outputSpecificPlaylist.writeTo(tmpOut, null); // May throw Exception.
+        }
+
+        if (gzipOut != null)
+        {
+            // Write the GZIP trailer, without closing the underlying stream (which may be stdout).
+            gzipOut.finish(); // May throw IOException.
+        }
+
         tmpOut.flush(); // May throw IOException.
 
         if (out != null)